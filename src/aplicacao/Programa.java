@@ -1,35 +1,57 @@
 package aplicacao;
 
-import java.text.Normalizer;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.LocalDate;
-import java.time.format.DateTimeFormatter;
+import java.time.YearMonth;
 import java.util.ArrayList;
-import java.util.Comparator;
 import java.util.List;
 import java.util.Scanner;
+import java.util.SortedMap;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
 
+import arquivos.ExecucaoDeComandos;
+import arquivos.ExportacaoDeRegistros;
+import arquivos.ImportacaoDeRegistros;
+import cadastro.Cadastro;
+import cadastro.CadastroColunar;
+import cadastro.CompactadorDeRegistros;
+import cadastro.Criterio;
+import cadastro.Estatisticas;
+import cadastro.Instantaneo;
+import cadastro.Listagem;
+import cadastro.Pagina;
+import cadastro.ServicoDeCadastro;
 import entidades.Condutor;
-import entidades.Constantes;
+import entidades.Formatacao;
 import entidades.Pessoa;
+import entidades.Validacao;
+import persistencia.Persistencia;
 
 public class Programa {
 	
 	public static LocalDate checarData(Scanner scan) {
-		LocalDate data;
-		// O o objeto "fmt" permitirá o usuário cadastrar datas no formato numérico dia/mes/ano ou dia-mes-ano,
+		// A classe Validacao permitirá o usuário cadastrar datas no formato numérico dia/mes/ano ou dia-mes-ano,
 		// possibilitando também colocar dias e meses com 1 ou 2 dígitos. Mas o ano deve possuir 4 dígitos.
-		DateTimeFormatter fmt = DateTimeFormatter.ofPattern("[d/M/yyyy][d-M-yyyy]");
 		// Loop "infinito" que será quebrado através do return.
 		do {
 			try {
 				System.out.print("Digite a data em formato numérico \"dd/mm/aaaa\" ou \"dd-mm-aaaa\": ");
 				// A data de nascimento será lida no formato String e logo em seguida convertida para o formato
-				// LocalDate.
-				data = LocalDate.parse(scan.nextLine(), fmt);
-				// Se a data estiver no formato correto, a função retornará a data para o programa principal,
-				// encerrando o "loop infinito".
-				return data;
-			} catch (Exception e) {
+				// LocalDate. Se a data estiver no formato correto, a função retornará a data para o programa
+				// principal, encerrando o "loop infinito".
+				return Validacao.data(scan.nextLine());
+			} catch (IllegalArgumentException e) {
 				// Caso a data estiver no formato errado, Java irá produzir um erro. O erro será capturado pelo
 				// try catch, permitindo que o programa continue executando. Mas o return não será executado e
 				// o loop infinito irá continuar até que o usuário entre com a data em um formato válido.
@@ -41,113 +63,257 @@ public class Programa {
 	public static char checarCategoria(Scanner scan) {
 		// Esta função será usada para checar a validade da categoria da CNH, tanto no cadastro de um novo registro
 		// quanto na edição de um registro já existente. Os tipos de categoria válidos são A, B, C, D e E.
-		char categoria;
 		do {
 			// O usuário deve digitar uma opção válida de categoria (permitindo a entrada de letras minúsculas,
-			// pois serão convertidas para maiúsculas através do toUpperCase). Caso a categoria esteja errada, o
-			// do-while continuará executando até que o usuário insira uma opção válida.
+			// pois serão convertidas para maiúsculas). Caso a categoria esteja errada, o do-while continuará
+			// executando até que o usuário insira uma opção válida.
 			System.out.print("Digite a categoria da CNH (A/B/C/D/E): ");
-			categoria = scan.nextLine().toUpperCase().charAt(0);
-			if (categoria != 'A' && categoria != 'B' && categoria != 'C' && categoria != 'D' && categoria != 'E') {
+			try {
+				return Validacao.categoria(scan.nextLine());
+			} catch (IllegalArgumentException e) {
 				System.out.println("Opção inválida!");
 			}
-		} while (categoria != 'A' && categoria != 'B' && categoria != 'C' && categoria != 'D' && categoria != 'E');
-		return categoria;
+		} while (true);
 	}
 	
 	public static String checarTipoDeCarteira(Scanner scan) {
 		// Esta função será usada para checar a validade do tipo de CNH, tanto no cadastro de um novo registro
 		// quanto na edição de um registro já existente. Os tipos de CNH válidos são "DEFINITIVA" e "PPD".
-		String tipoDeCarteira;
 		do {
 			// Aqui o usuário do sistema vai escolher se o registro será de uma PPD ou de uma CNH definitiva
-			// (permitindo a entrada de letras minúsculas, pois serão convertidas para maiúsculas através do
-			// toUpperCase). Caso o usuário digitar uma opção não-prevista, o do-while continuará executando
-			// até que o usuário insira uma opção válida.
+			// (permitindo a entrada de letras minúsculas, pois serão convertidas para maiúsculas). Caso o usuário
+			// digitar uma opção não-prevista, o do-while continuará executando até que o usuário insira uma
+			// opção válida.
 			System.out.println("Digite \"PPD\" caso a carteira seja do tipo permissão para dirigir.");
 			System.out.println("Digite \"Definitiva\" caso a carteira seja do tipo definitiva.");
 			System.out.print("Digite a sua opção: ");
-			tipoDeCarteira = scan.nextLine().toUpperCase();
-			if (!tipoDeCarteira.equals("PPD") && !tipoDeCarteira.equals("DEFINITIVA")) {
+			try {
+				return Validacao.tipoDeCarteira(scan.nextLine());
+			} catch (IllegalArgumentException e) {
 				System.out.println("Opção inválida!");
 			}
-		} while (!tipoDeCarteira.equals("PPD") && !tipoDeCarteira.equals("DEFINITIVA"));
-		return tipoDeCarteira;
+		} while (true);
 	}
 	
-	public static int buscaDeRegistro(String cpf, List<Pessoa> listaDePessoas) {
-		// Esta função irá verificar os CPFs de cada registro na lista através de um For Each, usando o Getter
-		// da superclasse Pessoa, e o método .equals() para comparar os dados do tipo String.
-		for (Pessoa pessoa: listaDePessoas) {
-			if (pessoa.getCpf().equals(cpf)) {
-				// Caso encontre o CPF no registro, irá retornar o índice da lista onde o objeto se encontra,
-				// e a função termina aqui.
-				return listaDePessoas.indexOf(pessoa);
+	public static String checarNumeroDeRegistro(Scanner scan, ServicoDeCadastro cadastro) {
+		// Esta função será usada para obter o número de registro da CNH, tanto no cadastro de um novo condutor
+		// quanto na habilitação de um cidadão já cadastrado. Cada número de registro só pode pertencer a um
+		// condutor, portanto o do-while continuará executando até que o usuário insira um número não cadastrado.
+		String numeroDeRegistro;
+		do {
+			System.out.print("Digite o número do registro da CNH: ");
+			numeroDeRegistro = scan.nextLine();
+			if (cadastro.buscarPorNumeroDeRegistro(numeroDeRegistro) != null) {
+				System.out.println("O número de registro " + numeroDeRegistro + " já está cadastrado no registro.");
 			}
-		}
-		// Caso não encontre o CPF no registro, o return acima nunca será executado, restando então apenas
-		// este return abaixo, valor este que não é possível obter no processo acima. Este valor é usado
-		// para informar posteriormente que o CPF não foi encontrado.
-		return -1;
+		} while (cadastro.buscarPorNumeroDeRegistro(numeroDeRegistro) != null);
+		return numeroDeRegistro;
 	}
 	
-	public static void imprimirTabela(List<Pessoa> listaDePessoas) {
+	public static Pessoa buscaDeRegistro(String cpf, ServicoDeCadastro cadastro) {
+		// Esta função irá consultar o índice de CPFs do cadastro, que encontra o registro sem precisar percorrer
+		// a lista inteira.
+		// Caso não encontre o CPF no registro, a função retorna null. Este valor é usado para informar
+		// posteriormente que o CPF não foi encontrado.
+		return cadastro.buscar(cpf);
+	}
+	
+	public static void imprimirTabela(Iterable<? extends Pessoa> listaDePessoas) {
 		// Esta função irá imprimir a tabela com 3 atributos dos objetos: nome, CPF e número da CNH. Esta função
 		// será executada na listagem do registro e também na listagem do registro em ordem alfabética.
-		// Estas constantes serão utilizadas para auxiliar na formatação da tabelas com a listagem de objetos
-		// cadastrados.
-		final int formatacaoNome = Constantes.formatacaoNome();
-		final int formatacaoCpf = Constantes.formatacaoCpf();
-		final int formatacaoRegistro = Constantes.formatacaoRegistro();
-		// A String linhaDaTabela vai produzir as linhas horizontais das tabelas, para melhorar a estética da tabela.
-		final String linhaDaTabela = Constantes.linhaDaTabela();
-		System.out.println(linhaDaTabela);
-		// Os valores numéricos das constantes vão ajudar a completar as "células" da tabela com espaços vazios.
-		// O padrão do .format ao "completar" um string é posicionar o texto no lado direito.
-		// O sinal - em %-s vai posicionar o texto no lado esquerdo.
-		System.out.println(String.format("| %-"+formatacaoNome+"s | %-"+formatacaoCpf+"s | %-"+formatacaoRegistro+"s |", "NOME", "CPF", "NÚMERO DE REGISTRO"));
-		System.out.println(linhaDaTabela);
-		// O For Each vai passar por cada objeto cadastrado no registro, e executar o resumo do objeto.
-		for (Pessoa pessoa : listaDePessoas) {
-			System.out.println(pessoa.resumo());
+		// As linhas não são mais impressas uma a uma com System.out.println (uma chamada ao sistema por linha):
+		// a tabela é escrita em um BufferedWriter, que só envia o texto ao console quando o buffer enche.
+		// O System.out não é fechado, apenas o buffer é esvaziado no final.
+		Writer saida = new BufferedWriter(new OutputStreamWriter(System.out), 1 << 16);
+		try {
+			imprimirTabela(listaDePessoas, saida);
+			saida.flush();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
 		}
-		System.out.println(linhaDaTabela);
 	}
 
+	public static void imprimirTabela(Iterable<? extends Pessoa> listaDePessoas, Writer saida) throws IOException {
+		// A tabela é escrita pela classe Formatacao, que também é usada pela execução de comandos.
+		Formatacao.tabela(saida, listaDePessoas);
+	}
+
+	public static void exportarTabela(Iterable<? extends Pessoa> listaDePessoas, Path arquivo) throws IOException {
+		// Exportação do relatório completo para um arquivo. Um único buffer grande (1 MB) acumula as linhas, de
+		// forma que o arquivo é escrito em poucos blocos grandes, e não em uma chamada ao sistema por linha.
+		try (Writer saida = new BufferedWriter(Files.newBufferedWriter(arquivo, StandardCharsets.UTF_8), 1 << 20)) {
+			imprimirTabela(listaDePessoas, saida);
+		}
+	}
+
+	public static void navegarPelaListagem(Scanner scan, ServicoDeCadastro cadastro, boolean emOrdemAlfabetica) {
+		// Com milhões de registros, imprimir a tabela inteira no console levaria minutos. Por isso as opções de
+		// listagem mostram uma página por vez, e o usuário pode avançar, voltar, pular para uma letra, mudar o
+		// tamanho da página ou exportar a listagem completa para um arquivo.
+		Listagem listagem = emOrdemAlfabetica ? cadastro.listagemAlfabetica() : cadastro.listagem();
+		int tamanhoDaPagina = 20;
+		Pagina pagina = listagem.primeira(tamanhoDaPagina);
+		String comando;
+		do {
+			imprimirTabela(pagina.getRegistros());
+			System.out.println("P: próxima página | A: página anterior | L <letras>: pular para o nome | T <número>: tamanho da página");
+			System.out.println("E <arquivo>: exportar a listagem completa para um arquivo | S: sair da listagem");
+			System.out.print("Digite o comando: ");
+			comando = scan.nextLine().trim();
+			String letraDoComando = comando.isEmpty() ? "" : comando.substring(0, 1).toUpperCase();
+			String argumento = comando.length() > 1 ? comando.substring(1).trim() : "";
+			if (letraDoComando.equals("P")) {
+				if (pagina.temProxima()) {
+					pagina = listagem.proxima(pagina, tamanhoDaPagina);
+				} else {
+					System.out.println("Esta é a última página.");
+				}
+			} else if (letraDoComando.equals("A")) {
+				if (pagina.temAnterior()) {
+					pagina = listagem.anterior(pagina, tamanhoDaPagina);
+				} else {
+					System.out.println("Esta é a primeira página.");
+				}
+			} else if (letraDoComando.equals("L") && !argumento.isEmpty()) {
+				Pagina encontrada = listagem.irPara(argumento, pagina, tamanhoDaPagina);
+				if (encontrada == null) {
+					System.out.println("Nenhum nome começando com \"" + argumento + "\" foi encontrado.");
+				} else {
+					pagina = encontrada;
+				}
+			} else if (letraDoComando.equals("T") && argumento.matches("[0-9]{1,4}") && Integer.parseInt(argumento) > 0) {
+				// O novo tamanho vale a partir da próxima página; a página atual é recarregada a partir do seu início.
+				tamanhoDaPagina = Integer.parseInt(argumento);
+				pagina = pagina.temAnterior() ? listagem.proxima(listagem.anterior(pagina, 1), tamanhoDaPagina) : listagem.primeira(tamanhoDaPagina);
+			} else if (letraDoComando.equals("E")) {
+				// O nome do arquivo pode ser digitado junto com o comando ("E relatorio.txt").
+				String arquivo = argumento;
+				if (arquivo.isEmpty()) {
+					System.out.print("Digite o nome do arquivo: ");
+					arquivo = scan.nextLine().trim();
+				}
+				try {
+					// A exportação percorre um instantâneo do cadastro: a listagem completa é escrita exatamente como
+					// estava no início da exportação, sem impedir que os outros atendentes modifiquem o cadastro.
+					try (Instantaneo instantaneo = cadastro.instantaneo()) {
+						exportarTabela(emOrdemAlfabetica ? instantaneo.emOrdemAlfabetica() : instantaneo, Path.of(arquivo));
+					}
+					System.out.println("Listagem exportada para o arquivo " + arquivo + ".");
+				} catch (IOException | RuntimeException e) {
+					System.out.println("Não foi possível exportar a listagem: " + e.getMessage());
+				}
+			} else if (!letraDoComando.equals("S")) {
+				System.out.println("Comando inválido!");
+			}
+		} while (!comando.toUpperCase().startsWith("S"));
+	}
+
+	public static void editarCpf(ServicoDeCadastro cadastro, String cpf, String novoCpf) {
+		// Esta função será usada na edição do CPF, tanto de condutores quanto de não-condutores. Caso o novo CPF
+		// já pertença a outro registro, o cadastro irá lançar uma exceção e o CPF não será modificado.
+		try {
+			cadastro.alterarCpf(cpf, novoCpf);
+		} catch (IllegalArgumentException e) {
+			System.out.println(e.getMessage() + " O CPF não foi modificado.");
+		}
+	}
+
+	public static void editar(ServicoDeCadastro cadastro, String cpf, Consumer<Pessoa> alteracao) {
+		// Esta função será usada na edição dos demais atributos. O serviço aplica a alteração em uma cópia do
+		// registro, que ocupa o lugar do original somente depois de alterada. Caso o registro tenha sido removido
+		// por outro atendente, ou o novo valor não seja permitido, o registro não será modificado.
+		try {
+			cadastro.editar(cpf, alteracao);
+		} catch (IllegalArgumentException e) {
+			System.out.println(e.getMessage() + " O registro não foi modificado.");
+		}
+	}
+
+
+	// Este método combina o critério de consulta atual com os valores digitados, separados por vírgula: os
+	// valores são unidos com "ou", e o resultado é combinado com o critério atual com "e". Caso nada tenha sido
+	// digitado, o critério atual não é modificado.
+	public static Criterio combinar(Criterio atual, String texto, Function<String, Criterio> criterioDoValor) {
+		Criterio valores = null;
+		for (String valor : texto.split(",")) {
+			if (!valor.isBlank()) {
+				Criterio criterio = criterioDoValor.apply(valor.trim());
+				valores = valores == null ? criterio : valores.ou(criterio);
+			}
+		}
+		if (valores == null) {
+			return atual;
+		}
+		return atual == null ? valores : atual.e(valores);
+	}
 
 	public static void main(String[] args) {
 		
-		// Os objetos serão armazenados em um ArrayList, do tipo superclasse Pessoa.
-		List<Pessoa> listaDePessoas = new ArrayList<>();
+		// Os objetos serão armazenados no cadastro, que mantém os registros na ordem em que foram cadastrados
+		// e um índice que permite encontrar cada registro a partir do seu CPF. Com a propriedade
+		// "cadastro.colunar=true", os dados dos registros são guardados em colunas (veja CadastroColunar), o que
+		// ocupa menos memória em cadastros muito grandes.
+		Cadastro cadastro = Boolean.getBoolean("cadastro.colunar") ? new CadastroColunar() : new Cadastro();
+		
+		// O cadastro é gravado no diretório "dados" (ou no diretório informado pela propriedade "cadastro.dados").
+		// Na inicialização, os registros gravados são recuperados, e cada modificação feita daqui em diante é
+		// registrada no diário de operações.
+		Persistencia persistencia = new Persistencia(Path.of(System.getProperty("cadastro.dados", "dados")));
+		boolean existiamDados;
+		try {
+			existiamDados = persistencia.abrir(cadastro);
+		} catch (IOException e) {
+			System.out.println("Não foi possível carregar o cadastro gravado em disco: " + e.getMessage());
+			return;
+		}
+		
+		// Com os argumentos "--comandos <arquivo>", o programa executa os comandos do arquivo (ou da entrada padrão,
+		// com "-") em vez de abrir o menu (veja ExecucaoDeComandos).
+		boolean executarComandos = args.length > 0 && args[0].equals("--comandos");
 		
-		// O programa irá cadastrar automaticamente 7 objetos, de acordo com um dos requisitos do trabalho.
-		listaDePessoas.add(new Condutor("João", "12345678901", LocalDate.of(2000, 1, 1),
-				"11111111111", 'B', LocalDate.of(2022, 1, 1), "DEFINITIVA"));
-		listaDePessoas.add(new Condutor("Maria", "98765432109", LocalDate.of(2005, 1, 1),
-				"22222222222", 'A', LocalDate.of(2023, 1, 1), "DEFINITIVA"));
-		listaDePessoas.add(new Pessoa("Pedro", "29137219371", LocalDate.of(1987, 11, 23)));
-		listaDePessoas.add(new Condutor("José", "61823689126", LocalDate.of(1995, 2, 28),
-				"44444444444", 'E', LocalDate.of(2019, 11, 20), "PPD"));
-		listaDePessoas.add(new Condutor("Lúcia", "68236812735", LocalDate.of(1992, 2, 29),
-				"55555555555", 'B', LocalDate.of(2020, 3, 17), "PPD"));
-		listaDePessoas.add(new Pessoa("Júlia", "02713290372", LocalDate.of(2003, 12, 25)));
-		listaDePessoas.add(new Condutor("Eduardo", "76914609219", LocalDate.of(1953, 7, 31),
-				"77777777777", 'A', LocalDate.of(2020, 9, 11), "DEFINITIVA"));
+		if (!existiamDados && !executarComandos) {
+			// Na primeira execução, o programa irá cadastrar automaticamente 7 objetos, de acordo com um dos
+			// requisitos do trabalho.
+			cadastro.adicionar(new Condutor("João", "12345678901", LocalDate.of(2000, 1, 1),
+					"11111111111", 'B', LocalDate.of(2022, 1, 1), "DEFINITIVA"));
+			cadastro.adicionar(new Condutor("Maria", "98765432109", LocalDate.of(2005, 1, 1),
+					"22222222222", 'A', LocalDate.of(2023, 1, 1), "DEFINITIVA"));
+			cadastro.adicionar(new Pessoa("Pedro", "29137219371", LocalDate.of(1987, 11, 23)));
+			cadastro.adicionar(new Condutor("José", "61823689126", LocalDate.of(1995, 2, 28),
+					"44444444444", 'E', LocalDate.of(2019, 11, 20), "PPD"));
+			cadastro.adicionar(new Condutor("Lúcia", "68236812735", LocalDate.of(1992, 2, 29),
+					"55555555555", 'B', LocalDate.of(2020, 3, 17), "PPD"));
+			cadastro.adicionar(new Pessoa("Júlia", "02713290372", LocalDate.of(2003, 12, 25)));
+			cadastro.adicionar(new Condutor("Eduardo", "76914609219", LocalDate.of(1953, 7, 31),
+					"77777777777", 'A', LocalDate.of(2020, 9, 11), "DEFINITIVA"));
+		}
+		// Depois de carregado, o cadastro só é usado através do serviço, que permite que vários atendentes
+		// trabalhem ao mesmo tempo sobre o mesmo cadastro.
+		ServicoDeCadastro servico = new ServicoDeCadastro(cadastro);
+		// As métricas das operações do serviço ficam disponíveis no JMX (por exemplo, no JConsole) enquanto o
+		// programa estiver aberto, e também na opção 15 do menu.
+		servico.getMetricas().publicarNoJmx();
+		// A remoção apenas marca a posição do registro como vazia; as posições vazias são recuperadas em segundo
+		// plano pelo compactador, quando passam do limite de fragmentação.
+		CompactadorDeRegistros compactador = new CompactadorDeRegistros(servico);
+		
+		if (executarComandos) {
+			executarComandos(servico, persistencia, args.length > 1 ? args[1] : "-");
+			encerrar(compactador, persistencia);
+			return;
+		}
 		
 		Scanner scan = new Scanner(System.in);
 		
 		// Esta variável será utilizada para "navegar" no menu textual do progorama.
 		String opcaoDoMenu;
 		// Esta variável será utilizada nas opções buscar, editar e deletar, que dependem da função buscaDeRegistro.
-		int indiceDoRegistro;
+		Pessoa registro;
 		// Caso o usuário queira cadastrar novos objetos no registro, estas variáveis serão utilizadas para
 		// auxiliar neste processo.
 		String nome, cpf, numeroDeRegistro, tipoDeCarteira;
 		char categoria;
 		LocalDate dataDeNascimento, dataDeEmissao;
-		// No processo de edição de objetos, será necessário realizar downcasting. O objeto declarado abaixo irá
-		// auxiliar nesse processo.
-		Condutor condutor;
 		
 		System.out.println("Seja bem-vindo ao sistema de cadastro do DETRAN.");
 		// O loop do-while permitirá a execução do programa até que o usuário digite a opção para encerrar o
@@ -160,6 +326,14 @@ public class Programa {
 			System.out.println("Digite 4 para buscar e deletar um registro no sistema.");
 			System.out.println("Digite 5 para listar todos os registros do sistema.");
 			System.out.println("Digite 6 para listar todos os registros do sistema em ordem alfabética.");
+			System.out.println("Digite 8 para buscar um registro pelo número da CNH.");
+			System.out.println("Digite 9 para importar registros de um arquivo CSV.");
+			System.out.println("Digite 10 para exportar os registros para um arquivo CSV ou JSON.");
+			System.out.println("Digite 11 para listar as CNHs vencidas ou que vencem em um período.");
+			System.out.println("Digite 12 para consultar os registros por categoria, tipo de carteira e faixa etária.");
+			System.out.println("Digite 13 para buscar registros pelo nome.");
+			System.out.println("Digite 14 para ver as estatísticas do cadastro.");
+			System.out.println("Digite 15 para ver as métricas de desempenho das operações.");
 			System.out.println("Digite 7 para encerrar o programa.");
 			System.out.print("Digite a sua opção: ");
 			opcaoDoMenu = scan.nextLine();
@@ -171,6 +345,14 @@ public class Programa {
 				nome = scan.nextLine();
 				System.out.print("Digite o CPF: ");
 				cpf = scan.nextLine();
+				// Não é permitido cadastrar dois registros com o mesmo CPF. O cadastro é interrompido logo após
+				// a digitação do CPF, para que o usuário não precise preencher os demais dados à toa.
+				if (buscaDeRegistro(cpf, servico) != null) {
+					System.out.println("O CPF " + cpf + " já está cadastrado no registro. Cadastro interrompido.");
+					System.out.println("\nPressione a tecla \"Enter\" para voltar ao menu principal...");
+					scan.nextLine();
+					continue;
+				}
 				System.out.print("Data de nascimento. ");
 				// A função checarData vai usar o objeto scan para obter do usuário a data de nascimento.
 				// Se a data estiver em um formato válido, irá retornar a data na forma de LocalDate.
@@ -189,11 +371,12 @@ public class Programa {
 				} while (!opcaoDoMenu.equals("1") && !opcaoDoMenu.equals("2"));
 				if (opcaoDoMenu.equals("1")) {
 					// Cidadãos não-habilitados serão armazenados na lista na forma de um objeto da classe "Pessoa".
-					listaDePessoas.add(new Pessoa(nome, cpf, dataDeNascimento));
+					servico.adicionar(new Pessoa(nome, cpf, dataDeNascimento));
 				} else {
 					// Aqui serão requisitados as informações específicas sobre condutores habilitados, que possuem uma CNH.
-					System.out.print("Digite o número do registro da CNH: ");
-					numeroDeRegistro = scan.nextLine();
+					// A função checarNumeroDeRegistro vai usar o objeto scan para obter do usuário o número da CNH.
+					// Se o número ainda não estiver cadastrado, irá retornar o número de registro.
+					numeroDeRegistro = checarNumeroDeRegistro(scan, servico);
 					// A função checarCategoria vai usar o objeto scan para obter do usuário a categoria da CNH.
 					// Se for uma opção válida, irá retornar a categoria (com letra maiúscula).
 					categoria = checarCategoria(scan);
@@ -206,7 +389,7 @@ public class Programa {
 					// Se for uma opção válida, irá retornar o tipo de CNH (com letras maiúsculas).
 					tipoDeCarteira = checarTipoDeCarteira(scan);
 					// Condutores habilitados serão armazenados na lista na forma de um objeto da classe "Condutor".
-					listaDePessoas.add(new Condutor(nome, cpf, dataDeNascimento,
+					servico.adicionar(new Condutor(nome, cpf, dataDeNascimento,
 							numeroDeRegistro, categoria, dataDeEmissao, tipoDeCarteira));
 				}
 				System.out.println("Cadastro realizado com sucesso.");
@@ -215,17 +398,15 @@ public class Programa {
 				System.out.println("\nBusca de registro no sistema:");
 				System.out.print("Digite o número do CPF do cidadão: ");
 				cpf = scan.nextLine();
-				// A busca será executada na função "buscaDeRegistro", que retornará o índice do objeto na lista.
-				indiceDoRegistro = buscaDeRegistro(cpf, listaDePessoas);
-				if (indiceDoRegistro == -1) {
-					// Se a função retornar o valor -1, isso indica que a função passou pela lista inteira e não
-					// encontrou o objeto com o CPF informado.
+				// A busca será executada na função "buscaDeRegistro", que retornará o objeto encontrado.
+				registro = buscaDeRegistro(cpf, servico);
+				if (registro == null) {
+					// Se a função retornar null, isso indica que o CPF informado não está no índice do cadastro.
 					System.out.println("O CPF " + cpf + " não foi encontrado no registro.");
 				} else {
 					// Caso contrário, o sysout abaixo irá informar o usuário todas as informações do objeto,
-					// usando o .get() para obter o objeto com base no índice da lista, e o método .completo() para
-					// produzir o String com todas as informações sobre o objeto.
-					System.out.println("CPF encontrado!\nListagem completa do cidadão de CPF " + cpf + ":\n" + listaDePessoas.get(indiceDoRegistro).completo());
+					// usando o método .completo() para produzir o String com todas as informações sobre o objeto.
+					System.out.println("CPF encontrado!\nListagem completa do cidadão de CPF " + cpf + ":\n" + registro.completo());
 				}
 			} else if (opcaoDoMenu.equals("3")) {
 				// Esta opção vai permitir editar um registro específico da lista.
@@ -233,23 +414,22 @@ public class Programa {
 				System.out.println("\nBuscar e editar um registro do sistema:");
 				System.out.print("Digite o número do CPF do cidadão: ");
 				cpf = scan.nextLine();
-				// A busca será executada na função "buscaDeRegistro", que retornará o índice do objeto na lista.
-				indiceDoRegistro = buscaDeRegistro(cpf, listaDePessoas);
-				if (indiceDoRegistro == -1) {
-					// Se a função retornar o valor -1, isso indica que a função passou pela lista inteira e não
-					// encontrou o objeto com o CPF informado.
+				// A busca será executada na função "buscaDeRegistro", que retornará o objeto encontrado.
+				registro = buscaDeRegistro(cpf, servico);
+				if (registro == null) {
+					// Se a função retornar null, isso indica que o CPF informado não está no índice do cadastro.
 					System.out.println("O CPF " + cpf + " não foi encontrado no registro.");
 				} else {
 					System.out.println("CPF encontrado!");
 					// Como estamos trabalhando com duas classes diferentes com atributos diferentes, usou-se o operador
 					// instanceof para identificar o tipo de objeto que será editado. Objetos do tipo Condutor vão permitir
 					// a edição de um dos 7 atributos, enquanto não-condutores só possuem 3 atributos para editar.
-					if (listaDePessoas.get(indiceDoRegistro) instanceof Condutor) {
-						// Os objetos obtidos do arrayList são, por padrão, do tipo Pessoa (pois o arrayList foi declarado como tal),
+					if (registro instanceof Condutor) {
+						// Os objetos obtidos do cadastro são, por padrão, do tipo Pessoa (pois o cadastro foi declarado como tal),
 						// o que dificulta o acesso aos setters da classe Condutor. Para resolver este problema, faz-se um downcasting
-						// do objeto da classe Condutor, para que o Java saiba explicitamente o tipo de classe desse objeto obtido
-						// através da lista.
-						condutor = (Condutor)listaDePessoas.get(indiceDoRegistro);
+						// da cópia do registro que será editada, para que o Java saiba explicitamente o tipo de classe do objeto.
+						// O registro não é alterado diretamente: o serviço do cadastro aplica a alteração em uma cópia, que
+						// ocupa o lugar do registro somente depois de alterada.
 						do {
 							// Aqui o usuário vai escolher qual dos 7 atributos vai editar. Se o usuário digitar uma opção
 							// não-prevista, o do-while continuará executando até que o usuário insira uma opção válida.
@@ -265,33 +445,42 @@ public class Programa {
 							// Caso o usuário digite uma opção válida, o atributo escolhido será editado através dos setters.
 							if (opcaoDoMenu.equals("1")) {
 								System.out.print("Editando o nome. Digite o novo nome: ");
-								condutor.setNome(scan.nextLine());
+								String novoNome = scan.nextLine();
+								editar(servico, cpf, pessoa -> pessoa.setNome(novoNome));
 							} else if (opcaoDoMenu.equals("2")) {
 								System.out.print("Editando o CPF. Digite o novo CPF: ");
-								condutor.setCpf(scan.nextLine());
+								editarCpf(servico, cpf, scan.nextLine());
 							} else if (opcaoDoMenu.equals("3")) {
 								System.out.print("Editando a data de nascimento. ");
 								// A função checarData vai usar o objeto scan para obter do usuário a data de nascimento.
 								// Se a data estiver em um formato válido, irá retornar a data na forma de LocalDate.
-								condutor.setDataDeNascimento(checarData(scan));
+								LocalDate novaData = checarData(scan);
+								editar(servico, cpf, pessoa -> pessoa.setDataDeNascimento(novaData));
 							} else if (opcaoDoMenu.equals("4")) {
 								System.out.print("Editando o número de registro. Digite o novo número de registro: ");
-								condutor.setNumeroDeRegistro(scan.nextLine());
+								// Caso o novo número já pertença a outro condutor, o cadastro irá lançar uma exceção e o
+								// número de registro não será modificado.
+								String novoNumero = scan.nextLine();
+								editar(servico, cpf, pessoa -> ((Condutor) pessoa).setNumeroDeRegistro(novoNumero));
 							} else if (opcaoDoMenu.equals("5")) {
 								System.out.print("Editando a categoria. ");
 								// A função checarCategoria vai usar o objeto scan para obter a categoria da CNH do usuário do sistema.
 								// Se for uma opção válida, irá retornar a categoria (com letra maiúscula).
-								condutor.setCategoria(checarCategoria(scan));
+								char novaCategoria = checarCategoria(scan);
+								editar(servico, cpf, pessoa -> ((Condutor) pessoa).setCategoria(novaCategoria));
 							} else if (opcaoDoMenu.equals("6")) {
 								System.out.print("Editando a data de emissão. ");
 								// A função checarData vai usar o objeto scan para obter do usuário a data de emissão.
 								// Se a data estiver em um formato válido, irá retornar a data na forma de LocalDate.
-								condutor.setDataDeEmissao(checarData(scan));
+								// A nova data de validade é calculada na cópia do registro, junto com a nova data de emissão.
+								LocalDate novaEmissao = checarData(scan);
+								editar(servico, cpf, pessoa -> ((Condutor) pessoa).setDataDeEmissao(novaEmissao));
 							} else if (opcaoDoMenu.equals("7")) {
 								System.out.print("Editando o tipo de carteira. ");
 								// A função checarTipoDeCarteira vai usar o objeto scan para obter do usuário o tipo de CNH.
 								// Se for uma opção válida, irá retornar o tipo de CNH (com letras maiúsculas).
-								condutor.setTipoDeCarteira(checarTipoDeCarteira(scan));
+								String novoTipo = checarTipoDeCarteira(scan);
+								editar(servico, cpf, pessoa -> ((Condutor) pessoa).setTipoDeCarteira(novoTipo));
 							} else {
 								System.out.println("Opção inválida!");
 							}
@@ -299,29 +488,45 @@ public class Programa {
 					} else {
 						// Aqui será trabalhado com objetos da classe-pai Pessoa, portanto não é necessário fazer downcasting.
 						do {
-							// Aqui o usuário vai escolher qual dos 3 atributos vai editar. Se o usuário digitar uma opção
-							// não-prevista, o do-while continuará executando até que o usuário insira uma opção válida.
+							// Aqui o usuário vai escolher qual dos 3 atributos vai editar, ou se vai cadastrar a habilitação
+							// do cidadão. Se o usuário digitar uma opção não-prevista, o do-while continuará executando até
+							// que o usuário insira uma opção válida.
 							System.out.println("Digite 1 caso queira editar o nome.");
 							System.out.println("Digite 2 caso queira editar o CPF.");
 							System.out.println("Digite 3 caso queira editar a data de nascimento.");
+							System.out.println("Digite 4 caso queira cadastrar a habilitação (CNH) do cidadão.");
 							System.out.print("Digite a sua opção: ");
 							opcaoDoMenu = scan.nextLine();
 							// Caso o usuário digite uma opção válida, o atributo escolhido será editado através dos setters.
 							if (opcaoDoMenu.equals("1")) {
 								System.out.print("Editando o nome. Digite o novo nome: ");
-								listaDePessoas.get(indiceDoRegistro).setNome(scan.nextLine());
+								String novoNome = scan.nextLine();
+								editar(servico, cpf, pessoa -> pessoa.setNome(novoNome));
 							} else if (opcaoDoMenu.equals("2")) {
 								System.out.print("Editando o CPF. Digite o novo CPF: ");
-								listaDePessoas.get(indiceDoRegistro).setCpf(scan.nextLine());
+								editarCpf(servico, cpf, scan.nextLine());
 							} else if (opcaoDoMenu.equals("3")) {
 								System.out.print("Editando a data de nascimento. ");
 								// A função checarData vai usar o objeto scan para obter do usuário a data de nascimento.
 								// Se a data estiver em um formato válido, irá retornar a data na forma de LocalDate.
-								listaDePessoas.get(indiceDoRegistro).setDataDeNascimento(checarData(scan));
+								LocalDate novaData = checarData(scan);
+								editar(servico, cpf, pessoa -> pessoa.setDataDeNascimento(novaData));
+							} else if (opcaoDoMenu.equals("4")) {
+								// O cidadão passa a ser um condutor habilitado. Os dados da CNH são obtidos da mesma forma
+								// que no cadastro de um novo condutor.
+								System.out.println("Cadastrando a habilitação do cidadão.");
+								numeroDeRegistro = checarNumeroDeRegistro(scan, servico);
+								categoria = checarCategoria(scan);
+								System.out.print("Data de emissão. ");
+								dataDeEmissao = checarData(scan);
+								tipoDeCarteira = checarTipoDeCarteira(scan);
+								// O cadastro irá substituir o objeto da classe Pessoa por um objeto da classe Condutor,
+								// mantendo o índice de CPFs e o índice de números de registro atualizados.
+								servico.habilitar(registro.getCpf(), numeroDeRegistro, categoria, dataDeEmissao, tipoDeCarteira);
 							} else {
 								System.out.println("Opção inválida!");
 							}
-						} while (!opcaoDoMenu.equals("1") && !opcaoDoMenu.equals("2") && !opcaoDoMenu.equals("3"));
+						} while (!opcaoDoMenu.equals("1") && !opcaoDoMenu.equals("2") && !opcaoDoMenu.equals("3") && !opcaoDoMenu.equals("4"));
 					}
 					System.out.println("Operação de edição de registro concluída.");
 				}
@@ -331,11 +536,10 @@ public class Programa {
 				System.out.println("\nBuscar e deletar um registro do sistema:");
 				System.out.print("Digite o número do CPF do cidadão: ");
 				cpf = scan.nextLine();
-				// A busca será executada na função "buscaDeRegistro", que retornará o índice do objeto na lista.
-				indiceDoRegistro = buscaDeRegistro(cpf, listaDePessoas);
-				if (indiceDoRegistro == -1) {
-					// Se a função retornar o valor -1, isso indica que a função passou pela lista inteira e não
-					// encontrou o objeto com o CPF informado.
+				// A busca será executada na função "buscaDeRegistro", que retornará o objeto encontrado.
+				registro = buscaDeRegistro(cpf, servico);
+				if (registro == null) {
+					// Se a função retornar null, isso indica que o CPF informado não está no índice do cadastro.
 					System.out.println("O CPF " + cpf + " não foi encontrado no registro.");
 				} else {
 					System.out.println("CPF encontrado!\nO registro do cidadão de CPF " + cpf + " será deletado permanentemente do sistema.");
@@ -348,8 +552,8 @@ public class Programa {
 						System.out.print("Digite a sua opção: ");
 						opcaoDoMenu = scan.nextLine();
 						if (opcaoDoMenu.equals("1")) {
-							// Uma vez confirmado, o .remove() irá deletar o objeto da lista com base no seu índice.
-							listaDePessoas.remove(indiceDoRegistro);
+							// Uma vez confirmado, o .remover() irá deletar o objeto do cadastro e do índice de CPFs.
+							servico.remover(cpf);
 							System.out.println("Operação concluida. O registro do cidadão de CPF " + cpf + " foi deletado.");
 						} else if (opcaoDoMenu.equals("2")) {
 							// Se o usuário não confirmar, a lista não será modificada.
@@ -362,25 +566,227 @@ public class Programa {
 			} else if (opcaoDoMenu.equals("5")) {
 				// Esta opção vai listar todos os cadastros no registro com apenas 3: o nome, o CPF e o número da CNH.
 				System.out.println("\nListagem resumida de todos os registros no sistema:");
-				imprimirTabela(listaDePessoas);
+				navegarPelaListagem(scan, servico, false);
 			} else if (opcaoDoMenu.equals("6")) {
 				// Esta opção vai listar todos os cadastros no registro em ordem alfabética.
-				// Para preservar a lista original, criamos uma cópia independente da lista, que será ordenada logo em seguida.
-				List<Pessoa> listaOrdemAlfabetica = new ArrayList<>(listaDePessoas);
-				// Para ordenar a lista de objetos, usamos o método sort(). Porém somente este método não é suficiente para
-				// ordenar de acordo com um atributo específico (o nome).
-				// Em seguida, usamos o método comparing(), que permite comparar partes específicas dos objetos (no caso, o atributo
-				// nome) antes de ordenar os objetos de fato. A função lambda "pessoa -> pessoa.getNome()" vai obter o nome
-				// de cada objeto da lista.
+				// A lista não é mais copiada e ordenada a cada listagem: o cadastro mantém um índice de nomes que já
+				// está em ordem alfabética, atualizado a cada inclusão, remoção ou alteração de nome.
 				// Como estamos trabalhando com nomes, surgem algumas dificuldades. Uma delas são as letras maiúsculas, que
-				// interferem na comparação. Por isso usamos toLowerCase() para que todas as letras estejam minúsculas no
+				// interferem na comparação. Por isso o índice usa toLowerCase() para que todas as letras estejam minúsculas no
 				// momento da comparação (não vai alterar os dados originais, é apenas para fins de comparação).
 				// Por fim, a última dificuldade são os acentos dos caracteres, que também interferem na comparação e ordenação.
-				// O método normalize() nos ajuda a substituir caracteres com acentos por caracteres sem acento (não vai alterar os
-				// dados originais, é apenas para fins de comparação).  
-				listaOrdemAlfabetica.sort(Comparator.comparing(pessoa -> Normalizer.normalize(pessoa.getNome().toLowerCase(), Normalizer.Form.NFD)));
+				// O método normalize() nos ajuda a separar os acentos dos caracteres, que então são retirados (não vai alterar os
+				// dados originais, é apenas para fins de comparação). Isto é feito uma única vez para cada nome.
 				System.out.println("\nListagem resumida de todos os registros no sistema em ordem alfabética:");
-				imprimirTabela(listaOrdemAlfabetica);				
+				navegarPelaListagem(scan, servico, true);
+			} else if (opcaoDoMenu.equals("8")) {
+				// Esta opção vai permitir buscar registros de condutores a partir do número de registro da CNH.
+				System.out.println("\nBusca de registro pelo número da CNH:");
+				System.out.print("Digite o número de registro da CNH: ");
+				numeroDeRegistro = scan.nextLine();
+				// A busca será feita no índice de números de registro do cadastro, que retornará o condutor encontrado.
+				registro = servico.buscarPorNumeroDeRegistro(numeroDeRegistro);
+				if (registro == null) {
+					System.out.println("O número de registro " + numeroDeRegistro + " não foi encontrado no registro.");
+				} else {
+					System.out.println("Número de registro encontrado!\nListagem completa do condutor de CNH " + numeroDeRegistro + ":\n" + registro.completo());
+				}
+			} else if (opcaoDoMenu.equals("9")) {
+				// Esta opção vai permitir cadastrar muitos registros de uma só vez, a partir de um arquivo CSV/TSV
+				// (por exemplo, na migração de outro sistema). As linhas inválidas são informadas, mas não
+				// interrompem a importação.
+				System.out.println("\nImportação de registros:");
+				System.out.println("Colunas: nome;cpf;nascimento;número de registro;categoria;emissão;tipo de carteira");
+				System.out.print("Digite o nome do arquivo: ");
+				String arquivo = scan.nextLine().trim();
+				ImportacaoDeRegistros importacao = new ImportacaoDeRegistros(servico);
+				// Ao final de cada lote, o programa aguarda a gravação do lote no diário de operações.
+				importacao.aoFinalDeCadaLote(persistencia::sincronizar);
+				try {
+					long inicio = System.nanoTime();
+					ImportacaoDeRegistros.Resultado resultado = importacao.importar(Path.of(arquivo));
+					long milissegundos = (System.nanoTime() - inicio) / 1_000_000;
+					System.out.println(resultado.getImportados() + " registros importados e " + resultado.getRejeitados()
+							+ " linhas rejeitadas em " + milissegundos + " ms.");
+					// Somente as primeiras rejeições são mostradas, para não inundar o console.
+					List<String> rejeicoes = resultado.getRejeicoes();
+					for (int i = 0; i < Math.min(20, rejeicoes.size()); i++) {
+						System.out.println(rejeicoes.get(i));
+					}
+					if (resultado.getRejeitados() > 20) {
+						System.out.println("... e mais " + (resultado.getRejeitados() - 20) + " linhas rejeitadas.");
+					}
+				} catch (IOException | RuntimeException e) {
+					System.out.println("Não foi possível importar o arquivo: " + e.getMessage());
+				}
+			} else if (opcaoDoMenu.equals("10")) {
+				// Esta opção vai exportar todos os registros, ou apenas os condutores ou os não-habilitados, para um
+				// arquivo CSV ou JSON Lines, que pode ser usado por outros sistemas.
+				System.out.println("\nExportação de registros:");
+				System.out.print("Digite o formato do arquivo (CSV/JSON): ");
+				String formato = scan.nextLine().trim().toUpperCase();
+				System.out.println("Digite 1 para exportar todos os registros.");
+				System.out.println("Digite 2 para exportar somente os condutores habilitados.");
+				System.out.println("Digite 3 para exportar somente os cidadãos não-habilitados.");
+				System.out.print("Digite a sua opção: ");
+				String opcaoDoFiltro = scan.nextLine().trim();
+				System.out.print("Digite o nome do arquivo: ");
+				String arquivo = scan.nextLine().trim();
+				Predicate<Pessoa> filtro = null;
+				if (opcaoDoFiltro.equals("2")) {
+					filtro = pessoa -> pessoa instanceof Condutor;
+				} else if (opcaoDoFiltro.equals("3")) {
+					filtro = pessoa -> !(pessoa instanceof Condutor);
+				}
+				if (!formato.equals("CSV") && !formato.equals("JSON")) {
+					System.out.println("Formato inválido!");
+				} else if (!opcaoDoFiltro.equals("1") && filtro == null) {
+					System.out.println("Opção inválida!");
+				} else {
+					try {
+						// Assim como na listagem, a exportação percorre um instantâneo do cadastro.
+						try (Instantaneo instantaneo = servico.instantaneo()) {
+							long exportados = ExportacaoDeRegistros.exportar(instantaneo, filtro,
+									ExportacaoDeRegistros.Formato.valueOf(formato), Path.of(arquivo));
+							System.out.println(exportados + " registros exportados para o arquivo " + arquivo + ".");
+						}
+					} catch (IOException | RuntimeException e) {
+						System.out.println("Não foi possível exportar os registros: " + e.getMessage());
+					}
+				}
+			} else if (opcaoDoMenu.equals("11")) {
+				// Esta opção vai listar os condutores com a CNH vencida, ou que vence em um período (por exemplo, para
+				// o envio dos avisos de renovação). O cadastro mantém um índice de datas de validade, portanto somente
+				// os condutores encontrados são percorridos.
+				System.out.println("\nListagem de CNHs por data de validade:");
+				System.out.println("Digite 1 para listar as CNHs vencidas.");
+				System.out.println("Digite 2 para listar as CNHs que vencem em um período.");
+				System.out.print("Digite a sua opção: ");
+				String opcaoDaValidade = scan.nextLine();
+				if (opcaoDaValidade.equals("1")) {
+					LocalDate hoje = LocalDate.now();
+					servico.ler(registros -> {
+						imprimirTabela(registros.listarVencidas(hoje));
+						return null;
+					});
+				} else if (opcaoDaValidade.equals("2")) {
+					System.out.print("Início do período. ");
+					LocalDate inicio = checarData(scan);
+					System.out.print("Fim do período. ");
+					LocalDate fim = checarData(scan);
+					servico.ler(registros -> {
+						imprimirTabela(registros.listarPorValidade(inicio, fim));
+						return null;
+					});
+				} else {
+					System.out.println("Opção inválida!");
+				}
+			} else if (opcaoDoMenu.equals("12")) {
+				// Esta opção vai contar e listar os registros que atendem a todos os critérios preenchidos. Os critérios
+				// deixados em branco são ignorados. A consulta é respondida pelo índice de bitmaps do cadastro, sem
+				// percorrer os registros, e somente os primeiros registros encontrados são mostrados.
+				System.out.println("\nConsulta de registros (deixe em branco os critérios que não interessam):");
+				try {
+					Criterio criterio = null;
+					System.out.print("Habilitação (S para condutores habilitados, N para cidadãos não-habilitados): ");
+					String habilitacao = scan.nextLine().trim().toUpperCase();
+					if (habilitacao.equals("S")) {
+						criterio = Criterio.habilitado();
+					} else if (habilitacao.equals("N")) {
+						criterio = Criterio.naoHabilitado();
+					} else if (!habilitacao.isEmpty()) {
+						throw new IllegalArgumentException("Opção de habilitação inválida: \"" + habilitacao + "\".");
+					}
+					System.out.print("Categorias da CNH, separadas por vírgula (por exemplo, \"C,D\"): ");
+					criterio = combinar(criterio, scan.nextLine(), texto -> Criterio.categoria(Validacao.categoria(texto)));
+					System.out.print("Tipo de carteira (PPD/Definitiva): ");
+					criterio = combinar(criterio, scan.nextLine(), Criterio::tipoDeCarteira);
+					System.out.print("Faixa etária (1 até 49 anos, 2 de 50 a 68 anos, 3 a partir de 69 anos): ");
+					criterio = combinar(criterio, scan.nextLine(), texto -> Criterio.faixaEtaria(
+							texto.equals("1") ? 10 : texto.equals("2") ? 5 : texto.equals("3") ? 3 : 0));
+					Criterio consulta = criterio != null ? criterio : Criterio.habilitado().ou(Criterio.naoHabilitado());
+					long inicio = System.nanoTime();
+					int[] quantidade = new int[1];
+					List<Pessoa> encontrados = servico.ler(registros -> {
+						quantidade[0] = registros.contar(consulta);
+						List<Pessoa> primeiros = new ArrayList<>();
+						for (Pessoa pessoa : registros.selecionar(consulta)) {
+							if (primeiros.size() == 20) {
+								break;
+							}
+							primeiros.add(pessoa);
+						}
+						return primeiros;
+					});
+					System.out.printf("%d registro(s) encontrado(s) em %.1f ms.%n", quantidade[0],
+							(System.nanoTime() - inicio) / 1e6);
+					imprimirTabela(encontrados);
+				} catch (IllegalArgumentException e) {
+					System.out.println(e.getMessage());
+				}
+			} else if (opcaoDoMenu.equals("13")) {
+				// Esta opção vai buscar os registros pelo nome, ou por parte dele (por exemplo, "mar silv"), sem diferença
+				// entre maiúsculas, minúsculas e acentos. Caso nenhum nome comece com as palavras digitadas, são
+				// mostrados os nomes parecidos, para o caso de um erro de digitação.
+				System.out.print("\nDigite o nome, ou o início das palavras do nome: ");
+				String nomeDaBusca = scan.nextLine();
+				long inicio = System.nanoTime();
+				List<Pessoa> encontrados = servico.ler(registros -> registros.buscarPorNome(nomeDaBusca, 20));
+				boolean aproximado = encontrados.isEmpty();
+				if (aproximado) {
+					encontrados = servico.ler(registros -> registros.buscarPorNomeAproximado(nomeDaBusca, 20));
+				}
+				double milissegundos = (System.nanoTime() - inicio) / 1e6;
+				if (encontrados.isEmpty()) {
+					System.out.println("Nenhum registro foi encontrado.");
+				} else {
+					if (aproximado) {
+						System.out.println("Nenhum nome começa com \"" + nomeDaBusca + "\". Nomes parecidos:");
+					}
+					System.out.printf("%d registro(s) mostrado(s), encontrado(s) em %.1f ms.%n", encontrados.size(),
+							milissegundos);
+					imprimirTabela(encontrados);
+				}
+			} else if (opcaoDoMenu.equals("14")) {
+				// Esta opção vai mostrar os números do cadastro. Eles são contados em paralelo, em uma única passagem
+				// pelos registros, sem copiar o cadastro.
+				long inicio = System.nanoTime();
+				Estatisticas estatisticas;
+				try (Instantaneo instantaneo = servico.instantaneo()) {
+					estatisticas = instantaneo.estatisticas();
+				}
+				System.out.printf("%nEstatísticas do cadastro (calculadas em %.1f ms):%n", (System.nanoTime() - inicio) / 1e6);
+				System.out.println("Registros: " + estatisticas.getQuantidadeDeRegistros());
+				System.out.println("Condutores habilitados: " + estatisticas.getQuantidadeDeCondutores());
+				System.out.println("Cidadãos não-habilitados: " + estatisticas.getQuantidadeDeNaoHabilitados());
+				System.out.println("\nCondutores por categoria:");
+				for (char letra = 'A'; letra <= 'E'; letra++) {
+					System.out.println("  " + letra + ": " + estatisticas.getCondutoresDaCategoria(letra));
+				}
+				System.out.println("\nCarteiras por tipo:");
+				System.out.println("  PPD: " + estatisticas.getCarteirasPpd());
+				System.out.println("  Definitiva: " + estatisticas.getCarteirasDefinitivas());
+				System.out.println("\nCNHs que vencem nos próximos 12 meses:");
+				YearMonth mesAtual = YearMonth.now();
+				SortedMap<YearMonth, Long> vencimentos = estatisticas.getVencimentosPorMes();
+				for (int i = 0; i < 12; i++) {
+					YearMonth mes = mesAtual.plusMonths(i);
+					System.out.printf("  %02d/%d: %d%n", mes.getMonthValue(), mes.getYear(),
+							vencimentos.getOrDefault(mes, 0L));
+				}
+				System.out.println("\nRegistros por idade:");
+				for (int idade = 0; idade < 90; idade += 10) {
+					System.out.printf("  %d a %d anos: %d%n", idade, idade + 9, estatisticas.getRegistrosComIdadeEntre(idade, idade + 9));
+				}
+				System.out.println("  90 anos ou mais: " + estatisticas.getRegistrosComIdadeEntre(90, Integer.MAX_VALUE));
+				if (estatisticas.getRegistrosSemIdade() > 0) {
+					System.out.println("  Sem data de nascimento válida: " + estatisticas.getRegistrosSemIdade());
+				}
+			} else if (opcaoDoMenu.equals("15")) {
+				// Esta opção vai mostrar quantas vezes cada operação foi executada desde a abertura do programa, e
+				// os seus tempos (média, percentis e máximo), no mesmo formato texto publicado pelo servidor HTTP.
+				System.out.println("\nMétricas das operações do cadastro:");
+				System.out.print(servico.getMetricas().relatorio());
 			} else if (opcaoDoMenu.equals("7")) {
 				// Esta opção vai encerrar o programa, quebrando o do-while.
 				System.out.println("\nEncerrando programa...");
@@ -388,6 +794,9 @@ public class Programa {
 				// Caso o usuário digite algo que não foi previsto, ele será informado. O programa vai voltar para o menu principal.
 				System.out.println("\nOpção inválida!");
 			}
+			// Antes de voltar ao menu, o programa aguarda até que as modificações feitas na operação estejam
+			// gravadas no disco (o diário grava as operações em grupos, com um único fsync por grupo).
+			persistencia.sincronizar();
 			if (!opcaoDoMenu.equals("7")) {
 				// O nextLine abaixo irá "pausar" o programa após cada operação (exceto quando encerrar o programa),
 				// para melhorar a experiência do usuário.
@@ -399,7 +808,37 @@ public class Programa {
 		
 		// Fechamento do objeto do tipo Scanner, por sugestão do IDE Eclipse.
 		scan.close();
+		encerrar(compactador, persistencia);
 		System.out.println("Programa encerrado com sucesso.");
 	}
 
+	public static void executarComandos(ServicoDeCadastro servico, Persistencia persistencia, String arquivo) {
+		// Os resultados dos comandos vão para a saída padrão, e o resumo da execução e os erros de leitura vão
+		// para a saída de erros, para que a saída possa ser redirecionada para um arquivo e comparada.
+		ExecucaoDeComandos execucao = new ExecucaoDeComandos(servico);
+		// Ao final de cada lote, o programa aguarda a gravação do lote no diário de operações.
+		execucao.aoFinalDeCadaLote(persistencia::sincronizar);
+		Writer saida = new BufferedWriter(new OutputStreamWriter(System.out), 1 << 16);
+		try (Reader entrada = arquivo.equals("-") ? new InputStreamReader(System.in)
+				: Files.newBufferedReader(Path.of(arquivo), StandardCharsets.UTF_8)) {
+			long inicio = System.nanoTime();
+			ExecucaoDeComandos.Resultado resultado = execucao.executar(entrada, saida);
+			long milissegundos = (System.nanoTime() - inicio) / 1_000_000;
+			System.err.println(resultado.getExecutados() + " comandos executados e " + resultado.getRejeitados()
+					+ " comandos rejeitados em " + milissegundos + " ms.");
+		} catch (IOException | RuntimeException e) {
+			System.err.println("Não foi possível executar os comandos: " + e.getMessage());
+		}
+	}
+
+	private static void encerrar(CompactadorDeRegistros compactador, Persistencia persistencia) {
+		compactador.close();
+		// No encerramento, um novo snapshot do cadastro é gravado, e o diário de operações é esvaziado.
+		try {
+			persistencia.close();
+		} catch (IOException e) {
+			System.out.println("Não foi possível gravar o cadastro em disco: " + e.getMessage());
+		}
+	}
+
 }
\ No newline at end of file
@@ -0,0 +1,310 @@
+package arquivos;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import cadastro.Instantaneo;
+import cadastro.ServicoDeCadastro;
+import entidades.Formatacao;
+import entidades.Pessoa;
+import entidades.Validacao;
+
+public class ExecucaoDeComandos {
+	// Execução não interativa de comandos, lidos de um arquivo ou da entrada padrão (por exemplo, para repetir as
+	// operações de um dia inteiro em um teste de carga, ou para corrigir dados em massa). Cada linha é um comando,
+	// com os campos separados por ";". Como na importação, os campos podem estar entre aspas, e um campo entre
+	// aspas pode conter ";" e quebras de linha (o comando continua nas linhas seguintes, até o fechamento das
+	// aspas; as mensagens informam a linha em que o comando começa):
+	//     cadastrar;nome;cpf;data de nascimento[;número de registro;categoria;data de emissão;tipo de carteira]
+	//     buscar;cpf
+	//     buscarcnh;número de registro
+	//     editar;cpf;campo;valor[;campo;valor...]
+	//     remover;cpf
+	//     listar[;cadastro|alfabetica]
+	// Os campos da edição têm os mesmos nomes do servidor HTTP: nome, cpf, dataDeNascimento, numeroDeRegistro,
+	// categoria, dataDeEmissao e tipoDeCarteira. Linhas em branco e linhas que começam com "#" são ignoradas
+	// (um comentário também não pode ter aspas sem par, pois elas continuariam nas linhas seguintes).
+	// As buscas e as listagens escrevem os registros na saída; os cadastros, as edições e as remoções só escrevem
+	// algo na saída quando não puderem ser feitos ("Linha N: explicação"). Um comando com erro não interrompe a
+	// execução dos seguintes.
+	//
+	// A execução é feita em lotes, como na importação, em um pipeline de três etapas, cada uma com as suas
+	// threads: a leitura das linhas (uma thread própria, "comandos-leitura"), a interpretação e validação de cada
+	// lote (nas threads do executor, vários lotes ao mesmo tempo), e a execução dos comandos, que é feita pela
+	// thread que chamou executar(), na ordem do arquivo, pois o resultado de um comando pode depender dos
+	// anteriores. Enquanto um lote é executado, os lotes seguintes já estão sendo lidos e interpretados. As etapas
+	// são ligadas por uma fila limitada de lotes, portanto a leitura espera quando a execução está atrasada.
+	// A saída é escrita em um Writer com buffer, e só é esvaziada ao final de cada lote, junto com a ação de
+	// final de lote (por exemplo, aguardar a gravação do lote no diário de operações, com um único fsync para
+	// todos os comandos do lote, em vez de um por comando).
+	private static final int LINHAS_POR_LOTE = 10_000;
+	// Marca o fim da entrada na fila de lotes.
+	private static final Future<Comando[]> FIM = CompletableFuture.completedFuture(null);
+
+	private final ServicoDeCadastro cadastro;
+	private final int threads;
+	private Runnable aoFinalDeCadaLote = () -> { };
+
+	public ExecucaoDeComandos(ServicoDeCadastro cadastro) {
+		this(cadastro, Runtime.getRuntime().availableProcessors());
+	}
+	public ExecucaoDeComandos(ServicoDeCadastro cadastro, int threads) {
+		this.cadastro = cadastro;
+		this.threads = Math.max(1, threads);
+	}
+
+	public void aoFinalDeCadaLote(Runnable acao) {
+		aoFinalDeCadaLote = acao;
+	}
+
+	public Resultado executar(Reader entrada, Writer saida) throws IOException {
+		Resultado resultado = new Resultado();
+		AtomicInteger numeroDaThread = new AtomicInteger();
+		ExecutorService executor = Executors.newFixedThreadPool(threads, tarefa -> {
+			Thread thread = new Thread(tarefa, "comandos-" + numeroDaThread.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		// Os lotes enviados ao executor pela thread de leitura e ainda não executados, na ordem do arquivo. O
+		// número de lotes pendentes é limitado, para que um arquivo enorme não seja carregado inteiro na memória.
+		BlockingQueue<Future<Comando[]>> pendentes = new ArrayBlockingQueue<>(2 * threads);
+		Thread leitura = new Thread(() -> ler(entrada, executor, pendentes), "comandos-leitura");
+		leitura.setDaemon(true);
+		leitura.start();
+		try {
+			for (Future<Comando[]> lote = proximo(pendentes); lote != FIM; lote = proximo(pendentes)) {
+				executar(aguardar(lote), saida, resultado);
+			}
+		} finally {
+			// Caso a execução termine antes do fim da entrada (por um erro), a leitura também é interrompida.
+			leitura.interrupt();
+			executor.shutdownNow();
+		}
+		return resultado;
+	}
+
+	private static void ler(Reader entrada, ExecutorService executor, BlockingQueue<Future<Comando[]>> pendentes) {
+		// A etapa de leitura, na thread de leitura: separa os comandos em lotes e envia cada lote ao executor. Ao
+		// final, coloca na fila o marcador FIM, ou um lote com o erro de leitura, depois dos lotes já lidos. Os
+		// comandos são lidos como os registros da importação (veja LeitorDeRegistros), com o número da linha em que
+		// cada um começa.
+		Future<Comando[]> ultimo = FIM;
+		try (BufferedReader leitor = new BufferedReader(entrada, 1 << 20)) {
+			LeitorDeRegistros comandos = new LeitorDeRegistros(leitor);
+			List<String> linhas = new ArrayList<>(LINHAS_POR_LOTE);
+			long[] numerosDasLinhas = new long[LINHAS_POR_LOTE];
+			for (String linha = comandos.proximo(); linha != null; linha = comandos.proximo()) {
+				numerosDasLinhas[linhas.size()] = comandos.linhaDoRegistro();
+				linhas.add(linha);
+				if (linhas.size() == LINHAS_POR_LOTE) {
+					pendentes.put(executor.submit(interpretacao(linhas, numerosDasLinhas)));
+					linhas = new ArrayList<>(LINHAS_POR_LOTE);
+					numerosDasLinhas = new long[LINHAS_POR_LOTE];
+				}
+			}
+			if (!linhas.isEmpty()) {
+				pendentes.put(executor.submit(interpretacao(linhas, numerosDasLinhas)));
+			}
+		} catch (IOException e) {
+			ultimo = CompletableFuture.failedFuture(e);
+		} catch (InterruptedException | RejectedExecutionException e) {
+			// A execução já terminou, e ninguém mais vai ler a fila.
+			return;
+		}
+		try {
+			pendentes.put(ultimo);
+		} catch (InterruptedException e) {
+			// A execução já terminou.
+		}
+	}
+
+	private static Future<Comando[]> proximo(BlockingQueue<Future<Comando[]>> pendentes) throws IOException {
+		try {
+			return pendentes.take();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("A execução dos comandos foi interrompida.");
+		}
+	}
+
+	private void executar(Comando[] lote, Writer saida, Resultado resultado) throws IOException {
+		for (Comando comando : lote) {
+			if (comando == null) {
+				continue;
+			}
+			try {
+				if (comando.erro != null) {
+					throw new IllegalArgumentException(comando.erro);
+				}
+				comando.acao.executar(cadastro, saida);
+				resultado.executados++;
+			} catch (IllegalArgumentException e) {
+				resultado.rejeitados++;
+				saida.write("Linha " + comando.linha + ": " + e.getMessage() + System.lineSeparator());
+			}
+		}
+		aoFinalDeCadaLote.run();
+		saida.flush();
+	}
+
+	private static Comando[] aguardar(Future<Comando[]> lote) throws IOException {
+		try {
+			return lote.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("A execução dos comandos foi interrompida.");
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IOException(e.getCause());
+		}
+	}
+
+	private static Callable<Comando[]> interpretacao(List<String> linhas, long[] numerosDasLinhas) {
+		return () -> {
+			Comando[] lote = new Comando[linhas.size()];
+			for (int i = 0; i < linhas.size(); i++) {
+				String linha = linhas.get(i);
+				if (linha.isBlank() || linha.stripLeading().startsWith("#")) {
+					continue;
+				}
+				// Os erros de interpretação (por exemplo, uma data inválida) só são informados quando o comando
+				// chega a sua vez de ser executado, para que a saída fique na ordem do arquivo.
+				try {
+					lote[i] = new Comando(numerosDasLinhas[i], interpretar(ImportacaoDeRegistros.campos(linha, ";")), null);
+				} catch (IllegalArgumentException e) {
+					lote[i] = new Comando(numerosDasLinhas[i], null, e.getMessage());
+				}
+			}
+			return lote;
+		};
+	}
+
+	static Acao interpretar(String[] campos) {
+		// Converte as colunas de uma linha em um comando pronto para ser executado. Todos os valores são
+		// validados aqui (com as mesmas regras do menu), e não durante a execução.
+		String nome = campos[0].trim().toLowerCase();
+		switch (nome) {
+		case "cadastrar": {
+			Pessoa pessoa = ImportacaoDeRegistros.registro(Arrays.copyOfRange(campos, 1, campos.length));
+			return (cadastro, saida) -> cadastro.adicionar(pessoa);
+		}
+		case "buscar": {
+			String cpf = argumento(campos, nome, "CPF");
+			return (cadastro, saida) -> escrever(cadastro.buscar(cpf), "O CPF " + cpf, saida);
+		}
+		case "buscarcnh": {
+			String numeroDeRegistro = argumento(campos, nome, "número de registro");
+			return (cadastro, saida) -> escrever(cadastro.buscarPorNumeroDeRegistro(numeroDeRegistro),
+					"O número de registro " + numeroDeRegistro, saida);
+		}
+		case "editar": {
+			String cpf = argumento(campos, nome, "CPF");
+			if (campos.length < 4 || campos.length % 2 != 0) {
+				throw new IllegalArgumentException("O comando editar precisa do CPF e de pares de campo e valor.");
+			}
+			Map<String, String> valores = new LinkedHashMap<>();
+			for (int i = 2; i < campos.length; i += 2) {
+				valores.put(campos[i].trim(), campos[i + 1]);
+			}
+			// A troca de CPF, caso pedida, e os demais campos são alterados juntos, em uma única edição, como no
+			// servidor HTTP (veja ServicoDeCadastro.editar).
+			String novoCpf = valores.containsKey("cpf") ? Validacao.obrigatorio(valores.remove("cpf"), "CPF") : null;
+			Consumer<Pessoa> alteracao = Validacao.alteracao(valores);
+			return (cadastro, saida) -> cadastro.editar(cpf, novoCpf, alteracao);
+		}
+		case "remover": {
+			String cpf = argumento(campos, nome, "CPF");
+			return (cadastro, saida) -> {
+				if (!cadastro.remover(cpf)) {
+					throw new IllegalArgumentException("O CPF " + cpf + " não foi encontrado no registro.");
+				}
+			};
+		}
+		case "listar": {
+			String ordem = campos.length > 1 && !campos[1].isBlank() ? campos[1].trim().toLowerCase() : "cadastro";
+			if (!ordem.equals("cadastro") && !ordem.equals("alfabetica")) {
+				throw new IllegalArgumentException("Ordem inválida: \"" + campos[1] + "\" (use cadastro ou alfabetica).");
+			}
+			// A listagem é feita a partir de um instantâneo, portanto não impede os demais atendentes de
+			// modificarem o cadastro enquanto a tabela é escrita.
+			return (cadastro, saida) -> {
+				try (Instantaneo instantaneo = cadastro.instantaneo()) {
+					Formatacao.tabela(saida, ordem.equals("alfabetica") ? instantaneo.emOrdemAlfabetica() : instantaneo);
+				}
+			};
+		}
+		default:
+			throw new IllegalArgumentException("Comando desconhecido: \"" + campos[0] + "\".");
+		}
+	}
+
+	private static String argumento(String[] campos, String comando, String campo) {
+		if (campos.length < 2) {
+			throw new IllegalArgumentException("O comando " + comando + " precisa do " + campo + ".");
+		}
+		return Validacao.obrigatorio(campos[1], campo);
+	}
+
+	private static void escrever(Pessoa registro, String procurado, Writer saida) throws IOException {
+		if (registro == null) {
+			throw new IllegalArgumentException(procurado + " não foi encontrado no registro.");
+		}
+		registro.completo(saida);
+		saida.write(System.lineSeparator());
+	}
+
+	// Um comando já interpretado, pronto para ser executado no cadastro.
+	@FunctionalInterface
+	interface Acao {
+		void executar(ServicoDeCadastro cadastro, Writer saida) throws IOException;
+	}
+
+	// Um comando do lote, com o número da sua linha, ou o erro encontrado na interpretação da linha.
+	private static final class Comando {
+		private final long linha;
+		private final Acao acao;
+		private final String erro;
+
+		Comando(long linha, Acao acao, String erro) {
+			this.linha = linha;
+			this.acao = acao;
+			this.erro = erro;
+		}
+	}
+
+	public static final class Resultado {
+		private long executados;
+		private long rejeitados;
+
+		public long getExecutados() {
+			return executados;
+		}
+		public long getRejeitados() {
+			return rejeitados;
+		}
+	}
+}
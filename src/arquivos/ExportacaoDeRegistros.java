@@ -0,0 +1,179 @@
+package arquivos;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.function.Predicate;
+
+import entidades.Condutor;
+import entidades.Formatacao;
+import entidades.Pessoa;
+
+public class ExportacaoDeRegistros {
+	// A exportação escreve os registros em um arquivo CSV ou JSON Lines (um objeto JSON por linha), com os campos
+	// na mesma ordem da listagem completa (método completo()):
+	//     nome, cpf, data de nascimento, número de registro, categoria, data de emissão, data de validade e
+	//     tipo de carteira
+	// O CSV é aceito pela importação (que ignora a data de validade), portanto um arquivo exportado pode ser
+	// importado novamente. As datas são escritas no formato dd/MM/yyyy; datas ausentes ficam em branco no CSV e
+	// são null no JSON.
+	//
+	// Os registros são percorridos uma única vez e escritos à medida que são percorridos: nenhuma cópia da lista
+	// é criada, e a memória usada não depende da quantidade de registros. O texto é acumulado em um buffer e
+	// enviado ao canal do arquivo em blocos grandes.
+	public enum Formato {
+		CSV, JSON
+	}
+
+	private static final int TAMANHO_DO_BUFFER = 1 << 20;
+
+	public static long exportar(Iterable<Pessoa> registros, Predicate<Pessoa> filtro, Formato formato, Path arquivo)
+			throws IOException {
+		// Retorna a quantidade de registros exportados. Somente os registros aceitos pelo filtro são exportados.
+		try (FileChannel canal = FileChannel.open(arquivo, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+				Writer saida = new BufferedWriter(Channels.newWriter(canal, StandardCharsets.UTF_8.newEncoder(), TAMANHO_DO_BUFFER),
+						TAMANHO_DO_BUFFER)) {
+			return exportar(registros, filtro, formato, saida);
+		}
+	}
+
+	public static long exportar(Iterable<Pessoa> registros, Predicate<Pessoa> filtro, Formato formato, Writer saida)
+			throws IOException {
+		// A mesma exportação, escrita em um Writer qualquer (por exemplo, a resposta do servidor HTTP). O Writer
+		// não é fechado.
+		long exportados = 0;
+		if (formato == Formato.CSV) {
+			saida.write("nome;cpf;nascimento;registro;categoria;emissao;validade;tipo\n");
+		}
+		for (Pessoa pessoa : registros) {
+			if (filtro != null && !filtro.test(pessoa)) {
+				continue;
+			}
+			if (formato == Formato.CSV) {
+				escreverCsv(saida, pessoa);
+			} else {
+				escreverJson(saida, pessoa);
+				saida.write('\n');
+			}
+			exportados++;
+		}
+		return exportados;
+	}
+
+	private static void escreverCsv(Writer saida, Pessoa pessoa) throws IOException {
+		campoCsv(saida, pessoa.getNome());
+		saida.write(';');
+		campoCsv(saida, pessoa.getCpf());
+		saida.write(';');
+		dataCsv(saida, pessoa.getDataDeNascimento());
+		if (pessoa instanceof Condutor) {
+			Condutor condutor = (Condutor) pessoa;
+			saida.write(';');
+			campoCsv(saida, condutor.getNumeroDeRegistro());
+			saida.write(';');
+			saida.write(condutor.getCategoria());
+			saida.write(';');
+			dataCsv(saida, condutor.getDataDeEmissao());
+			saida.write(';');
+			dataCsv(saida, condutor.getDataDeValidade());
+			saida.write(';');
+			campoCsv(saida, condutor.getTipoDeCarteira());
+		} else {
+			// Cidadãos não-habilitados ficam com as colunas da CNH em branco.
+			saida.write(";;;;;");
+		}
+		saida.write('\n');
+	}
+
+	private static void dataCsv(Writer saida, LocalDate data) throws IOException {
+		if (data != null) {
+			Formatacao.data(saida, data);
+		}
+	}
+
+	private static void campoCsv(Writer saida, String texto) throws IOException {
+		// Textos com o separador, aspas ou quebras de linha são escritos entre aspas, com as aspas duplicadas.
+		String valor = texto == null ? "" : texto;
+		boolean precisaDeAspas = false;
+		for (int i = 0; i < valor.length() && !precisaDeAspas; i++) {
+			char c = valor.charAt(i);
+			precisaDeAspas = c == ';' || c == '"' || c == '\n' || c == '\r';
+		}
+		if (precisaDeAspas) {
+			saida.write('"');
+			saida.write(valor.replace("\"", "\"\""));
+			saida.write('"');
+		} else {
+			saida.write(valor);
+		}
+	}
+
+	public static void escreverJson(Appendable saida, Pessoa pessoa) throws IOException {
+		// Escreve o registro como um objeto JSON (sem quebra de linha). Também é usado pelo servidor HTTP.
+		saida.append("{\"nome\":");
+		textoJson(saida, pessoa.getNome());
+		saida.append(",\"cpf\":");
+		textoJson(saida, pessoa.getCpf());
+		saida.append(",\"dataDeNascimento\":");
+		dataJson(saida, pessoa.getDataDeNascimento());
+		if (pessoa instanceof Condutor) {
+			Condutor condutor = (Condutor) pessoa;
+			saida.append(",\"numeroDeRegistro\":");
+			textoJson(saida, condutor.getNumeroDeRegistro());
+			saida.append(",\"categoria\":\"");
+			saida.append(condutor.getCategoria());
+			saida.append("\",\"dataDeEmissao\":");
+			dataJson(saida, condutor.getDataDeEmissao());
+			saida.append(",\"dataDeValidade\":");
+			dataJson(saida, condutor.getDataDeValidade());
+			saida.append(",\"tipoDeCarteira\":");
+			textoJson(saida, condutor.getTipoDeCarteira());
+		} else {
+			saida.append(",\"habilitado\":false");
+		}
+		saida.append('}');
+	}
+
+	private static void dataJson(Appendable saida, LocalDate data) throws IOException {
+		if (data == null) {
+			saida.append("null");
+		} else {
+			saida.append('"');
+			Formatacao.data(saida, data);
+			saida.append('"');
+		}
+	}
+
+	public static void textoJson(Appendable saida, String texto) throws IOException {
+		// Escreve o texto entre aspas, com os caracteres especiais do JSON escapados.
+		if (texto == null) {
+			saida.append("null");
+			return;
+		}
+		saida.append('"');
+		for (int i = 0; i < texto.length(); i++) {
+			char c = texto.charAt(i);
+			if (c == '"' || c == '\\') {
+				saida.append('\\').append(c);
+			} else if (c == '\n') {
+				saida.append("\\n");
+			} else if (c == '\r') {
+				saida.append("\\r");
+			} else if (c == '\t') {
+				saida.append("\\t");
+			} else if (c < 0x20) {
+				saida.append(String.format("\\u%04x", (int) c));
+			} else {
+				saida.append(c);
+			}
+		}
+		saida.append('"');
+	}
+}
@@ -0,0 +1,272 @@
+package arquivos;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import cadastro.ServicoDeCadastro;
+import entidades.Condutor;
+import entidades.Pessoa;
+import entidades.Validacao;
+
+public class ImportacaoDeRegistros {
+	// A importação lê um arquivo CSV (separado por ";" ou ",") ou TSV (separado por tabulações) com um registro
+	// por linha, nas colunas:
+	//     nome;cpf;data de nascimento;número de registro;categoria;data de emissão;tipo de carteira
+	// Cidadãos não-habilitados deixam as 4 últimas colunas em branco (ou não as possuem). Também é aceita a ordem
+	// da exportação, com a data de validade antes do tipo de carteira (8 colunas, veja ExportacaoDeRegistros); a
+	// validade é ignorada, pois é sempre calculada a partir da emissão, como no menu.
+	// A primeira linha é ignorada caso seja um cabeçalho (primeira coluna "nome"). Arquivos exportados por versões
+	// anteriores, com a validade na última coluna, são reconhecidos pelo cabeçalho. Os campos podem estar entre
+	// aspas (com as aspas do texto duplicadas), e então podem conter o separador e quebras de linha.
+	//
+	// O arquivo é lido por uma única thread, que separa as linhas em lotes. Cada lote é interpretado e validado
+	// por uma das threads do executor (uma por processador), com as mesmas regras do menu (classe Validacao).
+	// Os lotes prontos são incluídos no cadastro na ordem do arquivo, pela thread que lê o arquivo, cada um de uma
+	// só vez (ServicoDeCadastro.adicionarTodos, com uma única obtenção do bloqueio de escrita por lote). Linhas
+	// inválidas, e registros com CPF ou número de registro repetidos, são rejeitados sem interromper a importação.
+	private static final int LINHAS_POR_LOTE = 10_000;
+	// Somente as primeiras rejeições são guardadas com a sua explicação; as demais são apenas contadas.
+	private static final int MAXIMO_DE_REJEICOES_GUARDADAS = 1_000;
+
+	private final ServicoDeCadastro cadastro;
+	private final int threads;
+	private Runnable aoFinalDeCadaLote = () -> { };
+
+	public ImportacaoDeRegistros(ServicoDeCadastro cadastro) {
+		this(cadastro, Runtime.getRuntime().availableProcessors());
+	}
+	public ImportacaoDeRegistros(ServicoDeCadastro cadastro, int threads) {
+		this.cadastro = cadastro;
+		this.threads = Math.max(1, threads);
+	}
+
+	public void aoFinalDeCadaLote(Runnable acao) {
+		// Ação executada após a inclusão de cada lote no cadastro (por exemplo, aguardar a gravação no diário).
+		aoFinalDeCadaLote = acao;
+	}
+
+	public Resultado importar(Path arquivo) throws IOException {
+		Resultado resultado = new Resultado();
+		AtomicInteger numeroDaThread = new AtomicInteger();
+		ExecutorService executor = Executors.newFixedThreadPool(threads, tarefa -> {
+			Thread thread = new Thread(tarefa, "importacao-" + numeroDaThread.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		// Os lotes enviados ao executor e ainda não incluídos no cadastro, na ordem do arquivo. O número de lotes
+		// pendentes é limitado, para que um arquivo enorme não seja carregado inteiro na memória.
+		ArrayDeque<Future<Lote>> pendentes = new ArrayDeque<>();
+		try (BufferedReader leitor = new BufferedReader(Files.newBufferedReader(arquivo, StandardCharsets.UTF_8), 1 << 20)) {
+			// Um campo entre aspas pode conter quebras de linha; o LeitorDeRegistros junta as linhas de cada
+			// registro e guarda o número da linha em que ele começa.
+			LeitorDeRegistros registros = new LeitorDeRegistros(leitor);
+			String linha = registros.proximo();
+			if (linha == null) {
+				return resultado;
+			}
+			String separador = separador(linha);
+			String[] cabecalho = campos(linha, separador);
+			boolean validadeNoFim = false;
+			if (cabecalho[0].equalsIgnoreCase("nome")) {
+				validadeNoFim = cabecalho.length >= 8 && cabecalho[7].equalsIgnoreCase("validade");
+				linha = registros.proximo();
+			}
+			List<String> linhas = new ArrayList<>(LINHAS_POR_LOTE);
+			long[] numerosDasLinhas = new long[LINHAS_POR_LOTE];
+			for (; linha != null; linha = registros.proximo()) {
+				numerosDasLinhas[linhas.size()] = registros.linhaDoRegistro();
+				linhas.add(linha);
+				if (linhas.size() == LINHAS_POR_LOTE) {
+					pendentes.add(executor.submit(interpretacao(linhas, numerosDasLinhas, separador, validadeNoFim)));
+					linhas = new ArrayList<>(LINHAS_POR_LOTE);
+					numerosDasLinhas = new long[LINHAS_POR_LOTE];
+					if (pendentes.size() >= 2 * threads) {
+						incluir(aguardar(pendentes.poll()), resultado);
+					}
+				}
+			}
+			if (!linhas.isEmpty()) {
+				pendentes.add(executor.submit(interpretacao(linhas, numerosDasLinhas, separador, validadeNoFim)));
+			}
+			while (!pendentes.isEmpty()) {
+				incluir(aguardar(pendentes.poll()), resultado);
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		return resultado;
+	}
+
+	private void incluir(Lote lote, Resultado resultado) {
+		for (String rejeicao : lote.rejeicoes) {
+			resultado.rejeitar(rejeicao);
+		}
+		String[] rejeicoes = cadastro.adicionarTodos(lote.registros);
+		for (int i = 0; i < rejeicoes.length; i++) {
+			if (rejeicoes[i] == null) {
+				resultado.importados++;
+			} else {
+				resultado.rejeitar("Linha " + lote.linhas[i] + ": " + rejeicoes[i]);
+			}
+		}
+		aoFinalDeCadaLote.run();
+	}
+
+	private static Lote aguardar(Future<Lote> lote) throws IOException {
+		try {
+			return lote.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("A importação foi interrompida.");
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IOException(e.getCause());
+		}
+	}
+
+	private static Callable<Lote> interpretacao(List<String> linhas, long[] numerosDasLinhas, String separador,
+			boolean validadeNoFim) {
+		return () -> {
+			Lote lote = new Lote(linhas.size());
+			for (int i = 0; i < linhas.size(); i++) {
+				long numeroDaLinha = numerosDasLinhas[i];
+				String linha = linhas.get(i);
+				if (linha.isBlank()) {
+					continue;
+				}
+				try {
+					String[] campos = campos(linha, separador);
+					if (validadeNoFim && campos.length >= 8) {
+						// Coloca a validade (ignorada) antes do tipo de carteira, na ordem atual.
+						String tipoDeCarteira = campos[7];
+						campos[7] = campos[6];
+						campos[6] = tipoDeCarteira;
+					}
+					lote.linhas[lote.registros.size()] = numeroDaLinha;
+					lote.registros.add(registro(campos));
+				} catch (IllegalArgumentException e) {
+					lote.rejeicoes.add("Linha " + numeroDaLinha + ": " + e.getMessage());
+				}
+			}
+			return lote;
+		};
+	}
+
+	static Pessoa registro(String[] campos) {
+		// Converte as colunas de uma linha em um registro, aplicando as mesmas regras de validação do menu.
+		if (campos.length < 3) {
+			throw new IllegalArgumentException("A linha possui " + campos.length + " colunas, mas são necessárias ao menos 3.");
+		}
+		String nome = Validacao.obrigatorio(campos[0], "nome");
+		String cpf = Validacao.obrigatorio(campos[1], "CPF");
+		LocalDate dataDeNascimento = Validacao.data(campos[2]);
+		if (campos.length < 4 || campos[3].isBlank()) {
+			return new Pessoa(nome, cpf, dataDeNascimento);
+		}
+		if (campos.length < 7) {
+			throw new IllegalArgumentException("A linha de um condutor possui " + campos.length + " colunas, mas são necessárias 7.");
+		}
+		// Com 8 colunas, a 7ª é a data de validade, e o tipo de carteira vem depois dela.
+		String tipoDeCarteira = campos.length >= 8 ? campos[7] : campos[6];
+		return new Condutor(nome, cpf, dataDeNascimento, campos[3].trim(), Validacao.categoria(campos[4]),
+				Validacao.data(campos[5]), Validacao.tipoDeCarteira(tipoDeCarteira));
+	}
+
+	static String separador(String primeiraLinha) {
+		if (primeiraLinha.indexOf('\t') >= 0) {
+			return "\t";
+		}
+		return primeiraLinha.indexOf(';') >= 0 ? ";" : ",";
+	}
+
+	static String[] campos(String linha, String separador) {
+		// Sem aspas na linha, o split com um único caractere (que não é especial em expressões regulares) não usa
+		// expressão regular. Com aspas, a linha é percorrida caractere por caractere: o separador só divide os
+		// campos fora das aspas, e duas aspas seguidas dentro de um campo entre aspas representam uma aspa.
+		if (linha.indexOf('"') < 0) {
+			return linha.split(separador, -1);
+		}
+		char caractereSeparador = separador.charAt(0);
+		List<String> campos = new ArrayList<>(8);
+		StringBuilder campo = new StringBuilder();
+		boolean entreAspas = false;
+		boolean campoComAspas = false;
+		for (int i = 0; i < linha.length(); i++) {
+			char c = linha.charAt(i);
+			if (entreAspas) {
+				if (c != '"') {
+					campo.append(c);
+				} else if (i + 1 < linha.length() && linha.charAt(i + 1) == '"') {
+					campo.append('"');
+					i++;
+				} else {
+					entreAspas = false;
+				}
+			} else if (c == caractereSeparador) {
+				campos.add(campo.toString());
+				campo.setLength(0);
+				campoComAspas = false;
+			} else if (c == '"' && campo.length() == 0 && !campoComAspas) {
+				entreAspas = true;
+				campoComAspas = true;
+			} else {
+				campo.append(c);
+			}
+		}
+		campos.add(campo.toString());
+		return campos.toArray(new String[0]);
+	}
+
+	// Os registros válidos de um lote (com o número da linha de cada um) e as explicações das linhas rejeitadas.
+	private static final class Lote {
+		private final List<Pessoa> registros;
+		private final long[] linhas;
+		private final List<String> rejeicoes = new ArrayList<>();
+
+		Lote(int tamanho) {
+			registros = new ArrayList<>(tamanho);
+			linhas = new long[tamanho];
+		}
+	}
+
+	public static final class Resultado {
+		private long importados;
+		private long rejeitados;
+		private final List<String> rejeicoes = new ArrayList<>();
+
+		private void rejeitar(String rejeicao) {
+			rejeitados++;
+			if (rejeicoes.size() < MAXIMO_DE_REJEICOES_GUARDADAS) {
+				rejeicoes.add(rejeicao);
+			}
+		}
+
+		public long getImportados() {
+			return importados;
+		}
+		public long getRejeitados() {
+			return rejeitados;
+		}
+		public List<String> getRejeicoes() {
+			// As explicações das primeiras rejeições, lote por lote.
+			return Collections.unmodifiableList(rejeicoes);
+		}
+	}
+}
@@ -0,0 +1,57 @@
+package arquivos;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+
+final class LeitorDeRegistros {
+	// Lê um arquivo de texto registro por registro, para a importação e para a execução de comandos. Cada registro
+	// ocupa normalmente uma linha, mas um campo entre aspas pode conter quebras de linha: enquanto houver aspas
+	// abertas, a linha seguinte faz parte do mesmo registro. O leitor conta as linhas do arquivo, para que as
+	// mensagens de erro informem a linha em que cada registro começa.
+	private final BufferedReader leitor;
+	private long proximaLinha = 1;
+	private long linhaDoRegistro;
+
+	LeitorDeRegistros(BufferedReader leitor) {
+		this.leitor = leitor;
+	}
+
+	// O próximo registro, com as quebras de linha dos campos entre aspas, ou null no fim do arquivo. Caso o
+	// arquivo termine com as aspas ainda abertas, o registro vai até o fim do arquivo.
+	String proximo() throws IOException {
+		String linha = leitor.readLine();
+		if (linha == null) {
+			return null;
+		}
+		linhaDoRegistro = proximaLinha++;
+		while (aspasAbertas(linha)) {
+			String continuacao = leitor.readLine();
+			if (continuacao == null) {
+				break;
+			}
+			linha = linha + "\n" + continuacao;
+			proximaLinha++;
+		}
+		return linha;
+	}
+
+	// O número da linha em que começa o último registro lido (a primeira linha do arquivo é a linha 1).
+	long linhaDoRegistro() {
+		return linhaDoRegistro;
+	}
+
+	private static boolean aspasAbertas(String linha) {
+		// As aspas de um campo aparecem sempre em pares (a abertura e o fechamento, ou duas aspas seguidas dentro
+		// do campo), portanto uma quantidade ímpar de aspas indica que um campo continua na próxima linha.
+		if (linha.indexOf('"') < 0) {
+			return false;
+		}
+		int aspas = 0;
+		for (int i = 0; i < linha.length(); i++) {
+			if (linha.charAt(i) == '"') {
+				aspas++;
+			}
+		}
+		return (aspas & 1) != 0;
+	}
+}
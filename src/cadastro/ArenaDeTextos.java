@@ -0,0 +1,89 @@
+package cadastro;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+class ArenaDeTextos {
+	// A arena guarda textos (principalmente nomes) em um único vetor de bytes, no formato UTF-8, e identifica
+	// cada texto por um número inteiro. Textos iguais recebem o mesmo número, portanto um nome que se repete em
+	// milhões de registros ("Maria", "José"...) ocupa memória uma única vez.
+	// Os textos nunca são removidos da arena: um nome que deixou de ser usado continua ocupando o seu espaço.
+	// Somente uma thread acrescenta textos (a que modifica o cadastro), mas várias threads leem textos ao mesmo
+	// tempo, sem bloqueio. Como os textos nunca mudam de posição nem de número, basta que os vetores sejam
+	// voláteis: quem encontra um vetor novo (depois de um redimensionamento) também encontra o conteúdo copiado.
+	private volatile byte[] bytes = new byte[1024];
+	private int bytesUsados;
+	// inicios[id] é a posição do texto no vetor de bytes; o texto termina em inicios[id + 1].
+	private volatile int[] inicios = new int[65];
+	private int quantidade;
+	// Tabela hash (endereçamento aberto) com o número de cada texto mais 1; o valor 0 marca uma posição vazia.
+	private int[] tabela = new int[128];
+
+	int obterId(String texto) {
+		// Retorna o número do texto, acrescentando-o à arena caso ainda não exista.
+		byte[] codificado = texto.getBytes(StandardCharsets.UTF_8);
+		int i = posicaoNaTabela(codificado);
+		if (tabela[i] != 0) {
+			return tabela[i] - 1;
+		}
+		// O texto ainda não existe: ele é copiado para o final do vetor de bytes.
+		if (bytesUsados + codificado.length > bytes.length) {
+			bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, bytesUsados + codificado.length));
+		}
+		if (quantidade + 2 > inicios.length) {
+			inicios = Arrays.copyOf(inicios, inicios.length * 2);
+		}
+		System.arraycopy(codificado, 0, bytes, bytesUsados, codificado.length);
+		int id = quantidade++;
+		inicios[id] = bytesUsados;
+		bytesUsados += codificado.length;
+		inicios[id + 1] = bytesUsados;
+		tabela[i] = id + 1;
+		if (2 * quantidade > tabela.length) {
+			redimensionarTabela();
+		}
+		return id;
+	}
+
+	int procurarId(String texto) {
+		// Retorna o número do texto, ou -1 caso ele não exista na arena (sem acrescentá-lo).
+		int i = posicaoNaTabela(texto.getBytes(StandardCharsets.UTF_8));
+		return tabela[i] - 1;
+	}
+
+	private int posicaoNaTabela(byte[] codificado) {
+		// Retorna a posição da tabela onde o texto se encontra, ou a posição vazia onde ele deveria ser colocado.
+		int mascara = tabela.length - 1;
+		int i = Arrays.hashCode(codificado) & mascara;
+		while (tabela[i] != 0) {
+			int id = tabela[i] - 1;
+			if (Arrays.equals(bytes, inicios[id], inicios[id + 1], codificado, 0, codificado.length)) {
+				return i;
+			}
+			i = (i + 1) & mascara;
+		}
+		return i;
+	}
+
+	String texto(int id) {
+		int[] inicios = this.inicios;
+		int inicio = inicios[id];
+		return new String(bytes, inicio, inicios[id + 1] - inicio, StandardCharsets.UTF_8);
+	}
+
+	long bytesOcupados() {
+		return bytes.length + 4L * inicios.length + 4L * tabela.length;
+	}
+
+	private void redimensionarTabela() {
+		tabela = new int[tabela.length * 2];
+		int mascara = tabela.length - 1;
+		for (int id = 0; id < quantidade; id++) {
+			int i = Arrays.hashCode(Arrays.copyOfRange(bytes, inicios[id], inicios[id + 1])) & mascara;
+			while (tabela[i] != 0) {
+				i = (i + 1) & mascara;
+			}
+			tabela[i] = id + 1;
+		}
+	}
+}
@@ -0,0 +1,449 @@
+package cadastro;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import entidades.Atributo;
+import entidades.Condutor;
+import entidades.ObservadorDeAlteracoes;
+import entidades.Pessoa;
+
+public class Cadastro implements ObservadorDeAlteracoes, Iterable<Pessoa> {
+	// A classe Cadastro vai armazenar todos os registros do sistema (objetos das classes Pessoa e Condutor).
+	// Além da lista com os registros na ordem de cadastro, o cadastro mantém um índice primário, que associa
+	// cada CPF ao seu registro. Com o índice, a busca por CPF não precisa mais percorrer a lista inteira.
+	// Na lista, a remoção e a substituição de um registro são feitas em tempo constante, deixando uma posição
+	// vazia no lugar do registro removido; as posições vazias são recuperadas depois pela compactação.
+	private final ListaDeRegistros registros = new ListaDeRegistros();
+	// O mapa permite encontrar o registro de um CPF em tempo constante, independente do tamanho do cadastro.
+	// O ConcurrentHashMap permite que as buscas sejam feitas por várias threads sem nenhum bloqueio, mesmo
+	// enquanto outra thread modifica o cadastro (veja a classe ServicoDeCadastro).
+	private final Map<String, Pessoa> indicePorCpf = new ConcurrentHashMap<>();
+	// Índice secundário, que associa o número de registro da CNH ao condutor. Somente objetos da classe Condutor
+	// fazem parte deste índice, e cada número de registro só pode pertencer a um condutor.
+	private final Map<String, Condutor> indicePorNumeroDeRegistro = new ConcurrentHashMap<>();
+	// Os observadores são avisados de cada modificação feita no cadastro (por exemplo, para gravá-la em disco).
+	private final List<ObservadorDoCadastro> observadores = new ArrayList<>();
+	// Índice com os registros em ordem alfabética de nome. Ele é mantido como qualquer outro observador do
+	// cadastro, recebendo os avisos de inclusão, remoção e alteração.
+	private final IndiceDeNomes indiceDeNomes = new IndiceDeNomes();
+	// Índice com os condutores em ordem de data de validade da CNH, mantido da mesma forma.
+	private final IndiceDeValidades indiceDeValidades = new IndiceDeValidades();
+	// Índice de bitmaps, para as consultas que combinam categoria, tipo de carteira, habilitação e faixa etária.
+	private final IndiceDeBitmaps indiceDeBitmaps = new IndiceDeBitmaps();
+	// Índice das palavras dos nomes, para a busca por prefixo e a busca aproximada (com erros de digitação).
+	private final IndiceDeBuscaPorNome indiceDeBuscaPorNome = new IndiceDeBuscaPorNome();
+
+	public Cadastro() {
+		observadores.add(indiceDeNomes);
+		observadores.add(indiceDeValidades);
+		observadores.add(indiceDeBitmaps);
+		observadores.add(indiceDeBuscaPorNome);
+	}
+
+	public void adicionarObservador(ObservadorDoCadastro observador) {
+		observadores.add(observador);
+	}
+	public void removerObservador(ObservadorDoCadastro observador) {
+		observadores.remove(observador);
+	}
+
+	public void adicionar(Pessoa pessoa) {
+		// Não é permitido cadastrar dois registros com o mesmo CPF. Neste caso uma exceção será lançada, e o
+		// cadastro não será modificado.
+		Pessoa registro = incluir(pessoa);
+		for (ObservadorDoCadastro observador : observadores) {
+			observador.registroAdicionado(registro);
+		}
+	}
+
+	public void carregar(List<Pessoa> carregados) {
+		// Inclusão de muitos registros de uma vez, usada na carga do snapshot. Cada registro é verificado e
+		// incluído como em adicionar(), mas os observadores recebem um único aviso com todos os registros, e podem
+		// montar os seus índices de uma só vez (o índice de nomes, por exemplo, ordena todos os nomes de uma vez,
+		// em vez de inserir um por um). Caso um registro seja rejeitado, os observadores são avisados dos
+		// registros incluídos antes dele, e a exceção é lançada em seguida.
+		List<Pessoa> incluidos = new ArrayList<>(carregados.size());
+		try {
+			for (Pessoa pessoa : carregados) {
+				incluidos.add(incluir(pessoa));
+			}
+		} finally {
+			List<Pessoa> avisados = Collections.unmodifiableList(incluidos);
+			for (ObservadorDoCadastro observador : observadores) {
+				observador.registrosCarregados(avisados);
+			}
+		}
+	}
+
+	private Pessoa incluir(Pessoa pessoa) {
+		// Retorna o registro guardado no cadastro: o próprio objeto, ou o objeto que o substitui (veja armazenar).
+		if (pessoa.getCpf() == null) {
+			throw new IllegalArgumentException("O CPF não foi preenchido.");
+		}
+		if (indicePorCpf.containsKey(pessoa.getCpf())) {
+			throw new IllegalArgumentException("O CPF " + pessoa.getCpf() + " já está cadastrado no registro.");
+		}
+		verificarNumeroDeRegistro(pessoa, null);
+		Pessoa registro = armazenar(pessoa);
+		indicePorCpf.put(pessoa.getCpf(), registro);
+		indexarNumeroDeRegistro(registro);
+		registros.adicionar(registro);
+		// O cadastro passa a observar o registro, para manter o índice atualizado quando o CPF for editado.
+		registro.setObservador(this);
+		return registro;
+	}
+
+	// Os dois métodos abaixo permitem que uma subclasse guarde os dados dos registros de outra forma (veja
+	// CadastroColunar). armazenar() é chamado depois de todas as verificações, quando o registro certamente será
+	// incluído, e retorna o objeto que ocupará o lugar dele no cadastro, nos índices e nos avisos aos
+	// observadores. descartar() é chamado depois que um registro saiu do cadastro e todos os observadores foram
+	// avisados. No Cadastro, o próprio objeto recebido é guardado, e nada precisa ser feito no descarte.
+	Pessoa armazenar(Pessoa pessoa) {
+		return pessoa;
+	}
+	void descartar(Pessoa pessoa) {
+	}
+
+	public Pessoa buscar(String cpf) {
+		// Retorna o registro do CPF informado, ou null caso o CPF não esteja cadastrado.
+		return cpf == null ? null : indicePorCpf.get(cpf);
+	}
+
+	public Condutor buscarPorNumeroDeRegistro(String numeroDeRegistro) {
+		// Retorna o condutor com o número de registro da CNH informado, ou null caso o número não esteja cadastrado.
+		return numeroDeRegistro == null ? null : indicePorNumeroDeRegistro.get(numeroDeRegistro);
+	}
+
+	public Condutor habilitar(String cpf, String numeroDeRegistro, char categoria, LocalDate dataDeEmissao,
+			String tipoDeCarteira) {
+		// Este método transforma um cidadão não-habilitado (objeto da classe Pessoa) em um condutor habilitado.
+		// Como a classe de um objeto não pode ser modificada, um novo objeto da classe Condutor é criado com os
+		// dados do cidadão, e passa a ocupar o lugar do objeto antigo no cadastro e nos índices.
+		Pessoa pessoa = indicePorCpf.get(cpf);
+		if (pessoa == null) {
+			throw new IllegalArgumentException("O CPF " + cpf + " não foi encontrado no registro.");
+		}
+		if (pessoa instanceof Condutor) {
+			throw new IllegalArgumentException("O cidadão de CPF " + cpf + " já possui habilitação.");
+		}
+		Condutor condutor = new Condutor(pessoa.getNome(), pessoa.getCpf(), pessoa.getDataDeNascimento(),
+				numeroDeRegistro, categoria, dataDeEmissao, tipoDeCarteira);
+		return (Condutor) substituir(pessoa, condutor);
+	}
+
+	public Pessoa substituir(Pessoa atual, Pessoa novo) {
+		// Este método coloca um novo objeto no lugar de um registro do cadastro. O novo objeto ocupa a mesma
+		// posição do objeto atual na lista, preservando a ordem de cadastro. Retorna o registro guardado no
+		// cadastro (veja armazenar).
+		if (novo.getCpf() == null) {
+			throw new IllegalArgumentException("O CPF não foi preenchido.");
+		}
+		Pessoa dono = indicePorCpf.get(novo.getCpf());
+		if (dono != null && dono != atual) {
+			throw new IllegalArgumentException("O CPF " + novo.getCpf() + " já está cadastrado no registro.");
+		}
+		verificarNumeroDeRegistro(novo, atual);
+		Pessoa registro = armazenar(novo);
+		// As buscas são feitas sem bloqueio, durante a substituição. Por isso a nova entrada de cada índice é
+		// colocada antes da remoção da antiga: quando o CPF não muda, a entrada é apenas trocada, e a busca
+		// encontra o registro antigo ou o novo, mas nunca deixa de encontrá-lo. A entrada antiga só é removida
+		// se ainda apontar para o registro antigo (ou seja, se a chave mudou).
+		indicePorCpf.put(novo.getCpf(), registro);
+		if (!novo.getCpf().equals(atual.getCpf())) {
+			indicePorCpf.remove(atual.getCpf(), atual);
+		}
+		indexarNumeroDeRegistro(registro);
+		desindexarNumeroDeRegistro(atual);
+		registros.substituir(atual, registro);
+		atual.setObservador(null);
+		registro.setObservador(this);
+		for (ObservadorDoCadastro observador : observadores) {
+			observador.registroSubstituido(atual, registro);
+		}
+		descartar(atual);
+		return registro;
+	}
+
+	public boolean remover(String cpf) {
+		// Retorna true caso o registro tenha sido encontrado e removido, e false caso o CPF não esteja cadastrado.
+		Pessoa pessoa = cpf == null ? null : indicePorCpf.remove(cpf);
+		if (pessoa == null) {
+			return false;
+		}
+		desindexarNumeroDeRegistro(pessoa);
+		registros.remover(pessoa);
+		// O registro removido não pertence mais ao cadastro, portanto suas alterações não devem mais afetar o índice.
+		pessoa.setObservador(null);
+		for (ObservadorDoCadastro observador : observadores) {
+			observador.registroRemovido(pessoa);
+		}
+		descartar(pessoa);
+		return true;
+	}
+
+	public int quantidade() {
+		return registros.size();
+	}
+
+	// A coleção retornada não pode ser modificada, para que os registros só sejam adicionados ou removidos através
+	// dos métodos do cadastro (mantendo o índice consistente).
+	public Collection<Pessoa> listar() {
+		return Collections.unmodifiableCollection(registros);
+	}
+
+	// A fração da lista de registros ocupada por posições vazias (de registros removidos), e a compactação, que
+	// recupera essas posições aos poucos: cada chamada percorre no máximo "maximoDePosicoes" posições, e retorna
+	// true enquanto a compactação não terminar. Entre duas chamadas o cadastro pode ser usado normalmente.
+	public double fragmentacao() {
+		return registros.fragmentacao();
+	}
+	public boolean emCompactacao() {
+		return registros.emCompactacao();
+	}
+	public boolean compactar(int maximoDePosicoes) {
+		return registros.compactar(maximoDePosicoes);
+	}
+
+	// Os registros em ordem alfabética de nome, obtidos do índice de nomes, sem nenhuma ordenação no momento
+	// da consulta.
+	public Collection<Pessoa> listarEmOrdemAlfabetica() {
+		return indiceDeNomes.listar();
+	}
+
+	// Os condutores cuja CNH vence no período informado (incluindo as duas datas), e os condutores cuja CNH já
+	// estava vencida na data informada, em ordem de data de validade, obtidos do índice de validades.
+	public Collection<Condutor> listarPorValidade(LocalDate inicio, LocalDate fim) {
+		return indiceDeValidades.validadeEntre(inicio, fim);
+	}
+	public Collection<Condutor> listarVencidas(LocalDate data) {
+		return indiceDeValidades.vencidasEm(data);
+	}
+
+	// A quantidade de registros que atendem a um critério, e os próprios registros, obtidos do índice de bitmaps.
+	// A seleção é percorrida à medida que é lida, como as coleções dos outros índices.
+	public int contar(Criterio criterio) {
+		return indiceDeBitmaps.contar(criterio);
+	}
+	public Iterable<Pessoa> selecionar(Criterio criterio) {
+		return indiceDeBitmaps.selecionar(criterio);
+	}
+
+	// Os registros encontrados pelas palavras do nome, no máximo "limite" registros. Na busca por prefixo, cada
+	// palavra digitada é o início de uma palavra do nome; na busca aproximada, cada palavra digitada pode ter
+	// pequenos erros de digitação.
+	public List<Pessoa> buscarPorNome(String texto, int limite) {
+		return indiceDeBuscaPorNome.buscarPorPrefixo(texto, limite);
+	}
+	public List<Pessoa> buscarPorNomeAproximado(String texto, int limite) {
+		return indiceDeBuscaPorNome.buscarAproximado(texto, limite);
+	}
+
+	// Os números do cadastro (por categoria, tipo de carteira, mês de vencimento e idade), contados em paralelo
+	// diretamente na lista de registros.
+	public Estatisticas estatisticas() {
+		try (Instantaneo instantaneo = instantaneo()) {
+			return instantaneo.estatisticas();
+		}
+	}
+
+	// Um instantâneo dos registros atuais, que pode ser percorrido mesmo enquanto o cadastro é modificado (veja a
+	// classe Instantaneo). Deve ser fechado depois de usado.
+	public Instantaneo instantaneo() {
+		return registros.instantaneo(indiceDeNomes);
+	}
+
+	public Listagem listagemAlfabetica() {
+		return indiceDeNomes.listagem();
+	}
+
+	public Listagem listagem() {
+		// Listagem paginada na ordem de cadastro. Os cursores das páginas são os números de sequência dos registros
+		// (e não as suas posições na lista, que mudam com a compactação).
+		return new Listagem() {
+			@Override
+			public Pagina primeira(int tamanho) {
+				return paginaAPartirDe(0, tamanho);
+			}
+			@Override
+			public Pagina proxima(Pagina atual, int tamanho) {
+				return atual.cursorFinal == null ? primeira(tamanho) : paginaAPartirDe((Long) atual.cursorFinal + 1, tamanho);
+			}
+			@Override
+			public Pagina anterior(Pagina atual, int tamanho) {
+				if (atual.cursorInicial == null) {
+					return primeira(tamanho);
+				}
+				// Volta "tamanho" registros a partir do início da página atual, pulando as posições vazias.
+				int posicao = registros.posicaoDaSequencia((Long) atual.cursorInicial);
+				int inicio = posicao;
+				for (int i = 0; i < tamanho; i++) {
+					int anterior = registros.anteriorOcupada(inicio);
+					if (anterior < 0) {
+						break;
+					}
+					inicio = anterior;
+				}
+				return inicio == posicao ? primeira(tamanho) : paginaAPartirDe(registros.sequenciaNaPosicao(inicio), tamanho);
+			}
+			@Override
+			public Pagina irPara(String inicioDoNome, Pagina atual, int tamanho) {
+				try (BuscaPorNome busca = buscaPorNome(inicioDoNome, atual)) {
+					for (Pessoa pessoa = busca.proximo(); pessoa != null; pessoa = busca.proximo()) {
+						Pagina pagina = paginaAPartirDoRegistro(pessoa, tamanho);
+						if (pagina != null) {
+							return pagina;
+						}
+					}
+					return null;
+				}
+			}
+			@Override
+			public Pagina aPartirDoMarcador(String marcador, int tamanho) {
+				// O marcador é o número de sequência do último registro da página anterior.
+				try {
+					return paginaAPartirDe(Math.max(0, Long.parseLong(marcador) + 1), tamanho);
+				} catch (NumberFormatException e) {
+					throw new IllegalArgumentException("Marcador de página inválido: \"" + marcador + "\".");
+				}
+			}
+		};
+	}
+
+	// Na ordem de cadastro, os nomes não estão ordenados: a busca por nome (irPara) percorre os registros um a um,
+	// a partir do registro seguinte ao início da página atual, até encontrar um nome que comece com o texto. A
+	// busca percorre um instantâneo, e não a lista, para que o ServicoDeCadastro possa fazê-la sem o bloqueio de
+	// leitura: o bloqueio só é necessário para iniciar a busca e para obter a página do registro encontrado.
+	BuscaPorNome buscaPorNome(String inicioDoNome, Pagina atual) {
+		long inicio = atual == null || atual.cursorInicial == null ? 0 : (Long) atual.cursorInicial + 1;
+		// As posições do instantâneo são as posições da lista no momento em que ele foi criado.
+		return new BuscaPorNome(instantaneo(), registros.posicaoDaSequencia(inicio),
+				IndiceDeNomes.chaveDeOrdenacao(inicioDoNome));
+	}
+	// A página que começa no registro informado, ou null caso o registro não esteja mais no cadastro (ele pode ter
+	// sido removido ou editado depois da criação do instantâneo; nesse caso, a busca continua).
+	Pagina paginaAPartirDoRegistro(Pessoa pessoa, int tamanho) {
+		long sequencia = registros.sequenciaDoRegistro(pessoa);
+		return sequencia < 0 ? null : paginaAPartirDe(sequencia, tamanho);
+	}
+
+	static final class BuscaPorNome implements AutoCloseable {
+		private final Instantaneo instantaneo;
+		private final String procurado;
+		private int posicao;
+
+		private BuscaPorNome(Instantaneo instantaneo, int posicao, String procurado) {
+			this.instantaneo = instantaneo;
+			this.posicao = posicao;
+			this.procurado = procurado;
+		}
+		// O próximo registro do instantâneo cujo nome começa com o texto procurado, ou null caso não exista.
+		Pessoa proximo() {
+			while (posicao < instantaneo.posicoes()) {
+				Pessoa pessoa = instantaneo.naPosicao(posicao++);
+				if (pessoa != null && IndiceDeNomes.chaveDeOrdenacao(pessoa.getNome()).startsWith(procurado)) {
+					return pessoa;
+				}
+			}
+			return null;
+		}
+		@Override
+		public void close() {
+			instantaneo.close();
+		}
+	}
+
+	private Pagina paginaAPartirDe(long sequencia, int tamanho) {
+		// A página começa no primeiro registro com número de sequência maior ou igual ao informado.
+		int inicio = registros.proximaOcupada(registros.posicaoDaSequencia(sequencia));
+		List<Pessoa> pagina = new ArrayList<>(tamanho);
+		int posicao = inicio;
+		int ultima = -1;
+		while (posicao < registros.posicoes() && pagina.size() < tamanho) {
+			pagina.add(registros.naPosicao(posicao));
+			ultima = posicao;
+			posicao = registros.proximaOcupada(posicao + 1);
+		}
+		if (pagina.isEmpty()) {
+			return new Pagina(pagina, null, null, registros.anteriorOcupada(inicio) >= 0, false);
+		}
+		return new Pagina(pagina, registros.sequenciaNaPosicao(inicio), registros.sequenciaNaPosicao(ultima),
+				registros.anteriorOcupada(inicio) >= 0, posicao < registros.posicoes());
+	}
+
+	@Override
+	public Iterator<Pessoa> iterator() {
+		return listar().iterator();
+	}
+
+	@Override
+	public void validarAlteracao(Pessoa pessoa, Atributo atributo, Object novoValor) {
+		// Um registro só pode trocar de CPF caso o novo CPF não pertença a nenhum outro registro.
+		if (atributo == Atributo.CPF) {
+			if (novoValor == null) {
+				throw new IllegalArgumentException("O CPF não foi preenchido.");
+			}
+			Pessoa dono = indicePorCpf.get(novoValor);
+			if (dono != null && dono != pessoa) {
+				throw new IllegalArgumentException("O CPF " + novoValor + " já está cadastrado no registro.");
+			}
+		} else if (atributo == Atributo.NUMERO_DE_REGISTRO) {
+			// Da mesma forma, o número de registro da CNH não pode pertencer a outro condutor.
+			Condutor dono = novoValor == null ? null : indicePorNumeroDeRegistro.get(novoValor);
+			if (dono != null && dono != pessoa) {
+				throw new IllegalArgumentException("O número de registro " + novoValor + " já está cadastrado no registro.");
+			}
+		}
+	}
+
+	@Override
+	public void atributoAlterado(Pessoa pessoa, Atributo atributo, Object valorAnterior, Object valorNovo) {
+		// Quando o CPF de um registro é editado, a nova entrada do índice é adicionada e a antiga é removida, nesta
+		// ordem, pelo mesmo motivo explicado em substituir().
+		if (atributo == Atributo.CPF) {
+			indicePorCpf.put((String) valorNovo, pessoa);
+			if (!valorNovo.equals(valorAnterior)) {
+				indicePorCpf.remove(valorAnterior, pessoa);
+			}
+		} else if (atributo == Atributo.NUMERO_DE_REGISTRO) {
+			indexarNumeroDeRegistro(pessoa);
+			if (valorAnterior != null && !valorAnterior.equals(valorNovo)) {
+				indicePorNumeroDeRegistro.remove(valorAnterior, pessoa);
+			}
+		}
+		// Depois de atualizar os próprios índices, o cadastro repassa a alteração para os seus observadores.
+		for (ObservadorDoCadastro observador : observadores) {
+			observador.registroAlterado(pessoa, atributo, valorAnterior, valorNovo);
+		}
+	}
+
+	// Os métodos abaixo auxiliam na manutenção do índice de números de registro da CNH. Objetos da classe Pessoa
+	// (cidadãos não-habilitados) e condutores sem número de registro são ignorados.
+	private void verificarNumeroDeRegistro(Pessoa pessoa, Pessoa substituido) {
+		if (pessoa instanceof Condutor && ((Condutor) pessoa).getNumeroDeRegistro() != null) {
+			String numeroDeRegistro = ((Condutor) pessoa).getNumeroDeRegistro();
+			Condutor dono = indicePorNumeroDeRegistro.get(numeroDeRegistro);
+			if (dono != null && dono != substituido) {
+				throw new IllegalArgumentException("O número de registro " + numeroDeRegistro + " já está cadastrado no registro.");
+			}
+		}
+	}
+	private void indexarNumeroDeRegistro(Pessoa pessoa) {
+		if (pessoa instanceof Condutor && ((Condutor) pessoa).getNumeroDeRegistro() != null) {
+			indicePorNumeroDeRegistro.put(((Condutor) pessoa).getNumeroDeRegistro(), (Condutor) pessoa);
+		}
+	}
+	private void desindexarNumeroDeRegistro(Pessoa pessoa) {
+		// A entrada só é removida se ainda pertencer ao registro: na substituição, o novo registro pode ter
+		// acabado de ocupar o mesmo número.
+		if (pessoa instanceof Condutor && ((Condutor) pessoa).getNumeroDeRegistro() != null) {
+			indicePorNumeroDeRegistro.remove(((Condutor) pessoa).getNumeroDeRegistro(), pessoa);
+		}
+	}
+}
@@ -0,0 +1,470 @@
+package cadastro;
+
+import java.lang.invoke.VarHandle;
+import java.time.LocalDate;
+import java.util.Arrays;
+
+import entidades.Atributo;
+import entidades.Condutor;
+import entidades.Pessoa;
+
+public class CadastroColunar extends Cadastro {
+	// O CadastroColunar é uma alternativa à classe Cadastro para cadastros muito grandes. Em vez de guardar os
+	// objetos Pessoa/Condutor recebidos (cada um com vários Strings e LocalDates), os atributos são copiados para
+	// vetores de tipos primitivos, um vetor por atributo ("colunas"). A posição de um registro é a mesma em todos
+	// os vetores, e um registro ocupa cerca de 34 bytes nas colunas:
+	// - CPF e número de registro: long (os 11 dígitos cabem em um long);
+	// - datas: int (número de dias desde 01/01/1970);
+	// - categoria e tipo de carteira: byte;
+	// - nome: número do texto na ArenaDeTextos, onde nomes repetidos são guardados uma única vez.
+	// No lugar de cada objeto recebido, o cadastro guarda uma "visão": um objeto das classes Pessoa ou Condutor
+	// que não guarda nenhum dado, e lê/escreve diretamente nas colunas. Todo o resto (a lista na ordem de
+	// cadastro, os índices, os observadores, o ServicoDeCadastro) funciona exatamente como no Cadastro, pois a
+	// visão é o registro do cadastro: ela é criada uma única vez, na inclusão, e é a mesma em todas as buscas.
+	// Os setters das visões passam pelo cadastro como os setters de qualquer registro: o cadastro pode recusar a
+	// alteração (um CPF repetido, por exemplo), e os índices e observadores são avisados depois da escrita.
+	//
+	// Quando um registro sai do cadastro (removido ou substituído), a sua visão recebe uma cópia comum dos seus
+	// dados e passa a ler dessa cópia ("desanexada"); só então a sua posição nas colunas é liberada para um novo
+	// registro. Assim, quem ainda tem a visão de um registro removido (um instantâneo, uma página já montada, um
+	// evento) continua lendo os dados corretos, e as posições das visões nunca mudam. As colunas nunca são
+	// compactadas: as posições liberadas são reaproveitadas pelas próximas inclusões.
+	//
+	// As leituras são feitas sem bloqueio, por várias threads, enquanto a thread que modifica o cadastro escreve
+	// nas colunas. Um getter lê a coluna e só depois verifica se a visão foi desanexada (com uma barreira de
+	// leitura entre as duas coisas); a escrita faz o contrário: desanexa a visão e só depois reaproveita a
+	// posição. Com isso, se o getter leu o valor de um novo registro, ele certamente encontra a cópia e a usa.
+
+	private static final byte SEM_TIPO_DE_CARTEIRA = 0;
+	private static final byte DEFINITIVA = 1;
+	private static final byte PPD = 2;
+	// Valores usados para representar atributos nulos nas colunas.
+	private static final long TEXTO_NULO = Long.MIN_VALUE;
+	private static final int DATA_NULA = Integer.MIN_VALUE;
+	private static final int NOME_NULO = -1;
+
+	// As colunas são trocadas por colunas maiores quando ficam cheias. A referência é volátil, para que as
+	// threads de leitura sempre encontrem as colunas que contêm a posição da visão.
+	private volatile Colunas colunas;
+	// Quantidade de posições já usadas nas colunas, e as posições liberadas, que são reaproveitadas primeiro.
+	private int posicoesUsadas;
+	private int[] posicoesLivres = new int[16];
+	private int quantidadeDeLivres;
+	private final ArenaDeTextos textos = new ArenaDeTextos();
+
+	public CadastroColunar() {
+		this(1024);
+	}
+	public CadastroColunar(int capacidadeInicial) {
+		colunas = new Colunas(Math.max(capacidadeInicial, 16));
+	}
+
+	@Override
+	Pessoa armazenar(Pessoa pessoa) {
+		// Chamado pelo Cadastro depois das verificações de CPF e de número de registro repetidos, portanto nenhum
+		// texto de um registro recusado é acrescentado à arena. Os valores que não cabem nas colunas são
+		// verificados antes de ocupar uma posição, para que uma exceção não deixe nada pela metade.
+		Condutor condutor = pessoa instanceof Condutor ? (Condutor) pessoa : null;
+		byte categoria = condutor == null ? 0 : codificarCategoria(condutor.getCategoria());
+		byte tipoDeCarteira = condutor == null ? SEM_TIPO_DE_CARTEIRA : codificarTipoDeCarteira(condutor.getTipoDeCarteira());
+		int posicao = ocuparPosicao();
+		Colunas colunas = this.colunas;
+		colunas.cpfs[posicao] = codificarTexto(pessoa.getCpf());
+		colunas.nomes[posicao] = codificarNome(pessoa.getNome());
+		colunas.datasDeNascimento[posicao] = codificarData(pessoa.getDataDeNascimento());
+		if (condutor == null) {
+			colunas.numerosDeRegistro[posicao] = TEXTO_NULO;
+			colunas.datasDeEmissao[posicao] = DATA_NULA;
+			colunas.datasDeValidade[posicao] = DATA_NULA;
+		} else {
+			colunas.numerosDeRegistro[posicao] = codificarTexto(condutor.getNumeroDeRegistro());
+			colunas.datasDeEmissao[posicao] = codificarData(condutor.getDataDeEmissao());
+			colunas.datasDeValidade[posicao] = codificarData(condutor.getDataDeValidade());
+		}
+		colunas.categorias[posicao] = categoria;
+		colunas.tiposDeCarteira[posicao] = tipoDeCarteira;
+		return condutor == null ? new VisaoDePessoa(posicao) : new VisaoDeCondutor(posicao);
+	}
+
+	@Override
+	void descartar(Pessoa pessoa) {
+		// A visão é desanexada antes que a sua posição possa ser usada por outro registro.
+		Visao visao = (Visao) pessoa;
+		visao.desanexar();
+		if (quantidadeDeLivres == posicoesLivres.length) {
+			posicoesLivres = Arrays.copyOf(posicoesLivres, posicoesLivres.length * 2);
+		}
+		posicoesLivres[quantidadeDeLivres++] = visao.posicao();
+	}
+
+	public long bytesOcupados() {
+		// Estimativa da memória ocupada pelas colunas e pela arena de textos (sem contar as visões e os índices).
+		return (long) colunas.nomes.length * (8 + 8 + 4 + 4 + 4 + 4 + 1 + 1) + textos.bytesOcupados();
+	}
+
+	private int ocuparPosicao() {
+		if (quantidadeDeLivres > 0) {
+			return posicoesLivres[--quantidadeDeLivres];
+		}
+		Colunas atuais = colunas;
+		int capacidade = atuais.nomes.length;
+		if (posicoesUsadas == capacidade) {
+			colunas = new Colunas(atuais, capacidade + (capacidade >> 1));
+		}
+		return posicoesUsadas++;
+	}
+
+	// Leituras das colunas feitas pelas visões. A coluna é lida antes de verificar se a visão foi desanexada
+	// (veja o comentário no início da classe).
+	private String nome(Visao visao) {
+		int nome = colunas.nomes[visao.posicao()];
+		Pessoa desanexada = visao.desanexada();
+		return desanexada != null ? desanexada.getNome() : nome == NOME_NULO ? null : textos.texto(nome);
+	}
+	private String cpf(Visao visao) {
+		long cpf = colunas.cpfs[visao.posicao()];
+		Pessoa desanexada = visao.desanexada();
+		return desanexada != null ? desanexada.getCpf() : decodificarTexto(cpf);
+	}
+	private LocalDate dataDeNascimento(Visao visao) {
+		int data = colunas.datasDeNascimento[visao.posicao()];
+		Pessoa desanexada = visao.desanexada();
+		return desanexada != null ? desanexada.getDataDeNascimento() : decodificarData(data);
+	}
+
+	// O CPF e o número de registro são guardados como long quando formados por 11 dígitos. Os demais textos
+	// (inclusive o texto vazio) são guardados na arena, e o long guarda o número do texto na forma -(número + 1).
+	// O valor nulo tem a sua própria representação, portanto null e "" nunca se confundem.
+	private long codificarTexto(String texto) {
+		if (texto == null) {
+			return TEXTO_NULO;
+		}
+		long digitos = codificarDigitos(texto);
+		return digitos >= 0 ? digitos : -(textos.obterId(texto) + 1L);
+	}
+	private static long codificarDigitos(String texto) {
+		// Retorna o valor numérico de um texto formado por exatamente 11 dígitos, ou -1 para os demais textos.
+		if (texto.length() != 11) {
+			return -1;
+		}
+		long valor = 0;
+		for (int i = 0; i < 11; i++) {
+			char c = texto.charAt(i);
+			if (c < '0' || c > '9') {
+				return -1;
+			}
+			valor = valor * 10 + (c - '0');
+		}
+		return valor;
+	}
+	private String decodificarTexto(long codigo) {
+		if (codigo == TEXTO_NULO) {
+			return null;
+		}
+		if (codigo < 0) {
+			return textos.texto((int) (-codigo - 1));
+		}
+		// Os zeros à esquerda são recolocados, pois o CPF e o número de registro sempre possuem 11 dígitos.
+		char[] digitos = new char[11];
+		for (int i = 10; i >= 0; i--) {
+			digitos[i] = (char) ('0' + codigo % 10);
+			codigo /= 10;
+		}
+		return new String(digitos);
+	}
+	private int codificarNome(String nome) {
+		return nome == null ? NOME_NULO : textos.obterId(nome);
+	}
+	private static int codificarData(LocalDate data) {
+		return data == null ? DATA_NULA : (int) data.toEpochDay();
+	}
+	private static LocalDate decodificarData(int dias) {
+		return dias == DATA_NULA ? null : LocalDate.ofEpochDay(dias);
+	}
+	private static byte codificarCategoria(char categoria) {
+		// As categorias válidas são letras (veja Validacao.categoria), que cabem em um byte.
+		if (categoria > 0xFF) {
+			throw new IllegalArgumentException("Categoria inválida: \"" + categoria + "\".");
+		}
+		return (byte) categoria;
+	}
+	private static byte codificarTipoDeCarteira(String tipoDeCarteira) {
+		if (tipoDeCarteira == null) {
+			return SEM_TIPO_DE_CARTEIRA;
+		} else if (tipoDeCarteira.equals("DEFINITIVA")) {
+			return DEFINITIVA;
+		} else if (tipoDeCarteira.equals("PPD")) {
+			return PPD;
+		}
+		throw new IllegalArgumentException("Tipo de carteira inválido: \"" + tipoDeCarteira + "\".");
+	}
+	private static String decodificarTipoDeCarteira(byte codigo) {
+		if (codigo == DEFINITIVA) {
+			return "DEFINITIVA";
+		} else if (codigo == PPD) {
+			return "PPD";
+		}
+		return null;
+	}
+
+	private static final class Colunas {
+		private final long[] cpfs;
+		private final long[] numerosDeRegistro;
+		private final int[] nomes;
+		private final int[] datasDeNascimento;
+		private final int[] datasDeEmissao;
+		private final int[] datasDeValidade;
+		private final byte[] categorias;
+		private final byte[] tiposDeCarteira;
+
+		private Colunas(int capacidade) {
+			cpfs = new long[capacidade];
+			numerosDeRegistro = new long[capacidade];
+			nomes = new int[capacidade];
+			datasDeNascimento = new int[capacidade];
+			datasDeEmissao = new int[capacidade];
+			datasDeValidade = new int[capacidade];
+			categorias = new byte[capacidade];
+			tiposDeCarteira = new byte[capacidade];
+		}
+		private Colunas(Colunas anteriores, int capacidade) {
+			cpfs = Arrays.copyOf(anteriores.cpfs, capacidade);
+			numerosDeRegistro = Arrays.copyOf(anteriores.numerosDeRegistro, capacidade);
+			nomes = Arrays.copyOf(anteriores.nomes, capacidade);
+			datasDeNascimento = Arrays.copyOf(anteriores.datasDeNascimento, capacidade);
+			datasDeEmissao = Arrays.copyOf(anteriores.datasDeEmissao, capacidade);
+			datasDeValidade = Arrays.copyOf(anteriores.datasDeValidade, capacidade);
+			categorias = Arrays.copyOf(anteriores.categorias, capacidade);
+			tiposDeCarteira = Arrays.copyOf(anteriores.tiposDeCarteira, capacidade);
+		}
+	}
+
+	// O que as duas visões têm em comum: a posição nas colunas e a cópia usada depois que o registro sai do cadastro.
+	private interface Visao {
+		int posicao();
+		Pessoa desanexada();
+		void desanexar();
+	}
+
+	// Visões dos registros. Os getters e setters foram sobrepostos para ler e escrever nas colunas; os atributos
+	// herdados das classes Pessoa e Condutor ficam sempre vazios. Os setters seguem a mesma ordem dos setters das
+	// classes Pessoa e Condutor: validação pelo observador, escrita e aviso ao observador.
+	private final class VisaoDePessoa extends Pessoa implements Visao {
+		private final int posicao;
+		private volatile Pessoa desanexada;
+
+		private VisaoDePessoa(int posicao) {
+			this.posicao = posicao;
+		}
+		@Override
+		public int posicao() {
+			return posicao;
+		}
+		@Override
+		public Pessoa desanexada() {
+			// A barreira impede que a leitura da coluna, feita antes, seja adiada para depois desta verificação.
+			VarHandle.acquireFence();
+			return desanexada;
+		}
+		@Override
+		public void desanexar() {
+			desanexada = copiar();
+			// A barreira impede que as escritas do próximo registro nesta posição sejam vistas antes da cópia.
+			VarHandle.releaseFence();
+		}
+		@Override
+		public String getNome() {
+			return nome(this);
+		}
+		@Override
+		public void setNome(String nome) {
+			if (desanexada != null) {
+				desanexada.setNome(nome);
+				return;
+			}
+			validarAlteracao(Atributo.NOME, nome);
+			String nomeAnterior = getNome();
+			colunas.nomes[posicao] = codificarNome(nome);
+			notificarAlteracao(Atributo.NOME, nomeAnterior, nome);
+		}
+		@Override
+		public String getCpf() {
+			return cpf(this);
+		}
+		@Override
+		public void setCpf(String cpf) {
+			if (desanexada != null) {
+				desanexada.setCpf(cpf);
+				return;
+			}
+			validarAlteracao(Atributo.CPF, cpf);
+			String cpfAnterior = getCpf();
+			colunas.cpfs[posicao] = codificarTexto(cpf);
+			notificarAlteracao(Atributo.CPF, cpfAnterior, cpf);
+		}
+		@Override
+		public LocalDate getDataDeNascimento() {
+			return dataDeNascimento(this);
+		}
+		@Override
+		public void setDataDeNascimento(LocalDate dataDeNascimento) {
+			if (desanexada != null) {
+				desanexada.setDataDeNascimento(dataDeNascimento);
+				return;
+			}
+			validarAlteracao(Atributo.DATA_DE_NASCIMENTO, dataDeNascimento);
+			LocalDate dataAnterior = getDataDeNascimento();
+			colunas.datasDeNascimento[posicao] = codificarData(dataDeNascimento);
+			notificarAlteracao(Atributo.DATA_DE_NASCIMENTO, dataAnterior, dataDeNascimento);
+		}
+	}
+
+	private final class VisaoDeCondutor extends Condutor implements Visao {
+		private final int posicao;
+		private volatile Condutor desanexada;
+
+		private VisaoDeCondutor(int posicao) {
+			this.posicao = posicao;
+		}
+		@Override
+		public int posicao() {
+			return posicao;
+		}
+		@Override
+		public Condutor desanexada() {
+			VarHandle.acquireFence();
+			return desanexada;
+		}
+		@Override
+		public void desanexar() {
+			desanexada = copiar();
+			VarHandle.releaseFence();
+		}
+		@Override
+		public String getNome() {
+			return nome(this);
+		}
+		@Override
+		public void setNome(String nome) {
+			if (desanexada != null) {
+				desanexada.setNome(nome);
+				return;
+			}
+			validarAlteracao(Atributo.NOME, nome);
+			String nomeAnterior = getNome();
+			colunas.nomes[posicao] = codificarNome(nome);
+			notificarAlteracao(Atributo.NOME, nomeAnterior, nome);
+		}
+		@Override
+		public String getCpf() {
+			return cpf(this);
+		}
+		@Override
+		public void setCpf(String cpf) {
+			if (desanexada != null) {
+				desanexada.setCpf(cpf);
+				return;
+			}
+			validarAlteracao(Atributo.CPF, cpf);
+			String cpfAnterior = getCpf();
+			colunas.cpfs[posicao] = codificarTexto(cpf);
+			notificarAlteracao(Atributo.CPF, cpfAnterior, cpf);
+		}
+		@Override
+		public LocalDate getDataDeNascimento() {
+			return dataDeNascimento(this);
+		}
+		@Override
+		public void setDataDeNascimento(LocalDate dataDeNascimento) {
+			if (desanexada != null) {
+				desanexada.setDataDeNascimento(dataDeNascimento);
+				return;
+			}
+			validarAlteracao(Atributo.DATA_DE_NASCIMENTO, dataDeNascimento);
+			LocalDate dataAnterior = getDataDeNascimento();
+			colunas.datasDeNascimento[posicao] = codificarData(dataDeNascimento);
+			notificarAlteracao(Atributo.DATA_DE_NASCIMENTO, dataAnterior, dataDeNascimento);
+		}
+		@Override
+		public String getNumeroDeRegistro() {
+			long numero = colunas.numerosDeRegistro[posicao];
+			Condutor desanexada = desanexada();
+			return desanexada != null ? desanexada.getNumeroDeRegistro() : decodificarTexto(numero);
+		}
+		@Override
+		public void setNumeroDeRegistro(String numeroDeRegistro) {
+			if (desanexada != null) {
+				desanexada.setNumeroDeRegistro(numeroDeRegistro);
+				return;
+			}
+			validarAlteracao(Atributo.NUMERO_DE_REGISTRO, numeroDeRegistro);
+			String numeroAnterior = getNumeroDeRegistro();
+			colunas.numerosDeRegistro[posicao] = codificarTexto(numeroDeRegistro);
+			notificarAlteracao(Atributo.NUMERO_DE_REGISTRO, numeroAnterior, numeroDeRegistro);
+		}
+		@Override
+		public char getCategoria() {
+			byte categoria = colunas.categorias[posicao];
+			Condutor desanexada = desanexada();
+			return desanexada != null ? desanexada.getCategoria() : (char) (categoria & 0xFF);
+		}
+		@Override
+		public void setCategoria(char categoria) {
+			if (desanexada != null) {
+				desanexada.setCategoria(categoria);
+				return;
+			}
+			byte codigo = codificarCategoria(categoria);
+			validarAlteracao(Atributo.CATEGORIA, categoria);
+			char categoriaAnterior = getCategoria();
+			colunas.categorias[posicao] = codigo;
+			notificarAlteracao(Atributo.CATEGORIA, categoriaAnterior, categoria);
+		}
+		@Override
+		public LocalDate getDataDeEmissao() {
+			int data = colunas.datasDeEmissao[posicao];
+			Condutor desanexada = desanexada();
+			return desanexada != null ? desanexada.getDataDeEmissao() : decodificarData(data);
+		}
+		@Override
+		public void setDataDeEmissao(LocalDate dataDeEmissao) {
+			if (desanexada != null) {
+				desanexada.setDataDeEmissao(dataDeEmissao);
+				return;
+			}
+			validarAlteracao(Atributo.DATA_DE_EMISSAO, dataDeEmissao);
+			LocalDate dataAnterior = getDataDeEmissao();
+			// A data de validade é calculada com a mesma regra da classe Condutor, e o observador só é avisado
+			// depois que ela também foi atualizada.
+			LocalDate dataDeValidade = dataDeEmissao.plusYears(Condutor.anosDeValidade(getDataDeNascimento()));
+			Colunas colunas = CadastroColunar.this.colunas;
+			colunas.datasDeEmissao[posicao] = codificarData(dataDeEmissao);
+			colunas.datasDeValidade[posicao] = codificarData(dataDeValidade);
+			notificarAlteracao(Atributo.DATA_DE_EMISSAO, dataAnterior, dataDeEmissao);
+		}
+		@Override
+		public LocalDate getDataDeValidade() {
+			int data = colunas.datasDeValidade[posicao];
+			Condutor desanexada = desanexada();
+			return desanexada != null ? desanexada.getDataDeValidade() : decodificarData(data);
+		}
+		@Override
+		public String getTipoDeCarteira() {
+			byte tipo = colunas.tiposDeCarteira[posicao];
+			Condutor desanexada = desanexada();
+			return desanexada != null ? desanexada.getTipoDeCarteira() : decodificarTipoDeCarteira(tipo);
+		}
+		@Override
+		public void setTipoDeCarteira(String tipoDeCarteira) {
+			if (desanexada != null) {
+				desanexada.setTipoDeCarteira(tipoDeCarteira);
+				return;
+			}
+			byte codigo = codificarTipoDeCarteira(tipoDeCarteira);
+			validarAlteracao(Atributo.TIPO_DE_CARTEIRA, tipoDeCarteira);
+			String tipoAnterior = getTipoDeCarteira();
+			colunas.tiposDeCarteira[posicao] = codigo;
+			notificarAlteracao(Atributo.TIPO_DE_CARTEIRA, tipoAnterior, tipoDeCarteira);
+		}
+	}
+}
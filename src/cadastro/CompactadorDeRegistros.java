@@ -0,0 +1,64 @@
+package cadastro;
+
+public class CompactadorDeRegistros implements AutoCloseable {
+	// Recupera, em segundo plano, as posições vazias deixadas na lista de registros pelas remoções. Uma thread
+	// verifica a fragmentação da lista (a fração das posições que está vazia) de tempos em tempos; quando ela
+	// passa do limite configurado, a lista é compactada em passos curtos, cada um com o bloqueio de escrita do
+	// serviço, e entre dois passos a thread cede a vez para os atendentes. Assim, a compactação de um cadastro
+	// grande nunca deixa as leituras paradas por mais do que um passo.
+	// O limite de fragmentação pode ser informado na propriedade "cadastro.fragmentacaoMaxima" (de 0 a 1).
+	private static final double FRAGMENTACAO_MAXIMA_PADRAO = 0.25;
+	private static final int POSICOES_POR_PASSO = 4096;
+	private static final long INTERVALO_EM_MILISSEGUNDOS = 1000;
+
+	private final ServicoDeCadastro servico;
+	private final double fragmentacaoMaxima;
+	private final Thread compactador;
+	private volatile boolean encerrado;
+
+	public CompactadorDeRegistros(ServicoDeCadastro servico) {
+		this(servico, Double.parseDouble(System.getProperty("cadastro.fragmentacaoMaxima",
+				Double.toString(FRAGMENTACAO_MAXIMA_PADRAO))));
+	}
+	public CompactadorDeRegistros(ServicoDeCadastro servico, double fragmentacaoMaxima) {
+		if (fragmentacaoMaxima < 0 || fragmentacaoMaxima > 1) {
+			throw new IllegalArgumentException("A fragmentação máxima deve estar entre 0 e 1.");
+		}
+		this.servico = servico;
+		this.fragmentacaoMaxima = fragmentacaoMaxima;
+		compactador = new Thread(this::compactarContinuamente, "compactador-de-registros");
+		compactador.setDaemon(true);
+		compactador.start();
+	}
+
+	public double getFragmentacaoMaxima() {
+		return fragmentacaoMaxima;
+	}
+
+	private void compactarContinuamente() {
+		while (!encerrado) {
+			if (servico.compactar(fragmentacaoMaxima, POSICOES_POR_PASSO)) {
+				Thread.yield();
+				continue;
+			}
+			try {
+				Thread.sleep(INTERVALO_EM_MILISSEGUNDOS);
+			} catch (InterruptedException e) {
+				return;
+			}
+		}
+	}
+
+	@Override
+	public void close() {
+		// Uma compactação interrompida no meio não causa nenhum problema: ela continua do mesmo ponto caso o
+		// compactador seja iniciado novamente.
+		encerrado = true;
+		compactador.interrupt();
+		try {
+			compactador.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
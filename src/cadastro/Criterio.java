@@ -0,0 +1,95 @@
+package cadastro;
+
+import entidades.Validacao;
+
+public abstract class Criterio {
+	// Um critério de consulta sobre os atributos indexados pelo índice de bitmaps (IndiceDeBitmaps): categoria,
+	// tipo de carteira, habilitação e faixa etária. Os critérios são combinados com "e", "ou" e "nao":
+	//     Criterio.categoria('D').e(Criterio.faixaEtaria(3)).ou(Criterio.tipoDeCarteira("PPD"))
+	// Cada critério é avaliado como um conjunto de números de registros internos do índice (um MapaDeBits), e
+	// as combinações são feitas diretamente sobre esses conjuntos, sem consultar os registros.
+
+	// Cada critério sabe como obter o seu conjunto a partir do índice.
+	abstract MapaDeBits avaliar(IndiceDeBitmaps indice);
+
+	public static Criterio categoria(char categoria) {
+		if (categoria < 'A' || categoria > 'E') {
+			throw new IllegalArgumentException("A categoria " + categoria + " é inválida.");
+		}
+		return new Criterio() {
+			@Override
+			MapaDeBits avaliar(IndiceDeBitmaps indice) {
+				return indice.daCategoria(categoria);
+			}
+		};
+	}
+
+	public static Criterio tipoDeCarteira(String texto) {
+		String tipoDeCarteira = Validacao.tipoDeCarteira(texto);
+		return new Criterio() {
+			@Override
+			MapaDeBits avaliar(IndiceDeBitmaps indice) {
+				return indice.doTipoDeCarteira(tipoDeCarteira);
+			}
+		};
+	}
+
+	public static Criterio habilitado() {
+		return new Criterio() {
+			@Override
+			MapaDeBits avaliar(IndiceDeBitmaps indice) {
+				return indice.habilitados();
+			}
+		};
+	}
+
+	public static Criterio naoHabilitado() {
+		return habilitado().nao();
+	}
+
+	// As faixas etárias são as mesmas usadas no cálculo da validade da CNH (Condutor.anosDeValidade): 10 anos de
+	// validade até 49 anos de idade, 5 anos de 50 a 68 anos, e 3 anos a partir de 69 anos. A idade é a da data
+	// da consulta, e não a da data do cadastro.
+	public static Criterio faixaEtaria(int anosDeValidade) {
+		if (anosDeValidade != 10 && anosDeValidade != 5 && anosDeValidade != 3) {
+			throw new IllegalArgumentException("A faixa etária deve ser de 10, 5 ou 3 anos de validade.");
+		}
+		return new Criterio() {
+			@Override
+			MapaDeBits avaliar(IndiceDeBitmaps indice) {
+				return indice.daFaixaEtaria(anosDeValidade);
+			}
+		};
+	}
+
+	public Criterio e(Criterio outro) {
+		Criterio este = this;
+		return new Criterio() {
+			@Override
+			MapaDeBits avaliar(IndiceDeBitmaps indice) {
+				return este.avaliar(indice).e(outro.avaliar(indice));
+			}
+		};
+	}
+
+	public Criterio ou(Criterio outro) {
+		Criterio este = this;
+		return new Criterio() {
+			@Override
+			MapaDeBits avaliar(IndiceDeBitmaps indice) {
+				return este.avaliar(indice).ou(outro.avaliar(indice));
+			}
+		};
+	}
+
+	public Criterio nao() {
+		// Todos os registros do cadastro, menos os que atendem a este critério.
+		Criterio este = this;
+		return new Criterio() {
+			@Override
+			MapaDeBits avaliar(IndiceDeBitmaps indice) {
+				return indice.todos().menos(este.avaliar(indice));
+			}
+		};
+	}
+}
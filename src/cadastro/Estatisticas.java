@@ -0,0 +1,177 @@
+package cadastro;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.temporal.ChronoUnit;
+import java.util.Collections;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import entidades.Condutor;
+import entidades.Pessoa;
+
+public class Estatisticas {
+	// Os números do cadastro para o painel da gerência: condutores por categoria, carteiras PPD e definitivas,
+	// CNHs que vencem em cada mês e a distribuição das idades de todos os registros.
+	// Os números são calculados em uma única passagem por um instantâneo dos registros, dividido em trechos
+	// que são contados em paralelo (fork/join). Cada trecho é contado em vetores de contadores próprios
+	// (long[]), sem nenhum objeto por registro e sem sincronização entre as threads, e os contadores dos
+	// trechos são somados no final. Os registros não são copiados.
+	// Trechos com até este número de registros são contados por uma única thread.
+	private static final int TAMANHO_DO_TRECHO = 16_384;
+	// Os meses de vencimento são contados em um vetor, pela distância em meses a partir de janeiro de 1900.
+	private static final int PRIMEIRO_MES = 1900 * 12;
+	private static final int QUANTIDADE_DE_MESES = 300 * 12;
+	private static final int IDADE_MAXIMA = 150;
+
+	private long registros;
+	private long naoHabilitados;
+	private final long[] porCategoria = new long[5];
+	private long ppd;
+	private long definitivas;
+	private final long[] vencimentosPorMes = new long[QUANTIDADE_DE_MESES];
+	// Idades de 0 a 150 anos; as idades fora desse intervalo e as datas de nascimento não preenchidas são
+	// contadas à parte.
+	private final long[] porIdade = new long[IDADE_MAXIMA + 1];
+	private long semIdade;
+
+	private Estatisticas() {
+	}
+
+	static Estatisticas calcular(Instantaneo registros, LocalDate hoje) {
+		return ForkJoinPool.commonPool().invoke(new Calculo(registros, 0, registros.posicoes(), hoje));
+	}
+
+	public long getQuantidadeDeRegistros() {
+		return registros;
+	}
+	public long getQuantidadeDeCondutores() {
+		return registros - naoHabilitados;
+	}
+	public long getQuantidadeDeNaoHabilitados() {
+		return naoHabilitados;
+	}
+	public long getCondutoresDaCategoria(char categoria) {
+		return categoria >= 'A' && categoria <= 'E' ? porCategoria[categoria - 'A'] : 0;
+	}
+	public long getCarteirasPpd() {
+		return ppd;
+	}
+	public long getCarteirasDefinitivas() {
+		return definitivas;
+	}
+	// Quantidade de CNHs que vencem em cada mês, somente dos meses com algum vencimento, em ordem.
+	public SortedMap<YearMonth, Long> getVencimentosPorMes() {
+		SortedMap<YearMonth, Long> vencimentos = new TreeMap<>();
+		for (int i = 0; i < vencimentosPorMes.length; i++) {
+			if (vencimentosPorMes[i] != 0) {
+				int mes = PRIMEIRO_MES + i;
+				vencimentos.put(YearMonth.of(mes / 12, mes % 12 + 1), vencimentosPorMes[i]);
+			}
+		}
+		return Collections.unmodifiableSortedMap(vencimentos);
+	}
+	// Quantidade de registros com idade entre as duas idades (incluindo as duas).
+	public long getRegistrosComIdadeEntre(int menor, int maior) {
+		long quantidade = 0;
+		for (int idade = Math.max(menor, 0); idade <= Math.min(maior, IDADE_MAXIMA); idade++) {
+			quantidade += porIdade[idade];
+		}
+		return quantidade;
+	}
+	public long getRegistrosSemIdade() {
+		return semIdade;
+	}
+
+	private void contar(Pessoa pessoa, LocalDate hoje) {
+		registros++;
+		if (pessoa.getDataDeNascimento() != null) {
+			// A idade é calculada como no Condutor (anos completos entre o nascimento e hoje).
+			long idade = ChronoUnit.YEARS.between(pessoa.getDataDeNascimento(), hoje);
+			if (idade >= 0 && idade <= IDADE_MAXIMA) {
+				porIdade[(int) idade]++;
+			} else {
+				semIdade++;
+			}
+		} else {
+			semIdade++;
+		}
+		if (!(pessoa instanceof Condutor)) {
+			naoHabilitados++;
+			return;
+		}
+		Condutor condutor = (Condutor) pessoa;
+		char categoria = Character.toUpperCase(condutor.getCategoria());
+		if (categoria >= 'A' && categoria <= 'E') {
+			porCategoria[categoria - 'A']++;
+		}
+		if ("PPD".equalsIgnoreCase(condutor.getTipoDeCarteira())) {
+			ppd++;
+		} else if ("DEFINITIVA".equalsIgnoreCase(condutor.getTipoDeCarteira())) {
+			definitivas++;
+		}
+		LocalDate validade = condutor.getDataDeValidade();
+		if (validade != null) {
+			int mes = validade.getYear() * 12 + validade.getMonthValue() - 1 - PRIMEIRO_MES;
+			if (mes >= 0 && mes < QUANTIDADE_DE_MESES) {
+				vencimentosPorMes[mes]++;
+			}
+		}
+	}
+
+	private Estatisticas somar(Estatisticas outras) {
+		registros += outras.registros;
+		naoHabilitados += outras.naoHabilitados;
+		ppd += outras.ppd;
+		definitivas += outras.definitivas;
+		semIdade += outras.semIdade;
+		for (int i = 0; i < porCategoria.length; i++) {
+			porCategoria[i] += outras.porCategoria[i];
+		}
+		for (int i = 0; i < vencimentosPorMes.length; i++) {
+			vencimentosPorMes[i] += outras.vencimentosPorMes[i];
+		}
+		for (int i = 0; i < porIdade.length; i++) {
+			porIdade[i] += outras.porIdade[i];
+		}
+		return this;
+	}
+
+	// Conta um trecho das posições do instantâneo (pulando as posições vazias). Os trechos grandes são divididos
+	// ao meio: uma metade é contada por outra thread do ForkJoinPool (fork), e a outra pela thread atual.
+	private static final class Calculo extends RecursiveTask<Estatisticas> {
+		private static final long serialVersionUID = 1L;
+		private final transient Instantaneo registros;
+		private final int inicio;
+		private final int fim;
+		private final LocalDate hoje;
+
+		Calculo(Instantaneo registros, int inicio, int fim, LocalDate hoje) {
+			this.registros = registros;
+			this.inicio = inicio;
+			this.fim = fim;
+			this.hoje = hoje;
+		}
+
+		@Override
+		protected Estatisticas compute() {
+			if (fim - inicio <= TAMANHO_DO_TRECHO) {
+				Estatisticas estatisticas = new Estatisticas();
+				for (int i = inicio; i < fim; i++) {
+					Pessoa pessoa = registros.naPosicao(i);
+					if (pessoa != null) {
+						estatisticas.contar(pessoa, hoje);
+					}
+				}
+				return estatisticas;
+			}
+			int meio = (inicio + fim) >>> 1;
+			Calculo primeiraMetade = new Calculo(registros, inicio, meio, hoje);
+			primeiraMetade.fork();
+			Estatisticas segundaMetade = new Calculo(registros, meio, fim, hoje).compute();
+			return primeiraMetade.join().somar(segundaMetade);
+		}
+	}
+}
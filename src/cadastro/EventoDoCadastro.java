@@ -0,0 +1,109 @@
+package cadastro;
+
+import java.time.Instant;
+import java.util.EnumSet;
+import java.util.Objects;
+import java.util.Set;
+
+import entidades.Atributo;
+import entidades.Condutor;
+import entidades.Pessoa;
+
+public final class EventoDoCadastro {
+	// Um evento do fluxo de eventos do cadastro (veja FluxoDeEventos): a inclusão, a edição ou a remoção de um
+	// registro, com o registro como estava antes e como ficou depois da modificação. Na inclusão não existe o
+	// registro anterior, e na remoção não existe o registro novo. A habilitação de um cidadão e a troca de CPF
+	// são edições.
+	// O evento guarda os próprios registros do cadastro, sem copiá-los: os registros publicados nunca são
+	// alterados (as edições do ServicoDeCadastro são feitas em cópias), portanto o registro anterior continua
+	// com os valores de antes da edição. Os atributos alterados só são comparados quando pedidos pelo assinante,
+	// e não no momento da publicação.
+	public enum Tipo {
+		INCLUSAO,
+		EDICAO,
+		REMOCAO
+	}
+
+	private final long posicao;
+	private final Tipo tipo;
+	private final long instante;
+	private final Pessoa anterior;
+	private final Pessoa novo;
+
+	EventoDoCadastro(long posicao, Tipo tipo, long instante, Pessoa anterior, Pessoa novo) {
+		this.posicao = posicao;
+		this.tipo = tipo;
+		this.instante = instante;
+		this.anterior = anterior;
+		this.novo = novo;
+	}
+
+	// A posição do evento no fluxo: 0 para o primeiro evento, 1 para o segundo, e assim por diante.
+	public long getPosicao() {
+		return posicao;
+	}
+	public Tipo getTipo() {
+		return tipo;
+	}
+	public Instant getInstante() {
+		return Instant.ofEpochMilli(instante);
+	}
+	public Pessoa getAnterior() {
+		return anterior;
+	}
+	public Pessoa getNovo() {
+		return novo;
+	}
+	// O CPF do registro depois da modificação (ou o CPF do registro removido).
+	public String getCpf() {
+		return novo != null ? novo.getCpf() : anterior.getCpf();
+	}
+
+	public Set<Atributo> getAtributosAlterados() {
+		// Na inclusão, são os atributos preenchidos do registro novo; na remoção, os do registro removido.
+		Set<Atributo> alterados = EnumSet.noneOf(Atributo.class);
+		for (Atributo atributo : Atributo.values()) {
+			if (!Objects.equals(valor(anterior, atributo), valor(novo, atributo))) {
+				alterados.add(atributo);
+			}
+		}
+		return alterados;
+	}
+	public Object getValorAnterior(Atributo atributo) {
+		return valor(anterior, atributo);
+	}
+	public Object getValorNovo(Atributo atributo) {
+		return valor(novo, atributo);
+	}
+
+	private static Object valor(Pessoa pessoa, Atributo atributo) {
+		// Os atributos da habilitação não existem para cidadãos não-habilitados (o valor é null).
+		if (pessoa == null) {
+			return null;
+		}
+		switch (atributo) {
+		case NOME:
+			return pessoa.getNome();
+		case CPF:
+			return pessoa.getCpf();
+		case DATA_DE_NASCIMENTO:
+			return pessoa.getDataDeNascimento();
+		default:
+			break;
+		}
+		if (!(pessoa instanceof Condutor)) {
+			return null;
+		}
+		Condutor condutor = (Condutor) pessoa;
+		switch (atributo) {
+		case NUMERO_DE_REGISTRO:
+			return condutor.getNumeroDeRegistro();
+		case CATEGORIA:
+			return condutor.getCategoria();
+		case DATA_DE_EMISSAO:
+			return condutor.getDataDeEmissao();
+		default:
+			return condutor.getTipoDeCarteira();
+		}
+	}
+}
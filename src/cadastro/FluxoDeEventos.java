@@ -0,0 +1,203 @@
+package cadastro;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+import entidades.Atributo;
+import entidades.Pessoa;
+
+public class FluxoDeEventos implements ObservadorDoCadastro {
+	// Fluxo de eventos das modificações do cadastro (change data capture), para os sistemas que precisam saber
+	// quando um registro é incluído, editado ou removido (multas, seguros, estatísticas...). Cada modificação
+	// gera um EventoDoCadastro, com o registro antes e depois da modificação.
+	// Os eventos são guardados em um buffer circular com os últimos "capacidade" eventos. A publicação não usa
+	// nenhum bloqueio e não espera pelos assinantes: ela apenas grava o evento na sua posição do buffer e avança
+	// a posição final do fluxo, de forma que a operação de escrita do cadastro praticamente não fica mais lenta.
+	// Existe um único publicador de cada vez, pois o cadastro só é modificado com o bloqueio de escrita do
+	// ServicoDeCadastro, que também é o momento em que os observadores são avisados.
+	// Os assinantes leem os eventos em lotes, a partir de uma posição do fluxo, e guardam a posição seguinte para
+	// continuar de onde pararam (por exemplo, depois de uma queda do sistema assinante). Um assinante que ficar
+	// mais de "capacidade" eventos atrasado perde os eventos mais antigos, que já foram sobrescritos: a leitura
+	// continua a partir do evento mais antigo ainda disponível, e informa quantos eventos foram perdidos.
+	// Os eventos existem apenas na memória: as posições recomeçam do 0 quando o programa é iniciado novamente.
+	// Por isso cada fluxo tem uma época, um identificador diferente a cada início do programa, que o assinante
+	// guarda junto com a posição. Uma posição só vale na época em que foi obtida: se a época mudou, os eventos
+	// que ela indicava não existem mais, e o assinante deve recomeçar do início do novo fluxo (o servidor HTTP
+	// recusa a leitura com uma posição de outra época, em vez de devolver eventos que não são os esperados).
+	private final String epoca = UUID.randomUUID().toString();
+	private final AtomicReferenceArray<EventoDoCadastro> eventos;
+	private final int capacidade;
+	// A posição do próximo evento a ser publicado (ou seja, a quantidade de eventos já publicados).
+	private final AtomicLong posicaoFinal = new AtomicLong();
+
+	public FluxoDeEventos(int capacidade) {
+		if (capacidade < 1) {
+			throw new IllegalArgumentException("A capacidade do fluxo de eventos deve ser positiva.");
+		}
+		// A capacidade é arredondada para uma potência de 2, para que a posição no buffer seja obtida com uma
+		// máscara em vez do resto da divisão.
+		this.capacidade = capacidade == 1 ? 1 : Integer.highestOneBit(capacidade - 1) << 1;
+		eventos = new AtomicReferenceArray<>(this.capacidade);
+	}
+
+	public String getEpoca() {
+		return epoca;
+	}
+	public int getCapacidade() {
+		return capacidade;
+	}
+	public long getPosicaoFinal() {
+		return posicaoFinal.get();
+	}
+	// A posição do evento mais antigo que ainda está no buffer.
+	public long getPosicaoInicial() {
+		return Math.max(0, posicaoFinal.get() - capacidade);
+	}
+
+	@Override
+	public void registroAdicionado(Pessoa pessoa) {
+		publicar(EventoDoCadastro.Tipo.INCLUSAO, null, pessoa);
+	}
+	@Override
+	public void registroRemovido(Pessoa pessoa) {
+		publicar(EventoDoCadastro.Tipo.REMOCAO, pessoa, null);
+	}
+	@Override
+	public void registroSubstituido(Pessoa anterior, Pessoa novo) {
+		publicar(EventoDoCadastro.Tipo.EDICAO, anterior, novo);
+	}
+	@Override
+	public void registroAlterado(Pessoa pessoa, Atributo atributo, Object valorAnterior, Object valorNovo) {
+		// Alteração feita diretamente pelos setters, fora do ServicoDeCadastro: o registro foi modificado no
+		// próprio lugar, por isso o evento recebe cópias, e o registro anterior é reconstruído com o valor antigo.
+		Pessoa anterior = pessoa.copiar();
+		anterior.alterarAtributo(atributo, valorAnterior);
+		publicar(EventoDoCadastro.Tipo.EDICAO, anterior, pessoa.copiar());
+	}
+
+	private void publicar(EventoDoCadastro.Tipo tipo, Pessoa anterior, Pessoa novo) {
+		// O evento é gravado no buffer antes de a posição final avançar (as duas gravações são ordenadas pelo
+		// lazySet), portanto um assinante que lê a posição final sempre encontra os eventos anteriores a ela.
+		long posicao = posicaoFinal.get();
+		eventos.lazySet((int) posicao & (capacidade - 1),
+				new EventoDoCadastro(posicao, tipo, System.currentTimeMillis(), anterior, novo));
+		posicaoFinal.lazySet(posicao + 1);
+	}
+
+	public Lote ler(long aPartirDe, int maximo) {
+		// Lê até "maximo" eventos, a partir da posição informada, sem esperar por novos eventos.
+		if (maximo < 1) {
+			throw new IllegalArgumentException("A quantidade máxima de eventos deve ser positiva.");
+		}
+		long finalDoFluxo = posicaoFinal.get();
+		if (aPartirDe < 0 || aPartirDe > finalDoFluxo) {
+			throw new IllegalArgumentException("A posição " + aPartirDe + " não existe no fluxo de eventos (de 0 a "
+					+ finalDoFluxo + ").");
+		}
+		List<EventoDoCadastro> lidos = new ArrayList<>((int) Math.min(maximo, finalDoFluxo - aPartirDe));
+		long posicao = aPartirDe;
+		long perdidos = 0;
+		while (lidos.size() < maximo && posicao < finalDoFluxo) {
+			long maisAntiga = finalDoFluxo - capacidade;
+			if (posicao < maisAntiga) {
+				perdidos += maisAntiga - posicao;
+				posicao = maisAntiga;
+				continue;
+			}
+			EventoDoCadastro evento = eventos.get((int) posicao & (capacidade - 1));
+			if (evento.getPosicao() != posicao) {
+				// O evento foi sobrescrito durante a leitura: a posição final é lida novamente, e os eventos
+				// sobrescritos são contados como perdidos.
+				finalDoFluxo = posicaoFinal.get();
+				continue;
+			}
+			lidos.add(evento);
+			posicao++;
+		}
+		return new Lote(lidos, posicao, perdidos);
+	}
+
+	// Um assinante que começa nos próximos eventos publicados.
+	public Assinatura assinar() {
+		return new Assinatura(posicaoFinal.get());
+	}
+	// Um assinante que continua de uma posição guardada anteriormente.
+	public Assinatura assinar(long posicao) {
+		return new Assinatura(posicao);
+	}
+
+	public static final class Lote {
+		private final List<EventoDoCadastro> eventos;
+		private final long proxima;
+		private final long perdidos;
+
+		Lote(List<EventoDoCadastro> eventos, long proxima, long perdidos) {
+			this.eventos = Collections.unmodifiableList(eventos);
+			this.proxima = proxima;
+			this.perdidos = perdidos;
+		}
+
+		public List<EventoDoCadastro> getEventos() {
+			return eventos;
+		}
+		// A posição a partir da qual a próxima leitura deve ser feita.
+		public long getProxima() {
+			return proxima;
+		}
+		public long getPerdidos() {
+			return perdidos;
+		}
+	}
+
+	public final class Assinatura {
+		// Um assinante do fluxo, que guarda a posição da sua próxima leitura. Cada assinatura deve ser usada por
+		// uma única thread.
+		private long posicao;
+		private long perdidos;
+
+		private Assinatura(long posicao) {
+			this.posicao = posicao;
+		}
+
+		public long getPosicao() {
+			return posicao;
+		}
+		public long getPerdidos() {
+			return perdidos;
+		}
+
+		public List<EventoDoCadastro> proximoLote(int maximo) {
+			Lote lote = ler(posicao, maximo);
+			posicao = lote.getProxima();
+			perdidos += lote.getPerdidos();
+			return lote.getEventos();
+		}
+
+		public List<EventoDoCadastro> aguardarLote(int maximo, long tempoMaximo, TimeUnit unidade)
+				throws InterruptedException {
+			// Espera até que exista ao menos um evento novo, ou até o tempo máximo. O publicador não avisa os
+			// assinantes (para não ficar mais lento), por isso o assinante verifica o fluxo com pausas
+			// crescentes, de 50 microssegundos até 10 milissegundos.
+			long fim = System.nanoTime() + unidade.toNanos(tempoMaximo);
+			long pausa = TimeUnit.MICROSECONDS.toNanos(50);
+			while (true) {
+				List<EventoDoCadastro> lote = proximoLote(maximo);
+				long restante = fim - System.nanoTime();
+				if (!lote.isEmpty() || restante <= 0) {
+					return lote;
+				}
+				LockSupport.parkNanos(Math.min(pausa, restante));
+				if (Thread.interrupted()) {
+					throw new InterruptedException();
+				}
+				pausa = Math.min(2 * pausa, TimeUnit.MILLISECONDS.toNanos(10));
+			}
+		}
+	}
+}
@@ -0,0 +1,214 @@
+package cadastro;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.TreeMap;
+
+import entidades.Atributo;
+import entidades.Condutor;
+import entidades.Pessoa;
+
+public class IndiceDeBitmaps implements ObservadorDoCadastro {
+	// Este índice responde às consultas que combinam vários atributos de pouca variedade (categoria, tipo de
+	// carteira, habilitação e faixa etária), como "condutores da categoria D com 69 anos ou mais", sem percorrer
+	// o cadastro. Cada registro recebe um número interno, e para cada valor de cada atributo o índice guarda o
+	// conjunto dos números dos registros que possuem aquele valor (um MapaDeBits). Uma consulta (Criterio) é
+	// respondida com interseções e uniões desses conjuntos, e a quantidade de registros encontrados é obtida
+	// sem consultar nenhum registro.
+	// A idade muda com o tempo, por isso os registros não são guardados por faixa etária, mas sim por ano de
+	// nascimento. Na consulta, os anos de nascimento que estão inteiramente dentro da faixa são unidos, e apenas
+	// os registros dos dois anos da fronteira da faixa têm a idade conferida um a um.
+	private static final int SEM_ANO = Integer.MIN_VALUE;
+
+	// Os números internos dos registros.
+	private final NumeracaoDeRegistros numeracao = new NumeracaoDeRegistros();
+	// Os valores indexados de cada registro, para que os bits antigos sejam removidos mesmo depois que o
+	// registro já foi alterado: a categoria (0 para os não-habilitados), o tipo de carteira (0 para os
+	// não-habilitados, 1 para PPD e 2 para definitiva) e o ano de nascimento.
+	private byte[] categorias = new byte[1024];
+	private byte[] tipos = new byte[1024];
+	private int[] anos = new int[1024];
+
+	private final MapaDeBits todos = new MapaDeBits();
+	private final MapaDeBits habilitados = new MapaDeBits();
+	private final MapaDeBits[] porCategoria = new MapaDeBits[5];
+	private final MapaDeBits[] porTipoDeCarteira = new MapaDeBits[2];
+	private final TreeMap<Integer, MapaDeBits> porAnoDeNascimento = new TreeMap<>();
+
+	public IndiceDeBitmaps() {
+		for (int i = 0; i < porCategoria.length; i++) {
+			porCategoria[i] = new MapaDeBits();
+		}
+		for (int i = 0; i < porTipoDeCarteira.length; i++) {
+			porTipoDeCarteira[i] = new MapaDeBits();
+		}
+	}
+
+	public int contar(Criterio criterio) {
+		return criterio.avaliar(this).quantidade();
+	}
+
+	public Iterable<Pessoa> selecionar(Criterio criterio) {
+		// Os registros que atendem ao critério, na ordem dos números internos. Os registros são obtidos à medida
+		// que são percorridos, portanto a seleção só deve ser percorrida enquanto o cadastro não for modificado.
+		MapaDeBits selecionados = criterio.avaliar(this);
+		return () -> new Iterator<Pessoa>() {
+			private final PrimitiveIterator.OfInt numeros = selecionados.iterador();
+
+			@Override
+			public boolean hasNext() {
+				return numeros.hasNext();
+			}
+			@Override
+			public Pessoa next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				return numeracao.registro(numeros.nextInt());
+			}
+		};
+	}
+
+	public long bytesOcupados() {
+		long bytes = todos.bytesOcupados() + habilitados.bytesOcupados();
+		for (MapaDeBits mapa : porCategoria) {
+			bytes += mapa.bytesOcupados();
+		}
+		for (MapaDeBits mapa : porTipoDeCarteira) {
+			bytes += mapa.bytesOcupados();
+		}
+		for (MapaDeBits mapa : porAnoDeNascimento.values()) {
+			bytes += mapa.bytesOcupados();
+		}
+		return bytes;
+	}
+
+	// Os conjuntos usados pelos critérios. Os conjuntos do próprio índice são retornados sem cópia, e não devem
+	// ser modificados; as combinações feitas pelos critérios sempre criam conjuntos novos.
+	MapaDeBits todos() {
+		return todos;
+	}
+	MapaDeBits habilitados() {
+		return habilitados;
+	}
+	MapaDeBits daCategoria(char categoria) {
+		return porCategoria[categoria - 'A'];
+	}
+	MapaDeBits doTipoDeCarteira(String tipoDeCarteira) {
+		return porTipoDeCarteira[tipoDeCarteira.equals("PPD") ? 0 : 1];
+	}
+	MapaDeBits daFaixaEtaria(int anosDeValidade) {
+		LocalDate hoje = LocalDate.now();
+		MapaDeBits resultado = new MapaDeBits();
+		for (Map.Entry<Integer, MapaDeBits> ano : porAnoDeNascimento.entrySet()) {
+			// Quem nasceu no ano tem, hoje, uma de duas idades, dependendo de já ter feito aniversário no ano.
+			long idadeMaior = hoje.getYear() - ano.getKey();
+			boolean menorDentro = faixa(idadeMaior - 1) == anosDeValidade;
+			boolean maiorDentro = faixa(idadeMaior) == anosDeValidade;
+			if (menorDentro && maiorDentro) {
+				resultado.adicionarTodos(ano.getValue());
+			} else if (menorDentro || maiorDentro) {
+				// Ano da fronteira: a idade de cada registro é calculada como no Condutor.
+				for (PrimitiveIterator.OfInt i = ano.getValue().iterador(); i.hasNext();) {
+					int numero = i.nextInt();
+					if (Condutor.anosDeValidade(numeracao.registro(numero).getDataDeNascimento()) == anosDeValidade) {
+						resultado.adicionar(numero);
+					}
+				}
+			}
+		}
+		return resultado;
+	}
+	private static int faixa(long idade) {
+		// A mesma regra do Condutor.anosDeValidade, a partir da idade.
+		return idade < 50 ? 10 : idade < 69 ? 5 : 3;
+	}
+
+	@Override
+	public void registroAdicionado(Pessoa pessoa) {
+		int numero = numeracao.numerar(pessoa);
+		if (numero == categorias.length) {
+			int capacidade = categorias.length * 2;
+			categorias = Arrays.copyOf(categorias, capacidade);
+			tipos = Arrays.copyOf(tipos, capacidade);
+			anos = Arrays.copyOf(anos, capacidade);
+		}
+		todos.adicionar(numero);
+		indexar(numero);
+	}
+	@Override
+	public void registroRemovido(Pessoa pessoa) {
+		int numero = numeracao.liberar(pessoa);
+		if (numero >= 0) {
+			desindexar(numero);
+			todos.remover(numero);
+		}
+	}
+	@Override
+	public void registroSubstituido(Pessoa anterior, Pessoa novo) {
+		// O novo registro fica com o número do anterior.
+		int numero = numeracao.substituir(anterior, novo);
+		if (numero < 0) {
+			registroAdicionado(novo);
+			return;
+		}
+		desindexar(numero);
+		indexar(numero);
+	}
+	@Override
+	public void registroAlterado(Pessoa pessoa, Atributo atributo, Object valorAnterior, Object valorNovo) {
+		if (atributo == Atributo.CATEGORIA || atributo == Atributo.TIPO_DE_CARTEIRA
+				|| atributo == Atributo.DATA_DE_NASCIMENTO) {
+			int numero = numeracao.numero(pessoa);
+			if (numero >= 0) {
+				desindexar(numero);
+				indexar(numero);
+			}
+		}
+	}
+
+	private void indexar(int numero) {
+		Pessoa pessoa = numeracao.registro(numero);
+		categorias[numero] = 0;
+		tipos[numero] = 0;
+		anos[numero] = SEM_ANO;
+		if (pessoa instanceof Condutor) {
+			Condutor condutor = (Condutor) pessoa;
+			habilitados.adicionar(numero);
+			char categoria = Character.toUpperCase(condutor.getCategoria());
+			if (categoria >= 'A' && categoria <= 'E') {
+				categorias[numero] = (byte) categoria;
+				porCategoria[categoria - 'A'].adicionar(numero);
+			}
+			String tipoDeCarteira = condutor.getTipoDeCarteira();
+			if ("PPD".equalsIgnoreCase(tipoDeCarteira) || "DEFINITIVA".equalsIgnoreCase(tipoDeCarteira)) {
+				tipos[numero] = (byte) ("PPD".equalsIgnoreCase(tipoDeCarteira) ? 1 : 2);
+				porTipoDeCarteira[tipos[numero] - 1].adicionar(numero);
+			}
+		}
+		if (pessoa.getDataDeNascimento() != null) {
+			anos[numero] = pessoa.getDataDeNascimento().getYear();
+			porAnoDeNascimento.computeIfAbsent(anos[numero], ano -> new MapaDeBits()).adicionar(numero);
+		}
+	}
+	private void desindexar(int numero) {
+		habilitados.remover(numero);
+		if (categorias[numero] != 0) {
+			porCategoria[categorias[numero] - 'A'].remover(numero);
+		}
+		if (tipos[numero] != 0) {
+			porTipoDeCarteira[tipos[numero] - 1].remover(numero);
+		}
+		if (anos[numero] != SEM_ANO) {
+			MapaDeBits ano = porAnoDeNascimento.get(anos[numero]);
+			ano.remover(numero);
+			if (ano.quantidade() == 0) {
+				porAnoDeNascimento.remove(anos[numero]);
+			}
+		}
+	}
+}
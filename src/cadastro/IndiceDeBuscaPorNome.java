@@ -0,0 +1,403 @@
+package cadastro;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.PrimitiveIterator;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import entidades.Atributo;
+import entidades.Pessoa;
+
+public class IndiceDeBuscaPorNome implements ObservadorDoCadastro {
+	// Este índice encontra os registros pelas palavras do nome, para o atendimento no balcão, onde o cidadão
+	// nem sempre sabe (ou soletra) o nome completo. Ele responde a dois tipos de busca:
+	// - por prefixo: "mar sil" encontra "Maria da Silva" e "Marcos Silveira", pois cada palavra digitada é o
+	//   início de alguma palavra do nome, em qualquer ordem;
+	// - aproximada: "mraia slva" também encontra "Maria da Silva", pois cada palavra digitada está a poucas
+	//   letras de distância de alguma palavra do nome. A distância é a de Levenshtein (letras incluídas,
+	//   retiradas ou trocadas), em que a troca de duas letras vizinhas ("mraia") conta como um único erro.
+	// As palavras são normalizadas como na listagem em ordem alfabética (IndiceDeNomes.chaveDeOrdenacao), ou
+	// seja, sem diferença entre maiúsculas e minúsculas e sem acentos.
+	// As palavras distintas dos nomes ficam em uma árvore de prefixos (trie), e cada palavra guarda o conjunto
+	// dos números dos registros em que ela aparece. Como há muito menos palavras distintas do que registros
+	// (os mesmos nomes e sobrenomes se repetem), as buscas percorrem apenas uma pequena parte da árvore.
+	// As palavras já normalizadas de cada registro também são guardadas, pelo número do registro, para que a
+	// busca confira as demais palavras digitadas sem normalizar o nome de cada registro encontrado, e para que a
+	// remoção não precise normalizar o nome outra vez. Os textos das palavras são os mesmos guardados nos nós da
+	// árvore, portanto uma palavra repetida em milhares de nomes ocupa memória uma única vez.
+	private static final Pattern SEPARADOR_DE_PALAVRAS = Pattern.compile("[^\\p{L}\\p{N}]+");
+	private static final String[] SEM_PALAVRAS = new String[0];
+
+	private final NumeracaoDeRegistros numeracao = new NumeracaoDeRegistros();
+	private final No raiz = new No();
+	private int quantidadeDePalavras;
+	private String[][] palavrasDosRegistros = new String[1024][];
+
+	public static String[] palavras(String nome) {
+		String normalizado = IndiceDeNomes.chaveDeOrdenacao(nome).trim();
+		if (normalizado.isEmpty()) {
+			return SEM_PALAVRAS;
+		}
+		return Arrays.stream(SEPARADOR_DE_PALAVRAS.split(normalizado)).filter(palavra -> !palavra.isEmpty())
+				.toArray(String[]::new);
+	}
+
+	public int quantidadeDePalavras() {
+		return quantidadeDePalavras;
+	}
+
+	public List<Pessoa> buscarPorPrefixo(String texto, int limite) {
+		// Os registros em que cada palavra digitada é o início de alguma palavra do nome. A palavra digitada com
+		// menos registros (a mais seletiva) é a principal: os seus registros são percorridos, e as demais palavras
+		// são conferidas nas palavras de cada registro, até que o limite seja atingido. Caso alguma palavra
+		// digitada não seja o início de nenhuma palavra da árvore, nenhum registro pode ser encontrado.
+		String[] digitadas = palavras(texto);
+		if (digitadas.length == 0) {
+			return Collections.emptyList();
+		}
+		List<MapaDeBits> principais = null;
+		int principal = -1;
+		long menorQuantidade = Long.MAX_VALUE;
+		for (int i = 0; i < digitadas.length; i++) {
+			No no = raiz.descer(digitadas[i]);
+			if (no == null) {
+				return Collections.emptyList();
+			}
+			List<MapaDeBits> conjuntos = new ArrayList<>();
+			no.coletar(conjuntos);
+			long quantidade = quantidade(conjuntos);
+			if (quantidade < menorQuantidade) {
+				principais = conjuntos;
+				principal = i;
+				menorQuantidade = quantidade;
+			}
+		}
+		return selecionar(principais, digitadas, principal, false, limite);
+	}
+
+	public List<Pessoa> buscarAproximado(String texto, int limite) {
+		// Os registros em que cada palavra digitada está a poucas letras de distância de alguma palavra do nome:
+		// nenhuma letra para palavras de até 2 letras, uma letra para palavras de até 5 letras e duas letras
+		// para as palavras mais longas. A palavra principal é escolhida como na busca por prefixo, e os registros
+		// com as palavras mais próximas dela aparecem primeiro.
+		String[] digitadas = palavras(texto);
+		if (digitadas.length == 0) {
+			return Collections.emptyList();
+		}
+		List<MapaDeBits> principais = null;
+		int principal = -1;
+		long menorQuantidade = Long.MAX_VALUE;
+		for (int i = 0; i < digitadas.length; i++) {
+			List<MapaDeBits> conjuntos = aproximadas(digitadas[i]);
+			if (conjuntos.isEmpty()) {
+				return Collections.emptyList();
+			}
+			long quantidade = quantidade(conjuntos);
+			if (quantidade < menorQuantidade) {
+				principais = conjuntos;
+				principal = i;
+				menorQuantidade = quantidade;
+			}
+		}
+		return selecionar(principais, digitadas, principal, true, limite);
+	}
+
+	private List<MapaDeBits> aproximadas(String palavra) {
+		// Os conjuntos das palavras da árvore próximas da palavra, em ordem de distância.
+		int distanciaMaxima = distanciaMaxima(palavra);
+		List<List<MapaDeBits>> porDistancia = new ArrayList<>();
+		for (int i = 0; i <= distanciaMaxima; i++) {
+			porDistancia.add(new ArrayList<>());
+		}
+		int[] linha = new int[palavra.length() + 1];
+		for (int i = 0; i < linha.length; i++) {
+			linha[i] = i;
+		}
+		raiz.procurarAproximadas(palavra, (char) 0, null, linha, distanciaMaxima, porDistancia);
+		List<MapaDeBits> conjuntos = new ArrayList<>();
+		for (List<MapaDeBits> mesmaDistancia : porDistancia) {
+			conjuntos.addAll(mesmaDistancia);
+		}
+		return conjuntos;
+	}
+
+	private static long quantidade(List<MapaDeBits> conjuntos) {
+		// A soma dos tamanhos dos conjuntos: uma estimativa (para mais) da quantidade de registros a percorrer,
+		// pois um registro pode estar em mais de um conjunto.
+		long quantidade = 0;
+		for (MapaDeBits conjunto : conjuntos) {
+			quantidade += conjunto.quantidade();
+		}
+		return quantidade;
+	}
+
+	private List<Pessoa> selecionar(List<MapaDeBits> conjuntos, String[] digitadas, int principal, boolean aproximado,
+			int limite) {
+		// Percorre os registros dos conjuntos, na ordem, e confere as demais palavras digitadas. Um registro
+		// pode aparecer em mais de um conjunto (por exemplo, "Ana Anabela" na busca por "ana"), por isso os
+		// registros já escolhidos são lembrados.
+		List<Pessoa> encontrados = new ArrayList<>();
+		Set<Pessoa> escolhidos = Collections.newSetFromMap(new IdentityHashMap<>());
+		for (MapaDeBits conjunto : conjuntos) {
+			for (PrimitiveIterator.OfInt numeros = conjunto.iterador(); numeros.hasNext();) {
+				if (encontrados.size() >= limite) {
+					return encontrados;
+				}
+				int numero = numeros.nextInt();
+				Pessoa pessoa = numeracao.registro(numero);
+				if (digitadas.length == 1 || confere(palavrasDosRegistros[numero], digitadas, principal, aproximado)) {
+					if (escolhidos.add(pessoa)) {
+						encontrados.add(pessoa);
+					}
+				}
+			}
+		}
+		return encontrados;
+	}
+
+	private static boolean confere(String[] doNome, String[] digitadas, int principal, boolean aproximado) {
+		for (int i = 0; i < digitadas.length; i++) {
+			if (i == principal) {
+				continue;
+			}
+			boolean encontrada = false;
+			for (String palavra : doNome) {
+				if (aproximado ? distancia(digitadas[i], palavra, distanciaMaxima(digitadas[i])) >= 0
+						: palavra.startsWith(digitadas[i])) {
+					encontrada = true;
+					break;
+				}
+			}
+			if (!encontrada) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static int distanciaMaxima(String palavra) {
+		return palavra.length() <= 2 ? 0 : palavra.length() <= 5 ? 1 : 2;
+	}
+
+	// Distância entre as duas palavras, ou -1 caso ela seja maior do que o máximo. As linhas da tabela são
+	// calculadas da mesma forma que na árvore (veja No.linha).
+	private static int distancia(String a, String b, int maximo) {
+		if (Math.abs(a.length() - b.length()) > maximo) {
+			return -1;
+		}
+		int[] penultima = null;
+		int[] anterior = new int[a.length() + 1];
+		for (int j = 0; j <= a.length(); j++) {
+			anterior[j] = j;
+		}
+		for (int i = 0; i < b.length(); i++) {
+			int[] atual = No.linha(a, b.charAt(i), i > 0 ? b.charAt(i - 1) : 0, penultima, anterior);
+			if (No.menor(atual) > maximo) {
+				return -1;
+			}
+			penultima = anterior;
+			anterior = atual;
+		}
+		return anterior[a.length()] <= maximo ? anterior[a.length()] : -1;
+	}
+
+	@Override
+	public void registroAdicionado(Pessoa pessoa) {
+		indexar(numeracao.numerar(pessoa), palavras(pessoa.getNome()));
+	}
+	@Override
+	public void registroRemovido(Pessoa pessoa) {
+		int numero = numeracao.liberar(pessoa);
+		if (numero >= 0) {
+			desindexar(numero);
+		}
+	}
+	@Override
+	public void registroSubstituido(Pessoa anterior, Pessoa novo) {
+		int numero = numeracao.substituir(anterior, novo);
+		if (numero < 0) {
+			registroAdicionado(novo);
+			return;
+		}
+		// Na maioria das edições o nome não muda, e as palavras do registro continuam as mesmas na árvore.
+		String[] palavras = palavras(novo.getNome());
+		if (!Arrays.equals(palavrasDosRegistros[numero], palavras)) {
+			desindexar(numero);
+			indexar(numero, palavras);
+		}
+	}
+	@Override
+	public void registroAlterado(Pessoa pessoa, Atributo atributo, Object valorAnterior, Object valorNovo) {
+		// Somente a alteração do nome (setNome) muda as palavras do registro. As palavras antigas são as
+		// guardadas para o registro.
+		if (atributo == Atributo.NOME) {
+			int numero = numeracao.numero(pessoa);
+			if (numero >= 0) {
+				desindexar(numero);
+				indexar(numero, palavras((String) valorNovo));
+			}
+		}
+	}
+
+	private void indexar(int numero, String[] palavras) {
+		// As palavras recebidas são trocadas pelas palavras guardadas nos nós, e guardadas para o registro.
+		for (int p = 0; p < palavras.length; p++) {
+			String palavra = palavras[p];
+			No no = raiz;
+			for (int i = 0; i < palavra.length(); i++) {
+				no = no.filhoOuNovo(palavra.charAt(i));
+			}
+			if (no.registros == null) {
+				no.registros = new MapaDeBits();
+				no.palavra = palavra;
+				quantidadeDePalavras++;
+			}
+			no.registros.adicionar(numero);
+			palavras[p] = no.palavra;
+		}
+		if (numero >= palavrasDosRegistros.length) {
+			palavrasDosRegistros = Arrays.copyOf(palavrasDosRegistros, Math.max(numero + 1, palavrasDosRegistros.length * 2));
+		}
+		palavrasDosRegistros[numero] = palavras;
+	}
+	private void desindexar(int numero) {
+		for (String palavra : palavrasDosRegistros[numero]) {
+			if (raiz.remover(palavra, 0, numero)) {
+				quantidadeDePalavras--;
+			}
+		}
+		palavrasDosRegistros[numero] = null;
+	}
+
+	// Um nó da árvore de prefixos. Os filhos são guardados em vetores ordenados pela letra, que ocupam menos
+	// memória do que um mapa; a maioria dos nós possui apenas um ou dois filhos.
+	private static final class No {
+		private char[] letras = new char[0];
+		private No[] filhos = new No[0];
+		// Os registros em que a palavra que termina neste nó aparece, ou null caso nenhuma palavra termine aqui.
+		private MapaDeBits registros;
+		// A palavra que termina neste nó, compartilhada pelas palavras guardadas de todos os registros.
+		private String palavra;
+
+		No filho(char letra) {
+			int i = Arrays.binarySearch(letras, letra);
+			return i >= 0 ? filhos[i] : null;
+		}
+
+		No filhoOuNovo(char letra) {
+			int i = Arrays.binarySearch(letras, letra);
+			if (i >= 0) {
+				return filhos[i];
+			}
+			i = -i - 1;
+			char[] novasLetras = new char[letras.length + 1];
+			No[] novosFilhos = new No[filhos.length + 1];
+			System.arraycopy(letras, 0, novasLetras, 0, i);
+			System.arraycopy(filhos, 0, novosFilhos, 0, i);
+			System.arraycopy(letras, i, novasLetras, i + 1, letras.length - i);
+			System.arraycopy(filhos, i, novosFilhos, i + 1, filhos.length - i);
+			novasLetras[i] = letra;
+			novosFilhos[i] = new No();
+			letras = novasLetras;
+			filhos = novosFilhos;
+			return novosFilhos[i];
+		}
+
+		No descer(String prefixo) {
+			No no = this;
+			for (int i = 0; i < prefixo.length() && no != null; i++) {
+				no = no.filho(prefixo.charAt(i));
+			}
+			return no;
+		}
+
+		// Remove o número do registro da palavra, a partir da posição informada, e retira da árvore os nós que
+		// ficaram vazios. Retorna true caso a palavra tenha deixado de existir.
+		boolean remover(String palavra, int posicao, int numero) {
+			boolean palavraRemovida = false;
+			if (posicao == palavra.length()) {
+				if (registros != null) {
+					registros.remover(numero);
+					if (registros.quantidade() == 0) {
+						registros = null;
+						this.palavra = null;
+						palavraRemovida = true;
+					}
+				}
+				return palavraRemovida;
+			}
+			int i = Arrays.binarySearch(letras, palavra.charAt(posicao));
+			if (i < 0) {
+				return false;
+			}
+			palavraRemovida = filhos[i].remover(palavra, posicao + 1, numero);
+			if (filhos[i].registros == null && filhos[i].letras.length == 0) {
+				char[] novasLetras = new char[letras.length - 1];
+				No[] novosFilhos = new No[filhos.length - 1];
+				System.arraycopy(letras, 0, novasLetras, 0, i);
+				System.arraycopy(filhos, 0, novosFilhos, 0, i);
+				System.arraycopy(letras, i + 1, novasLetras, i, letras.length - i - 1);
+				System.arraycopy(filhos, i + 1, novosFilhos, i, filhos.length - i - 1);
+				letras = novasLetras;
+				filhos = novosFilhos;
+			}
+			return palavraRemovida;
+		}
+
+		// Os conjuntos de todas as palavras que começam neste nó, em ordem alfabética.
+		void coletar(List<MapaDeBits> conjuntos) {
+			if (registros != null) {
+				conjuntos.add(registros);
+			}
+			for (No filho : filhos) {
+				filho.coletar(conjuntos);
+			}
+		}
+
+		// Percorre a árvore calculando a tabela da distância uma linha por letra. Os nós abaixo deste
+		// compartilham as linhas já calculadas, e um ramo é abandonado assim que todas as distâncias da linha
+		// passam do máximo, pois elas nunca diminuem nas linhas seguintes.
+		void procurarAproximadas(String palavra, char letraDoNo, int[] penultima, int[] linhaDoNo, int maximo,
+				List<List<MapaDeBits>> porDistancia) {
+			int distancia = linhaDoNo[palavra.length()];
+			if (registros != null && distancia <= maximo) {
+				porDistancia.get(distancia).add(registros);
+			}
+			for (int f = 0; f < filhos.length; f++) {
+				int[] linha = linha(palavra, letras[f], letraDoNo, penultima, linhaDoNo);
+				if (menor(linha) <= maximo) {
+					filhos[f].procurarAproximadas(palavra, letras[f], linhaDoNo, linha, maximo, porDistancia);
+				}
+			}
+		}
+
+		// A próxima linha da tabela da distância entre "palavra" e uma palavra que continua com "letra", a partir
+		// das duas linhas anteriores (a penúltima é null na primeira letra). Além da inclusão, da retirada e da
+		// troca de uma letra, a troca de duas letras vizinhas também custa 1.
+		static int[] linha(String palavra, char letra, char letraAnterior, int[] penultima, int[] anterior) {
+			int[] linha = new int[anterior.length];
+			linha[0] = anterior[0] + 1;
+			for (int j = 1; j < linha.length; j++) {
+				int custo = palavra.charAt(j - 1) == letra ? 0 : 1;
+				linha[j] = Math.min(Math.min(linha[j - 1] + 1, anterior[j] + 1), anterior[j - 1] + custo);
+				if (penultima != null && j > 1 && palavra.charAt(j - 1) == letraAnterior
+						&& palavra.charAt(j - 2) == letra) {
+					linha[j] = Math.min(linha[j], penultima[j - 2] + 1);
+				}
+			}
+			return linha;
+		}
+
+		static int menor(int[] linha) {
+			int menor = linha[0];
+			for (int j = 1; j < linha.length; j++) {
+				menor = Math.min(menor, linha[j]);
+			}
+			return menor;
+		}
+	}
+}
@@ -0,0 +1,482 @@
+package cadastro;
+
+import java.text.Normalizer;
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+import entidades.Atributo;
+import entidades.Pessoa;
+
+public class IndiceDeNomes implements ObservadorDoCadastro {
+	// Este índice mantém os registros do cadastro em ordem alfabética de nome. Em vez de copiar e ordenar a
+	// lista inteira a cada listagem, o índice é atualizado a cada inclusão, remoção e alteração de nome, e a
+	// listagem em ordem alfabética apenas percorre o índice, já ordenado.
+	// A chave de ordenação de cada nome é calculada uma única vez (e não a cada comparação): o nome em letras
+	// minúsculas e sem acentos.
+	//
+	// A ordem é guardada em trechos de até TAMANHO_DO_TRECHO chaves, cada um já ordenado, e os trechos também
+	// estão em ordem. Uma inclusão ou remoção desloca apenas as chaves do seu trecho; um trecho cheio é dividido
+	// em dois, e trechos quase vazios são juntados. Assim como os blocos da ListaDeRegistros, os trechos podem ser
+	// compartilhados com os instantâneos (veja congelarOrdem): um instantâneo guarda apenas uma cópia do vetor de
+	// trechos, e enquanto ele estiver aberto o índice não modifica um trecho compartilhado, mas sim uma cópia dele.
+	// Dessa forma, o instantâneo percorre os registros em ordem alfabética sem normalizar nem ordenar nada.
+	private static final int TAMANHO_DO_TRECHO = 512;
+	// Os acentos separados das letras pela forma NFD (a expressão é compilada uma única vez, e não a cada nome).
+	private static final Pattern ACENTOS = Pattern.compile("\\p{M}+");
+
+	private Trecho[] trechos = { new Trecho(0) };
+	private int quantidadeDeTrechos = 1;
+	private int quantidade;
+	// A geração em que cada trecho foi criado (veja ListaDeRegistros): cada ordem congelada inicia uma nova
+	// geração, e os trechos de gerações anteriores podem estar sendo usados por um instantâneo.
+	private long geracao;
+	private final AtomicInteger ordensCongeladas = new AtomicInteger();
+	// Guarda a chave de cada registro, para que ela possa ser encontrada na remoção e na alteração do nome.
+	// O IdentityHashMap compara os objetos pela referência, e não pelo conteúdo.
+	private final Map<Pessoa, Chave> chaves = new IdentityHashMap<>();
+	// Registros com o mesmo nome são mantidos na ordem em que entraram no índice, com a ajuda deste contador.
+	private long sequencia;
+
+	public static String chaveDeOrdenacao(String nome) {
+		// Assim como na listagem original, as letras maiúsculas são convertidas para minúsculas e o Normalizer
+		// separa as letras dos seus acentos (forma NFD). Em seguida, os acentos são retirados, para que "Júlia"
+		// e "Julia" fiquem na mesma posição da ordem alfabética.
+		// A chave é calculada para cada nome incluído no cadastro e para cada nome recebido das partições pelo
+		// RoteadorHttp. A maioria dos nomes não tem acentos nem outras letras fora da tabela ASCII; para esses
+		// nomes a forma NFD não muda nada, e a normalização e a retirada dos acentos são evitadas.
+		if (nome == null) {
+			return "";
+		}
+		String minusculas = nome.toLowerCase();
+		for (int i = 0; i < minusculas.length(); i++) {
+			if (minusculas.charAt(i) >= 0x80) {
+				return ACENTOS.matcher(Normalizer.normalize(minusculas, Normalizer.Form.NFD)).replaceAll("");
+			}
+		}
+		return minusculas;
+	}
+
+	public Collection<Pessoa> listar() {
+		// Os registros em ordem alfabética. A coleção não pode ser modificada, e só pode ser percorrida enquanto
+		// o índice não for modificado.
+		return new Ordem(trechos, quantidadeDeTrechos, quantidade);
+	}
+
+	public int quantidade() {
+		return quantidade;
+	}
+
+	synchronized Collection<Pessoa> congelarOrdem() {
+		// A ordem alfabética atual, para um instantâneo. Deve ser chamado com o bloqueio de leitura do serviço (ou
+		// durante uma modificação); o "synchronized" impede que duas ordens sejam congeladas ao mesmo tempo. Custa
+		// apenas a cópia do vetor de trechos. A ordem deve ser liberada (liberarOrdem) quando o instantâneo for
+		// fechado.
+		Trecho[] copia = Arrays.copyOf(trechos, quantidadeDeTrechos);
+		geracao++;
+		ordensCongeladas.incrementAndGet();
+		return new Ordem(copia, quantidadeDeTrechos, quantidade);
+	}
+	void liberarOrdem() {
+		ordensCongeladas.decrementAndGet();
+	}
+
+	public Listagem listagem() {
+		// Listagem paginada em ordem alfabética. Os cursores das páginas são as próprias chaves do índice, e
+		// cada página é obtida procurando, com busca binária, a chave onde a página anterior terminou.
+		return new Listagem() {
+			@Override
+			public Pagina primeira(int tamanho) {
+				return paginaAPartirDe(null, true, tamanho);
+			}
+			@Override
+			public Pagina proxima(Pagina atual, int tamanho) {
+				return atual.cursorFinal == null ? primeira(tamanho) : paginaAPartirDe((Chave) atual.cursorFinal, false, tamanho);
+			}
+			@Override
+			public Pagina anterior(Pagina atual, int tamanho) {
+				if (atual.cursorInicial == null) {
+					return primeira(tamanho);
+				}
+				// Os registros anteriores à página atual são percorridos de trás para frente.
+				Posicao anteriores = new Posicao(trechos, quantidadeDeTrechos, (Chave) atual.cursorInicial, true);
+				Chave inicio = null;
+				for (int i = 0; i < tamanho; i++) {
+					anteriores.voltar();
+					if (!anteriores.valida()) {
+						break;
+					}
+					inicio = anteriores.chave();
+				}
+				return inicio == null ? primeira(tamanho) : paginaAPartirDe(inicio, true, tamanho);
+			}
+			@Override
+			public Pagina irPara(String inicioDoNome, Pagina atual, int tamanho) {
+				// A menor chave possível para o texto informado é a que possui a menor sequência.
+				Pagina pagina = paginaAPartirDe(new Chave(chaveDeOrdenacao(inicioDoNome), Long.MIN_VALUE), true, tamanho);
+				return pagina.getRegistros().isEmpty() ? null : pagina;
+			}
+			@Override
+			public Pagina aPartirDoMarcador(String marcador, int tamanho) {
+				return paginaAPartirDe(Chave.deMarcador(marcador), false, tamanho);
+			}
+		};
+	}
+
+	private Pagina paginaAPartirDe(Chave inicio, boolean incluirInicio, int tamanho) {
+		Posicao posicao = new Posicao(trechos, quantidadeDeTrechos, inicio, incluirInicio);
+		List<Pessoa> registros = new ArrayList<>(tamanho);
+		Chave primeira = null;
+		Chave ultima = null;
+		boolean temAnterior = false;
+		while (registros.size() < tamanho && posicao.valida()) {
+			if (primeira == null) {
+				primeira = posicao.chave();
+				Posicao anterior = posicao.copia();
+				anterior.voltar();
+				temAnterior = anterior.valida();
+			}
+			ultima = posicao.chave();
+			registros.add(posicao.registro());
+			posicao.avancar();
+		}
+		return new Pagina(registros, primeira, ultima, temAnterior, posicao.valida());
+	}
+
+	@Override
+	public void registroAdicionado(Pessoa pessoa) {
+		Chave chave = new Chave(chaveDeOrdenacao(pessoa.getNome()), sequencia++);
+		inserir(chave, pessoa);
+		chaves.put(pessoa, chave);
+	}
+	@Override
+	public void registrosCarregados(List<Pessoa> registros) {
+		// Com o índice vazio (na carga do snapshot), as chaves de todos os registros são ordenadas de uma só vez,
+		// e os trechos são preenchidos em sequência, em vez de cada registro ser inserido no seu trecho. Os
+		// trechos ficam com 3/4 da capacidade, para que as próximas inclusões não os dividam logo em seguida.
+		if (quantidade > 0 || ordensCongeladas.get() > 0) {
+			ObservadorDoCadastro.super.registrosCarregados(registros);
+			return;
+		}
+		long primeiraSequencia = sequencia;
+		Chave[] ordenadas = new Chave[registros.size()];
+		for (int i = 0; i < ordenadas.length; i++) {
+			Pessoa pessoa = registros.get(i);
+			ordenadas[i] = new Chave(chaveDeOrdenacao(pessoa.getNome()), sequencia++);
+			chaves.put(pessoa, ordenadas[i]);
+		}
+		Arrays.sort(ordenadas);
+		int porTrecho = TAMANHO_DO_TRECHO * 3 / 4;
+		quantidadeDeTrechos = 0;
+		trechos = new Trecho[Math.max(1, (ordenadas.length + porTrecho - 1) / porTrecho)];
+		for (int inicio = 0; inicio < ordenadas.length || quantidadeDeTrechos == 0; inicio += porTrecho) {
+			Trecho trecho = new Trecho(geracao);
+			trecho.tamanho = Math.min(porTrecho, ordenadas.length - inicio);
+			for (int i = 0; i < trecho.tamanho; i++) {
+				Chave chave = ordenadas[inicio + i];
+				trecho.chaves[i] = chave;
+				trecho.registros[i] = registros.get((int) (chave.sequencia - primeiraSequencia));
+			}
+			trechos[quantidadeDeTrechos++] = trecho;
+		}
+		quantidade = ordenadas.length;
+	}
+	@Override
+	public void registroRemovido(Pessoa pessoa) {
+		Chave chave = chaves.remove(pessoa);
+		if (chave != null) {
+			remover(chave);
+		}
+	}
+	@Override
+	public void registroSubstituido(Pessoa anterior, Pessoa novo) {
+		// A cópia editada ocupa o lugar do registro anterior no índice, com a mesma sequência, para que a ordem
+		// entre registros com o mesmo nome não mude a cada edição.
+		Chave chave = chaves.remove(anterior);
+		if (chave == null) {
+			registroAdicionado(novo);
+			return;
+		}
+		reposicionar(chave, anterior.getNome(), novo);
+	}
+	@Override
+	public void registroAlterado(Pessoa pessoa, Atributo atributo, Object valorAnterior, Object valorNovo) {
+		// Somente a alteração do nome muda a posição do registro na ordem alfabética.
+		if (atributo == Atributo.NOME) {
+			Chave chave = chaves.remove(pessoa);
+			if (chave == null) {
+				registroAdicionado(pessoa);
+				return;
+			}
+			reposicionar(chave, (String) valorAnterior, pessoa);
+		}
+	}
+
+	private void reposicionar(Chave chave, String nomeAnterior, Pessoa pessoa) {
+		// Se o nome não mudou, a chave continua a mesma e nada precisa ser normalizado; se mudou apenas em algo
+		// que a chave de ordenação ignora (maiúsculas ou acentos), a posição também não muda. Nos dois casos, o
+		// registro apenas ocupa a entrada já existente.
+		Chave novaChave = chave;
+		if (!Objects.equals(pessoa.getNome(), nomeAnterior)) {
+			String chaveDoNome = chaveDeOrdenacao(pessoa.getNome());
+			if (!chaveDoNome.equals(chave.nome)) {
+				novaChave = new Chave(chaveDoNome, chave.sequencia);
+			}
+		}
+		if (novaChave == chave) {
+			int indiceDoTrecho = trechoDaChave(trechos, quantidadeDeTrechos, chave);
+			Trecho trecho = paraModificar(indiceDoTrecho);
+			trecho.registros[trecho.procurar(chave)] = pessoa;
+		} else {
+			remover(chave);
+			inserir(novaChave, pessoa);
+		}
+		chaves.put(pessoa, novaChave);
+	}
+
+	private void inserir(Chave chave, Pessoa pessoa) {
+		int indiceDoTrecho = trechoDaChave(trechos, quantidadeDeTrechos, chave);
+		Trecho trecho = paraModificar(indiceDoTrecho);
+		int posicao = -trecho.procurar(chave) - 1;
+		System.arraycopy(trecho.chaves, posicao, trecho.chaves, posicao + 1, trecho.tamanho - posicao);
+		System.arraycopy(trecho.registros, posicao, trecho.registros, posicao + 1, trecho.tamanho - posicao);
+		trecho.chaves[posicao] = chave;
+		trecho.registros[posicao] = pessoa;
+		trecho.tamanho++;
+		quantidade++;
+		if (trecho.tamanho == TAMANHO_DO_TRECHO) {
+			// O trecho cheio é dividido em dois: a metade final passa para um novo trecho, logo depois dele.
+			int metade = TAMANHO_DO_TRECHO / 2;
+			Trecho novo = new Trecho(geracao);
+			novo.tamanho = TAMANHO_DO_TRECHO - metade;
+			System.arraycopy(trecho.chaves, metade, novo.chaves, 0, novo.tamanho);
+			System.arraycopy(trecho.registros, metade, novo.registros, 0, novo.tamanho);
+			Arrays.fill(trecho.chaves, metade, TAMANHO_DO_TRECHO, null);
+			Arrays.fill(trecho.registros, metade, TAMANHO_DO_TRECHO, null);
+			trecho.tamanho = metade;
+			inserirTrecho(indiceDoTrecho + 1, novo);
+		}
+	}
+
+	private void remover(Chave chave) {
+		int indiceDoTrecho = trechoDaChave(trechos, quantidadeDeTrechos, chave);
+		Trecho trecho = paraModificar(indiceDoTrecho);
+		int posicao = trecho.procurar(chave);
+		trecho.tamanho--;
+		System.arraycopy(trecho.chaves, posicao + 1, trecho.chaves, posicao, trecho.tamanho - posicao);
+		System.arraycopy(trecho.registros, posicao + 1, trecho.registros, posicao, trecho.tamanho - posicao);
+		trecho.chaves[trecho.tamanho] = null;
+		trecho.registros[trecho.tamanho] = null;
+		quantidade--;
+		if (trecho.tamanho == 0 && quantidadeDeTrechos > 1) {
+			removerTrecho(indiceDoTrecho);
+		} else if (trecho.tamanho < TAMANHO_DO_TRECHO / 4 && indiceDoTrecho + 1 < quantidadeDeTrechos
+				&& trecho.tamanho + trechos[indiceDoTrecho + 1].tamanho <= TAMANHO_DO_TRECHO / 2) {
+			// Um trecho quase vazio recebe as chaves do trecho seguinte, para que a ordem não fique espalhada em
+			// muitos trechos pequenos depois de muitas remoções.
+			Trecho seguinte = trechos[indiceDoTrecho + 1];
+			System.arraycopy(seguinte.chaves, 0, trecho.chaves, trecho.tamanho, seguinte.tamanho);
+			System.arraycopy(seguinte.registros, 0, trecho.registros, trecho.tamanho, seguinte.tamanho);
+			trecho.tamanho += seguinte.tamanho;
+			removerTrecho(indiceDoTrecho + 1);
+		}
+	}
+
+	private Trecho paraModificar(int indiceDoTrecho) {
+		// O trecho que será modificado, copiado antes caso ele possa estar sendo usado por um instantâneo aberto.
+		Trecho trecho = trechos[indiceDoTrecho];
+		if (trecho.geracao != geracao && ordensCongeladas.get() > 0) {
+			trecho = new Trecho(trecho.chaves.clone(), trecho.registros.clone(), trecho.tamanho, geracao);
+			trechos[indiceDoTrecho] = trecho;
+		}
+		return trecho;
+	}
+	private void inserirTrecho(int indiceDoTrecho, Trecho trecho) {
+		if (quantidadeDeTrechos == trechos.length) {
+			trechos = Arrays.copyOf(trechos, trechos.length * 2);
+		}
+		System.arraycopy(trechos, indiceDoTrecho, trechos, indiceDoTrecho + 1, quantidadeDeTrechos - indiceDoTrecho);
+		trechos[indiceDoTrecho] = trecho;
+		quantidadeDeTrechos++;
+	}
+	private void removerTrecho(int indiceDoTrecho) {
+		quantidadeDeTrechos--;
+		System.arraycopy(trechos, indiceDoTrecho + 1, trechos, indiceDoTrecho, quantidadeDeTrechos - indiceDoTrecho);
+		trechos[quantidadeDeTrechos] = null;
+	}
+
+	private static int trechoDaChave(Trecho[] trechos, int quantidadeDeTrechos, Chave chave) {
+		// O primeiro trecho cuja última chave é maior ou igual à chave informada (ou o último trecho), por busca
+		// binária. Somente o último trecho pode estar vazio, quando o índice está vazio.
+		int inicio = 0;
+		int fim = quantidadeDeTrechos - 1;
+		while (inicio < fim) {
+			int meio = (inicio + fim) >>> 1;
+			Trecho trecho = trechos[meio];
+			if (trecho.chaves[trecho.tamanho - 1].compareTo(chave) < 0) {
+				inicio = meio + 1;
+			} else {
+				fim = meio;
+			}
+		}
+		return inicio;
+	}
+
+	// Um trecho da ordem alfabética: as chaves em ordem, e o registro de cada chave na mesma posição.
+	private static final class Trecho {
+		private final Chave[] chaves;
+		private final Pessoa[] registros;
+		private final long geracao;
+		private int tamanho;
+
+		Trecho(long geracao) {
+			this(new Chave[TAMANHO_DO_TRECHO], new Pessoa[TAMANHO_DO_TRECHO], 0, geracao);
+		}
+		Trecho(Chave[] chaves, Pessoa[] registros, int tamanho, long geracao) {
+			this.chaves = chaves;
+			this.registros = registros;
+			this.tamanho = tamanho;
+			this.geracao = geracao;
+		}
+		// A posição da chave no trecho, ou -(posição onde ela seria inserida + 1) caso ela não esteja no trecho.
+		int procurar(Chave chave) {
+			return Arrays.binarySearch(chaves, 0, tamanho, chave);
+		}
+	}
+
+	// Uma posição na ordem alfabética (um trecho e uma posição dentro dele), que avança e volta de registro em
+	// registro. Fica inválida ao passar do último registro ou ao voltar antes do primeiro.
+	private static final class Posicao {
+		private final Trecho[] trechos;
+		private final int quantidadeDeTrechos;
+		private int trecho;
+		private int indice;
+
+		// A posição da primeira chave maior (ou igual, caso "incluir" seja true) à chave informada, ou a posição
+		// do primeiro registro caso a chave seja null.
+		Posicao(Trecho[] trechos, int quantidadeDeTrechos, Chave chave, boolean incluir) {
+			this.trechos = trechos;
+			this.quantidadeDeTrechos = quantidadeDeTrechos;
+			if (chave != null) {
+				trecho = trechoDaChave(trechos, quantidadeDeTrechos, chave);
+				int encontrada = trechos[trecho].procurar(chave);
+				indice = encontrada >= 0 ? (incluir ? encontrada : encontrada + 1) : -encontrada - 1;
+				if (indice == trechos[trecho].tamanho && trecho + 1 < quantidadeDeTrechos) {
+					trecho++;
+					indice = 0;
+				}
+			}
+		}
+		private Posicao(Posicao outra) {
+			trechos = outra.trechos;
+			quantidadeDeTrechos = outra.quantidadeDeTrechos;
+			trecho = outra.trecho;
+			indice = outra.indice;
+		}
+		Posicao copia() {
+			return new Posicao(this);
+		}
+		boolean valida() {
+			return trecho >= 0 && indice < trechos[trecho].tamanho;
+		}
+		Chave chave() {
+			return trechos[trecho].chaves[indice];
+		}
+		Pessoa registro() {
+			return trechos[trecho].registros[indice];
+		}
+		void avancar() {
+			indice++;
+			if (indice == trechos[trecho].tamanho && trecho + 1 < quantidadeDeTrechos) {
+				trecho++;
+				indice = 0;
+			}
+		}
+		void voltar() {
+			if (indice > 0) {
+				indice--;
+			} else if (trecho > 0) {
+				trecho--;
+				indice = trechos[trecho].tamanho - 1;
+			} else {
+				trecho = -1;
+			}
+		}
+	}
+
+	// Os registros de um vetor de trechos, em ordem alfabética: a ordem atual do índice (listar) ou uma ordem
+	// congelada para um instantâneo (congelarOrdem). A coleção não pode ser modificada.
+	private static final class Ordem extends AbstractCollection<Pessoa> {
+		private final Trecho[] trechos;
+		private final int quantidadeDeTrechos;
+		private final int quantidade;
+
+		Ordem(Trecho[] trechos, int quantidadeDeTrechos, int quantidade) {
+			this.trechos = trechos;
+			this.quantidadeDeTrechos = quantidadeDeTrechos;
+			this.quantidade = quantidade;
+		}
+		@Override
+		public int size() {
+			return quantidade;
+		}
+		@Override
+		public Iterator<Pessoa> iterator() {
+			Posicao posicao = new Posicao(trechos, quantidadeDeTrechos, null, true);
+			return new Iterator<Pessoa>() {
+				@Override
+				public boolean hasNext() {
+					return posicao.valida();
+				}
+				@Override
+				public Pessoa next() {
+					if (!hasNext()) {
+						throw new NoSuchElementException();
+					}
+					Pessoa pessoa = posicao.registro();
+					posicao.avancar();
+					return pessoa;
+				}
+			};
+		}
+	}
+
+	// A chave de ordenação é formada pela chave de ordenação do nome e pela sequência de entrada no índice,
+	// para que registros com o mesmo nome possam coexistir no índice.
+	private static final class Chave implements Comparable<Chave> {
+		private final String nome;
+		private final long sequencia;
+
+		Chave(String nome, long sequencia) {
+			this.nome = nome;
+			this.sequencia = sequencia;
+		}
+		@Override
+		public int compareTo(Chave outra) {
+			int comparacao = nome.compareTo(outra.nome);
+			return comparacao != 0 ? comparacao : Long.compare(sequencia, outra.sequencia);
+		}
+		// A forma textual da chave (usada como marcador de página) é a sequência seguida da chave do nome.
+		@Override
+		public String toString() {
+			return sequencia + ":" + nome;
+		}
+		static Chave deMarcador(String marcador) {
+			int separador = marcador.indexOf(':');
+			try {
+				return new Chave(marcador.substring(separador + 1), Long.parseLong(marcador.substring(0, separador)));
+			} catch (RuntimeException e) {
+				throw new IllegalArgumentException("Marcador de página inválido: \"" + marcador + "\".");
+			}
+		}
+	}
+}
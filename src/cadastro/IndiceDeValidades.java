@@ -0,0 +1,100 @@
+package cadastro;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import entidades.Atributo;
+import entidades.Condutor;
+import entidades.Pessoa;
+
+public class IndiceDeValidades implements ObservadorDoCadastro {
+	// Este índice mantém os condutores em ordem de data de validade da CNH. Com ele, a busca das carteiras que
+	// vencem em um período (por exemplo, para o envio dos avisos de renovação) ou que já venceram percorre
+	// apenas os condutores encontrados, e não o cadastro inteiro.
+	// A data é guardada como o número de dias desde 01/01/1970 (toEpochDay), que é mais barato de comparar do
+	// que um LocalDate. Assim como no índice de nomes, o índice é atualizado a cada inclusão, remoção e
+	// alteração, e cidadãos não-habilitados não fazem parte dele.
+	private final TreeMap<Chave, Condutor> condutoresPorValidade = new TreeMap<>();
+	private final Map<Pessoa, Chave> chaves = new IdentityHashMap<>();
+	// Condutores com a mesma data de validade são mantidos na ordem em que entraram no índice.
+	private long sequencia;
+
+	public Collection<Condutor> validadeEntre(LocalDate inicio, LocalDate fim) {
+		// Os condutores cuja CNH vence entre as duas datas (incluindo as duas), em ordem de data de validade.
+		// A coleção é uma visão do índice, e não uma cópia: ela é percorrida à medida que é lida, e não pode ser
+		// modificada. Por isso ela só deve ser percorrida enquanto o cadastro não estiver sendo modificado.
+		if (fim.isBefore(inicio)) {
+			return Collections.emptyList();
+		}
+		return Collections.unmodifiableCollection(condutoresPorValidade.subMap(new Chave(inicio.toEpochDay(), Long.MIN_VALUE), true,
+				new Chave(fim.toEpochDay(), Long.MAX_VALUE), true).values());
+	}
+
+	public Collection<Condutor> vencidasEm(LocalDate data) {
+		// Os condutores cuja CNH já estava vencida na data informada (validade anterior à data).
+		return Collections.unmodifiableCollection(
+				condutoresPorValidade.headMap(new Chave(data.toEpochDay(), Long.MIN_VALUE), false).values());
+	}
+
+	public int quantidade() {
+		return condutoresPorValidade.size();
+	}
+
+	@Override
+	public void registroAdicionado(Pessoa pessoa) {
+		indexar(pessoa);
+	}
+	@Override
+	public void registroRemovido(Pessoa pessoa) {
+		desindexar(pessoa);
+	}
+	@Override
+	public void registroSubstituido(Pessoa anterior, Pessoa novo) {
+		desindexar(anterior);
+		indexar(novo);
+	}
+	@Override
+	public void registroAlterado(Pessoa pessoa, Atributo atributo, Object valorAnterior, Object valorNovo) {
+		// A data de validade só muda quando a data de emissão é alterada (e recalculada pelo Condutor).
+		if (atributo == Atributo.DATA_DE_EMISSAO) {
+			desindexar(pessoa);
+			indexar(pessoa);
+		}
+	}
+
+	private void indexar(Pessoa pessoa) {
+		if (pessoa instanceof Condutor && ((Condutor) pessoa).getDataDeValidade() != null) {
+			Condutor condutor = (Condutor) pessoa;
+			Chave chave = new Chave(condutor.getDataDeValidade().toEpochDay(), sequencia++);
+			condutoresPorValidade.put(chave, condutor);
+			chaves.put(condutor, chave);
+		}
+	}
+	private void desindexar(Pessoa pessoa) {
+		Chave chave = chaves.remove(pessoa);
+		if (chave != null) {
+			condutoresPorValidade.remove(chave);
+		}
+	}
+
+	// A chave do TreeMap é formada pela data de validade e pela sequência de entrada no índice, para que vários
+	// condutores possam ter a mesma data de validade.
+	private static final class Chave implements Comparable<Chave> {
+		private final long dia;
+		private final long sequencia;
+
+		Chave(long dia, long sequencia) {
+			this.dia = dia;
+			this.sequencia = sequencia;
+		}
+		@Override
+		public int compareTo(Chave outra) {
+			int comparacao = Long.compare(dia, outra.dia);
+			return comparacao != 0 ? comparacao : Long.compare(sequencia, outra.sequencia);
+		}
+	}
+}
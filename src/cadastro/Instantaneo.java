@@ -0,0 +1,100 @@
+package cadastro;
+
+import java.time.LocalDate;
+import java.util.AbstractCollection;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import entidades.Pessoa;
+
+public class Instantaneo extends AbstractCollection<Pessoa> implements AutoCloseable {
+	// Um instantâneo (snapshot) dos registros do cadastro: os registros exatamente como estavam no momento em que
+	// o instantâneo foi criado, na ordem de cadastro. Depois de criado, o instantâneo pode ser percorrido sem
+	// nenhum bloqueio, por quanto tempo for necessário (por exemplo, para exportar milhões de registros), enquanto
+	// os atendentes continuam incluindo, editando e removendo registros normalmente. As modificações feitas depois
+	// da criação não aparecem no instantâneo.
+	// Isso é possível porque os registros publicados no cadastro nunca são alterados (as edições são feitas em
+	// cópias, veja ServicoDeCadastro), e porque a lista de registros não modifica os blocos usados por um
+	// instantâneo aberto (veja ListaDeRegistros).
+	// O instantâneo também guarda a ordem alfabética do índice de nomes no mesmo momento, compartilhada da mesma
+	// forma (veja IndiceDeNomes).
+	// O instantâneo deve ser fechado depois de usado (de preferência com try-with-resources): enquanto houver
+	// instantâneos abertos, cada modificação da lista copia o bloco modificado, e cada modificação do índice de
+	// nomes copia o trecho modificado.
+	private static final int BITS_DO_BLOCO = 10;
+
+	private final Pessoa[][] blocos;
+	private final int posicoes;
+	private final int quantidade;
+	private final Collection<Pessoa> ordemAlfabetica;
+	private final Runnable aoFechar;
+	private boolean fechado;
+
+	Instantaneo(Pessoa[][] blocos, int posicoes, int quantidade, Collection<Pessoa> ordemAlfabetica, Runnable aoFechar) {
+		this.blocos = blocos;
+		this.posicoes = posicoes;
+		this.quantidade = quantidade;
+		this.ordemAlfabetica = ordemAlfabetica;
+		this.aoFechar = aoFechar;
+	}
+
+	@Override
+	public int size() {
+		return quantidade;
+	}
+
+	int posicoes() {
+		return posicoes;
+	}
+	Pessoa naPosicao(int posicao) {
+		return blocos[posicao >>> BITS_DO_BLOCO][posicao & ((1 << BITS_DO_BLOCO) - 1)];
+	}
+
+	@Override
+	public Iterator<Pessoa> iterator() {
+		return new Iterator<Pessoa>() {
+			private int posicao = proxima(0);
+
+			@Override
+			public boolean hasNext() {
+				return posicao < posicoes;
+			}
+			@Override
+			public Pessoa next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				Pessoa pessoa = naPosicao(posicao);
+				posicao = proxima(posicao + 1);
+				return pessoa;
+			}
+		};
+	}
+	private int proxima(int posicao) {
+		while (posicao < posicoes && naPosicao(posicao) == null) {
+			posicao++;
+		}
+		return posicao;
+	}
+
+	public Collection<Pessoa> emOrdemAlfabetica() {
+		// Os registros do instantâneo em ordem alfabética de nome, percorridos diretamente na ordem do índice de
+		// nomes guardada no instantâneo: nenhum nome é normalizado e nada é ordenado. Registros com o mesmo nome
+		// ficam na ordem em que entraram no índice. A coleção não pode ser modificada.
+		return ordemAlfabetica;
+	}
+
+	// Os números do cadastro no momento do instantâneo (veja Estatisticas).
+	public Estatisticas estatisticas() {
+		return Estatisticas.calcular(this, LocalDate.now());
+	}
+
+	@Override
+	public void close() {
+		if (!fechado) {
+			fechado = true;
+			aoFechar.run();
+		}
+	}
+}
@@ -0,0 +1,241 @@
+package cadastro;
+
+import java.util.AbstractCollection;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import entidades.Pessoa;
+
+class ListaDeRegistros extends AbstractCollection<Pessoa> {
+	// Os registros do cadastro, na ordem de cadastro. Ao contrário do ArrayList.remove, que desloca todos os
+	// registros seguintes (e torna a remoção de muitos registros, como a dos cidadãos falecidos, quadrática),
+	// a remoção apenas marca a posição do registro como vazia (uma "lápide"), em tempo constante: a posição de
+	// cada registro é guardada em um mapa.
+	// As posições vazias são recuperadas pela compactação, que desloca os registros para o início do vetor
+	// mantendo a ordem de cadastro. A compactação é feita em passos curtos (veja o CompactadorDeRegistros),
+	// e entre dois passos a lista continua sendo usada normalmente. Durante a compactação, o vetor fica dividido
+	// em três trechos: [0, escrita) já compactado, [escrita, leitura) vazio e [leitura, posicoes) ainda não
+	// percorrido (onde também entram os novos registros).
+	// Cada registro recebe um número de sequência crescente na inclusão, que não muda com a compactação. As
+	// páginas da listagem na ordem de cadastro usam esse número como cursor, e não a posição no vetor.
+	//
+	// O vetor de registros é dividido em blocos de 1024 posições, para que a lista possa fornecer instantâneos
+	// (veja a classe Instantaneo): um instantâneo guarda apenas uma cópia do vetor de blocos, e os blocos passam
+	// a ser compartilhados entre a lista e o instantâneo. Enquanto houver algum instantâneo aberto, a lista não
+	// modifica um bloco compartilhado, mas sim uma cópia dele (cópia na escrita), feita no máximo uma vez por
+	// bloco e por instantâneo. Os blocos antigos e as versões antigas dos registros, que só são usados pelos
+	// instantâneos, são recolhidos pelo coletor de lixo quando os instantâneos deixam de ser usados.
+	private static final int BITS_DO_BLOCO = 10;
+	private static final int TAMANHO_DO_BLOCO = 1 << BITS_DO_BLOCO;
+
+	private Pessoa[][] blocos = new Pessoa[1][TAMANHO_DO_BLOCO];
+	// A geração em que cada bloco foi criado. Cada novo instantâneo inicia uma nova geração, e os blocos de
+	// gerações anteriores podem estar sendo usados por um instantâneo.
+	private long[] geracaoDoBloco = new long[1];
+	private long geracao;
+	private final AtomicInteger instantaneosAbertos = new AtomicInteger();
+	private long[] sequencias = new long[TAMANHO_DO_BLOCO];
+	// Quantidade de posições ocupadas do vetor (registros e lápides) e quantidade de registros.
+	private int posicoes;
+	private int quantidade;
+	private long proximaSequencia;
+	private final Map<Pessoa, Integer> posicaoDoRegistro = new IdentityHashMap<>();
+	// Compactação em andamento: a próxima posição a ser preenchida e a próxima a ser percorrida (-1 e 0 quando
+	// não há compactação em andamento).
+	private int escrita = -1;
+	private int leitura;
+
+	void adicionar(Pessoa pessoa) {
+		if (posicoes == sequencias.length) {
+			sequencias = Arrays.copyOf(sequencias, sequencias.length * 2);
+		}
+		definir(posicoes, pessoa);
+		sequencias[posicoes] = proximaSequencia++;
+		posicaoDoRegistro.put(pessoa, posicoes++);
+		quantidade++;
+	}
+
+	void remover(Pessoa pessoa) {
+		Integer posicao = posicaoDoRegistro.remove(pessoa);
+		if (posicao != null) {
+			definir(posicao, null);
+			quantidade--;
+		}
+	}
+
+	// O novo registro ocupa a posição (e o número de sequência) do registro atual.
+	void substituir(Pessoa atual, Pessoa novo) {
+		Integer posicao = posicaoDoRegistro.remove(atual);
+		definir(posicao, novo);
+		posicaoDoRegistro.put(novo, posicao);
+	}
+
+	@Override
+	public int size() {
+		return quantidade;
+	}
+
+	int posicoes() {
+		return posicoes;
+	}
+	// O registro da posição, ou null caso a posição esteja vazia.
+	Pessoa naPosicao(int posicao) {
+		return blocos[posicao >>> BITS_DO_BLOCO][posicao & (TAMANHO_DO_BLOCO - 1)];
+	}
+	long sequenciaNaPosicao(int posicao) {
+		return sequencias[posicao];
+	}
+	// O número de sequência do registro, ou -1 caso ele não esteja na lista.
+	long sequenciaDoRegistro(Pessoa pessoa) {
+		Integer posicao = posicaoDoRegistro.get(pessoa);
+		return posicao == null ? -1 : sequencias[posicao];
+	}
+
+	// A primeira posição ocupada (por um registro ou por uma lápide) cujo número de sequência é maior ou igual
+	// ao informado, ou "posicoes" caso não exista. As sequências crescem ao longo do vetor, exceto no trecho
+	// vazio de uma compactação em andamento, que é pulado.
+	int posicaoDaSequencia(long sequencia) {
+		if (escrita >= 0) {
+			int posicao = procurar(0, escrita, sequencia);
+			return posicao < escrita ? posicao : procurar(leitura, posicoes, sequencia);
+		}
+		return procurar(0, posicoes, sequencia);
+	}
+	private int procurar(int inicio, int fim, long sequencia) {
+		while (inicio < fim) {
+			int meio = (inicio + fim) >>> 1;
+			if (sequencias[meio] < sequencia) {
+				inicio = meio + 1;
+			} else {
+				fim = meio;
+			}
+		}
+		return inicio;
+	}
+
+	// A fração das posições do vetor que está vazia.
+	double fragmentacao() {
+		return posicoes == 0 ? 0 : (double) (posicoes - quantidade) / posicoes;
+	}
+	boolean emCompactacao() {
+		return escrita >= 0;
+	}
+
+	boolean compactar(int maximoDePosicoes) {
+		// Um passo da compactação: percorre no máximo "maximoDePosicoes" posições, deslocando os registros
+		// encontrados para o fim do trecho compactado. Retorna true caso a compactação ainda não tenha terminado.
+		if (escrita < 0) {
+			escrita = 0;
+			leitura = 0;
+		}
+		int fim = Math.min(posicoes, leitura + maximoDePosicoes);
+		for (; leitura < fim; leitura++) {
+			Pessoa pessoa = naPosicao(leitura);
+			if (pessoa == null) {
+				continue;
+			}
+			if (escrita != leitura) {
+				definir(escrita, pessoa);
+				sequencias[escrita] = sequencias[leitura];
+				definir(leitura, null);
+				posicaoDoRegistro.put(pessoa, escrita);
+			}
+			escrita++;
+		}
+		if (leitura < posicoes) {
+			return true;
+		}
+		posicoes = escrita;
+		escrita = -1;
+		leitura = 0;
+		// O vetor também é reduzido quando ficou muito maior do que o necessário.
+		if (sequencias.length > TAMANHO_DO_BLOCO && sequencias.length > 4 * posicoes) {
+			int capacidade = Math.max(TAMANHO_DO_BLOCO, 2 * posicoes);
+			sequencias = Arrays.copyOf(sequencias, capacidade);
+			int quantidadeDeBlocos = (posicoes + TAMANHO_DO_BLOCO - 1) >>> BITS_DO_BLOCO;
+			blocos = Arrays.copyOf(blocos, Math.max(1, quantidadeDeBlocos));
+			geracaoDoBloco = Arrays.copyOf(geracaoDoBloco, blocos.length);
+		}
+		return false;
+	}
+
+	private void definir(int posicao, Pessoa pessoa) {
+		// Escreve em uma posição do vetor de blocos, criando o bloco caso ele ainda não exista, ou copiando-o caso
+		// ele possa estar sendo usado por um instantâneo aberto.
+		int indice = posicao >>> BITS_DO_BLOCO;
+		if (indice == blocos.length) {
+			blocos = Arrays.copyOf(blocos, blocos.length * 2);
+			geracaoDoBloco = Arrays.copyOf(geracaoDoBloco, blocos.length);
+		}
+		Pessoa[] bloco = blocos[indice];
+		if (bloco == null) {
+			bloco = new Pessoa[TAMANHO_DO_BLOCO];
+			blocos[indice] = bloco;
+			geracaoDoBloco[indice] = geracao;
+		} else if (geracaoDoBloco[indice] != geracao && instantaneosAbertos.get() > 0) {
+			bloco = bloco.clone();
+			blocos[indice] = bloco;
+			geracaoDoBloco[indice] = geracao;
+		}
+		bloco[posicao & (TAMANHO_DO_BLOCO - 1)] = pessoa;
+	}
+
+	synchronized Instantaneo instantaneo(IndiceDeNomes indiceDeNomes) {
+		// Um instantâneo dos registros atuais, junto com a ordem alfabética do índice de nomes no mesmo momento.
+		// Deve ser chamado com o bloqueio de leitura do serviço (que impede modificações na lista e no índice); o
+		// "synchronized" impede que dois instantâneos sejam criados ao mesmo tempo. Custa apenas a cópia do vetor
+		// de blocos e do vetor de trechos do índice, e não dos registros.
+		int quantidadeDeBlocos = (posicoes + TAMANHO_DO_BLOCO - 1) >>> BITS_DO_BLOCO;
+		Pessoa[][] copia = Arrays.copyOf(blocos, quantidadeDeBlocos);
+		geracao++;
+		instantaneosAbertos.incrementAndGet();
+		Collection<Pessoa> ordemAlfabetica = indiceDeNomes.congelarOrdem();
+		return new Instantaneo(copia, posicoes, quantidade, ordemAlfabetica, () -> {
+			instantaneosAbertos.decrementAndGet();
+			indiceDeNomes.liberarOrdem();
+		});
+	}
+
+	@Override
+	public Iterator<Pessoa> iterator() {
+		// Percorre os registros na ordem de cadastro, pulando as posições vazias. A lista não pode ser modificada
+		// enquanto é percorrida.
+		return new Iterator<Pessoa>() {
+			private int posicao = proximaOcupada(0);
+
+			@Override
+			public boolean hasNext() {
+				return posicao < posicoes;
+			}
+			@Override
+			public Pessoa next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				Pessoa pessoa = naPosicao(posicao);
+				posicao = proximaOcupada(posicao + 1);
+				return pessoa;
+			}
+		};
+	}
+	// A primeira posição com um registro a partir da posição informada, ou "posicoes" caso não exista.
+	int proximaOcupada(int posicao) {
+		while (posicao < posicoes && naPosicao(posicao) == null) {
+			posicao++;
+		}
+		return posicao;
+	}
+	// A última posição com um registro antes da posição informada, ou -1 caso não exista.
+	int anteriorOcupada(int posicao) {
+		posicao--;
+		while (posicao >= 0 && naPosicao(posicao) == null) {
+			posicao--;
+		}
+		return posicao;
+	}
+}
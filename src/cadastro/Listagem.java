@@ -0,0 +1,18 @@
+package cadastro;
+
+public interface Listagem {
+	// Uma listagem permite percorrer os registros do cadastro página por página. Cada página é obtida a partir
+	// dos cursores da página atual, portanto o custo de avançar ou voltar uma página depende apenas do tamanho
+	// da página, e não da posição da página na listagem.
+	Pagina primeira(int tamanho);
+	Pagina proxima(Pagina atual, int tamanho);
+	Pagina anterior(Pagina atual, int tamanho);
+	// Retorna a página que começa no primeiro registro (a partir da página atual, ou do início caso a página
+	// atual seja null) cujo nome começa com o texto informado, ignorando letras maiúsculas e acentos. Retorna
+	// null caso nenhum registro seja encontrado.
+	Pagina irPara(String inicioDoNome, Pagina atual, int tamanho);
+	// Retorna a página seguinte à página que terminou no marcador informado (veja Pagina.getMarcadorFinal).
+	// O marcador é um texto, e permite continuar uma listagem sem guardar o objeto da página (por exemplo, entre
+	// duas requisições ao servidor HTTP).
+	Pagina aPartirDoMarcador(String marcador, int tamanho);
+}
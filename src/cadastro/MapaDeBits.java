@@ -0,0 +1,410 @@
+package cadastro;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+public class MapaDeBits {
+	// Conjunto de números inteiros não-negativos, guardado de forma compacta (no estilo dos "roaring bitmaps").
+	// Os números são divididos em blocos de 65536 números, identificados pelos 16 bits mais altos. Cada bloco
+	// guarda os 16 bits mais baixos dos seus números de uma de duas formas:
+	// - um vetor ordenado de char, enquanto o bloco tiver até 4096 números (2 bytes por número);
+	// - um mapa de 65536 bits (8 KB), quando o bloco tiver mais números do que isso.
+	// Assim, tanto conjuntos esparsos (por exemplo, a categoria E) quanto conjuntos densos (por exemplo, todos
+	// os condutores habilitados) ocupam pouca memória, e a interseção (e) e a união (ou) de dois conjuntos são
+	// feitas bloco a bloco, 64 números por operação nos blocos de bits.
+	private static final int LIMITE_DO_VETOR = 4096;
+
+	// Os 16 bits mais altos de cada bloco, em ordem crescente, e os blocos correspondentes.
+	private char[] chaves;
+	private Bloco[] blocos;
+	private int quantidadeDeBlocos;
+
+	public MapaDeBits() {
+		chaves = new char[4];
+		blocos = new Bloco[4];
+	}
+
+	public void adicionar(int numero) {
+		char chave = (char) (numero >>> 16);
+		int i = procurarBloco(chave);
+		if (i < 0) {
+			i = -i - 1;
+			inserirBloco(i, chave, new BlocoDeVetor());
+		}
+		blocos[i] = blocos[i].adicionar((char) numero);
+	}
+
+	public void remover(int numero) {
+		int i = procurarBloco((char) (numero >>> 16));
+		if (i >= 0) {
+			blocos[i] = blocos[i].remover((char) numero);
+			if (blocos[i].quantidade() == 0) {
+				removerBloco(i);
+			}
+		}
+	}
+
+	public boolean contem(int numero) {
+		int i = procurarBloco((char) (numero >>> 16));
+		return i >= 0 && blocos[i].contem((char) numero);
+	}
+
+	public void adicionarTodos(MapaDeBits outro) {
+		// União feita neste próprio conjunto, sem criar um conjunto novo a cada união (por exemplo, ao unir os
+		// conjuntos de vários anos de nascimento).
+		for (int j = 0; j < outro.quantidadeDeBlocos; j++) {
+			int i = procurarBloco(outro.chaves[j]);
+			if (i < 0) {
+				inserirBloco(-i - 1, outro.chaves[j], outro.blocos[j].copiar());
+			} else {
+				blocos[i] = blocos[i].ou(outro.blocos[j]);
+			}
+		}
+	}
+
+	public int quantidade() {
+		int quantidade = 0;
+		for (int i = 0; i < quantidadeDeBlocos; i++) {
+			quantidade += blocos[i].quantidade();
+		}
+		return quantidade;
+	}
+
+	public MapaDeBits e(MapaDeBits outro) {
+		// Interseção: somente os blocos presentes nos dois conjuntos são combinados.
+		MapaDeBits resultado = new MapaDeBits();
+		int i = 0;
+		int j = 0;
+		while (i < quantidadeDeBlocos && j < outro.quantidadeDeBlocos) {
+			if (chaves[i] < outro.chaves[j]) {
+				i++;
+			} else if (chaves[i] > outro.chaves[j]) {
+				j++;
+			} else {
+				Bloco bloco = blocos[i].e(outro.blocos[j]);
+				if (bloco.quantidade() > 0) {
+					resultado.inserirBloco(resultado.quantidadeDeBlocos, chaves[i], bloco);
+				}
+				i++;
+				j++;
+			}
+		}
+		return resultado;
+	}
+
+	public MapaDeBits ou(MapaDeBits outro) {
+		// União: os blocos presentes em apenas um dos conjuntos são copiados.
+		MapaDeBits resultado = new MapaDeBits();
+		int i = 0;
+		int j = 0;
+		while (i < quantidadeDeBlocos || j < outro.quantidadeDeBlocos) {
+			if (j >= outro.quantidadeDeBlocos || (i < quantidadeDeBlocos && chaves[i] < outro.chaves[j])) {
+				resultado.inserirBloco(resultado.quantidadeDeBlocos, chaves[i], blocos[i].copiar());
+				i++;
+			} else if (i >= quantidadeDeBlocos || chaves[i] > outro.chaves[j]) {
+				resultado.inserirBloco(resultado.quantidadeDeBlocos, outro.chaves[j], outro.blocos[j].copiar());
+				j++;
+			} else {
+				resultado.inserirBloco(resultado.quantidadeDeBlocos, chaves[i], blocos[i].ou(outro.blocos[j]));
+				i++;
+				j++;
+			}
+		}
+		return resultado;
+	}
+
+	public MapaDeBits menos(MapaDeBits outro) {
+		// Diferença: os números deste conjunto que não estão no outro.
+		MapaDeBits resultado = new MapaDeBits();
+		int j = 0;
+		for (int i = 0; i < quantidadeDeBlocos; i++) {
+			while (j < outro.quantidadeDeBlocos && outro.chaves[j] < chaves[i]) {
+				j++;
+			}
+			Bloco bloco = j < outro.quantidadeDeBlocos && outro.chaves[j] == chaves[i]
+					? blocos[i].menos(outro.blocos[j]) : blocos[i].copiar();
+			if (bloco.quantidade() > 0) {
+				resultado.inserirBloco(resultado.quantidadeDeBlocos, chaves[i], bloco);
+			}
+		}
+		return resultado;
+	}
+
+	public PrimitiveIterator.OfInt iterador() {
+		// Percorre os números do conjunto em ordem crescente, sem criar nenhum vetor intermediário.
+		return new PrimitiveIterator.OfInt() {
+			private int bloco = 0;
+			private int proximoNoBloco = quantidadeDeBlocos > 0 ? blocos[0].proximo(0) : -1;
+
+			@Override
+			public boolean hasNext() {
+				while (proximoNoBloco < 0 && bloco < quantidadeDeBlocos - 1) {
+					bloco++;
+					proximoNoBloco = blocos[bloco].proximo(0);
+				}
+				return proximoNoBloco >= 0;
+			}
+			@Override
+			public int nextInt() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				int numero = chaves[bloco] << 16 | proximoNoBloco;
+				proximoNoBloco = proximoNoBloco < 0xFFFF ? blocos[bloco].proximo(proximoNoBloco + 1) : -1;
+				return numero;
+			}
+		};
+	}
+
+	public long bytesOcupados() {
+		long bytes = 2L * chaves.length + 8L * blocos.length;
+		for (int i = 0; i < quantidadeDeBlocos; i++) {
+			bytes += blocos[i].bytesOcupados();
+		}
+		return bytes;
+	}
+
+	private int procurarBloco(char chave) {
+		return Arrays.binarySearch(chaves, 0, quantidadeDeBlocos, chave);
+	}
+	private void inserirBloco(int i, char chave, Bloco bloco) {
+		if (quantidadeDeBlocos == chaves.length) {
+			chaves = Arrays.copyOf(chaves, chaves.length * 2);
+			blocos = Arrays.copyOf(blocos, blocos.length * 2);
+		}
+		System.arraycopy(chaves, i, chaves, i + 1, quantidadeDeBlocos - i);
+		System.arraycopy(blocos, i, blocos, i + 1, quantidadeDeBlocos - i);
+		chaves[i] = chave;
+		blocos[i] = bloco;
+		quantidadeDeBlocos++;
+	}
+	private void removerBloco(int i) {
+		System.arraycopy(chaves, i + 1, chaves, i, quantidadeDeBlocos - i - 1);
+		System.arraycopy(blocos, i + 1, blocos, i, quantidadeDeBlocos - i - 1);
+		blocos[--quantidadeDeBlocos] = null;
+	}
+
+	// Um bloco guarda os 16 bits mais baixos dos números. As operações que modificam o bloco retornam o bloco
+	// que deve ocupar o seu lugar, pois um bloco de vetor muito grande é convertido em um bloco de bits, e
+	// vice-versa.
+	private abstract static class Bloco {
+		abstract Bloco adicionar(char valor);
+		abstract Bloco remover(char valor);
+		abstract boolean contem(char valor);
+		abstract int quantidade();
+		// Retorna o menor valor do bloco maior ou igual a "inicio", ou -1 caso não exista.
+		abstract int proximo(int inicio);
+		abstract Bloco copiar();
+		abstract long bytesOcupados();
+		abstract BlocoDeBits comoBits();
+
+		Bloco e(Bloco outro) {
+			if (this instanceof BlocoDeVetor) {
+				return ((BlocoDeVetor) this).filtrar(outro, true);
+			}
+			if (outro instanceof BlocoDeVetor) {
+				return ((BlocoDeVetor) outro).filtrar(this, true);
+			}
+			return ((BlocoDeBits) this).combinar((BlocoDeBits) outro, 0).compactar();
+		}
+		Bloco ou(Bloco outro) {
+			if (this instanceof BlocoDeVetor && outro instanceof BlocoDeVetor
+					&& quantidade() + outro.quantidade() <= LIMITE_DO_VETOR) {
+				return ((BlocoDeVetor) this).unir((BlocoDeVetor) outro);
+			}
+			return comoBits().combinar(outro.comoBits(), 1);
+		}
+		Bloco menos(Bloco outro) {
+			if (this instanceof BlocoDeVetor) {
+				return ((BlocoDeVetor) this).filtrar(outro, false);
+			}
+			return ((BlocoDeBits) this).combinar(outro.comoBits(), 2).compactar();
+		}
+	}
+
+	private static final class BlocoDeVetor extends Bloco {
+		private char[] valores = new char[4];
+		private int quantidade;
+
+		@Override
+		Bloco adicionar(char valor) {
+			int i = Arrays.binarySearch(valores, 0, quantidade, valor);
+			if (i >= 0) {
+				return this;
+			}
+			if (quantidade == LIMITE_DO_VETOR) {
+				return comoBits().adicionar(valor);
+			}
+			i = -i - 1;
+			if (quantidade == valores.length) {
+				valores = Arrays.copyOf(valores, Math.min(valores.length * 2, LIMITE_DO_VETOR));
+			}
+			System.arraycopy(valores, i, valores, i + 1, quantidade - i);
+			valores[i] = valor;
+			quantidade++;
+			return this;
+		}
+		@Override
+		Bloco remover(char valor) {
+			int i = Arrays.binarySearch(valores, 0, quantidade, valor);
+			if (i >= 0) {
+				System.arraycopy(valores, i + 1, valores, i, quantidade - i - 1);
+				quantidade--;
+			}
+			return this;
+		}
+		@Override
+		boolean contem(char valor) {
+			return Arrays.binarySearch(valores, 0, quantidade, valor) >= 0;
+		}
+		@Override
+		int quantidade() {
+			return quantidade;
+		}
+		@Override
+		int proximo(int inicio) {
+			int i = Arrays.binarySearch(valores, 0, quantidade, (char) inicio);
+			if (i < 0) {
+				i = -i - 1;
+			}
+			return i < quantidade ? valores[i] : -1;
+		}
+		@Override
+		Bloco copiar() {
+			BlocoDeVetor copia = new BlocoDeVetor();
+			copia.valores = Arrays.copyOf(valores, Math.max(quantidade, 4));
+			copia.quantidade = quantidade;
+			return copia;
+		}
+		@Override
+		long bytesOcupados() {
+			return 2L * valores.length;
+		}
+		@Override
+		BlocoDeBits comoBits() {
+			BlocoDeBits bits = new BlocoDeBits();
+			for (int i = 0; i < quantidade; i++) {
+				bits.adicionar(valores[i]);
+			}
+			return bits;
+		}
+
+		BlocoDeVetor filtrar(Bloco outro, boolean manterOsPresentes) {
+			// Os valores deste bloco que estão (ou não estão) no outro bloco. O resultado nunca é maior do que
+			// este bloco, portanto continua sendo um vetor.
+			BlocoDeVetor resultado = new BlocoDeVetor();
+			resultado.valores = new char[Math.max(quantidade, 4)];
+			for (int i = 0; i < quantidade; i++) {
+				if (outro.contem(valores[i]) == manterOsPresentes) {
+					resultado.valores[resultado.quantidade++] = valores[i];
+				}
+			}
+			return resultado;
+		}
+
+		BlocoDeVetor unir(BlocoDeVetor outro) {
+			BlocoDeVetor resultado = new BlocoDeVetor();
+			resultado.valores = new char[Math.max(quantidade + outro.quantidade, 4)];
+			int i = 0;
+			int j = 0;
+			while (i < quantidade || j < outro.quantidade) {
+				char valor;
+				if (j >= outro.quantidade || (i < quantidade && valores[i] < outro.valores[j])) {
+					valor = valores[i++];
+				} else if (i >= quantidade || valores[i] > outro.valores[j]) {
+					valor = outro.valores[j++];
+				} else {
+					valor = valores[i++];
+					j++;
+				}
+				resultado.valores[resultado.quantidade++] = valor;
+			}
+			return resultado;
+		}
+	}
+
+	private static final class BlocoDeBits extends Bloco {
+		private final long[] palavras = new long[1024];
+		private int quantidade;
+
+		@Override
+		Bloco adicionar(char valor) {
+			long bit = 1L << valor;
+			if ((palavras[valor >>> 6] & bit) == 0) {
+				palavras[valor >>> 6] |= bit;
+				quantidade++;
+			}
+			return this;
+		}
+		@Override
+		Bloco remover(char valor) {
+			long bit = 1L << valor;
+			if ((palavras[valor >>> 6] & bit) != 0) {
+				palavras[valor >>> 6] &= ~bit;
+				quantidade--;
+			}
+			return compactar();
+		}
+		@Override
+		boolean contem(char valor) {
+			return (palavras[valor >>> 6] & 1L << valor) != 0;
+		}
+		@Override
+		int quantidade() {
+			return quantidade;
+		}
+		@Override
+		int proximo(int inicio) {
+			int i = inicio >>> 6;
+			long palavra = palavras[i] & -1L << inicio;
+			while (palavra == 0) {
+				if (++i == palavras.length) {
+					return -1;
+				}
+				palavra = palavras[i];
+			}
+			return i * 64 + Long.numberOfTrailingZeros(palavra);
+		}
+		@Override
+		Bloco copiar() {
+			BlocoDeBits copia = new BlocoDeBits();
+			System.arraycopy(palavras, 0, copia.palavras, 0, palavras.length);
+			copia.quantidade = quantidade;
+			return copia;
+		}
+		@Override
+		long bytesOcupados() {
+			return 8L * palavras.length;
+		}
+		@Override
+		BlocoDeBits comoBits() {
+			return this;
+		}
+
+		BlocoDeBits combinar(BlocoDeBits outro, int operacao) {
+			// 0: interseção, 1: união, 2: diferença. A quantidade de bits é contada palavra por palavra.
+			BlocoDeBits resultado = new BlocoDeBits();
+			for (int i = 0; i < palavras.length; i++) {
+				long palavra = operacao == 0 ? palavras[i] & outro.palavras[i]
+						: operacao == 1 ? palavras[i] | outro.palavras[i] : palavras[i] & ~outro.palavras[i];
+				resultado.palavras[i] = palavra;
+				resultado.quantidade += Long.bitCount(palavra);
+			}
+			return resultado;
+		}
+
+		Bloco compactar() {
+			// Um bloco de bits com poucos números volta a ser um vetor.
+			if (quantidade > LIMITE_DO_VETOR / 2) {
+				return this;
+			}
+			BlocoDeVetor vetor = new BlocoDeVetor();
+			vetor.valores = new char[Math.max(quantidade, 4)];
+			for (int valor = proximo(0); valor >= 0; valor = valor < 0xFFFF ? proximo(valor + 1) : -1) {
+				vetor.valores[vetor.quantidade++] = (char) valor;
+			}
+			return vetor;
+		}
+	}
+}
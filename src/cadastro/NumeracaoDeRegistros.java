@@ -0,0 +1,74 @@
+package cadastro;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import entidades.Pessoa;
+
+class NumeracaoDeRegistros {
+	// Atribui a cada registro de um índice um número interno, pequeno e estável, que pode ser guardado em um
+	// MapaDeBits no lugar da referência ao registro. Os números dos registros removidos são reaproveitados,
+	// para que os números continuem pequenos e os conjuntos continuem compactos.
+	private Pessoa[] registros = new Pessoa[1024];
+	// O IdentityHashMap compara os objetos pela referência, e não pelo conteúdo.
+	private final Map<Pessoa, Integer> numeros = new IdentityHashMap<>();
+	private int[] numerosLivres = new int[16];
+	private int quantidadeDeNumerosLivres;
+	private int proximoNumero;
+
+	int numerar(Pessoa pessoa) {
+		int numero;
+		if (quantidadeDeNumerosLivres > 0) {
+			numero = numerosLivres[--quantidadeDeNumerosLivres];
+		} else {
+			if (proximoNumero == registros.length) {
+				registros = Arrays.copyOf(registros, registros.length * 2);
+			}
+			numero = proximoNumero++;
+		}
+		registros[numero] = pessoa;
+		numeros.put(pessoa, numero);
+		return numero;
+	}
+
+	// Retorna o número do registro, ou -1 caso o registro não tenha número.
+	int numero(Pessoa pessoa) {
+		Integer numero = numeros.get(pessoa);
+		return numero != null ? numero : -1;
+	}
+
+	// Libera o número do registro para ser reaproveitado, e o retorna (ou -1 caso o registro não tenha número).
+	int liberar(Pessoa pessoa) {
+		Integer numero = numeros.remove(pessoa);
+		if (numero == null) {
+			return -1;
+		}
+		registros[numero] = null;
+		if (quantidadeDeNumerosLivres == numerosLivres.length) {
+			numerosLivres = Arrays.copyOf(numerosLivres, numerosLivres.length * 2);
+		}
+		numerosLivres[quantidadeDeNumerosLivres++] = numero;
+		return numero;
+	}
+
+	// O novo registro fica com o número do anterior, que é retornado (ou -1 caso o anterior não tenha número).
+	int substituir(Pessoa anterior, Pessoa novo) {
+		Integer numero = numeros.remove(anterior);
+		if (numero == null) {
+			return -1;
+		}
+		registros[numero] = novo;
+		numeros.put(novo, numero);
+		return numero;
+	}
+
+	Pessoa registro(int numero) {
+		return registros[numero];
+	}
+
+	// Todos os números atribuídos até agora são menores do que este limite.
+	int limite() {
+		return proximoNumero;
+	}
+}
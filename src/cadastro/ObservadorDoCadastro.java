@@ -0,0 +1,30 @@
+package cadastro;
+
+import java.util.List;
+
+import entidades.Atributo;
+import entidades.Pessoa;
+
+public interface ObservadorDoCadastro {
+	// Um observador do cadastro é avisado de todas as modificações feitas nos registros: inclusões, remoções,
+	// substituições (quando um cidadão passa a ser condutor) e alterações de atributos feitas pelos setters.
+	// Os avisos só são enviados depois que o cadastro e os seus índices já foram atualizados.
+	// Todos os métodos possuem uma implementação vazia, para que cada observador implemente apenas os avisos
+	// que lhe interessam.
+	default void registroAdicionado(Pessoa pessoa) {
+	}
+	// Aviso da carga de vários registros de uma vez (veja Cadastro.carregar). Por padrão, equivale a um aviso de
+	// inclusão para cada registro, na ordem da lista; os índices que podem ser montados de uma só vez (por
+	// exemplo, ordenando todos os registros) sobrepõem este método.
+	default void registrosCarregados(List<Pessoa> registros) {
+		for (Pessoa pessoa : registros) {
+			registroAdicionado(pessoa);
+		}
+	}
+	default void registroRemovido(Pessoa pessoa) {
+	}
+	default void registroSubstituido(Pessoa anterior, Pessoa novo) {
+	}
+	default void registroAlterado(Pessoa pessoa, Atributo atributo, Object valorAnterior, Object valorNovo) {
+	}
+}
@@ -0,0 +1,40 @@
+package cadastro;
+
+import java.util.Collections;
+import java.util.List;
+
+import entidades.Pessoa;
+
+public class Pagina {
+	// Uma página de uma listagem: os registros da página e os cursores que marcam onde ela começa e termina.
+	// Os cursores só são usados pela listagem que criou a página, para obter a página anterior e a próxima sem
+	// precisar percorrer os registros desde o início.
+	private final List<Pessoa> registros;
+	final Object cursorInicial;
+	final Object cursorFinal;
+	private final boolean temAnterior;
+	private final boolean temProxima;
+
+	Pagina(List<Pessoa> registros, Object cursorInicial, Object cursorFinal, boolean temAnterior, boolean temProxima) {
+		this.registros = Collections.unmodifiableList(registros);
+		this.cursorInicial = cursorInicial;
+		this.cursorFinal = cursorFinal;
+		this.temAnterior = temAnterior;
+		this.temProxima = temProxima;
+	}
+
+	public List<Pessoa> getRegistros() {
+		return registros;
+	}
+	public boolean temAnterior() {
+		return temAnterior;
+	}
+	public boolean temProxima() {
+		return temProxima;
+	}
+	public String getMarcadorFinal() {
+		// A forma textual do cursor final, que pode ser passada a Listagem.aPartirDoMarcador para obter a
+		// próxima página. Retorna null caso a página esteja vazia.
+		return cursorFinal == null ? null : cursorFinal.toString();
+	}
+}
@@ -0,0 +1,321 @@
+package cadastro;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+import entidades.Condutor;
+import entidades.Pessoa;
+import metricas.MetricasDoCadastro;
+import metricas.MetricasDoCadastro.Operacao;
+
+public class ServicoDeCadastro {
+	// O serviço permite que vários atendentes (threads) usem o mesmo cadastro ao mesmo tempo. Todas as
+	// operações sobre o cadastro devem passar pelo serviço, que garante duas coisas:
+	// - As buscas por CPF e por número de registro não usam nenhum bloqueio: os índices do cadastro são
+	//   ConcurrentHashMaps, e os registros publicados no cadastro nunca são alterados (veja abaixo).
+	// - As edições são feitas em uma cópia do registro (cópia na escrita). A cópia, com todas as alterações já
+	//   aplicadas, ocupa o lugar do registro original de uma só vez. Assim, quem está lendo o registro nunca vê
+	//   um condutor alterado pela metade (por exemplo, com a nova data de emissão e a data de validade antiga).
+	//
+	// As modificações são feitas com um único bloqueio de escrita, para todo o cadastro: as escritas são
+	// serializadas, uma de cada vez. A edição inteira (a busca do registro, a cópia, a aplicação das alterações e
+	// a publicação) é feita com o bloqueio, portanto duas edições do mesmo CPF nunca partem do mesmo registro, e
+	// nenhuma delas se perde. Preparar a cópia custa pouco perto da publicação, e um bloqueio por CPF não
+	// permitiria nenhuma escrita em paralelo, já que todas as publicações passam pelo mesmo bloqueio de escrita.
+	// Durante a publicação, o cadastro atualiza os seus índices e avisa todos os seus observadores (índice de
+	// nomes, índice de validades, bitmaps, busca por nome, diário de operações e fluxo de eventos), pois nenhum
+	// deles pode ser modificado por várias threads ao mesmo tempo; o tempo de cada publicação é a soma do tempo
+	// desses avisos. Por isso os observadores devem fazer apenas trabalho em memória (o diário apenas codifica a
+	// operação e a entrega à sua thread de gravação; o snapshot é gravado por outra thread).
+	// O ganho das várias threads está nas leituras, que não esperam umas pelas outras. As listagens usam o
+	// bloqueio de leitura, e podem ser feitas por várias threads ao mesmo tempo; as leituras longas percorrem um
+	// instantâneo do cadastro, que não bloqueia as modificações. A espera pela gravação no disco
+	// (Persistencia.sincronizar) deve ser feita fora do serviço, depois da operação, para que várias threads
+	// compartilhem a mesma gravação.
+	// O serviço também mede a quantidade, as falhas e o tempo de cada operação (veja MetricasDoCadastro).
+
+	// Uma leitura do cadastro feita com o bloqueio de leitura, que pode lançar uma exceção verificada.
+	@FunctionalInterface
+	public interface Leitura<T, E extends Exception> {
+		T ler(Cadastro cadastro) throws E;
+	}
+
+	private final Cadastro cadastro;
+	private final ReentrantReadWriteLock bloqueioDaEstrutura = new ReentrantReadWriteLock();
+	private final MetricasDoCadastro metricas;
+
+	public ServicoDeCadastro(Cadastro cadastro) {
+		this.cadastro = cadastro;
+		this.metricas = new MetricasDoCadastro(cadastro::quantidade);
+	}
+
+	public MetricasDoCadastro getMetricas() {
+		return metricas;
+	}
+
+	public Pessoa buscar(String cpf) {
+		long inicio = metricas.iniciar();
+		boolean sucesso = false;
+		try {
+			Pessoa pessoa = cadastro.buscar(cpf);
+			sucesso = true;
+			return pessoa;
+		} finally {
+			metricas.registrar(Operacao.BUSCA, inicio, sucesso);
+		}
+	}
+	public Condutor buscarPorNumeroDeRegistro(String numeroDeRegistro) {
+		long inicio = metricas.iniciar();
+		boolean sucesso = false;
+		try {
+			Condutor condutor = cadastro.buscarPorNumeroDeRegistro(numeroDeRegistro);
+			sucesso = true;
+			return condutor;
+		} finally {
+			metricas.registrar(Operacao.BUSCA, inicio, sucesso);
+		}
+	}
+
+	public void adicionar(Pessoa pessoa) {
+		// O registro adicionado passa a pertencer ao cadastro, e só deve ser alterado através do serviço.
+		long inicio = metricas.iniciar();
+		boolean sucesso = false;
+		try {
+			publicar(() -> cadastro.adicionar(pessoa));
+			sucesso = true;
+		} finally {
+			metricas.registrar(Operacao.INCLUSAO, inicio, sucesso);
+		}
+	}
+
+	public String[] adicionarTodos(List<Pessoa> registros) {
+		// Inclusão em lote (usada pela importação): todos os registros são publicados com uma única obtenção do
+		// bloqueio de escrita, em vez de uma por registro. Enquanto o lote é incluído, as demais modificações e as
+		// listagens esperam, portanto os lotes devem ter um tamanho limitado. A repetição de CPF ou de número de
+		// registro é verificada pelo próprio cadastro.
+		// Um registro rejeitado não interrompe o lote. Retorna a explicação de cada registro rejeitado, na mesma
+		// posição da lista, ou null para os registros incluídos. Cada registro é medido como uma inclusão.
+		String[] rejeicoes = new String[registros.size()];
+		publicar(() -> {
+			for (int i = 0; i < registros.size(); i++) {
+				long inicio = metricas.iniciar();
+				boolean sucesso = false;
+				try {
+					cadastro.adicionar(registros.get(i));
+					sucesso = true;
+				} catch (IllegalArgumentException e) {
+					rejeicoes[i] = e.getMessage();
+				} finally {
+					metricas.registrar(Operacao.INCLUSAO, inicio, sucesso);
+				}
+			}
+		});
+		return rejeicoes;
+	}
+
+	public Pessoa editar(String cpf, Consumer<Pessoa> alteracao) {
+		// Aplica as alterações em uma cópia do registro e coloca a cópia no lugar do registro, de uma só vez.
+		// Todas as alterações feitas pela função são aplicadas juntas, ou nenhuma é aplicada (caso a função ou o
+		// cadastro lancem uma exceção). O CPF não pode ser alterado pela função, mas sim através do novoCpf do
+		// método abaixo. Retorna o novo registro.
+		return editar(cpf, null, alteracao);
+	}
+
+	public Pessoa alterarCpf(String cpf, String novoCpf) {
+		return editar(cpf, novoCpf, pessoa -> { });
+	}
+
+	public Pessoa editar(String cpf, String novoCpf, Consumer<Pessoa> alteracao) {
+		// A mesma edição, que também pode trocar o CPF do registro (novoCpf null ou igual ao atual mantém o CPF).
+		// A troca de CPF e as demais alterações são aplicadas na mesma cópia e publicadas juntas, de uma só vez:
+		// ou o registro passa a ter o novo CPF com todas as alterações, ou nada muda.
+		long inicio = metricas.iniciar();
+		boolean sucesso = false;
+		try {
+			Pessoa[] editado = new Pessoa[1];
+			publicar(() -> {
+				Pessoa registro = encontrar(cpf);
+				Pessoa copia = registro.copiar();
+				alteracao.accept(copia);
+				if (!cpf.equals(copia.getCpf())) {
+					throw new IllegalArgumentException("O CPF só pode ser alterado através da edição do CPF.");
+				}
+				if (novoCpf != null) {
+					copia.setCpf(novoCpf);
+				}
+				editado[0] = cadastro.substituir(registro, copia);
+			});
+			sucesso = true;
+			return editado[0];
+		} finally {
+			metricas.registrar(Operacao.EDICAO, inicio, sucesso);
+		}
+	}
+
+	public Condutor habilitar(String cpf, String numeroDeRegistro, char categoria, LocalDate dataDeEmissao,
+			String tipoDeCarteira) {
+		long inicio = metricas.iniciar();
+		boolean sucesso = false;
+		try {
+			Condutor[] condutor = new Condutor[1];
+			publicar(() -> condutor[0] = cadastro.habilitar(cpf, numeroDeRegistro, categoria, dataDeEmissao, tipoDeCarteira));
+			sucesso = true;
+			return condutor[0];
+		} finally {
+			metricas.registrar(Operacao.EDICAO, inicio, sucesso);
+		}
+	}
+
+	public boolean remover(String cpf) {
+		long inicio = metricas.iniciar();
+		boolean sucesso = false;
+		try {
+			boolean[] removido = new boolean[1];
+			publicar(() -> removido[0] = cadastro.remover(cpf));
+			sucesso = true;
+			return removido[0];
+		} finally {
+			metricas.registrar(Operacao.REMOCAO, inicio, sucesso);
+		}
+	}
+
+	public int quantidade() {
+		return ler(Cadastro::quantidade);
+	}
+
+	public <T, E extends Exception> T ler(Leitura<T, E> leitura) throws E {
+		// Executa uma leitura que percorre o cadastro (uma listagem, uma exportação...) com o bloqueio de
+		// leitura. Enquanto a leitura não terminar, nenhuma modificação será publicada.
+		return ler(Operacao.OUTRAS_LEITURAS, leitura);
+	}
+
+	public Instantaneo instantaneo() {
+		// Um instantâneo dos registros atuais, obtido com o bloqueio de leitura por um intervalo curto. As
+		// leituras longas (listagens completas, exportações, relatórios) devem percorrer um instantâneo, e não
+		// usar ler(), para que as modificações não fiquem esperando até o fim da leitura.
+		return ler(Operacao.OUTRAS_LEITURAS, Cadastro::instantaneo);
+	}
+
+	public Listagem listagem() {
+		Listagem listagem = comBloqueioDeLeitura(cadastro.listagem(), Operacao.LISTAGEM);
+		// Na ordem de cadastro, a busca por nome percorre os registros um a um (veja Cadastro.buscaPorNome). Ela é
+		// feita em um instantâneo, sem o bloqueio de leitura, para que as modificações não fiquem esperando pela
+		// busca; o bloqueio é obtido apenas para iniciar a busca e para montar a página do registro encontrado.
+		return new Listagem() {
+			@Override
+			public Pagina primeira(int tamanho) {
+				return listagem.primeira(tamanho);
+			}
+			@Override
+			public Pagina proxima(Pagina atual, int tamanho) {
+				return listagem.proxima(atual, tamanho);
+			}
+			@Override
+			public Pagina anterior(Pagina atual, int tamanho) {
+				return listagem.anterior(atual, tamanho);
+			}
+			@Override
+			public Pagina irPara(String inicioDoNome, Pagina atual, int tamanho) {
+				try (Cadastro.BuscaPorNome busca = ler(Operacao.LISTAGEM,
+						cadastro -> cadastro.buscaPorNome(inicioDoNome, atual))) {
+					for (Pessoa pessoa = busca.proximo(); pessoa != null; pessoa = busca.proximo()) {
+						Pessoa encontrado = pessoa;
+						Pagina pagina = ler(Operacao.LISTAGEM, cadastro -> cadastro.paginaAPartirDoRegistro(encontrado, tamanho));
+						if (pagina != null) {
+							return pagina;
+						}
+					}
+					return null;
+				}
+			}
+			@Override
+			public Pagina aPartirDoMarcador(String marcador, int tamanho) {
+				return listagem.aPartirDoMarcador(marcador, tamanho);
+			}
+		};
+	}
+	public Listagem listagemAlfabetica() {
+		return comBloqueioDeLeitura(cadastro.listagemAlfabetica(), Operacao.LISTAGEM_ALFABETICA);
+	}
+
+	private <T, E extends Exception> T ler(Operacao operacao, Leitura<T, E> leitura) throws E {
+		long inicio = metricas.iniciar();
+		boolean sucesso = false;
+		bloqueioDaEstrutura.readLock().lock();
+		try {
+			T resultado = leitura.ler(cadastro);
+			sucesso = true;
+			return resultado;
+		} finally {
+			bloqueioDaEstrutura.readLock().unlock();
+			metricas.registrar(operacao, inicio, sucesso);
+		}
+	}
+
+	private Listagem comBloqueioDeLeitura(Listagem listagem, Operacao operacao) {
+		// Cada página é obtida com o bloqueio de leitura; entre uma página e outra, o cadastro pode ser modificado.
+		// O tempo de cada página é medido como uma operação de listagem.
+		return new Listagem() {
+			@Override
+			public Pagina primeira(int tamanho) {
+				return ler(operacao, cadastro -> listagem.primeira(tamanho));
+			}
+			@Override
+			public Pagina proxima(Pagina atual, int tamanho) {
+				return ler(operacao, cadastro -> listagem.proxima(atual, tamanho));
+			}
+			@Override
+			public Pagina anterior(Pagina atual, int tamanho) {
+				return ler(operacao, cadastro -> listagem.anterior(atual, tamanho));
+			}
+			@Override
+			public Pagina irPara(String inicioDoNome, Pagina atual, int tamanho) {
+				return ler(operacao, cadastro -> listagem.irPara(inicioDoNome, atual, tamanho));
+			}
+			@Override
+			public Pagina aPartirDoMarcador(String marcador, int tamanho) {
+				return ler(operacao, cadastro -> listagem.aPartirDoMarcador(marcador, tamanho));
+			}
+		};
+	}
+
+	boolean compactar(double fragmentacaoMaxima, int posicoesPorPasso) {
+		// Um passo da compactação da lista de registros (veja CompactadorDeRegistros), caso uma compactação esteja
+		// em andamento ou a fragmentação tenha passado do limite. Cada passo é feito com o bloqueio de escrita,
+		// mas percorre poucas posições, portanto as leituras e as modificações esperam no máximo um passo curto.
+		// Retorna true caso a compactação ainda não tenha terminado.
+		bloqueioDaEstrutura.readLock().lock();
+		try {
+			if (!cadastro.emCompactacao() && cadastro.fragmentacao() <= fragmentacaoMaxima) {
+				return false;
+			}
+		} finally {
+			bloqueioDaEstrutura.readLock().unlock();
+		}
+		bloqueioDaEstrutura.writeLock().lock();
+		try {
+			return cadastro.compactar(posicoesPorPasso);
+		} finally {
+			bloqueioDaEstrutura.writeLock().unlock();
+		}
+	}
+
+	private Pessoa encontrar(String cpf) {
+		Pessoa pessoa = cadastro.buscar(cpf);
+		if (pessoa == null) {
+			throw new IllegalArgumentException("O CPF " + cpf + " não foi encontrado no registro.");
+		}
+		return pessoa;
+	}
+
+	private void publicar(Runnable modificacao) {
+		bloqueioDaEstrutura.writeLock().lock();
+		try {
+			modificacao.run();
+		} finally {
+			bloqueioDaEstrutura.writeLock().unlock();
+		}
+	}
+}
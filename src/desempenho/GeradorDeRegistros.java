@@ -0,0 +1,55 @@
+package desempenho;
+
+import java.time.LocalDate;
+import java.util.SplittableRandom;
+
+import entidades.Condutor;
+import entidades.Pessoa;
+
+public class GeradorDeRegistros {
+	// Gera registros sintéticos para as medições de desempenho. A mesma semente gera sempre os mesmos registros,
+	// na mesma ordem, para que as medições feitas antes e depois de uma modificação sejam comparáveis.
+	// Os CPFs e os números de registro são obtidos a partir da posição do registro, multiplicada por um número
+	// primo (que não divide 10^11): assim eles parecem aleatórios, mas nunca se repetem, e o CPF do registro de
+	// qualquer posição pode ser calculado sem gerar os registros anteriores.
+	private static final long LIMITE = 100_000_000_000L;
+	private static final String[] NOMES = { "Maria", "José", "Ana", "João", "Antônio", "Francisca", "Carlos", "Paulo",
+			"Lúcia", "Júlia", "Pedro", "Luiz", "Marcos", "Adriana", "Juliana", "Márcia", "Fernanda", "Rafael" };
+	private static final String[] SOBRENOMES = { "Silva", "Santos", "Oliveira", "Souza", "Rodrigues", "Ferreira", "Alves",
+			"Pereira", "Lima", "Gomes", "Ribeiro", "Carvalho", "Conceição", "Araújo", "Martins", "Rocha" };
+	// As datas são geradas a partir de uma data fixa, e não da data atual, para que não mudem de um dia para o outro.
+	private static final LocalDate REFERENCIA = LocalDate.of(2024, 1, 1);
+
+	private final long semente;
+	private final SplittableRandom aleatorio;
+	private int posicao;
+
+	public GeradorDeRegistros(long semente) {
+		this.semente = semente;
+		this.aleatorio = new SplittableRandom(semente);
+	}
+
+	public String cpf(int posicao) {
+		return String.format("%011d", Math.floorMod(posicao * 7_919L + semente, LIMITE));
+	}
+	public String numeroDeRegistro(int posicao) {
+		return String.format("%011d", Math.floorMod(posicao * 104_729L + semente * 31, LIMITE));
+	}
+
+	// Próximo registro: três quartos são condutores, e os demais são cidadãos não-habilitados.
+	public Pessoa proximo() {
+		int atual = posicao++;
+		String nome = NOMES[aleatorio.nextInt(NOMES.length)] + " " + SOBRENOMES[aleatorio.nextInt(SOBRENOMES.length)]
+				+ " " + SOBRENOMES[aleatorio.nextInt(SOBRENOMES.length)];
+		LocalDate nascimento = REFERENCIA.minusDays(aleatorio.nextInt(18 * 365, 90 * 365));
+		if (aleatorio.nextInt(4) == 0) {
+			return new Pessoa(nome, cpf(atual), nascimento);
+		}
+		return new Condutor(nome, cpf(atual), nascimento, numeroDeRegistro(atual), "ABCDE".charAt(aleatorio.nextInt(5)),
+				REFERENCIA.minusDays(aleatorio.nextInt(10 * 365)), aleatorio.nextInt(5) == 0 ? "PPD" : "DEFINITIVA");
+	}
+
+	public int getPosicao() {
+		return posicao;
+	}
+}
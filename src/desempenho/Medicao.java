@@ -0,0 +1,111 @@
+package desempenho;
+
+import java.lang.management.ManagementFactory;
+
+public class Medicao {
+	// Mede o tempo e a memória alocada por uma operação, no estilo do JMH (que não faz parte deste projeto):
+	// - a operação é executada por um tempo de aquecimento, para que o compilador JIT já a tenha otimizado
+	//   quando a medição começar;
+	// - a medição é repetida em várias rodadas, e o resultado é a média das rodadas, com o desvio padrão;
+	// - o resultado de cada execução é "consumido", para que o JIT não elimine a operação como código inútil;
+	// - a memória alocada é obtida do contador de bytes alocados da própria thread (ThreadMXBean), e não da
+	//   memória livre do heap, que depende do coletor de lixo.
+
+	// Uma operação medida. O número da repetição permite variar os dados (por exemplo, o CPF procurado).
+	@FunctionalInterface
+	public interface Operacao {
+		Object executar(int repeticao) throws Exception;
+	}
+
+	// O resultado de uma medição.
+	public static final class Resultado {
+		private final double nanossegundosPorOperacao;
+		private final double desvioPadrao;
+		private final double bytesPorOperacao;
+		private final long operacoes;
+
+		Resultado(double nanossegundosPorOperacao, double desvioPadrao, double bytesPorOperacao, long operacoes) {
+			this.nanossegundosPorOperacao = nanossegundosPorOperacao;
+			this.desvioPadrao = desvioPadrao;
+			this.bytesPorOperacao = bytesPorOperacao;
+			this.operacoes = operacoes;
+		}
+		public double getNanossegundosPorOperacao() {
+			return nanossegundosPorOperacao;
+		}
+		public double getDesvioPadrao() {
+			return desvioPadrao;
+		}
+		public double getBytesPorOperacao() {
+			return bytesPorOperacao;
+		}
+		public long getOperacoes() {
+			return operacoes;
+		}
+	}
+
+	private static final com.sun.management.ThreadMXBean THREADS =
+			(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+	// O resultado de cada operação é guardado neste campo volatile, que o JIT não pode ignorar. Como o resultado
+	// "escapa" da operação, o JIT também não pode deixar de criar os objetos do resultado.
+	private static volatile Object consumidor;
+
+	private final long nanossegundosDeAquecimento;
+	private final long nanossegundosPorRodada;
+	private final int rodadas;
+
+	public Medicao(long milissegundosDeAquecimento, long milissegundosPorRodada, int rodadas) {
+		this.nanossegundosDeAquecimento = milissegundosDeAquecimento * 1_000_000;
+		this.nanossegundosPorRodada = milissegundosPorRodada * 1_000_000;
+		this.rodadas = rodadas;
+	}
+
+	public Resultado medir(Operacao operacao) throws Exception {
+		int repeticao = 0;
+		long fimDoAquecimento = System.nanoTime() + nanossegundosDeAquecimento;
+		do {
+			consumir(operacao.executar(repeticao++));
+		} while (System.nanoTime() < fimDoAquecimento);
+
+		double[] tempos = new double[rodadas];
+		long operacoes = 0;
+		long bytes = 0;
+		long thread = Thread.currentThread().getId();
+		for (int rodada = 0; rodada < rodadas; rodada++) {
+			// Cada rodada executa a operação até completar o tempo da rodada (pelo menos uma vez). O relógio só é
+			// consultado a cada grupo de execuções, para que a consulta não pese nas operações muito rápidas.
+			long bytesIniciais = THREADS.getThreadAllocatedBytes(thread);
+			long inicio = System.nanoTime();
+			long agora;
+			long execucoes = 0;
+			int grupo = 1;
+			do {
+				for (int i = 0; i < grupo; i++) {
+					consumir(operacao.executar(repeticao++));
+				}
+				execucoes += grupo;
+				agora = System.nanoTime();
+				if (grupo < 1 << 16 && agora - inicio < nanossegundosPorRodada / 16) {
+					grupo *= 2;
+				}
+			} while (agora - inicio < nanossegundosPorRodada);
+			bytes += THREADS.getThreadAllocatedBytes(thread) - bytesIniciais;
+			tempos[rodada] = (double) (agora - inicio) / execucoes;
+			operacoes += execucoes;
+		}
+
+		double media = 0;
+		for (double tempo : tempos) {
+			media += tempo / rodadas;
+		}
+		double variancia = 0;
+		for (double tempo : tempos) {
+			variancia += (tempo - media) * (tempo - media) / Math.max(rodadas - 1, 1);
+		}
+		return new Resultado(media, Math.sqrt(variancia), (double) bytes / operacoes, operacoes);
+	}
+
+	private static void consumir(Object resultado) {
+		consumidor = resultado;
+	}
+}
@@ -0,0 +1,102 @@
+package desempenho;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import aplicacao.Programa;
+import cadastro.Cadastro;
+import cadastro.ServicoDeCadastro;
+import entidades.Constantes;
+import entidades.Pessoa;
+
+public class MedicoesDeDesempenho {
+	// Mede o desempenho das operações principais do cadastro, com cadastros sintéticos de vários tamanhos, para
+	// que o efeito de cada modificação no código possa ser comparado com a medição anterior:
+	// - a busca por CPF do menu (buscaDeRegistro), com CPFs encontrados e não encontrados;
+	// - a inclusão e a remoção de registros (a remoção deixa uma posição vazia na lista, sem compactação);
+	// - a ordem alfabética da opção 6: a ordenação de uma cópia da lista comparando os nomes normalizados (como
+	//   era feito antes do índice de nomes) e a primeira página do índice de nomes;
+	// - a formatação dos registros: resumo(), completo() e Constantes.linhaDaTabela().
+	// Uso: java -p bin -m trabalho/desempenho.MedicoesDeDesempenho [tamanhos separados por vírgula]
+	// Os tamanhos padrão vão de 10^3 a 10^5 registros. Os cadastros de 10^6 e 10^7 registros precisam de um heap
+	// maior (por exemplo, -Xmx16g para 10^7).
+	private static final long SEMENTE = 42;
+	// A ordenação da cópia da lista é lenta demais acima deste tamanho, e não é medida.
+	private static final int TAMANHO_MAXIMO_DA_ORDENACAO = 1_000_000;
+
+	public static void main(String[] args) throws Exception {
+		String tamanhos = args.length > 0 ? args[0] : "1000,10000,100000";
+		Medicao medicao = new Medicao(500, 300, 5);
+		System.out.printf("%-48s %10s %14s %10s %12s%n", "Operação", "Registros", "ns/operação", "± desvio", "bytes/op.");
+		for (String texto : tamanhos.split(",")) {
+			int tamanho = Integer.parseInt(texto.trim());
+			medirCadastro(medicao, tamanho);
+		}
+	}
+
+	private static void medirCadastro(Medicao medicao, int tamanho) throws Exception {
+		GeradorDeRegistros gerador = new GeradorDeRegistros(SEMENTE);
+		Cadastro cadastro = new Cadastro();
+		for (int i = 0; i < tamanho; i++) {
+			cadastro.adicionar(gerador.proximo());
+		}
+		ServicoDeCadastro servico = new ServicoDeCadastro(cadastro);
+		Pessoa[] registros = cadastro.listar().toArray(new Pessoa[0]);
+
+		// Os dados de cada operação são preparados antes da medição: CPFs cadastrados, em ordem aleatória (mas
+		// sempre a mesma), CPFs que não existem no cadastro e registros novos para a inclusão.
+		String[] encontrados = new String[4096];
+		String[] naoEncontrados = new String[4096];
+		SplittableRandom aleatorio = new SplittableRandom(SEMENTE);
+		for (int i = 0; i < encontrados.length; i++) {
+			encontrados[i] = gerador.cpf(aleatorio.nextInt(tamanho));
+			naoEncontrados[i] = gerador.cpf(tamanho + 1024 + i);
+		}
+		Pessoa[] novos = new Pessoa[1024];
+		for (int i = 0; i < novos.length; i++) {
+			novos[i] = gerador.proximo();
+		}
+		int[] posicoes = new int[4096];
+		for (int i = 0; i < posicoes.length; i++) {
+			posicoes[i] = aleatorio.nextInt(tamanho);
+		}
+
+		imprimir("busca por CPF (encontrado)", tamanho,
+				medicao.medir(r -> Programa.buscaDeRegistro(encontrados[r & 4095], servico)));
+		imprimir("busca por CPF (não encontrado)", tamanho,
+				medicao.medir(r -> Programa.buscaDeRegistro(naoEncontrados[r & 4095], servico)));
+		imprimir("inclusão + remoção (registro novo)", tamanho, medicao.medir(r -> {
+			Pessoa novo = novos[r & 1023];
+			cadastro.adicionar(novo);
+			return cadastro.remover(novo.getCpf());
+		}));
+		imprimir("remoção + inclusão (registro existente)", tamanho, medicao.medir(r -> {
+			// O registro volta para o fim da lista, deixando uma posição vazia no lugar onde estava.
+			Pessoa existente = registros[posicoes[r & 4095]];
+			cadastro.remover(existente.getCpf());
+			cadastro.adicionar(existente);
+			return existente;
+		}));
+		if (tamanho <= TAMANHO_MAXIMO_DA_ORDENACAO) {
+			imprimir("ordem alfabética (cópia e ordenação da lista)", tamanho, medicao.medir(r -> {
+				List<Pessoa> copia = new ArrayList<>(Arrays.asList(registros));
+				copia.sort(Comparator.comparing(pessoa -> Normalizer.normalize(pessoa.getNome().toLowerCase(), Normalizer.Form.NFD)));
+				return copia;
+			}));
+		}
+		imprimir("ordem alfabética (1ª página do índice)", tamanho,
+				medicao.medir(r -> cadastro.listagemAlfabetica().primeira(20)));
+		imprimir("resumo()", tamanho, medicao.medir(r -> registros[posicoes[r & 4095]].resumo()));
+		imprimir("completo()", tamanho, medicao.medir(r -> registros[posicoes[r & 4095]].completo()));
+		imprimir("Constantes.linhaDaTabela()", tamanho, medicao.medir(r -> Constantes.linhaDaTabela()));
+	}
+
+	private static void imprimir(String operacao, int tamanho, Medicao.Resultado resultado) {
+		System.out.printf("%-48s %10d %14.1f %10.1f %12.1f%n", operacao, tamanho, resultado.getNanossegundosPorOperacao(),
+				resultado.getDesvioPadrao(), resultado.getBytesPorOperacao());
+	}
+}
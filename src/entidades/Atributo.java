@@ -0,0 +1,14 @@
+package entidades;
+
+public enum Atributo {
+	// Esta enumeração identifica cada um dos atributos editáveis dos registros. Ela é usada para informar
+	// ao observador de um registro (ver ObservadorDeAlteracoes) qual atributo foi modificado através dos setters.
+	// A data de validade não aparece aqui, pois ela não possui setter: é recalculada junto com a data de emissão.
+	NOME,
+	CPF,
+	DATA_DE_NASCIMENTO,
+	NUMERO_DE_REGISTRO,
+	CATEGORIA,
+	DATA_DE_EMISSAO,
+	TIPO_DE_CARTEIRA
+}
@@ -1,7 +1,7 @@
 package entidades;
 
+import java.io.IOException;
 import java.time.LocalDate;
-import java.time.format.DateTimeFormatter;
 import java.time.temporal.ChronoUnit;
 
 public class Condutor extends Pessoa {
@@ -33,27 +33,48 @@ public class Condutor extends Pessoa {
 		this.dataDeValidade = dataDeEmissao.plusYears(anosDeValidade());
 		this.tipoDeCarteira = tipoDeCarteira;
 	}
+	// Construtor usado na recuperação de registros gravados em disco. Como a data de validade depende da idade
+	// do condutor no momento da emissão, ela é gravada junto com o registro e restaurada sem ser recalculada.
+	public Condutor(String nome, String cpf, LocalDate dataDeNascimento, String numeroDeRegistro, char categoria,
+			LocalDate dataDeEmissao, LocalDate dataDeValidade, String tipoDeCarteira) {
+		super(nome, cpf, dataDeNascimento);
+		this.numeroDeRegistro = numeroDeRegistro;
+		this.categoria = categoria;
+		this.dataDeEmissao = dataDeEmissao;
+		this.dataDeValidade = dataDeValidade;
+		this.tipoDeCarteira = tipoDeCarteira;
+	}
 	
 	// Getters e Setters
 	public String getNumeroDeRegistro() {
 		return numeroDeRegistro;
 	}
 	public void setNumeroDeRegistro(String numeroDeRegistro) {
+		validarAlteracao(Atributo.NUMERO_DE_REGISTRO, numeroDeRegistro);
+		String numeroAnterior = this.numeroDeRegistro;
 		this.numeroDeRegistro = numeroDeRegistro;
+		notificarAlteracao(Atributo.NUMERO_DE_REGISTRO, numeroAnterior, numeroDeRegistro);
 	}
 	public char getCategoria() {
 		return categoria;
 	}
 	public void setCategoria(char categoria) {
+		validarAlteracao(Atributo.CATEGORIA, categoria);
+		char categoriaAnterior = this.categoria;
 		this.categoria = categoria;
+		notificarAlteracao(Atributo.CATEGORIA, categoriaAnterior, categoria);
 	}
 	public LocalDate getDataDeEmissao() {
 		return dataDeEmissao;
 	}
 	public void setDataDeEmissao(LocalDate dataDeEmissao) {
+		validarAlteracao(Atributo.DATA_DE_EMISSAO, dataDeEmissao);
+		LocalDate dataAnterior = this.dataDeEmissao;
 		this.dataDeEmissao = dataDeEmissao;
 		// A data de validade da carteira é 10, 5 ou 3 anos após a sua emissão.
 		this.dataDeValidade = dataDeEmissao.plusYears(anosDeValidade());
+		// O observador só é avisado depois que a data de validade também foi atualizada.
+		notificarAlteracao(Atributo.DATA_DE_EMISSAO, dataAnterior, dataDeEmissao);
 	}
 	// Data de validade possui apenas o getter, pois a sua modificação é feita de acordo com a data de emissão,
 	// portanto não deve ser modificável fora da classe.
@@ -64,14 +85,38 @@ public class Condutor extends Pessoa {
 		return tipoDeCarteira;
 	}
 	public void setTipoDeCarteira(String tipoDeCarteira) {
+		validarAlteracao(Atributo.TIPO_DE_CARTEIRA, tipoDeCarteira);
+		String tipoAnterior = this.tipoDeCarteira;
 		this.tipoDeCarteira = tipoDeCarteira;
+		notificarAlteracao(Atributo.TIPO_DE_CARTEIRA, tipoAnterior, tipoDeCarteira);
+	}
+	
+	@Override
+	public void alterarAtributo(Atributo atributo, Object valor) {
+		// O método foi sobreposto para incluir os atributos específicos da classe Condutor.
+		if (atributo == Atributo.NUMERO_DE_REGISTRO) {
+			setNumeroDeRegistro((String) valor);
+		} else if (atributo == Atributo.CATEGORIA) {
+			setCategoria((Character) valor);
+		} else if (atributo == Atributo.DATA_DE_EMISSAO) {
+			setDataDeEmissao((LocalDate) valor);
+		} else if (atributo == Atributo.TIPO_DE_CARTEIRA) {
+			setTipoDeCarteira((String) valor);
+		} else {
+			super.alterarAtributo(atributo, valor);
+		}
 	}
 	
 	// Este método vai calcular o número de anos relativo a data de validade da carteira. O método é privado, pois
 	// não deve ser acessível fora da classe.
 	private int anosDeValidade() {
+		return anosDeValidade(getDataDeNascimento());
+	}
+	// A regra de cálculo fica neste método estático, que é público para que os índices do cadastro (como o
+	// IndiceDeBitmaps) classifiquem os condutores exatamente da mesma forma.
+	public static int anosDeValidade(LocalDate dataDeNascimento) {
 		// ChronoUnit irá calcular a quantidade de anos entre a data de nascimento e a data atual.
-		long idade = ChronoUnit.YEARS.between(super.getDataDeNascimento(), LocalDate.now());
+		long idade = ChronoUnit.YEARS.between(dataDeNascimento, LocalDate.now());
 		if (idade < 50) {
 			// A data de validade será 10 anos após a emissão caso a idade do condutor seja menor que 50 anos.
 			return 10;
@@ -85,26 +130,32 @@ public class Condutor extends Pessoa {
 	}
 	
 	@Override
-	public String resumo() {
+	public Condutor copiar() {
+		// A data de validade é copiada, e não recalculada, assim como na recuperação dos registros gravados.
+		return new Condutor(getNome(), getCpf(), getDataDeNascimento(), getNumeroDeRegistro(), getCategoria(),
+				getDataDeEmissao(), getDataDeValidade(), getTipoDeCarteira());
+	}
+	
+	@Override
+	public void resumo(Appendable destino) throws IOException {
 		// O método foi sobreposto em relação ao método da classe pai.
 		
-		// Estas constantes serão utilizadas para auxiliar na formatação da tabelas com a listagem de objetos
-		// cadastrados. 
-		final int formatacaoNome = Constantes.formatacaoNome();
-		final int formatacaoCpf = Constantes.formatacaoCpf();
-		final int formatacaoRegistro = Constantes.formatacaoRegistro();
-		
-		// O método .resumo() vai retornar apenas 3 atributos: nome, CPF e o número da CNH.
-		// Os valores numéricos das constantes vão ajudar a completar as "células" da tabela com espaços vazios.
-		// O padrão do .format ao "completar" um string é posicionar o texto no lado direito.
-		// O sinal - em %-s vai posicionar o texto no lado esquerdo.
-		return String.format("| %-"+formatacaoNome+"s | %-"+formatacaoCpf+"s | %-"+formatacaoRegistro+"s |", super.getNome(), super.getCpf(), numeroDeRegistro);
+		// O método .resumo() vai escrever apenas 3 atributos: nome, CPF e o número da CNH.
+		Formatacao.linhaDaTabela(destino, getNome(), getCpf(), getNumeroDeRegistro());
 	}
 	@Override
-	public String completo() {
+	public void completo(Appendable destino) throws IOException {
 		// O método foi sobreposto em relação ao método da classe pai.
 		
-		// O método .completo() vai retornar todos os atributos relacionados ao  condutor habilitado.
-		return "NOME: " + super.getNome() + " | CPF: " + super.getCpf() + " | DATA DO NASCIMENTO: " + super.getDataDeNascimento().format(DateTimeFormatter.ofPattern("dd/MM/yyyy")) + "\nNÚMERO DE REGISTRO: " + numeroDeRegistro + " | CATEGORIA: " + categoria + " | DATA DE EMISSÃO: " + dataDeEmissao.format(DateTimeFormatter.ofPattern("dd/MM/yyyy"))  + " | DATA DE VALIDADE: " + dataDeValidade.format(DateTimeFormatter.ofPattern("dd/MM/yyyy")) + " | Tipo de carteira: " + tipoDeCarteira;
+		// O método .completo() vai escrever todos os atributos relacionados ao  condutor habilitado.
+		// Os atributos são obtidos através dos getters, pelo mesmo motivo explicado na classe Pessoa.
+		destino.append("NOME: ").append(getNome()).append(" | CPF: ").append(getCpf()).append(" | DATA DO NASCIMENTO: ");
+		Formatacao.data(destino, getDataDeNascimento());
+		destino.append("\nNÚMERO DE REGISTRO: ").append(getNumeroDeRegistro()).append(" | CATEGORIA: ").append(getCategoria())
+				.append(" | DATA DE EMISSÃO: ");
+		Formatacao.data(destino, getDataDeEmissao());
+		destino.append(" | DATA DE VALIDADE: ");
+		Formatacao.data(destino, getDataDeValidade());
+		destino.append(" | Tipo de carteira: ").append(getTipoDeCarteira());
 	}
 }
\ No newline at end of file
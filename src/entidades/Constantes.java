@@ -17,14 +17,10 @@ public class Constantes {
 		return 22;
 	}
 	// A String linhaDaTabela é usada para melhorar a estética da tabela. A quantidade de traços que serão
-	// utilizados depende das constantes definidas acima. O número 10 é um "ajuste manual", referente às
-	// barras verticais da tabela.
+	// utilizados depende das constantes definidas acima, mais 10 caracteres referentes às barras verticais da
+	// tabela. A linha é montada uma única vez, na classe Formatacao, e não a cada listagem.
 	public static String linhaDaTabela() {
-		String linha = "";
-		for (int i = 0; i < (formatacaoNome()+formatacaoCpf()+formatacaoRegistro()+10); i++) {
-			linha += "-";
-		}
-		return linha;
+		return Formatacao.linhaDaTabela();
 	}
 
 }
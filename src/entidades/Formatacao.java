@@ -0,0 +1,84 @@
+package entidades;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+
+public class Formatacao {
+	// Esta classe reúne o que é necessário para escrever os registros na tabela e na listagem completa.
+	// Tudo o que não depende do registro é preparado uma única vez: o formatador de datas, a linha horizontal,
+	// o cabeçalho da tabela e os espaços usados para completar as "células". Assim, escrever uma linha da
+	// tabela não exige montar nem interpretar um padrão do String.format, apenas copiar textos para o destino.
+	// O DateTimeFormatter não guarda estado e pode ser usado por várias threads ao mesmo tempo.
+	public static final DateTimeFormatter DATA = DateTimeFormatter.ofPattern("dd/MM/yyyy");
+
+	private static final String ESPACOS = " ".repeat(Math.max(Constantes.formatacaoNome(),
+			Math.max(Constantes.formatacaoCpf(), Constantes.formatacaoRegistro())));
+	private static final String LINHA_DA_TABELA = "-".repeat(Constantes.formatacaoNome() + Constantes.formatacaoCpf()
+			+ Constantes.formatacaoRegistro() + 10);
+	private static final String CABECALHO_DA_TABELA = linhaDaTabela("NOME", "CPF", "NÚMERO DE REGISTRO");
+
+	public static String linhaDaTabela() {
+		return LINHA_DA_TABELA;
+	}
+	public static String cabecalhoDaTabela() {
+		return CABECALHO_DA_TABELA;
+	}
+
+	public static void tabela(Appendable destino, Iterable<? extends Pessoa> registros) throws IOException {
+		// Escreve a tabela com 3 atributos dos registros: nome, CPF e número da CNH. A linha horizontal e o
+		// cabeçalho são montados uma única vez, e cada registro é escrito diretamente no destino, sem criar um
+		// String para cada linha.
+		final String quebraDeLinha = System.lineSeparator();
+		destino.append(LINHA_DA_TABELA).append(quebraDeLinha);
+		destino.append(CABECALHO_DA_TABELA).append(quebraDeLinha);
+		destino.append(LINHA_DA_TABELA).append(quebraDeLinha);
+		for (Pessoa pessoa : registros) {
+			pessoa.resumo(destino);
+			destino.append(quebraDeLinha);
+		}
+		destino.append(LINHA_DA_TABELA).append(quebraDeLinha);
+	}
+
+	public static void linhaDaTabela(Appendable destino, String nome, String cpf, String registro) throws IOException {
+		// Escreve uma linha da tabela, no mesmo formato que "| %-32s | %-11s | %-22s |" produziria: cada texto é
+		// posicionado no lado esquerdo da célula, e a célula é completada com espaços.
+		destino.append("| ");
+		celula(destino, nome, Constantes.formatacaoNome());
+		destino.append(" | ");
+		celula(destino, cpf, Constantes.formatacaoCpf());
+		destino.append(" | ");
+		celula(destino, registro, Constantes.formatacaoRegistro());
+		destino.append(" |");
+	}
+
+	public static void data(Appendable destino, LocalDate data) throws IOException {
+		// O formatador escreve a data diretamente no destino, sem criar um String intermediário.
+		if (data == null) {
+			destino.append("null");
+		} else {
+			DATA.formatTo(data, destino);
+		}
+	}
+
+	private static void celula(Appendable destino, String texto, int largura) throws IOException {
+		// Assim como no String.format, textos maiores que a célula não são cortados.
+		String valor = String.valueOf(texto);
+		destino.append(valor);
+		if (valor.length() < largura) {
+			destino.append(ESPACOS, 0, largura - valor.length());
+		}
+	}
+
+	private static String linhaDaTabela(String nome, String cpf, String registro) {
+		StringBuilder linha = new StringBuilder(LINHA_DA_TABELA.length());
+		try {
+			linhaDaTabela(linha, nome, cpf, registro);
+		} catch (IOException e) {
+			// O StringBuilder nunca lança IOException.
+			throw new UncheckedIOException(e);
+		}
+		return linha.toString();
+	}
+}
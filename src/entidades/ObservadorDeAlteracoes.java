@@ -0,0 +1,14 @@
+package entidades;
+
+public interface ObservadorDeAlteracoes {
+	// Um observador é avisado sempre que um setter de Pessoa ou de Condutor modifica um atributo. Desta forma,
+	// estruturas que dependem dos valores dos atributos (como os índices do cadastro) podem ser mantidas
+	// consistentes mesmo quando o registro é editado diretamente pelos setters.
+
+	// Este método é chamado ANTES da alteração. Caso o novo valor não seja aceitável (por exemplo, um CPF que
+	// já pertence a outro registro), o observador pode lançar uma exceção, e o atributo não será modificado.
+	void validarAlteracao(Pessoa pessoa, Atributo atributo, Object novoValor);
+
+	// Este método é chamado DEPOIS da alteração, informando o valor anterior e o valor novo do atributo.
+	void atributoAlterado(Pessoa pessoa, Atributo atributo, Object valorAnterior, Object valorNovo);
+}
@@ -1,7 +1,8 @@
 package entidades;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.time.LocalDate;
-import java.time.format.DateTimeFormatter;
 
 public class Pessoa {
 	// A classe Pessoa vai armazenar informações de cidadãos não-habilitados.
@@ -10,6 +11,9 @@ public class Pessoa {
 	private String nome;
 	private String cpf;
 	private LocalDate dataDeNascimento;
+	// O observador é avisado a cada alteração feita pelos setters. Ele é definido pelo cadastro no momento em
+	// que o registro é adicionado, e permanece nulo enquanto o objeto não pertencer a nenhum cadastro.
+	private ObservadorDeAlteracoes observador;
 	
 	// Construtor padrão para gerar objetos sem passar nenhum argumento.
 	public Pessoa() {
@@ -26,36 +30,103 @@ public class Pessoa {
 		return nome;
 	}
 	public void setNome(String nome) {
+		validarAlteracao(Atributo.NOME, nome);
+		String nomeAnterior = this.nome;
 		this.nome = nome;
+		notificarAlteracao(Atributo.NOME, nomeAnterior, nome);
 	}
 	public String getCpf() {
 		return cpf;
 	}
 	public void setCpf(String cpf) {
+		// Caso o novo CPF já pertença a outro registro, o observador vai lançar uma exceção aqui, e o CPF
+		// não será modificado.
+		validarAlteracao(Atributo.CPF, cpf);
+		String cpfAnterior = this.cpf;
 		this.cpf = cpf;
+		notificarAlteracao(Atributo.CPF, cpfAnterior, cpf);
 	}
 	public LocalDate getDataDeNascimento() {
 		return dataDeNascimento;
 	}
 	public void setDataDeNascimento(LocalDate dataDeNascimento) {
+		validarAlteracao(Atributo.DATA_DE_NASCIMENTO, dataDeNascimento);
+		LocalDate dataAnterior = this.dataDeNascimento;
 		this.dataDeNascimento = dataDeNascimento;
+		notificarAlteracao(Atributo.DATA_DE_NASCIMENTO, dataAnterior, dataDeNascimento);
+	}
+	public ObservadorDeAlteracoes getObservador() {
+		return observador;
+	}
+	public void setObservador(ObservadorDeAlteracoes observador) {
+		this.observador = observador;
+	}
+	
+	// Este método altera um atributo a partir da sua identificação na enumeração Atributo, usando o setter
+	// correspondente. Ele é útil quando a alteração não vem do menu, mas de um arquivo (por exemplo, na
+	// recuperação do cadastro gravado em disco).
+	public void alterarAtributo(Atributo atributo, Object valor) {
+		if (atributo == Atributo.NOME) {
+			setNome((String) valor);
+		} else if (atributo == Atributo.CPF) {
+			setCpf((String) valor);
+		} else if (atributo == Atributo.DATA_DE_NASCIMENTO) {
+			setDataDeNascimento((LocalDate) valor);
+		} else {
+			throw new IllegalArgumentException("O atributo " + atributo + " não pertence a cidadãos não-habilitados.");
+		}
+	}
+	
+	// Estes dois métodos repassam as alterações feitas pelos setters para o observador (caso exista). Eles são
+	// protegidos para que a subclasse Condutor também possa utilizá-los nos seus próprios setters.
+	protected void validarAlteracao(Atributo atributo, Object novoValor) {
+		if (observador != null) {
+			observador.validarAlteracao(this, atributo, novoValor);
+		}
+	}
+	protected void notificarAlteracao(Atributo atributo, Object valorAnterior, Object valorNovo) {
+		if (observador != null) {
+			observador.atributoAlterado(this, atributo, valorAnterior, valorNovo);
+		}
+	}
+	
+	public Pessoa copiar() {
+		// Retorna uma cópia do registro, que não pertence a nenhum cadastro (sem observador). A cópia pode ser
+		// alterada à vontade, sem afetar o registro original, e depois colocada no lugar dele.
+		return new Pessoa(getNome(), getCpf(), getDataDeNascimento());
 	}
 	
 	public String resumo() {
-		// Estas constantes serão utilizadas para auxiliar na formatação da tabelas com a listagem de objetos
-		// cadastrados.
-		final int formatacaoNome = Constantes.formatacaoNome();
-		final int formatacaoCpf = Constantes.formatacaoCpf();
-		final int formatacaoRegistro = Constantes.formatacaoRegistro();
-		
-		// O método .resumo() vai retornar apenas 2 atributos: nome e CPF, e também a informação de que o cidadão "não possui habilitação".
-		// Os valores numéricos das constantes vão ajudar a completar as "células" da tabela com espaços vazios.
-		// O padrão do .format ao "completar" um string é posicionar o texto no lado direito.
-		// O sinal - em %-s vai posicionar o texto no lado esquerdo.
-		return String.format("| %-"+formatacaoNome+"s | %-"+formatacaoCpf+"s | %-"+formatacaoRegistro+"s |", nome, cpf, "Não possui habilitação");
+		StringBuilder texto = new StringBuilder(Constantes.linhaDaTabela().length());
+		try {
+			resumo(texto);
+		} catch (IOException e) {
+			// O StringBuilder nunca lança IOException.
+			throw new UncheckedIOException(e);
+		}
+		return texto.toString();
+	}
+	public void resumo(Appendable destino) throws IOException {
+		// O método .resumo() vai escrever apenas 2 atributos: nome e CPF, e também a informação de que o cidadão "não possui habilitação".
+		// A linha é escrita diretamente no destino (um StringBuilder, um Writer...), com as "células" da tabela
+		// completadas com espaços pela classe Formatacao.
+		Formatacao.linhaDaTabela(destino, getNome(), getCpf(), "Não possui habilitação");
 	}
 	public String completo() {
-		// O método .completo() vai retornar todos os atributos relacionados ao cidadão não-habilitado.
-		return "NOME: " + nome + " | CPF: " + cpf + " | DATA DE NASCIMENTO: " + dataDeNascimento.format(DateTimeFormatter.ofPattern("dd/MM/yyyy")) + "\nNÃO POSSUI HABILITAÇÃO";
+		StringBuilder texto = new StringBuilder(128);
+		try {
+			completo(texto);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return texto.toString();
+	}
+	public void completo(Appendable destino) throws IOException {
+		// O método .completo() vai escrever todos os atributos relacionados ao cidadão não-habilitado.
+		// Os atributos são obtidos através dos getters, para que subclasses que guardam os dados de outra forma
+		// também possam usar este método.
+		destino.append("NOME: ").append(getNome()).append(" | CPF: ").append(getCpf()).append(" | DATA DE NASCIMENTO: ");
+		Formatacao.data(destino, getDataDeNascimento());
+		destino.append("\nNÃO POSSUI HABILITAÇÃO");
 	}
 }
\ No newline at end of file
@@ -0,0 +1,98 @@
+package entidades;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Map;
+import java.util.function.Consumer;
+
+public class Validacao {
+	// Regras de validação dos dados digitados no cadastro. As mesmas regras são usadas pelo menu do programa
+	// (que pede os dados novamente enquanto forem inválidos), pela importação de arquivos e pela execução de comandos
+	// (que rejeitam a linha) e pelo servidor HTTP (que rejeita a requisição).
+	// Os métodos lançam IllegalArgumentException, com a explicação do problema, quando o dado é inválido.
+
+	// O formatador permite datas no formato numérico dia/mes/ano ou dia-mes-ano, com dias e meses de 1 ou 2
+	// dígitos. Mas o ano deve possuir 4 dígitos. O DateTimeFormatter pode ser usado por várias threads.
+	private static final DateTimeFormatter FORMATO_DE_DATA = DateTimeFormatter.ofPattern("[d/M/yyyy][d-M-yyyy]");
+
+	public static LocalDate data(String texto) {
+		try {
+			return LocalDate.parse(texto.trim(), FORMATO_DE_DATA);
+		} catch (DateTimeParseException e) {
+			throw new IllegalArgumentException("Formato de data inválido: \"" + texto + "\".");
+		}
+	}
+
+	public static char categoria(String texto) {
+		// Os tipos de categoria válidos são A, B, C, D e E, com letras maiúsculas ou minúsculas.
+		String categoria = texto.trim().toUpperCase();
+		if (categoria.length() != 1 || "ABCDE".indexOf(categoria.charAt(0)) < 0) {
+			throw new IllegalArgumentException("Categoria de CNH inválida: \"" + texto + "\".");
+		}
+		return categoria.charAt(0);
+	}
+
+	public static String tipoDeCarteira(String texto) {
+		// Os tipos de CNH válidos são "DEFINITIVA" e "PPD", com letras maiúsculas ou minúsculas.
+		String tipoDeCarteira = texto.trim().toUpperCase();
+		if (!tipoDeCarteira.equals("PPD") && !tipoDeCarteira.equals("DEFINITIVA")) {
+			throw new IllegalArgumentException("Tipo de carteira inválido: \"" + texto + "\".");
+		}
+		return tipoDeCarteira;
+	}
+
+	public static String obrigatorio(String texto, String campo) {
+		// O nome, o CPF e o número de registro da CNH não podem ficar em branco.
+		if (texto == null || texto.isBlank()) {
+			throw new IllegalArgumentException("O campo " + campo + " não foi preenchido.");
+		}
+		return texto.trim();
+	}
+
+	public static Consumer<Pessoa> alteracao(Map<String, String> campos) {
+		// Monta a alteração de um registro a partir dos campos informados (com os nomes usados no JSON do servidor
+		// HTTP). Todos os valores são validados aqui, antes da edição, com as mesmas regras do menu. O CPF não faz
+		// parte da alteração: o novo CPF é informado à parte, na mesma edição (veja ServicoDeCadastro.editar).
+		Consumer<Pessoa> alteracao = pessoa -> { };
+		for (Map.Entry<String, String> campo : campos.entrySet()) {
+			String valor = campo.getValue();
+			switch (campo.getKey()) {
+			case "nome":
+				String nome = obrigatorio(valor, "nome");
+				alteracao = alteracao.andThen(pessoa -> pessoa.setNome(nome));
+				break;
+			case "dataDeNascimento":
+				LocalDate dataDeNascimento = data(obrigatorio(valor, "dataDeNascimento"));
+				alteracao = alteracao.andThen(pessoa -> pessoa.setDataDeNascimento(dataDeNascimento));
+				break;
+			case "numeroDeRegistro":
+				String numeroDeRegistro = obrigatorio(valor, "numeroDeRegistro");
+				alteracao = alteracao.andThen(pessoa -> condutor(pessoa).setNumeroDeRegistro(numeroDeRegistro));
+				break;
+			case "categoria":
+				char categoria = categoria(obrigatorio(valor, "categoria"));
+				alteracao = alteracao.andThen(pessoa -> condutor(pessoa).setCategoria(categoria));
+				break;
+			case "dataDeEmissao":
+				LocalDate dataDeEmissao = data(obrigatorio(valor, "dataDeEmissao"));
+				alteracao = alteracao.andThen(pessoa -> condutor(pessoa).setDataDeEmissao(dataDeEmissao));
+				break;
+			case "tipoDeCarteira":
+				String tipoDeCarteira = tipoDeCarteira(obrigatorio(valor, "tipoDeCarteira"));
+				alteracao = alteracao.andThen(pessoa -> condutor(pessoa).setTipoDeCarteira(tipoDeCarteira));
+				break;
+			default:
+				throw new IllegalArgumentException("O campo " + campo.getKey() + " não pode ser editado.");
+			}
+		}
+		return alteracao;
+	}
+
+	private static Condutor condutor(Pessoa pessoa) {
+		if (!(pessoa instanceof Condutor)) {
+			throw new IllegalArgumentException("O cidadão de CPF " + pessoa.getCpf() + " não possui habilitação.");
+		}
+		return (Condutor) pessoa;
+	}
+}
@@ -0,0 +1,9 @@
+package metricas;
+
+// Os números gerais do cadastro, publicados no JMX.
+public interface CadastroMXBean {
+	int getQuantidadeDeRegistros();
+	long getBytesPorRegistroEstimados();
+	// Os números de todas as operações, no mesmo formato texto da opção de métricas do menu.
+	String getRelatorio();
+}
@@ -0,0 +1,85 @@
+package metricas;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+public class HistogramaDeLatencia {
+	// Histograma dos tempos de uma operação, em nanossegundos, no estilo do HdrHistogram: os tempos não são
+	// guardados, apenas contados em faixas. As faixas crescem junto com os tempos: cada potência de 2 é dividida
+	// em 32 faixas iguais, portanto qualquer percentil é obtido com erro de no máximo 1/32 (cerca de 3%), tanto
+	// para tempos de microssegundos quanto de segundos, com um vetor de tamanho fixo.
+	// O registro de um tempo é apenas um incremento atômico em uma posição do vetor, sem bloqueios, e pode ser
+	// feito por várias threads ao mesmo tempo.
+	private static final int BITS_DA_SUBFAIXA = 5;
+	private static final int SUBFAIXAS = 1 << BITS_DA_SUBFAIXA;
+	private static final int QUANTIDADE_DE_FAIXAS = (64 - BITS_DA_SUBFAIXA) * SUBFAIXAS;
+
+	private final AtomicLongArray contagens = new AtomicLongArray(QUANTIDADE_DE_FAIXAS);
+	private final LongAdder quantidade = new LongAdder();
+	private final LongAdder soma = new LongAdder();
+	private final LongAccumulator maximo = new LongAccumulator(Math::max, 0);
+
+	public void registrar(long nanossegundos) {
+		long valor = Math.max(nanossegundos, 0);
+		contagens.incrementAndGet(faixa(valor));
+		quantidade.increment();
+		soma.add(valor);
+		maximo.accumulate(valor);
+	}
+
+	public long quantidade() {
+		return quantidade.sum();
+	}
+	public double media() {
+		long quantidade = quantidade();
+		return quantidade == 0 ? 0 : (double) soma.sum() / quantidade;
+	}
+	public long maximo() {
+		return maximo.get();
+	}
+
+	public long percentil(double percentil) {
+		// O maior tempo da faixa em que o percentil cai (nunca maior do que o maior tempo registrado). As
+		// contagens são lidas enquanto outras threads podem estar registrando, portanto o resultado é aproximado.
+		long total = 0;
+		long[] copia = new long[QUANTIDADE_DE_FAIXAS];
+		for (int i = 0; i < copia.length; i++) {
+			copia[i] = contagens.get(i);
+			total += copia[i];
+		}
+		if (total == 0) {
+			return 0;
+		}
+		long posicao = (long) Math.ceil(total * percentil / 100.0);
+		long acumulado = 0;
+		for (int i = 0; i < copia.length; i++) {
+			acumulado += copia[i];
+			if (acumulado >= Math.max(posicao, 1)) {
+				return Math.min(inicioDaFaixa(i + 1) - 1, maximo());
+			}
+		}
+		return maximo();
+	}
+
+	static int faixa(long valor) {
+		// Os valores menores do que 32 têm uma faixa cada. Acima disso, a faixa é dada pela potência de 2 do valor
+		// (o seu bit mais alto) e pelos 5 bits seguintes.
+		if (valor < SUBFAIXAS) {
+			return (int) valor;
+		}
+		int expoente = 63 - Long.numberOfLeadingZeros(valor);
+		int subfaixa = (int) (valor >>> (expoente - BITS_DA_SUBFAIXA)) & (SUBFAIXAS - 1);
+		return (expoente - BITS_DA_SUBFAIXA + 1) * SUBFAIXAS + subfaixa;
+	}
+	static long inicioDaFaixa(int faixa) {
+		if (faixa < SUBFAIXAS) {
+			return faixa;
+		}
+		int expoente = faixa / SUBFAIXAS + BITS_DA_SUBFAIXA - 1;
+		if (expoente >= 63) {
+			return Long.MAX_VALUE;
+		}
+		return (long) (SUBFAIXAS + faixa % SUBFAIXAS) << (expoente - BITS_DA_SUBFAIXA);
+	}
+}
@@ -0,0 +1,193 @@
+package metricas;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+public class MetricasDoCadastro {
+	// Mede quantas vezes cada operação do cadastro é executada, quantas falham e quanto tempo cada uma leva
+	// (com um histograma por operação, do qual são obtidos os percentis p50, p90, p99 e p99,9). As medições são
+	// feitas pelo ServicoDeCadastro, por onde passam todas as operações do menu e do servidor HTTP.
+	// Os contadores são LongAdders e os histogramas usam incrementos atômicos, portanto a medição custa poucos
+	// nanossegundos e não cria disputa entre as threads. Os números podem ser lidos de duas formas:
+	// - no JMX (por exemplo, com o JConsole), como os MBeans "trabalho:type=Operacao,name=<operação>" e
+	//   "trabalho:type=Cadastro";
+	// - em um relatório de texto, uma métrica por linha, no formato usado pelo Prometheus.
+
+	public enum Operacao {
+		INCLUSAO,
+		BUSCA,
+		EDICAO,
+		REMOCAO,
+		LISTAGEM,
+		LISTAGEM_ALFABETICA,
+		// As demais leituras que percorrem o cadastro (exportação, consultas, estatísticas...).
+		OUTRAS_LEITURAS;
+
+		String nome() {
+			return name().toLowerCase(Locale.ROOT);
+		}
+	}
+
+	private final Map<Operacao, Metrica> metricas = new EnumMap<>(Operacao.class);
+	private final IntSupplier quantidadeDeRegistros;
+
+	public MetricasDoCadastro(IntSupplier quantidadeDeRegistros) {
+		this.quantidadeDeRegistros = quantidadeDeRegistros;
+		for (Operacao operacao : Operacao.values()) {
+			metricas.put(operacao, new Metrica());
+		}
+	}
+
+	// O início da medição de uma operação, que deve ser informado depois em registrar.
+	public long iniciar() {
+		return System.nanoTime();
+	}
+	public void registrar(Operacao operacao, long inicio, boolean sucesso) {
+		Metrica metrica = metricas.get(operacao);
+		metrica.tempos.registrar(System.nanoTime() - inicio);
+		if (!sucesso) {
+			metrica.erros.increment();
+		}
+	}
+
+	public HistogramaDeLatencia tempos(Operacao operacao) {
+		return metricas.get(operacao).tempos;
+	}
+	public long erros(Operacao operacao) {
+		return metricas.get(operacao).erros.sum();
+	}
+
+	public int getQuantidadeDeRegistros() {
+		return quantidadeDeRegistros.getAsInt();
+	}
+	public long getBytesPorRegistroEstimados() {
+		// Estimativa grosseira: a memória usada do heap dividida pela quantidade de registros. Ela inclui os
+		// índices e a memória ainda não recolhida pelo coletor de lixo, mas serve para acompanhar o crescimento.
+		int registros = getQuantidadeDeRegistros();
+		long usado = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+		return registros == 0 ? 0 : usado / registros;
+	}
+
+	public void escrever(Appendable saida) throws IOException {
+		saida.append("cadastro_registros ").append(Integer.toString(getQuantidadeDeRegistros())).append('\n');
+		saida.append("cadastro_bytes_por_registro_estimados ").append(Long.toString(getBytesPorRegistroEstimados()))
+				.append('\n');
+		for (Map.Entry<Operacao, Metrica> entrada : metricas.entrySet()) {
+			String rotulo = "{operacao=\"" + entrada.getKey().nome() + "\"";
+			Metrica metrica = entrada.getValue();
+			saida.append("cadastro_operacoes_total").append(rotulo).append("} ")
+					.append(Long.toString(metrica.getQuantidade())).append('\n');
+			saida.append("cadastro_operacoes_erros_total").append(rotulo).append("} ")
+					.append(Long.toString(metrica.getErros())).append('\n');
+			saida.append("cadastro_latencia_media_microssegundos").append(rotulo).append("} ")
+					.append(formatar(metrica.getMediaEmMicrossegundos())).append('\n');
+			double[] quantis = { 0.5, 0.9, 0.99, 0.999 };
+			double[] valores = { metrica.getP50EmMicrossegundos(), metrica.getP90EmMicrossegundos(),
+					metrica.getP99EmMicrossegundos(), metrica.getP999EmMicrossegundos() };
+			for (int i = 0; i < quantis.length; i++) {
+				saida.append("cadastro_latencia_microssegundos").append(rotulo).append(",quantil=\"")
+						.append(Double.toString(quantis[i])).append("\"} ").append(formatar(valores[i])).append('\n');
+			}
+			saida.append("cadastro_latencia_maxima_microssegundos").append(rotulo).append("} ")
+					.append(formatar(metrica.getMaximoEmMicrossegundos())).append('\n');
+		}
+	}
+
+	public String relatorio() {
+		StringBuilder relatorio = new StringBuilder();
+		try {
+			escrever(relatorio);
+		} catch (IOException e) {
+			// O StringBuilder nunca lança IOException.
+			throw new UncheckedIOException(e);
+		}
+		return relatorio.toString();
+	}
+
+	public void publicarNoJmx() {
+		// Registra os MBeans no servidor de MBeans da JVM. Caso já existam MBeans com os mesmos nomes (por
+		// exemplo, de um serviço anterior), eles são substituídos.
+		MBeanServer servidor = ManagementFactory.getPlatformMBeanServer();
+		try {
+			registrar(servidor, new ObjectName("trabalho:type=Cadastro"), new CadastroMXBean() {
+				@Override
+				public int getQuantidadeDeRegistros() {
+					return MetricasDoCadastro.this.getQuantidadeDeRegistros();
+				}
+				@Override
+				public long getBytesPorRegistroEstimados() {
+					return MetricasDoCadastro.this.getBytesPorRegistroEstimados();
+				}
+				@Override
+				public String getRelatorio() {
+					return relatorio();
+				}
+			});
+			for (Map.Entry<Operacao, Metrica> entrada : metricas.entrySet()) {
+				registrar(servidor, new ObjectName("trabalho:type=Operacao,name=" + entrada.getKey().nome()),
+						entrada.getValue());
+			}
+		} catch (JMException e) {
+			throw new IllegalStateException("Não foi possível publicar as métricas no JMX: " + e.getMessage(), e);
+		}
+	}
+	private static void registrar(MBeanServer servidor, ObjectName nome, Object mbean) throws JMException {
+		if (servidor.isRegistered(nome)) {
+			servidor.unregisterMBean(nome);
+		}
+		servidor.registerMBean(mbean, nome);
+	}
+
+	private static String formatar(double valor) {
+		return String.format(Locale.ROOT, "%.1f", valor);
+	}
+
+	// Os números de uma operação.
+	private static final class Metrica implements OperacaoMXBean {
+		private final HistogramaDeLatencia tempos = new HistogramaDeLatencia();
+		private final LongAdder erros = new LongAdder();
+
+		@Override
+		public long getQuantidade() {
+			return tempos.quantidade();
+		}
+		@Override
+		public long getErros() {
+			return erros.sum();
+		}
+		@Override
+		public double getMediaEmMicrossegundos() {
+			return tempos.media() / 1000;
+		}
+		@Override
+		public double getP50EmMicrossegundos() {
+			return tempos.percentil(50) / 1000.0;
+		}
+		@Override
+		public double getP90EmMicrossegundos() {
+			return tempos.percentil(90) / 1000.0;
+		}
+		@Override
+		public double getP99EmMicrossegundos() {
+			return tempos.percentil(99) / 1000.0;
+		}
+		@Override
+		public double getP999EmMicrossegundos() {
+			return tempos.percentil(99.9) / 1000.0;
+		}
+		@Override
+		public double getMaximoEmMicrossegundos() {
+			return tempos.maximo() / 1000.0;
+		}
+	}
+}
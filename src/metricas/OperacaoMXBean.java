@@ -0,0 +1,14 @@
+package metricas;
+
+// Os números de uma operação do cadastro, publicados no JMX (por exemplo, para o JConsole ou o VisualVM).
+// Os tempos são dados em microssegundos.
+public interface OperacaoMXBean {
+	long getQuantidade();
+	long getErros();
+	double getMediaEmMicrossegundos();
+	double getP50EmMicrossegundos();
+	double getP90EmMicrossegundos();
+	double getP99EmMicrossegundos();
+	double getP999EmMicrossegundos();
+	double getMaximoEmMicrossegundos();
+}
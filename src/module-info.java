@@ -6,4 +6,10 @@
  *
  */
 module trabalho {
+	requires jdk.httpserver;
+	// O roteador do cadastro particionado consulta os servidores das partições com o HttpClient.
+	requires java.net.http;
+	requires jdk.management;
+	// Os MBeans das métricas são lidos pelo JMX.
+	exports metricas to java.management;
 }
\ No newline at end of file
@@ -0,0 +1,334 @@
+package persistencia;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+
+import entidades.Condutor;
+import entidades.Pessoa;
+
+public class ArquivoDeRegistros implements Closeable {
+	// Esta classe grava e lê o snapshot do cadastro em um formato binário de tamanho fixo. O arquivo possui
+	// três partes:
+	// - o cabeçalho, com a quantidade de registros e a posição das demais partes;
+	// - os registros, todos com TAMANHO_DO_REGISTRO bytes, na ordem de cadastro;
+	// - o heap de textos, onde ficam os nomes (sem repetição) e os textos que não são números de 11 dígitos.
+	// A leitura é feita através de MappedByteBuffer: o arquivo é mapeado na memória pelo sistema operacional, e
+	// cada registro é decodificado diretamente do mapeamento (através de ler()), sem interpretar texto. A leitura
+	// não é preguiçosa, e a inicialização não é instantânea: na carga, todos os registros são decodificados e
+	// carregados no cadastro, pois todos os índices do cadastro precisam de todos os atributos de todos os
+	// registros (veja Persistencia.lerSnapshot). O formato torna a decodificação barata (uma pequena parte do
+	// tempo da carga, que é dominado pela montagem dos índices).
+	// A versão 2 do formato possuía também um índice de CPFs ordenados, entre os registros e o heap, que nunca
+	// foi usado na leitura: ele deixou de ser gravado, e é apenas pulado nos arquivos da versão 2.
+	//
+	// Layout de cada registro (40 bytes):
+	// [CPF (long)] [número de registro (long)] [posição do nome no heap (long)] [data de nascimento (int)]
+	// [data de emissão (int)] [data de validade (int)] [tipo (byte)] [categoria (byte)] [tipo de carteira (byte)]
+	// [1 byte não utilizado]
+	// O CPF e o número de registro possuem 11 dígitos, e cabem em um long. Caso o texto não seja formado por 11
+	// dígitos, ele é gravado no heap e o long guarda a sua posição, na forma -(posição + 1). As datas são
+	// gravadas como o número de dias desde 01/01/1970.
+	private static final int MARCA = 0x44455452;
+	private static final int VERSAO = 3;
+	private static final int VERSAO_COM_INDICE_DE_CPFS = 2;
+	private static final int TAMANHO_DO_CABECALHO = 64;
+	private static final int TAMANHO_DO_REGISTRO = 40;
+
+	// Valores usados para representar atributos nulos.
+	private static final long TEXTO_NULO = Long.MIN_VALUE;
+	private static final int DATA_NULA = Integer.MIN_VALUE;
+
+	private static final byte PESSOA = 0;
+	private static final byte CONDUTOR = 1;
+	private static final byte SEM_TIPO_DE_CARTEIRA = 0;
+	private static final byte DEFINITIVA = 1;
+	private static final byte PPD = 2;
+
+	// Um MappedByteBuffer não pode ter mais que 2 GB, portanto arquivos grandes são mapeados em segmentos de
+	// 1 GB. Cada segmento se sobrepõe um pouco ao seguinte, para que um registro ou um texto do heap nunca fique
+	// dividido entre dois segmentos.
+	private static final int BITS_DO_SEGMENTO = 30;
+	private static final long TAMANHO_DO_SEGMENTO = 1L << BITS_DO_SEGMENTO;
+	private static final int SOBREPOSICAO = 1 << 17;
+	// Os textos gravados no heap não podem ultrapassar o tamanho da sobreposição entre os segmentos.
+	private static final int TAMANHO_MAXIMO_DO_TEXTO = 65535;
+
+	private final FileChannel canal;
+	private final MappedByteBuffer[] segmentos;
+	private final long numeroDaUltimaOperacao;
+	private final int quantidade;
+	private final long inicioDoHeap;
+
+	private ArquivoDeRegistros(FileChannel canal) throws IOException {
+		this.canal = canal;
+		long tamanho = canal.size();
+		if (tamanho < TAMANHO_DO_CABECALHO) {
+			throw new IOException("O arquivo não é um snapshot válido do cadastro.");
+		}
+		segmentos = new MappedByteBuffer[(int) ((tamanho + TAMANHO_DO_SEGMENTO - 1) / TAMANHO_DO_SEGMENTO)];
+		for (int i = 0; i < segmentos.length; i++) {
+			long inicio = i * TAMANHO_DO_SEGMENTO;
+			segmentos[i] = canal.map(FileChannel.MapMode.READ_ONLY, inicio,
+					Math.min(TAMANHO_DO_SEGMENTO + SOBREPOSICAO, tamanho - inicio));
+		}
+		if (lerInt(0) != MARCA || (lerInt(4) != VERSAO && lerInt(4) != VERSAO_COM_INDICE_DE_CPFS)) {
+			throw new IOException("O arquivo não é um snapshot válido do cadastro.");
+		}
+		numeroDaUltimaOperacao = lerLong(8);
+		quantidade = lerInt(16);
+		inicioDoHeap = lerLong(32);
+	}
+
+	public static ArquivoDeRegistros abrir(Path arquivo) throws IOException {
+		FileChannel canal = FileChannel.open(arquivo, StandardOpenOption.READ);
+		try {
+			return new ArquivoDeRegistros(canal);
+		} catch (IOException e) {
+			canal.close();
+			throw e;
+		}
+	}
+
+	public long numeroDaUltimaOperacao() {
+		return numeroDaUltimaOperacao;
+	}
+
+	public int quantidade() {
+		return quantidade;
+	}
+
+	public Pessoa ler(int posicao) {
+		// Decodifica o registro da posição informada (a posição segue a ordem de cadastro).
+		long inicio = TAMANHO_DO_CABECALHO + (long) posicao * TAMANHO_DO_REGISTRO;
+		String cpf = lerTextoCodificado(lerLong(inicio));
+		String nome = lerDoHeap(lerLong(inicio + 16));
+		LocalDate dataDeNascimento = lerData(inicio + 24);
+		if (lerByte(inicio + 36) == PESSOA) {
+			return new Pessoa(nome, cpf, dataDeNascimento);
+		}
+		return new Condutor(nome, cpf, dataDeNascimento, lerTextoCodificado(lerLong(inicio + 8)),
+				(char) (lerByte(inicio + 37) & 0xFF), lerData(inicio + 28), lerData(inicio + 32),
+				decodificarTipoDeCarteira(lerByte(inicio + 38)));
+	}
+
+	@Override
+	public void close() throws IOException {
+		canal.close();
+	}
+
+	public static void gravar(Path arquivo, long numeroDaUltimaOperacao, int quantidade, Iterable<Pessoa> registros)
+			throws IOException {
+		// Grava os registros no arquivo, e força a gravação no disco antes de retornar. A quantidade informada
+		// deve ser igual à quantidade de registros percorridos.
+		long inicioDoHeap = TAMANHO_DO_CABECALHO + (long) quantidade * TAMANHO_DO_REGISTRO;
+		try (FileChannel canal = FileChannel.open(arquivo, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			Gravador gravadorDeRegistros = new Gravador(canal, TAMANHO_DO_CABECALHO);
+			Gravador gravadorDoHeap = new Gravador(canal, inicioDoHeap);
+			// Os nomes repetidos são gravados uma única vez no heap.
+			Map<String, Long> textosGravados = new HashMap<>();
+			int posicao = 0;
+			for (Pessoa pessoa : registros) {
+				long cpf = codificarTexto(pessoa.getCpf(), textosGravados, gravadorDoHeap, inicioDoHeap);
+				ByteBuffer buffer = gravadorDeRegistros.reservar(TAMANHO_DO_REGISTRO);
+				buffer.putLong(cpf);
+				if (pessoa instanceof Condutor) {
+					Condutor condutor = (Condutor) pessoa;
+					buffer.putLong(codificarTexto(condutor.getNumeroDeRegistro(), textosGravados, gravadorDoHeap, inicioDoHeap));
+					buffer.putLong(gravarNoHeap(pessoa.getNome(), textosGravados, gravadorDoHeap, inicioDoHeap));
+					buffer.putInt(codificarData(pessoa.getDataDeNascimento()));
+					buffer.putInt(codificarData(condutor.getDataDeEmissao()));
+					buffer.putInt(codificarData(condutor.getDataDeValidade()));
+					buffer.put(CONDUTOR);
+					buffer.put((byte) condutor.getCategoria());
+					buffer.put(codificarTipoDeCarteira(condutor.getTipoDeCarteira()));
+				} else {
+					buffer.putLong(TEXTO_NULO);
+					buffer.putLong(gravarNoHeap(pessoa.getNome(), textosGravados, gravadorDoHeap, inicioDoHeap));
+					buffer.putInt(codificarData(pessoa.getDataDeNascimento()));
+					buffer.putInt(DATA_NULA);
+					buffer.putInt(DATA_NULA);
+					buffer.put(PESSOA);
+					buffer.put((byte) 0);
+					buffer.put(SEM_TIPO_DE_CARTEIRA);
+				}
+				buffer.put((byte) 0);
+				posicao++;
+			}
+			if (posicao != quantidade) {
+				throw new IllegalStateException("A quantidade de registros gravados (" + posicao + ") é diferente da informada (" + quantidade + ").");
+			}
+			gravadorDeRegistros.descarregar();
+			gravadorDoHeap.descarregar();
+
+			ByteBuffer cabecalho = ByteBuffer.allocate(TAMANHO_DO_CABECALHO);
+			// Os campos do cabeçalho que indicavam o índice de CPFs (versão 2) ficam com zero.
+			cabecalho.putInt(MARCA).putInt(VERSAO).putLong(numeroDaUltimaOperacao).putInt(quantidade).putInt(0)
+					.putLong(0).putLong(inicioDoHeap).putLong(gravadorDoHeap.posicao - inicioDoHeap);
+			cabecalho.clear();
+			canal.write(cabecalho, 0);
+			canal.force(true);
+		}
+	}
+
+	// Grava os dados em um trecho do arquivo através de um buffer de 1 MB, evitando uma chamada de sistema
+	// para cada registro.
+	private static class Gravador {
+		private final FileChannel canal;
+		private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20);
+		private long posicao;
+		private long posicaoDoBuffer;
+
+		Gravador(FileChannel canal, long inicio) {
+			this.canal = canal;
+			this.posicao = inicio;
+			this.posicaoDoBuffer = inicio;
+		}
+		ByteBuffer reservar(int tamanho) throws IOException {
+			if (buffer.remaining() < tamanho) {
+				descarregar();
+			}
+			posicao += tamanho;
+			return buffer;
+		}
+		void descarregar() throws IOException {
+			buffer.flip();
+			while (buffer.hasRemaining()) {
+				posicaoDoBuffer += canal.write(buffer, posicaoDoBuffer);
+			}
+			buffer.clear();
+		}
+	}
+
+	private static long codificarTexto(String texto, Map<String, Long> textosGravados, Gravador heap, long inicioDoHeap)
+			throws IOException {
+		long digitos = codificarDigitos(texto);
+		if (digitos >= 0 || texto == null) {
+			return digitos;
+		}
+		return -(gravarNoHeap(texto, textosGravados, heap, inicioDoHeap) + 1);
+	}
+
+	private static long gravarNoHeap(String texto, Map<String, Long> textosGravados, Gravador heap, long inicioDoHeap)
+			throws IOException {
+		// Retorna a posição do texto no heap (relativa ao início do heap), gravando-o caso ainda não exista.
+		if (texto == null) {
+			return -1;
+		}
+		Long posicaoExistente = textosGravados.get(texto);
+		if (posicaoExistente != null) {
+			return posicaoExistente;
+		}
+		byte[] bytes = texto.getBytes(StandardCharsets.UTF_8);
+		if (bytes.length > TAMANHO_MAXIMO_DO_TEXTO) {
+			throw new IllegalArgumentException("Texto muito longo para ser gravado no snapshot do cadastro.");
+		}
+		long posicao = heap.posicao - inicioDoHeap;
+		heap.reservar(2 + bytes.length).putShort((short) bytes.length).put(bytes);
+		textosGravados.put(texto, posicao);
+		return posicao;
+	}
+
+	// Retorna o valor numérico de um texto formado por exatamente 11 dígitos, TEXTO_NULO para null, e -1 para
+	// os demais textos.
+	private static long codificarDigitos(String texto) {
+		if (texto == null) {
+			return TEXTO_NULO;
+		}
+		if (texto.length() != 11) {
+			return -1;
+		}
+		long valor = 0;
+		for (int i = 0; i < 11; i++) {
+			char c = texto.charAt(i);
+			if (c < '0' || c > '9') {
+				return -1;
+			}
+			valor = valor * 10 + (c - '0');
+		}
+		return valor;
+	}
+
+	private String lerTextoCodificado(long codigo) {
+		if (codigo == TEXTO_NULO) {
+			return null;
+		}
+		if (codigo >= 0) {
+			// Os zeros à esquerda são recolocados, pois o CPF e o número de registro sempre possuem 11 dígitos.
+			char[] digitos = new char[11];
+			for (int i = 10; i >= 0; i--) {
+				digitos[i] = (char) ('0' + codigo % 10);
+				codigo /= 10;
+			}
+			return new String(digitos);
+		}
+		return lerDoHeap(-codigo - 1);
+	}
+
+	private String lerDoHeap(long posicao) {
+		if (posicao < 0) {
+			return null;
+		}
+		long inicio = inicioDoHeap + posicao;
+		int tamanho = lerShort(inicio) & 0xFFFF;
+		byte[] bytes = new byte[tamanho];
+		segmento(inicio + 2).get(deslocamento(inicio + 2), bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static int codificarData(LocalDate data) {
+		return data == null ? DATA_NULA : (int) data.toEpochDay();
+	}
+	private LocalDate lerData(long posicao) {
+		int dias = lerInt(posicao);
+		return dias == DATA_NULA ? null : LocalDate.ofEpochDay(dias);
+	}
+
+	private static byte codificarTipoDeCarteira(String tipoDeCarteira) {
+		if (tipoDeCarteira == null) {
+			return SEM_TIPO_DE_CARTEIRA;
+		} else if (tipoDeCarteira.equals("DEFINITIVA")) {
+			return DEFINITIVA;
+		} else if (tipoDeCarteira.equals("PPD")) {
+			return PPD;
+		}
+		throw new IllegalArgumentException("Tipo de carteira inválido: " + tipoDeCarteira);
+	}
+	private static String decodificarTipoDeCarteira(byte codigo) {
+		if (codigo == DEFINITIVA) {
+			return "DEFINITIVA";
+		} else if (codigo == PPD) {
+			return "PPD";
+		}
+		return null;
+	}
+
+	// Acesso aos segmentos mapeados a partir de uma posição absoluta do arquivo.
+	private MappedByteBuffer segmento(long posicao) {
+		return segmentos[(int) (posicao >>> BITS_DO_SEGMENTO)];
+	}
+	private static int deslocamento(long posicao) {
+		return (int) (posicao & (TAMANHO_DO_SEGMENTO - 1));
+	}
+	private long lerLong(long posicao) {
+		return segmento(posicao).getLong(deslocamento(posicao));
+	}
+	private int lerInt(long posicao) {
+		return segmento(posicao).getInt(deslocamento(posicao));
+	}
+	private short lerShort(long posicao) {
+		return segmento(posicao).getShort(deslocamento(posicao));
+	}
+	private byte lerByte(long posicao) {
+		return segmento(posicao).get(deslocamento(posicao));
+	}
+}
@@ -0,0 +1,94 @@
+package persistencia;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.time.LocalDate;
+
+import entidades.Atributo;
+import entidades.Condutor;
+import entidades.Pessoa;
+
+public class CodificacaoDeRegistros {
+	// Esta classe converte registros e valores de atributos para bytes (e vice-versa). Ela é usada tanto pelo
+	// diário de operações quanto pelo arquivo de snapshot.
+
+	// O primeiro byte de cada registro informa a sua classe.
+	private static final byte PESSOA = 0;
+	private static final byte CONDUTOR = 1;
+
+	public static void escreverRegistro(DataOutput saida, Pessoa pessoa) throws IOException {
+		saida.writeByte(pessoa instanceof Condutor ? CONDUTOR : PESSOA);
+		escreverTexto(saida, pessoa.getNome());
+		escreverTexto(saida, pessoa.getCpf());
+		escreverData(saida, pessoa.getDataDeNascimento());
+		if (pessoa instanceof Condutor) {
+			Condutor condutor = (Condutor) pessoa;
+			escreverTexto(saida, condutor.getNumeroDeRegistro());
+			saida.writeChar(condutor.getCategoria());
+			escreverData(saida, condutor.getDataDeEmissao());
+			escreverData(saida, condutor.getDataDeValidade());
+			escreverTexto(saida, condutor.getTipoDeCarteira());
+		}
+	}
+
+	public static Pessoa lerRegistro(DataInput entrada) throws IOException {
+		byte tipo = entrada.readByte();
+		String nome = lerTexto(entrada);
+		String cpf = lerTexto(entrada);
+		LocalDate dataDeNascimento = lerData(entrada);
+		if (tipo == PESSOA) {
+			return new Pessoa(nome, cpf, dataDeNascimento);
+		}
+		String numeroDeRegistro = lerTexto(entrada);
+		char categoria = entrada.readChar();
+		LocalDate dataDeEmissao = lerData(entrada);
+		LocalDate dataDeValidade = lerData(entrada);
+		String tipoDeCarteira = lerTexto(entrada);
+		return new Condutor(nome, cpf, dataDeNascimento, numeroDeRegistro, categoria, dataDeEmissao, dataDeValidade,
+				tipoDeCarteira);
+	}
+
+	// O tipo do valor gravado depende do atributo: datas, a categoria (char) ou textos.
+	public static void escreverValor(DataOutput saida, Atributo atributo, Object valor) throws IOException {
+		if (atributo == Atributo.DATA_DE_NASCIMENTO || atributo == Atributo.DATA_DE_EMISSAO) {
+			escreverData(saida, (LocalDate) valor);
+		} else if (atributo == Atributo.CATEGORIA) {
+			saida.writeChar((Character) valor);
+		} else {
+			escreverTexto(saida, (String) valor);
+		}
+	}
+
+	public static Object lerValor(DataInput entrada, Atributo atributo) throws IOException {
+		if (atributo == Atributo.DATA_DE_NASCIMENTO || atributo == Atributo.DATA_DE_EMISSAO) {
+			return lerData(entrada);
+		} else if (atributo == Atributo.CATEGORIA) {
+			return entrada.readChar();
+		} else {
+			return lerTexto(entrada);
+		}
+	}
+
+	// Textos e datas podem ser nulos (por exemplo, em objetos criados com o construtor padrão). Um booleano
+	// gravado antes do valor informa se ele existe.
+	public static void escreverTexto(DataOutput saida, String texto) throws IOException {
+		saida.writeBoolean(texto != null);
+		if (texto != null) {
+			saida.writeUTF(texto);
+		}
+	}
+	public static String lerTexto(DataInput entrada) throws IOException {
+		return entrada.readBoolean() ? entrada.readUTF() : null;
+	}
+	// As datas são gravadas como o número de dias desde 01/01/1970.
+	public static void escreverData(DataOutput saida, LocalDate data) throws IOException {
+		saida.writeBoolean(data != null);
+		if (data != null) {
+			saida.writeLong(data.toEpochDay());
+		}
+	}
+	public static LocalDate lerData(DataInput entrada) throws IOException {
+		return entrada.readBoolean() ? LocalDate.ofEpochDay(entrada.readLong()) : null;
+	}
+}
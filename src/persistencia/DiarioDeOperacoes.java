@@ -0,0 +1,303 @@
+package persistencia;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.zip.CRC32;
+
+public class DiarioDeOperacoes implements Closeable {
+	// O diário de operações (write-ahead log) é um arquivo em que cada modificação do cadastro é acrescentada
+	// ao final, sem nunca reescrever o que já foi gravado. Cada entrada possui o formato:
+	// [tamanho do corpo (int)] [corpo: número da operação (long), tipo (byte), dados] [CRC32 do corpo (int)]
+	// O CRC permite descobrir, na recuperação, uma entrada que foi gravada pela metade (por exemplo, numa queda
+	// de energia), e o número da operação permite ignorar entradas que já fazem parte do snapshot.
+	// O diário é dividido em arquivos (segmentos), cada um com o nome "<prefixo>.<número da primeira operação>".
+	// Quando um snapshot começa a ser gravado, o diário passa para um novo segmento (rotacionar); depois que o
+	// snapshot estiver no disco, os segmentos anteriores, cujas operações já fazem parte dele, são apagados
+	// (descartarAte). As operações registradas durante a gravação do snapshot ficam no novo segmento.
+
+	// Tipos de operação gravados no diário.
+	public static final byte ADICIONAR = 1;
+	public static final byte REMOVER = 2;
+	public static final byte SUBSTITUIR = 3;
+	public static final byte ALTERAR = 4;
+
+	// Interface usada para gravar os dados específicos de cada tipo de operação.
+	public interface Dados {
+		void escrever(DataOutputStream saida) throws IOException;
+	}
+
+	private final Path diretorio;
+	private final String prefixo;
+	// A trava protege o buffer de entradas pendentes, o segmento atual e os contadores abaixo.
+	private final Object trava = new Object();
+	private FileChannel canal;
+	private long inicioDoSegmento;
+	private ByteArrayOutputStream pendentes = new ByteArrayOutputStream();
+	// As últimas entradas dos segmentos anteriores à última rotação que ainda não foram gravadas, e a quantidade
+	// de segmentos anteriores que ainda não foram fechados pelo gravador.
+	private final ArrayDeque<Grupo> gruposDeSegmentosAnteriores = new ArrayDeque<>();
+	private int segmentosAnterioresAbertos;
+	// Número da última operação registrada, e número da última operação que já está gravada no disco.
+	private long ultimoNumero;
+	private long numeroDuravel;
+	private boolean fechado;
+	private IOException falha;
+	private final Thread gravador;
+
+	public DiarioDeOperacoes(Path diretorio, String prefixo, long ultimoNumero) throws IOException {
+		// As novas operações vão para um segmento que começa na operação seguinte à última já registrada.
+		this.diretorio = diretorio;
+		this.prefixo = prefixo;
+		canal = abrirSegmento(ultimoNumero + 1);
+		inicioDoSegmento = ultimoNumero + 1;
+		this.ultimoNumero = ultimoNumero;
+		this.numeroDuravel = ultimoNumero;
+		// Uma única thread grava as entradas no disco. Enquanto ela executa o fsync de um grupo de entradas, as
+		// novas entradas se acumulam no buffer e serão gravadas juntas no próximo fsync (group commit). Desta
+		// forma, o custo de um fsync é dividido entre todas as operações que chegaram nesse intervalo.
+		gravador = new Thread(this::gravarContinuamente, "gravador-do-diario");
+		gravador.setDaemon(true);
+		gravador.start();
+	}
+
+	public long registrar(byte tipo, Dados dados) {
+		// Registra uma operação e retorna o seu número. A operação ainda não está no disco quando este método
+		// retorna; para ter essa garantia, use aguardar() ou sincronizar().
+		try {
+			ByteArrayOutputStream corpo = new ByteArrayOutputStream(64);
+			DataOutputStream saida = new DataOutputStream(corpo);
+			synchronized (trava) {
+				if (fechado) {
+					throw new IllegalStateException("O diário de operações já foi fechado.");
+				}
+				long numero = ultimoNumero + 1;
+				saida.writeLong(numero);
+				saida.writeByte(tipo);
+				dados.escrever(saida);
+				CRC32 crc = new CRC32();
+				crc.update(corpo.toByteArray());
+				DataOutputStream entrada = new DataOutputStream(pendentes);
+				entrada.writeInt(corpo.size());
+				corpo.writeTo(entrada);
+				entrada.writeInt((int) crc.getValue());
+				ultimoNumero = numero;
+				trava.notifyAll();
+				return numero;
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	public void aguardar(long numero) {
+		// Bloqueia até que a operação informada (e todas as anteriores) esteja gravada no disco.
+		synchronized (trava) {
+			while (numeroDuravel < numero && falha == null) {
+				try {
+					trava.wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+			if (falha != null) {
+				throw new UncheckedIOException(falha);
+			}
+		}
+	}
+
+	public void sincronizar() {
+		long numero;
+		synchronized (trava) {
+			numero = ultimoNumero;
+		}
+		aguardar(numero);
+	}
+
+	public long ultimoNumero() {
+		synchronized (trava) {
+			return ultimoNumero;
+		}
+	}
+
+	public long rotacionar() throws IOException {
+		// Passa a registrar as novas operações em um novo segmento, e retorna o número da última operação do
+		// segmento anterior. O segmento anterior é fechado pelo gravador depois que as suas últimas entradas
+		// forem gravadas. Não espera por nenhuma gravação no disco, portanto pode ser chamado durante uma
+		// modificação do cadastro.
+		synchronized (trava) {
+			if (fechado) {
+				throw new IllegalStateException("O diário de operações já foi fechado.");
+			}
+			if (ultimoNumero + 1 == inicioDoSegmento) {
+				// Nenhuma operação foi registrada no segmento atual: não há o que separar.
+				return ultimoNumero;
+			}
+			FileChannel novo = abrirSegmento(ultimoNumero + 1);
+			gruposDeSegmentosAnteriores.add(new Grupo(canal, pendentes, ultimoNumero, true));
+			segmentosAnterioresAbertos++;
+			pendentes = new ByteArrayOutputStream();
+			canal = novo;
+			inicioDoSegmento = ultimoNumero + 1;
+			trava.notifyAll();
+			return ultimoNumero;
+		}
+	}
+
+	public void descartarAte(long numero) throws IOException {
+		// Apaga os segmentos que só possuem operações de número menor ou igual ao informado. Só deve ser chamado
+		// depois que um snapshot com todas essas operações foi gravado no disco.
+		synchronized (trava) {
+			while (segmentosAnterioresAbertos > 0 && falha == null) {
+				try {
+					trava.wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+		}
+		List<Path> segmentos = segmentos(diretorio, prefixo);
+		for (int i = 0; i + 1 < segmentos.size(); i++) {
+			// As operações de um segmento vão até a operação anterior ao início do segmento seguinte.
+			if (inicioDoSegmento(segmentos.get(i + 1), prefixo) - 1 <= numero) {
+				Files.deleteIfExists(segmentos.get(i));
+			}
+		}
+	}
+
+	public static List<Path> segmentos(Path diretorio, String prefixo) throws IOException {
+		// Os segmentos do diário existentes no diretório, em ordem. Um arquivo com o nome do prefixo, sem número
+		// (o diário de um único arquivo, das versões anteriores), é considerado o primeiro segmento.
+		List<Path> segmentos = new ArrayList<>();
+		if (Files.isDirectory(diretorio)) {
+			try (DirectoryStream<Path> arquivos = Files.newDirectoryStream(diretorio, prefixo + "*")) {
+				for (Path arquivo : arquivos) {
+					if (inicioDoSegmento(arquivo, prefixo) >= 0) {
+						segmentos.add(arquivo);
+					}
+				}
+			}
+		}
+		segmentos.sort(Comparator.comparingLong(arquivo -> inicioDoSegmento(arquivo, prefixo)));
+		return segmentos;
+	}
+	private static long inicioDoSegmento(Path arquivo, String prefixo) {
+		// O número da primeira operação do segmento (0 para o arquivo sem número), ou -1 para outros arquivos.
+		String nome = arquivo.getFileName().toString();
+		if (nome.equals(prefixo)) {
+			return 0;
+		}
+		if (!nome.startsWith(prefixo + ".")) {
+			return -1;
+		}
+		try {
+			return Long.parseLong(nome.substring(prefixo.length() + 1));
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	private FileChannel abrirSegmento(long primeiroNumero) throws IOException {
+		FileChannel segmento = FileChannel.open(diretorio.resolve(prefixo + "." + primeiroNumero),
+				StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+		segmento.position(segmento.size());
+		return segmento;
+	}
+
+	private void gravarContinuamente() {
+		while (true) {
+			Grupo grupo;
+			synchronized (trava) {
+				while (gruposDeSegmentosAnteriores.isEmpty() && pendentes.size() == 0 && !fechado) {
+					try {
+						trava.wait();
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+				if (!gruposDeSegmentosAnteriores.isEmpty()) {
+					// As entradas dos segmentos anteriores são gravadas antes das entradas do segmento atual.
+					grupo = gruposDeSegmentosAnteriores.poll();
+				} else if (pendentes.size() > 0) {
+					// O buffer inteiro é levado para gravação, e um novo buffer passa a receber as próximas entradas.
+					grupo = new Grupo(canal, pendentes, ultimoNumero, false);
+					pendentes = new ByteArrayOutputStream();
+				} else {
+					return;
+				}
+			}
+			try {
+				ByteBuffer buffer = ByteBuffer.wrap(grupo.entradas.toByteArray());
+				while (buffer.hasRemaining()) {
+					grupo.canal.write(buffer);
+				}
+				grupo.canal.force(false);
+				if (grupo.ultimoDoSegmento) {
+					grupo.canal.close();
+				}
+				synchronized (trava) {
+					numeroDuravel = Math.max(numeroDuravel, grupo.ate);
+					if (grupo.ultimoDoSegmento) {
+						segmentosAnterioresAbertos--;
+					}
+					trava.notifyAll();
+				}
+			} catch (IOException e) {
+				synchronized (trava) {
+					falha = e;
+					trava.notifyAll();
+				}
+				return;
+			}
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		// As entradas pendentes são gravadas antes de o arquivo ser fechado.
+		synchronized (trava) {
+			fechado = true;
+			trava.notifyAll();
+		}
+		try {
+			gravador.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		synchronized (trava) {
+			canal.close();
+		}
+		if (falha != null) {
+			throw falha;
+		}
+	}
+
+	// Um grupo de entradas gravado de uma só vez, com o número da última entrada do grupo.
+	private static final class Grupo {
+		private final FileChannel canal;
+		private final ByteArrayOutputStream entradas;
+		private final long ate;
+		private final boolean ultimoDoSegmento;
+
+		Grupo(FileChannel canal, ByteArrayOutputStream entradas, long ate, boolean ultimoDoSegmento) {
+			this.canal = canal;
+			this.entradas = entradas;
+			this.ate = ate;
+			this.ultimoDoSegmento = ultimoDoSegmento;
+		}
+	}
+}
@@ -0,0 +1,312 @@
+package persistencia;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32;
+
+import cadastro.Cadastro;
+import cadastro.Instantaneo;
+import cadastro.ObservadorDoCadastro;
+import entidades.Atributo;
+import entidades.Condutor;
+import entidades.Pessoa;
+
+public class Persistencia implements ObservadorDoCadastro, Closeable {
+	// A classe Persistencia mantém o cadastro gravado em disco, usando dois arquivos:
+	// - o snapshot, com uma cópia compacta de todos os registros em um determinado momento;
+	// - o diário de operações, com todas as modificações feitas depois desse snapshot.
+	// Na inicialização, o snapshot é carregado e as operações do diário são reaplicadas. De tempos em tempos
+	// (a cada "operacoesPorSnapshot" operações, e também no fechamento), um novo snapshot é gravado e as
+	// operações do diário que já fazem parte dele são descartadas, para que a recuperação continue rápida.
+	// Os avisos do cadastro chegam durante as modificações, com o bloqueio de escrita do ServicoDeCadastro, por
+	// isso o snapshot periódico não é gravado ali: no aviso, apenas um instantâneo do cadastro é obtido, junto com
+	// o número da última operação registrada (os dois correspondem ao mesmo momento, pois nenhuma outra
+	// modificação pode acontecer durante o aviso), e o diário passa para um novo segmento. A gravação do
+	// instantâneo é feita por uma thread separada, enquanto os atendentes continuam modificando o cadastro; no
+	// final, somente os segmentos do diário com operações até aquele número são apagados.
+	private static final String ARQUIVO_SNAPSHOT = "cadastro.snapshot";
+	private static final String ARQUIVO_DIARIO = "cadastro.diario";
+
+	private final Path diretorio;
+	private final int operacoesPorSnapshot;
+	private Cadastro cadastro;
+	private DiarioDeOperacoes diario;
+	private int operacoesDesdeOSnapshot;
+	// Um snapshot periódico é gravado de cada vez, por esta thread.
+	private final ExecutorService gravadorDeSnapshots = Executors.newSingleThreadExecutor(tarefa -> {
+		Thread thread = new Thread(tarefa, "gravador-de-snapshots");
+		thread.setDaemon(true);
+		return thread;
+	});
+	private final AtomicBoolean snapshotEmAndamento = new AtomicBoolean();
+
+	public Persistencia(Path diretorio) {
+		this(diretorio, 100_000);
+	}
+	public Persistencia(Path diretorio, int operacoesPorSnapshot) {
+		this.diretorio = diretorio;
+		this.operacoesPorSnapshot = operacoesPorSnapshot;
+	}
+
+	public boolean abrir(Cadastro cadastro) throws IOException {
+		// Carrega no cadastro (que deve estar vazio) os registros gravados em disco, e passa a gravar todas as
+		// modificações seguintes. Retorna false caso ainda não exista nenhum dado gravado no diretório.
+		Files.createDirectories(diretorio);
+		Path snapshot = diretorio.resolve(ARQUIVO_SNAPSHOT);
+		List<Path> segmentos = DiarioDeOperacoes.segmentos(diretorio, ARQUIVO_DIARIO);
+		boolean existiamDados = Files.exists(snapshot) || !segmentos.isEmpty();
+		long numeroDoSnapshot = 0;
+		if (Files.exists(snapshot)) {
+			numeroDoSnapshot = lerSnapshot(snapshot, cadastro);
+		}
+		long ultimoNumero = numeroDoSnapshot;
+		for (int i = 0; i < segmentos.size(); i++) {
+			Path segmento = segmentos.get(i);
+			long tamanho = Files.size(segmento);
+			ultimoNumero = Math.max(ultimoNumero, reaplicarDiario(segmento, numeroDoSnapshot, cadastro));
+			if (Files.size(segmento) < tamanho) {
+				// O segmento terminava com uma entrada incompleta. Como o gravador só começa um segmento depois de
+				// terminar o anterior, os segmentos seguintes não possuem nenhuma entrada gravada.
+				for (Path seguinte : segmentos.subList(i + 1, segmentos.size())) {
+					Files.deleteIfExists(seguinte);
+				}
+				break;
+			}
+		}
+		this.cadastro = cadastro;
+		diario = new DiarioDeOperacoes(diretorio, ARQUIVO_DIARIO, ultimoNumero);
+		cadastro.adicionarObservador(this);
+		return existiamDados;
+	}
+
+	public void sincronizar() {
+		// Bloqueia até que todas as operações feitas até aqui estejam gravadas no disco.
+		diario.sincronizar();
+	}
+
+	private void gravarSnapshot(Instantaneo instantaneo, long numero) throws IOException {
+		// Grava os registros do instantâneo, que correspondem às operações até o número informado. O snapshot é
+		// gravado primeiro em um arquivo temporário, que só substitui o snapshot anterior depois de completamente
+		// gravado. Assim, uma falha no meio da gravação nunca deixa o diretório sem um snapshot válido.
+		Path temporario = diretorio.resolve(ARQUIVO_SNAPSHOT + ".tmp");
+		ArquivoDeRegistros.gravar(temporario, numero, instantaneo.size(), instantaneo);
+		Files.move(temporario, diretorio.resolve(ARQUIVO_SNAPSHOT), StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+		// As operações até esse número já fazem parte do novo snapshot. Caso o programa seja interrompido antes de
+		// os segmentos serem apagados, as suas entradas serão ignoradas na recuperação pelo número.
+		diario.descartarAte(numero);
+	}
+
+	@Override
+	public void close() throws IOException {
+		// Deve ser chamado depois que todas as modificações do cadastro terminaram (por exemplo, depois que o
+		// servidor HTTP terminou de atender as requisições). O snapshot periódico em andamento termina de ser
+		// gravado, e um último snapshot, com todas as operações, é gravado em seguida.
+		gravadorDeSnapshots.shutdown();
+		try {
+			gravadorDeSnapshots.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		long numero = diario.rotacionar();
+		try (Instantaneo instantaneo = cadastro.instantaneo()) {
+			gravarSnapshot(instantaneo, numero);
+		}
+		cadastro.removerObservador(this);
+		diario.close();
+	}
+
+	// Os avisos do cadastro são convertidos em entradas do diário de operações.
+	@Override
+	public void registroAdicionado(Pessoa pessoa) {
+		diario.registrar(DiarioDeOperacoes.ADICIONAR, saida -> CodificacaoDeRegistros.escreverRegistro(saida, pessoa));
+		operacaoRegistrada();
+	}
+	@Override
+	public void registroRemovido(Pessoa pessoa) {
+		diario.registrar(DiarioDeOperacoes.REMOVER, saida -> CodificacaoDeRegistros.escreverTexto(saida, pessoa.getCpf()));
+		operacaoRegistrada();
+	}
+	@Override
+	public void registroSubstituido(Pessoa anterior, Pessoa novo) {
+		diario.registrar(DiarioDeOperacoes.SUBSTITUIR, saida -> {
+			CodificacaoDeRegistros.escreverTexto(saida, anterior.getCpf());
+			CodificacaoDeRegistros.escreverRegistro(saida, novo);
+		});
+		operacaoRegistrada();
+	}
+	@Override
+	public void registroAlterado(Pessoa pessoa, Atributo atributo, Object valorAnterior, Object valorNovo) {
+		// O registro é identificado pelo CPF que possuía antes da alteração (que é diferente do atual quando o
+		// próprio CPF foi alterado).
+		// A nova data de emissão é gravada junto com a data de validade calculada no momento da alteração, pois
+		// o cálculo depende da data atual (a idade do condutor), e a recuperação não deve calculá-la novamente.
+		String cpf = atributo == Atributo.CPF ? (String) valorAnterior : pessoa.getCpf();
+		diario.registrar(DiarioDeOperacoes.ALTERAR, saida -> {
+			CodificacaoDeRegistros.escreverTexto(saida, cpf);
+			saida.writeByte(atributo.ordinal());
+			CodificacaoDeRegistros.escreverValor(saida, atributo, valorNovo);
+			if (atributo == Atributo.DATA_DE_EMISSAO) {
+				CodificacaoDeRegistros.escreverData(saida, ((Condutor) pessoa).getDataDeValidade());
+			}
+		});
+		operacaoRegistrada();
+	}
+
+	private void operacaoRegistrada() {
+		// Chamado durante a modificação, portanto com o cadastro já modificado e a operação já registrada. Caso
+		// um snapshot ainda esteja sendo gravado, o próximo espera até a operação seguinte.
+		operacoesDesdeOSnapshot++;
+		if (operacoesDesdeOSnapshot < operacoesPorSnapshot || !snapshotEmAndamento.compareAndSet(false, true)) {
+			return;
+		}
+		operacoesDesdeOSnapshot = 0;
+		Instantaneo instantaneo = null;
+		try {
+			long numero = diario.rotacionar();
+			instantaneo = cadastro.instantaneo();
+			Instantaneo registros = instantaneo;
+			gravadorDeSnapshots.execute(() -> {
+				try {
+					gravarSnapshot(registros, numero);
+				} catch (IOException | RuntimeException e) {
+					// Caso o snapshot não possa ser gravado, o diário continua válido (nenhum segmento é apagado), e
+					// uma nova tentativa será feita depois de mais "operacoesPorSnapshot" operações.
+					System.err.println("Não foi possível gravar o snapshot do cadastro: " + e.getMessage());
+				} finally {
+					registros.close();
+					snapshotEmAndamento.set(false);
+				}
+			});
+		} catch (IOException | RuntimeException e) {
+			if (instantaneo != null) {
+				instantaneo.close();
+			}
+			snapshotEmAndamento.set(false);
+			System.err.println("Não foi possível iniciar a gravação do snapshot do cadastro: " + e.getMessage());
+		}
+	}
+
+	private static long lerSnapshot(Path snapshot, Cadastro cadastro) throws IOException {
+		// O snapshot é mapeado na memória, e os registros são decodificados diretamente do mapeamento. Todos
+		// eles são lidos aqui, de uma vez, e carregados no cadastro juntos (Cadastro.carregar), para que os
+		// índices possam ser montados de uma só vez.
+		// A inicialização não é instantânea: todos os índices do cadastro (nomes, validades, bitmaps, busca por
+		// nome) precisam de todos os atributos de todos os registros, portanto decodificar os registros apenas
+		// no primeiro acesso não economizaria nada. A decodificação é a menor parte do tempo da carga; a maior
+		// parte é a montagem dos índices.
+		try (ArquivoDeRegistros arquivo = ArquivoDeRegistros.abrir(snapshot)) {
+			List<Pessoa> registros = new ArrayList<>(arquivo.quantidade());
+			for (int i = 0; i < arquivo.quantidade(); i++) {
+				registros.add(arquivo.ler(i));
+			}
+			cadastro.carregar(registros);
+			return arquivo.numeroDaUltimaOperacao();
+		}
+	}
+
+	private static long reaplicarDiario(Path arquivo, long numeroDoSnapshot, Cadastro cadastro) throws IOException {
+		// Reaplica no cadastro as operações do diário posteriores ao snapshot, e retorna o número da última
+		// operação válida. Caso a última entrada esteja incompleta ou corrompida, ela e tudo o que vier depois
+		// são descartados.
+		long ultimoNumero = numeroDoSnapshot;
+		long tamanhoValido = 0;
+		long tamanhoDoArquivo = Files.size(arquivo);
+		try (InputStream arquivoDoDiario = new BufferedInputStream(Files.newInputStream(arquivo), 1 << 16);
+				DataInputStream entrada = new DataInputStream(arquivoDoDiario)) {
+			while (true) {
+				byte[] corpo;
+				int crcGravado;
+				try {
+					int tamanho = entrada.readInt();
+					// Um tamanho impossível indica que o cabeçalho da entrada foi gravado pela metade.
+					if (tamanho < 9 || tamanho > tamanhoDoArquivo - tamanhoValido - 8) {
+						break;
+					}
+					corpo = new byte[tamanho];
+					entrada.readFully(corpo);
+					crcGravado = entrada.readInt();
+				} catch (EOFException e) {
+					break;
+				}
+				CRC32 crc = new CRC32();
+				crc.update(corpo);
+				if ((int) crc.getValue() != crcGravado) {
+					break;
+				}
+				DataInputStream operacao = new DataInputStream(new ByteArrayInputStream(corpo));
+				long numero = operacao.readLong();
+				if (numero > numeroDoSnapshot) {
+					reaplicar(numero, operacao, cadastro);
+					ultimoNumero = numero;
+				}
+				tamanhoValido += 8 + corpo.length;
+			}
+		}
+		try (FileChannel canal = FileChannel.open(arquivo, StandardOpenOption.WRITE)) {
+			canal.truncate(tamanhoValido);
+		}
+		return ultimoNumero;
+	}
+
+	private static void reaplicar(long numero, DataInputStream operacao, Cadastro cadastro) throws IOException {
+		byte tipo = operacao.readByte();
+		if (tipo == DiarioDeOperacoes.ADICIONAR) {
+			cadastro.adicionar(CodificacaoDeRegistros.lerRegistro(operacao));
+		} else if (tipo == DiarioDeOperacoes.REMOVER) {
+			cadastro.remover(CodificacaoDeRegistros.lerTexto(operacao));
+		} else if (tipo == DiarioDeOperacoes.SUBSTITUIR) {
+			Pessoa anterior = registroDaOperacao(numero, CodificacaoDeRegistros.lerTexto(operacao), cadastro);
+			cadastro.substituir(anterior, CodificacaoDeRegistros.lerRegistro(operacao));
+		} else if (tipo == DiarioDeOperacoes.ALTERAR) {
+			Pessoa pessoa = registroDaOperacao(numero, CodificacaoDeRegistros.lerTexto(operacao), cadastro);
+			Atributo atributo = Atributo.values()[operacao.readByte()];
+			Object valor = CodificacaoDeRegistros.lerValor(operacao, atributo);
+			// As entradas gravadas por versões anteriores não possuem a data de validade depois da data de
+			// emissão; nesse caso, a validade é calculada novamente pelo setter.
+			if (atributo == Atributo.DATA_DE_EMISSAO && operacao.available() > 0) {
+				if (!(pessoa instanceof Condutor)) {
+					throw new IOException("A operação " + numero + " do diário altera a data de emissão do CPF "
+							+ pessoa.getCpf() + ", que não possui habilitação.");
+				}
+				// A validade gravada é restaurada com o construtor da recuperação, como no snapshot.
+				Condutor condutor = (Condutor) pessoa;
+				cadastro.substituir(condutor, new Condutor(condutor.getNome(), condutor.getCpf(),
+						condutor.getDataDeNascimento(), condutor.getNumeroDeRegistro(), condutor.getCategoria(),
+						(LocalDate) valor, CodificacaoDeRegistros.lerData(operacao), condutor.getTipoDeCarteira()));
+			} else {
+				pessoa.alterarAtributo(atributo, valor);
+			}
+		} else {
+			throw new IOException("Tipo de operação desconhecido no diário: " + tipo);
+		}
+	}
+
+	private static Pessoa registroDaOperacao(long numero, String cpf, Cadastro cadastro) throws IOException {
+		// O registro modificado por uma operação do diário deve existir no cadastro recuperado até ali; caso
+		// contrário, o diário não corresponde ao snapshot, e a recuperação não pode continuar.
+		Pessoa pessoa = cadastro.buscar(cpf);
+		if (pessoa == null) {
+			throw new IOException("A operação " + numero + " do diário modifica o CPF " + cpf
+					+ ", que não está no cadastro.");
+		}
+		return pessoa;
+	}
+}
@@ -0,0 +1,237 @@
+package servidor;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+final class CacheDeRegistros {
+	// Cache de tamanho limitado, com a política de remoção W-TinyLFU (a mesma da biblioteca Caffeine):
+	// - as entradas novas entram em uma pequena "janela" (1% da capacidade), em ordem LRU, que absorve as rajadas
+	//   de acessos a chaves novas;
+	// - quando saem da janela, as entradas disputam um lugar na área principal (99%), que é dividida em um trecho
+	//   de experiência (20%) e um trecho protegido (80%), ambos em ordem LRU. Uma entrada acessada de novo enquanto
+	//   está em experiência passa para o trecho protegido;
+	// - a disputa é decidida pela frequência de acesso estimada de cada chave: a entrada que sai da janela só fica
+	//   no cache se foi mais acessada do que a entrada que seria removida da área principal. Assim, chaves
+	//   acessadas uma única vez (por exemplo, em uma varredura) não expulsam as chaves realmente frequentes.
+	// As frequências são estimadas por um count-min sketch: uma tabela de contadores de 4 bits, indexada por 4
+	// hashes diferentes da chave (a estimativa é o menor dos 4 contadores). Quando o número de acessos contados
+	// chega a 10 vezes a capacidade, todos os contadores são divididos por 2, para que as frequências antigas
+	// percam o peso com o tempo.
+	// As operações são feitas com um único bloqueio, pois são muito mais rápidas do que as requisições às
+	// partições que o cache evita.
+	private static final int[] SEMENTES = { 0x97CB3127, 0xB7E15163, 0xC2B2AE35, 0x27D4EB2F };
+
+	private final int capacidade;
+	private final int capacidadeDaJanela;
+	private final int capacidadeProtegida;
+	private final Map<String, Entrada> entradas = new HashMap<>();
+	// As três listas LRU, com a entrada usada há mais tempo no início.
+	private final Lista janela = new Lista();
+	private final Lista experiencia = new Lista();
+	private final Lista protegida = new Lista();
+
+	private final long[] contadores;
+	private final int limiteDeAmostras;
+	private int amostras;
+
+	private final LongAdder acertos = new LongAdder();
+	private final LongAdder faltas = new LongAdder();
+	private final LongAdder remocoes = new LongAdder();
+
+	CacheDeRegistros(int capacidade) {
+		if (capacidade < 1) {
+			throw new IllegalArgumentException("A capacidade do cache deve ser positiva.");
+		}
+		this.capacidade = capacidade;
+		capacidadeDaJanela = Math.max(1, capacidade / 100);
+		capacidadeProtegida = (int) ((capacidade - capacidadeDaJanela) * 0.8);
+		// Uma posição da tabela (16 contadores) por entrada do cache, arredondada para uma potência de 2.
+		contadores = new long[Math.max(64, Integer.highestOneBit(capacidade - 1) << 1)];
+		limiteDeAmostras = 10 * capacidade;
+	}
+
+	synchronized String buscar(String chave) {
+		int hash = hash(chave);
+		incrementar(hash);
+		Entrada entrada = entradas.get(chave);
+		if (entrada == null) {
+			faltas.increment();
+			return null;
+		}
+		acertos.increment();
+		acessar(entrada);
+		return entrada.valor;
+	}
+
+	synchronized void guardar(String chave, String valor) {
+		Entrada entrada = entradas.get(chave);
+		if (entrada != null) {
+			entrada.valor = valor;
+			acessar(entrada);
+			return;
+		}
+		entrada = new Entrada(chave, valor, hash(chave));
+		entradas.put(chave, entrada);
+		janela.adicionar(entrada);
+		if (janela.tamanho > capacidadeDaJanela) {
+			// A entrada mais antiga da janela passa para o trecho de experiência, e a área principal, caso tenha
+			// passado da capacidade, perde a entrada menos frequente entre a candidata e a vítima.
+			Entrada candidata = janela.primeira;
+			janela.retirar(candidata);
+			experiencia.adicionar(candidata);
+			if (experiencia.tamanho + protegida.tamanho > capacidade - capacidadeDaJanela) {
+				Entrada vitima = experiencia.primeira != candidata ? experiencia.primeira : protegida.primeira;
+				if (vitima == null) {
+					vitima = candidata;
+				}
+				Entrada removida = frequencia(candidata.hash) > frequencia(vitima.hash) ? vitima : candidata;
+				lista(removida).retirar(removida);
+				entradas.remove(removida.chave);
+				remocoes.increment();
+			}
+		}
+	}
+
+	synchronized void remover(String chave) {
+		Entrada entrada = entradas.remove(chave);
+		if (entrada != null) {
+			lista(entrada).retirar(entrada);
+		}
+	}
+
+	private void acessar(Entrada entrada) {
+		Lista lista = lista(entrada);
+		lista.retirar(entrada);
+		if (lista == experiencia) {
+			// A entrada é promovida ao trecho protegido; caso ele passe da capacidade, a entrada mais antiga do
+			// trecho protegido volta para o trecho de experiência.
+			protegida.adicionar(entrada);
+			if (protegida.tamanho > capacidadeProtegida) {
+				Entrada rebaixada = protegida.primeira;
+				protegida.retirar(rebaixada);
+				experiencia.adicionar(rebaixada);
+			}
+		} else {
+			lista.adicionar(entrada);
+		}
+	}
+
+	private Lista lista(Entrada entrada) {
+		return entrada.lista;
+	}
+
+	// O count-min sketch: para cada um dos 4 hashes, uma posição da tabela e um dos 16 contadores dessa posição.
+	private int frequencia(int hash) {
+		int frequencia = 15;
+		for (int i = 0; i < SEMENTES.length; i++) {
+			int h = reespalhar(hash, i);
+			frequencia = Math.min(frequencia, (int) (contadores[h & (contadores.length - 1)] >>> deslocamento(h)) & 15);
+		}
+		return frequencia;
+	}
+	private void incrementar(int hash) {
+		boolean incrementou = false;
+		for (int i = 0; i < SEMENTES.length; i++) {
+			int h = reespalhar(hash, i);
+			int indice = h & (contadores.length - 1);
+			int deslocamento = deslocamento(h);
+			if (((contadores[indice] >>> deslocamento) & 15) < 15) {
+				contadores[indice] += 1L << deslocamento;
+				incrementou = true;
+			}
+		}
+		if (incrementou && ++amostras >= limiteDeAmostras) {
+			// Envelhecimento: todos os contadores são divididos por 2 de uma só vez (o deslocamento de cada long
+			// passaria o bit mais baixo de um contador para o vizinho, por isso a máscara).
+			for (int i = 0; i < contadores.length; i++) {
+				contadores[i] = (contadores[i] >>> 1) & 0x7777777777777777L;
+			}
+			amostras /= 2;
+		}
+	}
+	private static int reespalhar(int hash, int i) {
+		int h = (hash ^ SEMENTES[i]) * 0x9E3779B9;
+		return h ^ (h >>> 15);
+	}
+	private static int deslocamento(int h) {
+		return (h >>> 28) << 2;
+	}
+	private static int hash(String chave) {
+		int h = chave.hashCode() * 0x85EBCA6B;
+		return h ^ (h >>> 13);
+	}
+
+	long getAcertos() {
+		return acertos.sum();
+	}
+	long getFaltas() {
+		return faltas.sum();
+	}
+	long getRemocoes() {
+		return remocoes.sum();
+	}
+	double getTaxaDeAcertos() {
+		long acertos = getAcertos();
+		long consultas = acertos + getFaltas();
+		return consultas == 0 ? 0 : (double) acertos / consultas;
+	}
+	synchronized int getQuantidade() {
+		return entradas.size();
+	}
+	int getCapacidade() {
+		return capacidade;
+	}
+
+	private static final class Entrada {
+		private final String chave;
+		private String valor;
+		private final int hash;
+		private Lista lista;
+		private Entrada anterior;
+		private Entrada proxima;
+
+		Entrada(String chave, String valor, int hash) {
+			this.chave = chave;
+			this.valor = valor;
+			this.hash = hash;
+		}
+	}
+
+	// Lista duplamente encadeada, em ordem de uso: as entradas são adicionadas no fim e retiradas de qualquer
+	// posição em tempo constante.
+	private static final class Lista {
+		private Entrada primeira;
+		private Entrada ultima;
+		private int tamanho;
+
+		void adicionar(Entrada entrada) {
+			entrada.lista = this;
+			entrada.anterior = ultima;
+			entrada.proxima = null;
+			if (ultima == null) {
+				primeira = entrada;
+			} else {
+				ultima.proxima = entrada;
+			}
+			ultima = entrada;
+			tamanho++;
+		}
+		void retirar(Entrada entrada) {
+			if (entrada.anterior == null) {
+				primeira = entrada.proxima;
+			} else {
+				entrada.anterior.proxima = entrada.proxima;
+			}
+			if (entrada.proxima == null) {
+				ultima = entrada.anterior;
+			} else {
+				entrada.proxima.anterior = entrada.anterior;
+			}
+			entrada.anterior = null;
+			entrada.proxima = null;
+			entrada.lista = null;
+			tamanho--;
+		}
+	}
+}
@@ -0,0 +1,178 @@
+package servidor;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+class LeitorDeJson {
+	// Leitor de objetos JSON simples, sem objetos ou listas aninhados, como os enviados ao servidor:
+	//     {"nome": "Maria", "dataDeNascimento": "01/01/1990"}
+	// Os valores são devolvidos como texto; números, true e false são devolvidos na forma em que foram escritos,
+	// e null é devolvido como null.
+	// As respostas de listagem do servidor, lidas pelo roteador das partições, têm uma lista de registros:
+	//     {"registros": [{...}, {...}], "proxima": "..."}
+	// Nesse caso, cada objeto da lista é devolvido como o seu texto JSON original (veja lerObjeto abaixo).
+	private final String texto;
+	private int posicao;
+	private List<String> objetosDaLista;
+
+	private LeitorDeJson(String texto) {
+		this.texto = texto;
+	}
+
+	static Map<String, String> lerObjeto(String texto) {
+		return lerObjeto(texto, null);
+	}
+	// Permite uma lista de objetos simples como valor de um campo: os objetos são adicionados, como texto, a
+	// "objetosDaLista", e o campo recebe o valor null.
+	static Map<String, String> lerObjeto(String texto, List<String> objetosDaLista) {
+		LeitorDeJson leitor = new LeitorDeJson(texto);
+		leitor.objetosDaLista = objetosDaLista;
+		Map<String, String> campos = leitor.objeto();
+		leitor.pularEspacos();
+		if (leitor.posicao != texto.length()) {
+			throw leitor.erro();
+		}
+		return campos;
+	}
+
+	private Map<String, String> objeto() {
+		Map<String, String> campos = new LinkedHashMap<>();
+		esperar('{');
+		pularEspacos();
+		if (proximo() == '}') {
+			posicao++;
+			return campos;
+		}
+		while (true) {
+			pularEspacos();
+			String nome = texto();
+			pularEspacos();
+			esperar(':');
+			pularEspacos();
+			campos.put(nome, valor());
+			pularEspacos();
+			if (proximo() != ',') {
+				esperar('}');
+				return campos;
+			}
+			posicao++;
+		}
+	}
+
+	private String valor() {
+		if (proximo() == '"') {
+			return texto();
+		}
+		if (proximo() == '[' && objetosDaLista != null) {
+			lista();
+			return null;
+		}
+		// Números, true, false e null: o valor termina na próxima vírgula, chave ou espaço.
+		int inicio = posicao;
+		while (posicao < texto.length() && ",} \t\r\n".indexOf(texto.charAt(posicao)) < 0) {
+			posicao++;
+		}
+		String valor = texto.substring(inicio, posicao);
+		if (valor.isEmpty() || valor.charAt(0) == '{' || valor.charAt(0) == '[') {
+			throw erro();
+		}
+		return valor.equals("null") ? null : valor;
+	}
+
+	private void lista() {
+		esperar('[');
+		pularEspacos();
+		if (proximo() == ']') {
+			posicao++;
+			return;
+		}
+		while (true) {
+			pularEspacos();
+			int inicio = posicao;
+			List<String> lista = objetosDaLista;
+			// Os objetos da lista não podem ter listas.
+			objetosDaLista = null;
+			objeto();
+			objetosDaLista = lista;
+			lista.add(texto.substring(inicio, posicao));
+			pularEspacos();
+			if (proximo() != ',') {
+				esperar(']');
+				return;
+			}
+			posicao++;
+		}
+	}
+
+	private String texto() {
+		esperar('"');
+		StringBuilder valor = new StringBuilder();
+		while (true) {
+			if (posicao >= texto.length()) {
+				throw erro();
+			}
+			char c = texto.charAt(posicao++);
+			if (c == '"') {
+				return valor.toString();
+			}
+			if (c != '\\') {
+				valor.append(c);
+				continue;
+			}
+			if (posicao >= texto.length()) {
+				throw erro();
+			}
+			char escape = texto.charAt(posicao++);
+			switch (escape) {
+			case 'n':
+				valor.append('\n');
+				break;
+			case 'r':
+				valor.append('\r');
+				break;
+			case 't':
+				valor.append('\t');
+				break;
+			case 'b':
+				valor.append('\b');
+				break;
+			case 'f':
+				valor.append('\f');
+				break;
+			case 'u':
+				if (posicao + 4 > texto.length()) {
+					throw erro();
+				}
+				try {
+					valor.append((char) Integer.parseInt(texto.substring(posicao, posicao + 4), 16));
+				} catch (NumberFormatException e) {
+					throw erro();
+				}
+				posicao += 4;
+				break;
+			default:
+				// \" \\ e \/ representam o próprio caractere.
+				valor.append(escape);
+			}
+		}
+	}
+
+	private char proximo() {
+		return posicao < texto.length() ? texto.charAt(posicao) : 0;
+	}
+	private void esperar(char c) {
+		if (proximo() != c) {
+			throw erro();
+		}
+		posicao++;
+	}
+	private void pularEspacos() {
+		while (posicao < texto.length() && Character.isWhitespace(texto.charAt(posicao))) {
+			posicao++;
+		}
+	}
+	private IllegalArgumentException erro() {
+		return new IllegalArgumentException("JSON inválido na posição " + posicao + ".");
+	}
+}
@@ -0,0 +1,18 @@
+package servidor;
+
+final class Particionamento {
+	// Regra de particionamento do cadastro entre vários processos (veja RoteadorHttp): cada CPF pertence a uma
+	// única partição, escolhida pelo hash do CPF. O hashCode de String é definido pela especificação do Java,
+	// portanto o roteador e os servidores das partições, em processos diferentes, escolhem sempre a mesma
+	// partição para o mesmo CPF.
+	// A partição é obtida dos bits altos do hash (multiplicação seguida de deslocamento, em vez do resto da
+	// divisão), para que não dependa dos bits baixos do hashCode, que escolhem a posição do CPF no índice do
+	// cadastro (um ConcurrentHashMap): caso contrário, cada partição usaria apenas uma parte das posições.
+	private Particionamento() {
+	}
+
+	static int particao(String cpf, int quantidadeDeParticoes) {
+		int h = cpf == null ? 0 : cpf.hashCode() * 0x9E3779B9;
+		return (int) (((h ^ (h >>> 16)) & 0xFFFFFFFFL) * quantidadeDeParticoes >>> 32);
+	}
+}
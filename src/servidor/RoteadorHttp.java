@@ -0,0 +1,814 @@
+package servidor;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandler;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import arquivos.ExportacaoDeRegistros;
+import cadastro.IndiceDeNomes;
+
+public class RoteadorHttp {
+	// Roteador de um cadastro particionado entre vários processos. Quando o cadastro não cabe na memória de uma
+	// única JVM, os registros são divididos em N partições pelo hash do CPF (veja Particionamento), e cada
+	// partição é atendida por um ServidorHttp próprio, com o seu próprio diretório de dados. O roteador oferece
+	// aos clientes os mesmos endereços do ServidorHttp, e:
+	// - encaminha as buscas, os cadastros, as edições e as remoções de um CPF para a partição dona do CPF;
+	// - envia as operações que envolvem todas as partições a todas elas ao mesmo tempo, e junta as respostas
+	//   (scatter-gather): a busca por número de CNH, a contagem, as métricas, a listagem e a exportação.
+	// Na listagem em ordem alfabética e na exportação em ordem alfabética, cada partição já devolve os seus
+	// registros ordenados, e o roteador intercala as N sequências (intercalação de N vias, com uma fila de
+	// prioridade que guarda apenas o próximo registro de cada partição). Na ordem de cadastro, não existe uma
+	// ordem entre registros de partições diferentes: os registros são listados partição por partição.
+	// O marcador "proxima" de uma página do roteador guarda a posição da listagem em cada uma das partições.
+	//
+	// As buscas por CPF e por número de CNH passam por um cache dos registros mais consultados (veja
+	// CacheDeRegistros), que evita a ida à partição (e, na busca por CNH, a consulta a todas as partições). O cache
+	// guarda a resposta da partição para cada CPF, e o CPF de cada número de CNH. Cada cadastro, edição, remoção ou
+	// habilitação feita pelo roteador retira o CPF do cache depois de concluída na partição (write-through), por
+	// isso as partições só devem ser modificadas através do roteador. O tamanho do cache (em entradas) pode ser
+	// informado na propriedade "roteador.cache" (0 desativa o cache), e as taxas de acerto aparecem em /metricas.
+	//
+	// Limitações: a troca de CPF entre partições é feita em dois passos (cadastro na nova partição e remoção na
+	// antiga), e não de forma atômica; e o número de registro da CNH só é único dentro de cada partição.
+	//
+	// Uso, com as partições já iniciadas (cada uma com -Dcadastro.particao=i/N):
+	//     java -p bin -m trabalho/servidor.RoteadorHttp 8080 http://localhost:8081,http://localhost:8082
+	// ou iniciando N partições locais, nas portas seguintes à do roteador e nos diretórios dados/particao-i:
+	//     java -p bin -m trabalho/servidor.RoteadorHttp 8080 --particoes 3
+	private static final Set<String> CAMPOS_EDITAVEIS = Set.of("nome", "cpf", "dataDeNascimento", "numeroDeRegistro",
+			"categoria", "dataDeEmissao", "tipoDeCarteira");
+	private static final Set<String> CAMPOS_DA_HABILITACAO = Set.of("numeroDeRegistro", "categoria", "dataDeEmissao",
+			"tipoDeCarteira");
+	private static final int CAPACIDADE_PADRAO_DO_CACHE = 50_000;
+
+	static {
+		// O HttpServer das partições fecha as conexões paradas há mais de 30 segundos, e o HttpClient guarda as
+		// conexões para reutilizá-las por até 20 minutos. Uma conexão fechada pela partição no momento em que o
+		// roteador a reutiliza faria uma requisição falhar; por isso o roteador descarta as conexões paradas bem
+		// antes (10 segundos), para que a partição nunca feche primeiro uma conexão que o roteador ainda considera
+		// válida. Se mesmo assim uma conexão reutilizada estiver fechada, o HttpClient repete automaticamente
+		// apenas as requisições GET, que podem ser repetidas sem risco. Os cadastros, edições e remoções não são
+		// repetidos: a falha é devolvida ao cliente (502), pois a partição pode ter recebido a requisição.
+		if (System.getProperty("jdk.httpclient.keepalive.timeout") == null) {
+			System.setProperty("jdk.httpclient.keepalive.timeout", "10");
+		}
+	}
+
+	private final List<URI> particoes;
+	private final HttpClient cliente;
+	private final HttpServer servidor;
+	private final ExecutorService executor;
+	private final CacheDeRegistros cache;
+	// Contadores de invalidação, um por grupo de CPFs (veja guardarNoCache).
+	private final AtomicLongArray invalidacoes = new AtomicLongArray(1024);
+
+	public RoteadorHttp(List<URI> particoes, int porta) throws IOException {
+		this(particoes, porta, Integer.getInteger("roteador.cache", CAPACIDADE_PADRAO_DO_CACHE));
+	}
+	public RoteadorHttp(List<URI> particoes, int porta, int capacidadeDoCache) throws IOException {
+		if (particoes.isEmpty()) {
+			throw new IllegalArgumentException("Nenhuma partição foi informada.");
+		}
+		if (capacidadeDoCache < 0) {
+			throw new IllegalArgumentException("A capacidade do cache não pode ser negativa.");
+		}
+		this.particoes = List.copyOf(particoes);
+		cache = capacidadeDoCache == 0 ? null : new CacheDeRegistros(capacidadeDoCache);
+		executor = ServidorHttp.executorDeRequisicoes();
+		cliente = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).connectTimeout(Duration.ofSeconds(5))
+				.executor(executor).build();
+		servidor = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), porta), 1024);
+		servidor.createContext("/registros", this::atender);
+		servidor.createContext("/contagem", this::atender);
+		servidor.createContext("/exportacao", this::atender);
+		servidor.createContext("/metricas", this::atender);
+		servidor.setExecutor(executor);
+	}
+
+	public void iniciar() {
+		servidor.start();
+	}
+	public int porta() {
+		return servidor.getAddress().getPort();
+	}
+	public void parar() {
+		servidor.stop(1);
+		executor.shutdown();
+	}
+
+	int particaoDoCpf(String cpf) {
+		return Particionamento.particao(cpf, particoes.size());
+	}
+
+	private void atender(HttpExchange troca) throws IOException {
+		try {
+			String[] partes = troca.getRequestURI().getRawPath().substring(1).split("/");
+			String metodo = troca.getRequestMethod();
+			if (partes.length == 1 && !partes[0].equals("registros")) {
+				if (!metodo.equals("GET")) {
+					ServidorHttp.responder(troca, 405, ServidorHttp.erro("Método não permitido."));
+				} else if (partes[0].equals("contagem")) {
+					contagem(troca);
+				} else if (partes[0].equals("exportacao")) {
+					exportacao(troca);
+				} else if (partes[0].equals("metricas")) {
+					metricas(troca);
+				} else {
+					ServidorHttp.responder(troca, 404, ServidorHttp.erro("Endereço não encontrado."));
+				}
+			} else if (!partes[0].equals("registros")) {
+				ServidorHttp.responder(troca, 404, ServidorHttp.erro("Endereço não encontrado."));
+			} else if (partes.length == 1 && metodo.equals("GET")) {
+				Map<String, String> parametros = ServidorHttp.parametros(troca);
+				if (parametros.containsKey("cnh")) {
+					buscarPorCnh(troca, parametros.get("cnh"));
+				} else {
+					listar(troca, parametros);
+				}
+			} else if (partes.length == 1 && metodo.equals("POST")) {
+				// O cadastro vai para a partição do CPF informado no corpo da requisição.
+				byte[] corpo = corpo(troca);
+				String cpf = LeitorDeJson.lerObjeto(new String(corpo, StandardCharsets.UTF_8)).get("cpf");
+				try {
+					encaminhar(troca, particaoDoCpf(cpf), corpo);
+				} finally {
+					invalidar(cpf);
+				}
+			} else if (partes.length == 2 && metodo.equals("GET")) {
+				buscar(troca, URLDecoder.decode(partes[1], StandardCharsets.UTF_8));
+			} else if (partes.length == 2 && metodo.equals("PATCH")) {
+				editar(troca, URLDecoder.decode(partes[1], StandardCharsets.UTF_8));
+			} else if (partes.length == 2 || partes.length == 3) {
+				// Remoção e habilitação: a requisição é encaminhada sem modificação para a partição do CPF.
+				String cpf = URLDecoder.decode(partes[1], StandardCharsets.UTF_8);
+				try {
+					encaminhar(troca, particaoDoCpf(cpf), corpo(troca));
+				} finally {
+					invalidar(cpf);
+				}
+			} else {
+				ServidorHttp.responder(troca, 404, ServidorHttp.erro("Endereço não encontrado."));
+			}
+		} catch (IllegalArgumentException e) {
+			ServidorHttp.responder(troca, 400, ServidorHttp.erro(e.getMessage()));
+		} catch (UncheckedIOException e) {
+			// Uma das partições não respondeu.
+			ServidorHttp.responder(troca, 502, ServidorHttp.erro(e.getCause().getMessage()));
+		} catch (RuntimeException e) {
+			ServidorHttp.erroInterno(troca, e);
+		} finally {
+			troca.close();
+		}
+	}
+
+	private void encaminhar(HttpExchange troca, int particao, byte[] corpo) throws IOException {
+		String caminho = troca.getRequestURI().getRawPath();
+		String consulta = troca.getRequestURI().getRawQuery();
+		responder(troca, enviar(particao, troca.getRequestMethod(), consulta == null ? caminho : caminho + "?" + consulta,
+				corpo));
+	}
+
+	private void editar(HttpExchange troca, String cpf) throws IOException {
+		// Quando o novo CPF pertence a outra partição, o registro é cadastrado na nova partição, já com todas as
+		// alterações, e depois removido da partição antiga. Nos demais casos, a edição é encaminhada.
+		byte[] corpo = corpo(troca);
+		Map<String, String> campos = LeitorDeJson.lerObjeto(new String(corpo, StandardCharsets.UTF_8));
+		String novoCpf = campos.get("cpf");
+		try {
+			editar(troca, cpf, novoCpf, campos, corpo);
+		} finally {
+			invalidar(cpf);
+			invalidar(novoCpf);
+		}
+	}
+	private void editar(HttpExchange troca, String cpf, String novoCpf, Map<String, String> campos, byte[] corpo)
+			throws IOException {
+		int origem = particaoDoCpf(cpf);
+		if (novoCpf == null || novoCpf.equals(cpf) || particaoDoCpf(novoCpf) == origem) {
+			encaminhar(troca, origem, corpo);
+			return;
+		}
+		for (String campo : campos.keySet()) {
+			if (!CAMPOS_EDITAVEIS.contains(campo)) {
+				throw new IllegalArgumentException("O campo " + campo + " não pode ser editado.");
+			}
+		}
+		String caminho = "/registros/" + URLEncoder.encode(cpf, StandardCharsets.UTF_8);
+		HttpResponse<byte[]> atual = enviar(origem, "GET", caminho, null);
+		if (atual.statusCode() != 200) {
+			responder(troca, atual);
+			return;
+		}
+		Map<String, String> registro = LeitorDeJson.lerObjeto(new String(atual.body(), StandardCharsets.UTF_8));
+		if (registro.containsKey("habilitado") && campos.keySet().stream().anyMatch(CAMPOS_DA_HABILITACAO::contains)) {
+			throw new IllegalArgumentException("O cidadão de CPF " + cpf + " não possui habilitação.");
+		}
+		// O registro é enviado à operação interna de transferência da nova partição, e não ao POST /registros
+		// dos clientes, pois a data de validade é enviada sem alteração, para que a nova partição não a recalcule
+		// com a idade atual (como faria no cadastro de uma nova CNH); ela só é recalculada, pela nova partição,
+		// quando a data de emissão é editada, como acontece na edição dentro de uma mesma partição. "habilitado"
+		// só existe na resposta.
+		if (campos.containsKey("dataDeEmissao")) {
+			registro.remove("dataDeValidade");
+		}
+		registro.remove("habilitado");
+		registro.putAll(campos);
+		StringBuilder novo = new StringBuilder("{");
+		for (Map.Entry<String, String> campo : registro.entrySet()) {
+			if (novo.length() > 1) {
+				novo.append(',');
+			}
+			ExportacaoDeRegistros.textoJson(novo, campo.getKey());
+			novo.append(':');
+			ExportacaoDeRegistros.textoJson(novo, campo.getValue());
+		}
+		novo.append('}');
+		HttpResponse<byte[]> cadastrado = enviar(particaoDoCpf(novoCpf), "POST", "/transferencias",
+				novo.toString().getBytes(StandardCharsets.UTF_8));
+		if (cadastrado.statusCode() != 201) {
+			responder(troca, cadastrado);
+			return;
+		}
+		if (!removido(origem, caminho)) {
+			// O registro não foi removido da partição antiga: a inclusão na nova partição é desfeita, para que o
+			// registro não fique cadastrado nas duas partições.
+			String caminhoNovo = "/registros/" + URLEncoder.encode(novoCpf, StandardCharsets.UTF_8);
+			if (removido(particaoDoCpf(novoCpf), caminhoNovo)) {
+				ServidorHttp.responder(troca, 502, ServidorHttp.erro("A partição " + origem
+						+ " não removeu o registro do CPF " + cpf + ". A troca de CPF foi desfeita."));
+			} else {
+				System.err.println("O registro do CPF " + cpf + " ficou cadastrado também com o CPF " + novoCpf
+						+ ": a remoção na partição " + origem + " e a remoção da nova inclusão falharam.");
+				ServidorHttp.responder(troca, 500, ServidorHttp.erro("A troca de CPF não foi concluída, e o registro"
+						+ " ficou cadastrado com o CPF " + cpf + " e com o CPF " + novoCpf + "."));
+			}
+			return;
+		}
+		troca.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+		troca.sendResponseHeaders(200, cadastrado.body().length);
+		try (OutputStream saida = troca.getResponseBody()) {
+			saida.write(cadastrado.body());
+		}
+	}
+
+	private boolean removido(int particao, String caminho) {
+		// Remove um registro de uma partição, retornando false caso a partição não responda ou recuse a remoção.
+		try {
+			return enviar(particao, "DELETE", caminho, null).statusCode() == 204;
+		} catch (UncheckedIOException e) {
+			return false;
+		}
+	}
+
+	private void buscar(HttpExchange troca, String cpf) throws IOException {
+		String registro = cache == null ? null : cache.buscar("cpf:" + cpf);
+		if (registro != null) {
+			ServidorHttp.responder(troca, 200, registro);
+			return;
+		}
+		long versao = versaoDoCpf(cpf);
+		HttpResponse<byte[]> resposta = enviar(particaoDoCpf(cpf), "GET",
+				"/registros/" + URLEncoder.encode(cpf, StandardCharsets.UTF_8), null);
+		if (resposta.statusCode() == 200) {
+			guardarNoCache(cpf, versao, new String(resposta.body(), StandardCharsets.UTF_8));
+		}
+		responder(troca, resposta);
+	}
+
+	private void buscarPorCnh(HttpExchange troca, String cnh) throws IOException {
+		// No cache, o número da CNH leva ao CPF do condutor, e o CPF leva ao registro. O registro só é usado se
+		// ainda tiver o mesmo número de CNH (o CPF pode ter sido editado, removido ou ter perdido o registro do
+		// cache desde então); caso contrário, a busca é feita nas partições.
+		if (cache != null) {
+			String cpf = cache.buscar("cnh:" + cnh);
+			String registro = cpf == null ? null : cache.buscar("cpf:" + cpf);
+			if (registro != null && cnh.equals(LeitorDeJson.lerObjeto(registro).get("numeroDeRegistro"))) {
+				ServidorHttp.responder(troca, 200, registro);
+				return;
+			}
+		}
+		// O número da CNH pode estar em qualquer partição: a busca é enviada a todas, e a primeira resposta
+		// encontrada é devolvida.
+		long[] versoes = new long[invalidacoes.length()];
+		for (int i = 0; i < versoes.length; i++) {
+			versoes[i] = invalidacoes.get(i);
+		}
+		List<HttpResponse<byte[]>> respostas = enviarParaTodas(particao -> troca.getRequestURI().getRawPath() + "?"
+				+ troca.getRequestURI().getRawQuery());
+		for (HttpResponse<byte[]> resposta : respostas) {
+			if (resposta.statusCode() == 200) {
+				if (cache != null) {
+					String registro = new String(resposta.body(), StandardCharsets.UTF_8);
+					String cpf = LeitorDeJson.lerObjeto(registro).get("cpf");
+					if (guardarNoCache(cpf, versoes[grupoDoCpf(cpf)], registro)) {
+						cache.guardar("cnh:" + cnh, cpf);
+					}
+				}
+				responder(troca, resposta);
+				return;
+			}
+		}
+		responder(troca, respostas.get(0));
+	}
+
+	// Como a busca na partição e a gravação no cache não são atômicas, uma busca concorrente com uma edição poderia
+	// guardar no cache o registro anterior à edição, depois de a edição ter retirado o CPF do cache. Para evitar
+	// isso, cada invalidação incrementa o contador do grupo do CPF antes de retirá-lo do cache; a busca lê o
+	// contador antes de ir à partição e, depois de guardar a resposta, confere se o contador mudou: se mudou, a
+	// resposta pode estar desatualizada e é retirada do cache.
+	private static int grupoDoCpf(String cpf) {
+		int h = cpf.hashCode() * 0x9E3779B9;
+		return (h ^ (h >>> 16)) & 1023;
+	}
+	private long versaoDoCpf(String cpf) {
+		return invalidacoes.get(grupoDoCpf(cpf));
+	}
+	private boolean guardarNoCache(String cpf, long versao, String registro) {
+		if (cache == null || cpf == null) {
+			return false;
+		}
+		cache.guardar("cpf:" + cpf, registro);
+		if (invalidacoes.get(grupoDoCpf(cpf)) != versao) {
+			cache.remover("cpf:" + cpf);
+			return false;
+		}
+		return true;
+	}
+	private void invalidar(String cpf) {
+		if (cache != null && cpf != null) {
+			invalidacoes.incrementAndGet(grupoDoCpf(cpf));
+			cache.remover("cpf:" + cpf);
+		}
+	}
+
+	private void contagem(HttpExchange troca) throws IOException {
+		long registros = 0;
+		long condutores = 0;
+		for (HttpResponse<byte[]> resposta : enviarParaTodas(particao -> "/contagem")) {
+			Map<String, String> contagem = LeitorDeJson.lerObjeto(new String(resposta.body(), StandardCharsets.UTF_8));
+			registros += Long.parseLong(contagem.get("registros"));
+			condutores += Long.parseLong(contagem.get("condutores"));
+		}
+		ServidorHttp.responder(troca, 200, "{\"registros\":" + registros + ",\"condutores\":" + condutores
+				+ ",\"naoHabilitados\":" + (registros - condutores) + ",\"particoes\":" + particoes.size() + "}");
+	}
+
+	private void metricas(HttpExchange troca) throws IOException {
+		// As métricas do cache do roteador, seguidas das métricas de cada partição, com o rótulo particao="i"
+		// acrescentado a cada linha.
+		List<HttpResponse<byte[]>> respostas = enviarParaTodas(particao -> "/metricas");
+		StringBuilder metricas = new StringBuilder();
+		if (cache != null) {
+			metricas.append("roteador_cache_consultas_total{resultado=\"acerto\"} ").append(cache.getAcertos()).append('\n');
+			metricas.append("roteador_cache_consultas_total{resultado=\"falta\"} ").append(cache.getFaltas()).append('\n');
+			metricas.append("roteador_cache_taxa_de_acertos ").append(cache.getTaxaDeAcertos()).append('\n');
+			metricas.append("roteador_cache_remocoes_total ").append(cache.getRemocoes()).append('\n');
+			metricas.append("roteador_cache_entradas ").append(cache.getQuantidade()).append('\n');
+			metricas.append("roteador_cache_capacidade ").append(cache.getCapacidade()).append('\n');
+		}
+		for (int i = 0; i < respostas.size(); i++) {
+			String rotulo = "particao=\"" + i + "\"";
+			for (String linha : new String(respostas.get(i).body(), StandardCharsets.UTF_8).split("\n")) {
+				int chave = linha.indexOf('{');
+				if (chave >= 0) {
+					metricas.append(linha, 0, chave + 1).append(rotulo).append(',').append(linha, chave + 1, linha.length());
+				} else {
+					int espaco = linha.indexOf(' ');
+					metricas.append(linha, 0, espaco).append('{').append(rotulo).append('}').append(linha, espaco, linha.length());
+				}
+				metricas.append('\n');
+			}
+		}
+		byte[] corpo = metricas.toString().getBytes(StandardCharsets.UTF_8);
+		troca.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+		troca.sendResponseHeaders(200, corpo.length);
+		try (OutputStream saida = troca.getResponseBody()) {
+			saida.write(corpo);
+		}
+	}
+
+	private void listar(HttpExchange troca, Map<String, String> parametros) throws IOException {
+		String ordem = parametros.getOrDefault("ordem", "cadastro");
+		if (!ordem.equals("cadastro") && !ordem.equals("alfabetica")) {
+			throw new IllegalArgumentException("Ordem inválida: \"" + ordem + "\" (use cadastro ou alfabetica).");
+		}
+		int tamanho = ServidorHttp.TAMANHO_PADRAO_DA_PAGINA;
+		if (parametros.containsKey("tamanho")) {
+			try {
+				tamanho = Integer.parseInt(parametros.get("tamanho"));
+			} catch (NumberFormatException e) {
+				tamanho = 0;
+			}
+			if (tamanho < 1 || tamanho > ServidorHttp.TAMANHO_MAXIMO_DA_PAGINA) {
+				throw new IllegalArgumentException("O tamanho da página deve estar entre 1 e "
+						+ ServidorHttp.TAMANHO_MAXIMO_DA_PAGINA + ".");
+			}
+		}
+		// A posição da listagem em cada partição: "" no início, "n<nome>" para pular para o nome, "d<marcador>"
+		// depois do marcador da partição, e "f" quando a partição já foi listada até o fim.
+		String[] posicoes = new String[particoes.size()];
+		if (parametros.containsKey("depois")) {
+			posicoes = posicoesDoMarcador(parametros.get("depois"));
+		} else {
+			String inicio = parametros.containsKey("nome") ? "n" + parametros.get("nome") : "";
+			Arrays.fill(posicoes, inicio);
+		}
+		String[] posicoesAtuais = posicoes;
+		int tamanhoDaPagina = tamanho;
+		List<HttpResponse<byte[]>> respostas = enviarParaTodas(particao -> posicoesAtuais[particao].equals("f") ? null
+				: consultaDaListagem(ordem, tamanhoDaPagina, posicoesAtuais[particao]));
+		List<Trecho> trechos = new ArrayList<>();
+		for (int i = 0; i < respostas.size(); i++) {
+			trechos.add(new Trecho(i, respostas.get(i), ordem.equals("alfabetica")));
+		}
+
+		// A intercalação: a cada passo, o registro seguinte da página é o menor dos próximos registros das
+		// partições (na ordem alfabética), ou o próximo registro da primeira partição que ainda tem registros
+		// (na ordem de cadastro).
+		Comparator<Trecho> ordemDosTrechos = ordem.equals("alfabetica")
+				? Comparator.<Trecho, String>comparing(Trecho::chaveDoProximo).thenComparingInt(trecho -> trecho.particao)
+				: Comparator.comparingInt(trecho -> trecho.particao);
+		PriorityQueue<Trecho> fila = new PriorityQueue<>(ordemDosTrechos);
+		for (Trecho trecho : trechos) {
+			if (trecho.temProximo()) {
+				fila.add(trecho);
+			}
+		}
+		StringBuilder resposta = new StringBuilder("{\"registros\":[");
+		int quantidade = 0;
+		while (quantidade < tamanho && !fila.isEmpty()) {
+			Trecho trecho = fila.poll();
+			if (quantidade++ > 0) {
+				resposta.append(',');
+			}
+			resposta.append(trecho.registros.get(trecho.consumidos++));
+			if (trecho.temProximo()) {
+				fila.add(trecho);
+			}
+		}
+
+		// A nova posição de cada partição. Quando só uma parte da página de uma partição foi usada, o marcador do
+		// último registro usado é obtido pedindo à partição uma página com exatamente essa quantidade.
+		String[] novasPosicoes = new String[particoes.size()];
+		List<Integer> parciais = new ArrayList<>();
+		for (Trecho trecho : trechos) {
+			if (trecho.registros.isEmpty()) {
+				novasPosicoes[trecho.particao] = "f";
+			} else if (trecho.consumidos == 0) {
+				novasPosicoes[trecho.particao] = posicoes[trecho.particao];
+			} else if (trecho.consumidos == trecho.registros.size()) {
+				novasPosicoes[trecho.particao] = trecho.proxima == null ? "f" : "d" + trecho.proxima;
+			} else {
+				parciais.add(trecho.particao);
+			}
+		}
+		if (!parciais.isEmpty()) {
+			List<HttpResponse<byte[]>> complementos = enviarParaTodas(particao -> parciais.contains(particao)
+					? consultaDaListagem(ordem, trechos.get(particao).consumidos, posicoesAtuais[particao])
+					: null);
+			for (int particao : parciais) {
+				String proxima = new Trecho(particao, complementos.get(particao), false).proxima;
+				novasPosicoes[particao] = proxima == null ? "f" : "d" + proxima;
+			}
+		}
+		boolean fim = true;
+		for (String posicao : novasPosicoes) {
+			fim &= posicao.equals("f");
+		}
+		resposta.append("],\"proxima\":");
+		ExportacaoDeRegistros.textoJson(resposta, fim ? null : marcador(novasPosicoes));
+		resposta.append('}');
+		ServidorHttp.responder(troca, 200, resposta.toString());
+	}
+
+	private static String consultaDaListagem(String ordem, int tamanho, String posicao) {
+		String consulta = "/registros?ordem=" + ordem + "&tamanho=" + tamanho;
+		if (posicao.startsWith("n")) {
+			consulta += "&nome=" + URLEncoder.encode(posicao.substring(1), StandardCharsets.UTF_8);
+		} else if (posicao.startsWith("d")) {
+			consulta += "&depois=" + URLEncoder.encode(posicao.substring(1), StandardCharsets.UTF_8);
+		}
+		return consulta;
+	}
+
+	// O marcador do roteador: as posições das partições, codificadas em Base64 (os marcadores das partições podem
+	// conter qualquer caractere) e separadas por pontos.
+	private static String marcador(String[] posicoes) {
+		StringBuilder marcador = new StringBuilder();
+		for (int i = 0; i < posicoes.length; i++) {
+			if (i > 0) {
+				marcador.append('.');
+			}
+			marcador.append(Base64.getUrlEncoder().withoutPadding().encodeToString(posicoes[i].getBytes(StandardCharsets.UTF_8)));
+		}
+		return marcador.toString();
+	}
+	private String[] posicoesDoMarcador(String marcador) {
+		String[] partes = marcador.split("\\.", -1);
+		if (partes.length != particoes.size()) {
+			throw new IllegalArgumentException("Marcador de página inválido: \"" + marcador + "\".");
+		}
+		String[] posicoes = new String[partes.length];
+		try {
+			for (int i = 0; i < partes.length; i++) {
+				posicoes[i] = new String(Base64.getUrlDecoder().decode(partes[i]), StandardCharsets.UTF_8);
+			}
+		} catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException("Marcador de página inválido: \"" + marcador + "\".");
+		}
+		return posicoes;
+	}
+
+	// A página devolvida por uma partição, e quantos dos seus registros já entraram na página do roteador.
+	private static final class Trecho {
+		private final int particao;
+		private final List<String> registros = new ArrayList<>();
+		private final List<String> chaves = new ArrayList<>();
+		private final String proxima;
+		private int consumidos;
+
+		Trecho(int particao, HttpResponse<byte[]> resposta, boolean comChaves) {
+			this.particao = particao;
+			if (resposta == null) {
+				proxima = null;
+				return;
+			}
+			String corpo = new String(resposta.body(), StandardCharsets.UTF_8);
+			Map<String, String> campos = LeitorDeJson.lerObjeto(corpo, registros);
+			if (resposta.statusCode() != 200) {
+				// Por exemplo, um marcador inválido: o erro da partição é devolvido ao cliente.
+				throw new IllegalArgumentException(campos.get("erro"));
+			}
+			proxima = campos.get("proxima");
+			if (comChaves) {
+				for (String registro : registros) {
+					chaves.add(IndiceDeNomes.chaveDeOrdenacao(LeitorDeJson.lerObjeto(registro).get("nome")));
+				}
+			}
+		}
+
+		boolean temProximo() {
+			return consumidos < registros.size();
+		}
+		String chaveDoProximo() {
+			return chaves.get(consumidos);
+		}
+	}
+
+	private void exportacao(HttpExchange troca) throws IOException {
+		// A exportação de todas as partições, em JSON Lines. Na ordem alfabética, as exportações das partições
+		// (cada uma já em ordem alfabética) são lidas ao mesmo tempo e intercaladas linha a linha; na ordem de
+		// cadastro, são enviadas uma depois da outra. Nenhuma exportação é guardada inteira na memória.
+		String ordem = ServidorHttp.parametros(troca).getOrDefault("ordem", "cadastro");
+		if (!ordem.equals("cadastro") && !ordem.equals("alfabetica")) {
+			throw new IllegalArgumentException("Ordem inválida: \"" + ordem + "\" (use cadastro ou alfabetica).");
+		}
+		List<BufferedReader> leitores = new ArrayList<>();
+		for (HttpResponse<InputStream> resposta : enviarParaTodas(particao -> "/exportacao?ordem=" + ordem,
+				HttpResponse.BodyHandlers.ofInputStream())) {
+			leitores.add(new BufferedReader(new InputStreamReader(resposta.body(), StandardCharsets.UTF_8), 1 << 16));
+		}
+		try {
+			troca.getResponseHeaders().set("Content-Type", "application/x-ndjson; charset=utf-8");
+			troca.sendResponseHeaders(200, 0);
+			try (Writer saida = new BufferedWriter(new OutputStreamWriter(troca.getResponseBody(), StandardCharsets.UTF_8),
+					1 << 16)) {
+				if (ordem.equals("cadastro")) {
+					for (BufferedReader leitor : leitores) {
+						for (String linha = leitor.readLine(); linha != null; linha = leitor.readLine()) {
+							saida.write(linha);
+							saida.write('\n');
+						}
+					}
+					return;
+				}
+				PriorityQueue<Linha> fila = new PriorityQueue<>(
+						Comparator.<Linha, String>comparing(linha -> linha.chave).thenComparingInt(linha -> linha.particao));
+				for (int i = 0; i < leitores.size(); i++) {
+					Linha linha = Linha.ler(i, leitores.get(i));
+					if (linha != null) {
+						fila.add(linha);
+					}
+				}
+				while (!fila.isEmpty()) {
+					Linha linha = fila.poll();
+					saida.write(linha.texto);
+					saida.write('\n');
+					Linha seguinte = Linha.ler(linha.particao, leitores.get(linha.particao));
+					if (seguinte != null) {
+						fila.add(seguinte);
+					}
+				}
+			}
+		} finally {
+			for (BufferedReader leitor : leitores) {
+				leitor.close();
+			}
+		}
+	}
+
+	// Uma linha da exportação de uma partição, com a chave de ordenação do nome.
+	private static final class Linha {
+		private final int particao;
+		private final String texto;
+		private final String chave;
+
+		private Linha(int particao, String texto) {
+			this.particao = particao;
+			this.texto = texto;
+			this.chave = IndiceDeNomes.chaveDeOrdenacao(LeitorDeJson.lerObjeto(texto).get("nome"));
+		}
+		static Linha ler(int particao, BufferedReader leitor) throws IOException {
+			String texto = leitor.readLine();
+			return texto == null || texto.isEmpty() ? null : new Linha(particao, texto);
+		}
+	}
+
+	// Consulta de uma função que devolve o caminho da requisição de cada partição (ou null para não consultar a
+	// partição).
+	@FunctionalInterface
+	private interface Caminho {
+		String daParticao(int particao);
+	}
+
+	private List<HttpResponse<byte[]>> enviarParaTodas(Caminho caminho) {
+		return enviarParaTodas(caminho, HttpResponse.BodyHandlers.ofByteArray());
+	}
+	private <T> List<HttpResponse<T>> enviarParaTodas(Caminho caminho, BodyHandler<T> leitor) {
+		// As requisições são enviadas a todas as partições ao mesmo tempo, e o roteador espera todas as respostas.
+		// As partições não consultadas ficam com a resposta null.
+		List<CompletableFuture<HttpResponse<T>>> pedidos = new ArrayList<>();
+		for (int i = 0; i < particoes.size(); i++) {
+			String caminhoDaParticao = caminho.daParticao(i);
+			pedidos.add(caminhoDaParticao == null ? CompletableFuture.completedFuture(null)
+					: cliente.sendAsync(requisicao(i, "GET", caminhoDaParticao, null), leitor));
+		}
+		List<HttpResponse<T>> respostas = new ArrayList<>();
+		for (int i = 0; i < pedidos.size(); i++) {
+			try {
+				respostas.add(pedidos.get(i).join());
+			} catch (CompletionException e) {
+				throw falha(i, e.getCause());
+			}
+		}
+		return respostas;
+	}
+
+	private HttpResponse<byte[]> enviar(int particao, String metodo, String caminho, byte[] corpo) {
+		try {
+			return cliente.send(requisicao(particao, metodo, caminho, corpo), HttpResponse.BodyHandlers.ofByteArray());
+		} catch (IOException e) {
+			throw falha(particao, e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw falha(particao, e);
+		}
+	}
+	private HttpRequest requisicao(int particao, String metodo, String caminho, byte[] corpo) {
+		return HttpRequest.newBuilder(particoes.get(particao).resolve(caminho)).timeout(Duration.ofMinutes(5))
+				.method(metodo, corpo == null || corpo.length == 0 ? HttpRequest.BodyPublishers.noBody()
+						: HttpRequest.BodyPublishers.ofByteArray(corpo))
+				.build();
+	}
+	private UncheckedIOException falha(int particao, Throwable causa) {
+		return new UncheckedIOException(new IOException("A partição " + particao + " (" + particoes.get(particao)
+				+ ") não respondeu: " + causa.getMessage(), causa));
+	}
+
+	private static byte[] corpo(HttpExchange troca) throws IOException {
+		try (InputStream entrada = troca.getRequestBody()) {
+			return entrada.readAllBytes();
+		}
+	}
+
+	private static void responder(HttpExchange troca, HttpResponse<byte[]> resposta) throws IOException {
+		// Devolve ao cliente a resposta de uma partição, sem modificação.
+		byte[] corpo = resposta.body();
+		if (corpo.length == 0) {
+			troca.sendResponseHeaders(resposta.statusCode(), -1);
+			return;
+		}
+		troca.getResponseHeaders().set("Content-Type",
+				resposta.headers().firstValue("Content-Type").orElse("application/json; charset=utf-8"));
+		troca.sendResponseHeaders(resposta.statusCode(), corpo.length);
+		try (OutputStream saida = troca.getResponseBody()) {
+			saida.write(corpo);
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.out.println("Uso: RoteadorHttp <porta> <endereços das partições, separados por vírgula>");
+			System.out.println("     RoteadorHttp <porta> --particoes <quantidade de partições locais>");
+			return;
+		}
+		int porta = Integer.parseInt(args[0]);
+		List<URI> enderecos = new ArrayList<>();
+		List<Process> processos = new ArrayList<>();
+		if (args[1].equals("--particoes")) {
+			int quantidade = Integer.parseInt(args[2]);
+			processos = iniciarParticoes(quantidade, porta + 1, Path.of(System.getProperty("cadastro.dados", "dados")));
+			for (int i = 0; i < quantidade; i++) {
+				enderecos.add(URI.create("http://localhost:" + (porta + 1 + i)));
+			}
+		} else {
+			for (String endereco : args[1].split(",")) {
+				enderecos.add(URI.create(endereco.trim()));
+			}
+		}
+		RoteadorHttp roteador = new RoteadorHttp(enderecos, porta);
+		List<Process> particoesLocais = processos;
+		// Ao encerrar o roteador (Ctrl+C), as partições iniciadas por ele também são encerradas, e cada uma grava
+		// o seu snapshot.
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+			roteador.parar();
+			for (Process processo : particoesLocais) {
+				processo.destroy();
+			}
+			for (Process processo : particoesLocais) {
+				try {
+					processo.waitFor(30, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}));
+		if (!particoesLocais.isEmpty()) {
+			roteador.aguardarParticoes(Duration.ofMinutes(2));
+		}
+		roteador.iniciar();
+		System.out.println("Roteador do cadastro do DETRAN (" + enderecos.size() + " partições) em http://localhost:"
+				+ roteador.porta() + "/registros");
+	}
+
+	private static List<Process> iniciarParticoes(int quantidade, int primeiraPorta, Path diretorio) throws IOException {
+		// Cada partição é um novo processo Java, com o mesmo executável e os mesmos módulos do roteador, o seu
+		// próprio diretório de dados e a sua própria porta. A forma de guardar os registros (propriedade
+		// "cadastro.colunar") é a mesma do roteador.
+		String java = ProcessHandle.current().info().command().orElse("java");
+		String modulos = System.getProperty("jdk.module.path");
+		List<Process> processos = new ArrayList<>();
+		for (int i = 0; i < quantidade; i++) {
+			processos.add(new ProcessBuilder(java, "-Dcadastro.dados=" + diretorio.resolve("particao-" + i),
+					"-Dcadastro.particao=" + i + "/" + quantidade,
+					"-Dcadastro.colunar=" + Boolean.getBoolean("cadastro.colunar"), "-p", modulos, "-m", "trabalho/servidor.ServidorHttp",
+					Integer.toString(primeiraPorta + i)).inheritIO().start());
+		}
+		return processos;
+	}
+
+	private void aguardarParticoes(Duration limite) {
+		// Espera até que todas as partições respondam (cada uma precisa carregar o seu cadastro do disco).
+		long fim = System.nanoTime() + limite.toNanos();
+		while (true) {
+			try {
+				enviarParaTodas(particao -> "/contagem");
+				return;
+			} catch (UncheckedIOException e) {
+				if (System.nanoTime() > fim) {
+					throw e;
+				}
+			}
+			try {
+				Thread.sleep(200);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+	}
+}
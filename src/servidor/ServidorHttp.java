@@ -0,0 +1,595 @@
+package servidor;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import arquivos.ExportacaoDeRegistros;
+import cadastro.Cadastro;
+import cadastro.CadastroColunar;
+import cadastro.CompactadorDeRegistros;
+import cadastro.Criterio;
+import cadastro.EventoDoCadastro;
+import cadastro.FluxoDeEventos;
+import cadastro.Instantaneo;
+import cadastro.Listagem;
+import cadastro.Pagina;
+import cadastro.ServicoDeCadastro;
+import entidades.Atributo;
+import entidades.Condutor;
+import entidades.Pessoa;
+import entidades.Validacao;
+import persistencia.Persistencia;
+
+public class ServidorHttp {
+	// Servidor HTTP local, que oferece as mesmas operações do menu do programa, com requisições e respostas no
+	// formato JSON. Os campos dos registros têm os mesmos nomes usados na exportação JSON, e as datas usam o
+	// formato dd/MM/yyyy (ou dd-MM-yyyy), como no menu.
+	//     GET    /registros/{cpf}               busca de um registro pelo CPF
+	//     GET    /registros?cnh={número}        busca de um condutor pelo número de registro da CNH
+	//     GET    /registros?ordem=cadastro      listagem na ordem de cadastro (ou ordem=alfabetica), com os
+	//                                           parâmetros opcionais tamanho, nome (pular para o nome) e depois
+	//                                           (o marcador "proxima" devolvido pela página anterior)
+	//     POST   /registros                     cadastro de um novo registro
+	//     PATCH  /registros/{cpf}               edição de um ou mais campos do registro
+	//     POST   /registros/{cpf}/habilitacao   cadastro da habilitação (CNH) de um cidadão
+	//     DELETE /registros/{cpf}               remoção do registro
+	//     GET    /metricas                      métricas das operações, em texto (formato do Prometheus)
+	//     GET    /contagem                      quantidade de registros, de condutores e de não-habilitados
+	//     GET    /exportacao                    todos os registros, em JSON Lines (um objeto por linha), na ordem
+	//                                           de cadastro (ou ordem=alfabetica), a partir de um instantâneo
+	//     GET    /eventos                       eventos das inclusões, edições e remoções (veja FluxoDeEventos),
+	//                                           com os parâmetros opcionais posicao (a "proxima" do lote anterior),
+	//                                           epoca (a do lote anterior), quantidade e espera (em milissegundos,
+	//                                           até chegar algum evento)
+	//
+	// O servidor também pode atender uma única partição de um cadastro particionado entre vários processos (veja
+	// RoteadorHttp). Nesse caso, a propriedade "cadastro.particao" informa a partição e a quantidade de
+	// partições ("0/3", por exemplo), e o servidor recusa os CPFs que pertencem a outras partições. Somente
+	// nesse caso o servidor também oferece uma operação interna, usada pelo roteador (que não a repassa aos
+	// clientes) quando a troca de CPF leva um registro para outra partição:
+	//     POST   /transferencias                cadastro de um registro vindo de outra partição, com o campo
+	//                                           dataDeValidade, que é mantido em vez de recalculado
+	// Cada requisição é atendida em uma thread virtual, quando a versão do Java oferece threads virtuais (Java 21
+	// ou superior). Threads virtuais são muito leves, o que permite atender milhares de clientes ao mesmo tempo
+	// sem manter milhares de threads do sistema operacional. Em versões anteriores, as requisições são atendidas
+	// por um conjunto de threads comuns, que cresce conforme a necessidade.
+	// Todas as operações passam pelo ServicoDeCadastro: as consultas são atendidas em paralelo, mas as
+	// modificações são publicadas uma de cada vez (veja ServicoDeCadastro). Depois de cada modificação, a
+	// resposta só é enviada quando a operação estiver gravada no diário.
+	static final int TAMANHO_PADRAO_DA_PAGINA = 20;
+	static final int TAMANHO_MAXIMO_DA_PAGINA = 1000;
+	private static final long ESPERA_MAXIMA_POR_EVENTOS = 30_000;
+	private static final int CAPACIDADE_PADRAO_DO_FLUXO_DE_EVENTOS = 1 << 16;
+	// O nome do campo JSON de cada atributo (NUMERO_DE_REGISTRO -> numeroDeRegistro).
+	private static final String[] CAMPOS_DOS_ATRIBUTOS = new String[Atributo.values().length];
+
+	static {
+		for (Atributo atributo : Atributo.values()) {
+			StringBuilder campo = new StringBuilder();
+			for (String palavra : atributo.name().toLowerCase().split("_")) {
+				campo.append(campo.length() == 0 ? palavra : Character.toUpperCase(palavra.charAt(0)) + palavra.substring(1));
+			}
+			CAMPOS_DOS_ATRIBUTOS[atributo.ordinal()] = campo.toString();
+		}
+	}
+
+	private final ServicoDeCadastro servico;
+	private final Persistencia persistencia;
+	private final HttpServer servidor;
+	private final ExecutorService executor;
+	private int particao = 0;
+	private int quantidadeDeParticoes = 1;
+
+	public ServidorHttp(ServicoDeCadastro servico, Persistencia persistencia, int porta) throws IOException {
+		this.servico = servico;
+		this.persistencia = persistencia;
+		// O servidor só aceita conexões da própria máquina.
+		servidor = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), porta), 1024);
+		servidor.createContext("/registros", this::atender);
+		servidor.createContext("/metricas", this::metricas);
+		servidor.createContext("/contagem", this::contagem);
+		servidor.createContext("/exportacao", this::exportacao);
+		executor = executorDeRequisicoes();
+		servidor.setExecutor(executor);
+	}
+
+	public void iniciar() {
+		servidor.start();
+	}
+	public void atenderSomenteAParticao(int particao, int quantidadeDeParticoes) {
+		if (quantidadeDeParticoes < 1 || particao < 0 || particao >= quantidadeDeParticoes) {
+			throw new IllegalArgumentException("Partição inválida: " + particao + "/" + quantidadeDeParticoes + ".");
+		}
+		this.particao = particao;
+		this.quantidadeDeParticoes = quantidadeDeParticoes;
+		servidor.createContext("/transferencias", this::transferencia);
+	}
+	public void publicarEventos(FluxoDeEventos eventos) {
+		// O fluxo de eventos deve ser registrado como observador do cadastro antes de o servidor ser iniciado.
+		servidor.createContext("/eventos", troca -> eventos(troca, eventos));
+	}
+	public int porta() {
+		return servidor.getAddress().getPort();
+	}
+	public void parar() {
+		// Para de aceitar requisições e espera que as requisições em andamento terminem, para que nenhuma
+		// modificação do cadastro aconteça depois do retorno (por exemplo, durante a gravação do último snapshot).
+		// As esperas por eventos que ainda não terminaram são interrompidas.
+		servidor.stop(1);
+		executor.shutdown();
+		try {
+			if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+				executor.shutdownNow();
+				executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	static ExecutorService executorDeRequisicoes() {
+		// O método newVirtualThreadPerTaskExecutor só existe a partir do Java 21 (no Java 19 e 20, só funciona
+		// com --enable-preview), por isso ele é procurado por reflexão.
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			return Executors.newCachedThreadPool(tarefa -> {
+				Thread thread = new Thread(tarefa, "servidor-http");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+	}
+
+	private void atender(HttpExchange troca) throws IOException {
+		try {
+			String caminho = troca.getRequestURI().getRawPath();
+			String[] partes = caminho.substring(1).split("/");
+			String metodo = troca.getRequestMethod();
+			if (!partes[0].equals("registros")) {
+				responder(troca, 404, erro("Endereço não encontrado."));
+			} else if (partes.length == 1) {
+				if (metodo.equals("GET")) {
+					listarOuBuscarPorCnh(troca);
+				} else if (metodo.equals("POST")) {
+					cadastrar(troca, false);
+				} else {
+					responder(troca, 405, erro("Método não permitido."));
+				}
+			} else if (partes.length == 2) {
+				String cpf = URLDecoder.decode(partes[1], StandardCharsets.UTF_8);
+				if (metodo.equals("GET")) {
+					buscar(troca, cpf);
+				} else if (metodo.equals("PATCH")) {
+					editar(troca, cpf);
+				} else if (metodo.equals("DELETE")) {
+					remover(troca, cpf);
+				} else {
+					responder(troca, 405, erro("Método não permitido."));
+				}
+			} else if (partes.length == 3 && partes[2].equals("habilitacao") && metodo.equals("POST")) {
+				habilitar(troca, URLDecoder.decode(partes[1], StandardCharsets.UTF_8));
+			} else {
+				responder(troca, 404, erro("Endereço não encontrado."));
+			}
+		} catch (IllegalArgumentException e) {
+			// Dados inválidos, CPF ou número de registro repetidos etc.: as mesmas mensagens mostradas no menu.
+			responder(troca, 400, erro(e.getMessage()));
+		} catch (RuntimeException e) {
+			erroInterno(troca, e);
+		} finally {
+			troca.close();
+		}
+	}
+
+	private void buscar(HttpExchange troca, String cpf) throws IOException {
+		Pessoa pessoa = servico.buscar(cpf);
+		if (pessoa == null) {
+			responder(troca, 404, erro("O CPF " + cpf + " não foi encontrado no registro."));
+		} else {
+			responder(troca, 200, json(pessoa));
+		}
+	}
+
+	private void listarOuBuscarPorCnh(HttpExchange troca) throws IOException {
+		Map<String, String> parametros = parametros(troca);
+		String cnh = parametros.get("cnh");
+		if (cnh != null) {
+			Condutor condutor = servico.buscarPorNumeroDeRegistro(cnh);
+			if (condutor == null) {
+				responder(troca, 404, erro("O número de registro " + cnh + " não foi encontrado no registro."));
+			} else {
+				responder(troca, 200, json(condutor));
+			}
+			return;
+		}
+		String ordem = parametros.getOrDefault("ordem", "cadastro");
+		if (!ordem.equals("cadastro") && !ordem.equals("alfabetica")) {
+			throw new IllegalArgumentException("Ordem inválida: \"" + ordem + "\" (use cadastro ou alfabetica).");
+		}
+		int tamanho = TAMANHO_PADRAO_DA_PAGINA;
+		if (parametros.containsKey("tamanho")) {
+			try {
+				tamanho = Integer.parseInt(parametros.get("tamanho"));
+			} catch (NumberFormatException e) {
+				tamanho = 0;
+			}
+			if (tamanho < 1 || tamanho > TAMANHO_MAXIMO_DA_PAGINA) {
+				throw new IllegalArgumentException("O tamanho da página deve estar entre 1 e " + TAMANHO_MAXIMO_DA_PAGINA + ".");
+			}
+		}
+		Listagem listagem = ordem.equals("alfabetica") ? servico.listagemAlfabetica() : servico.listagem();
+		Pagina pagina;
+		if (parametros.containsKey("depois")) {
+			pagina = listagem.aPartirDoMarcador(parametros.get("depois"), tamanho);
+		} else if (parametros.containsKey("nome")) {
+			pagina = listagem.irPara(parametros.get("nome"), null, tamanho);
+		} else {
+			pagina = listagem.primeira(tamanho);
+		}
+		StringBuilder resposta = new StringBuilder("{\"registros\":[");
+		if (pagina != null) {
+			for (int i = 0; i < pagina.getRegistros().size(); i++) {
+				if (i > 0) {
+					resposta.append(',');
+				}
+				ExportacaoDeRegistros.escreverJson(resposta, pagina.getRegistros().get(i));
+			}
+		}
+		resposta.append("],\"proxima\":");
+		ExportacaoDeRegistros.textoJson(resposta, pagina != null && pagina.temProxima() ? pagina.getMarcadorFinal() : null);
+		resposta.append('}');
+		responder(troca, 200, resposta.toString());
+	}
+
+	private void transferencia(HttpExchange troca) throws IOException {
+		try {
+			if (!troca.getRequestURI().getRawPath().equals("/transferencias")) {
+				responder(troca, 404, erro("Endereço não encontrado."));
+			} else if (!troca.getRequestMethod().equals("POST")) {
+				responder(troca, 405, erro("Método não permitido."));
+			} else {
+				cadastrar(troca, true);
+			}
+		} catch (IllegalArgumentException e) {
+			responder(troca, 400, erro(e.getMessage()));
+		} catch (RuntimeException e) {
+			erroInterno(troca, e);
+		} finally {
+			troca.close();
+		}
+	}
+
+	private void cadastrar(HttpExchange troca, boolean transferencia) throws IOException {
+		Map<String, String> campos = corpo(troca);
+		String nome = Validacao.obrigatorio(campos.get("nome"), "nome");
+		String cpf = Validacao.obrigatorio(campos.get("cpf"), "CPF");
+		LocalDate dataDeNascimento = Validacao.data(Validacao.obrigatorio(campos.get("dataDeNascimento"), "dataDeNascimento"));
+		Pessoa pessoa;
+		if (campos.get("numeroDeRegistro") == null) {
+			pessoa = new Pessoa(nome, cpf, dataDeNascimento);
+		} else {
+			String numeroDeRegistro = campos.get("numeroDeRegistro").trim();
+			char categoria = Validacao.categoria(Validacao.obrigatorio(campos.get("categoria"), "categoria"));
+			LocalDate dataDeEmissao = Validacao.data(Validacao.obrigatorio(campos.get("dataDeEmissao"), "dataDeEmissao"));
+			String tipoDeCarteira = Validacao.tipoDeCarteira(Validacao.obrigatorio(campos.get("tipoDeCarteira"), "tipoDeCarteira"));
+			// A data de validade é calculada a partir da emissão, como no menu, e o campo "dataDeValidade" enviado
+			// por um cliente é ignorado. Somente na transferência de um registro de outra partição (veja
+			// RoteadorHttp.editar) a validade original é mantida, pois ela depende da idade do condutor na emissão.
+			String dataDeValidade = transferencia ? campos.get("dataDeValidade") : null;
+			pessoa = dataDeValidade == null
+					? new Condutor(nome, cpf, dataDeNascimento, numeroDeRegistro, categoria, dataDeEmissao, tipoDeCarteira)
+					: new Condutor(nome, cpf, dataDeNascimento, numeroDeRegistro, categoria, dataDeEmissao,
+							Validacao.data(dataDeValidade), tipoDeCarteira);
+		}
+		verificarParticao(cpf);
+		if (servico.buscar(cpf) != null) {
+			responder(troca, 409, erro("O CPF " + cpf + " já está cadastrado no registro."));
+			return;
+		}
+		servico.adicionar(pessoa);
+		persistencia.sincronizar();
+		responder(troca, 201, json(pessoa));
+	}
+
+	private void editar(HttpExchange troca, String cpf) throws IOException {
+		// Os campos enviados, inclusive um novo CPF, são alterados juntos, em uma única operação (veja
+		// ServicoDeCadastro.editar): caso algum deles seja recusado, nenhum é alterado.
+		Map<String, String> campos = corpo(troca);
+		if (servico.buscar(cpf) == null) {
+			responder(troca, 404, erro("O CPF " + cpf + " não foi encontrado no registro."));
+			return;
+		}
+		String novoCpf = campos.remove("cpf");
+		// Os valores são validados antes de qualquer modificação.
+		Consumer<Pessoa> alteracao = Validacao.alteracao(campos);
+		if (novoCpf != null) {
+			novoCpf = Validacao.obrigatorio(novoCpf, "CPF");
+			verificarParticao(novoCpf);
+		}
+		Pessoa editado = campos.isEmpty() && (novoCpf == null || novoCpf.equals(cpf)) ? servico.buscar(cpf)
+				: servico.editar(cpf, novoCpf, alteracao);
+		persistencia.sincronizar();
+		responder(troca, 200, json(editado));
+	}
+
+	private void verificarParticao(String cpf) {
+		int particaoDoCpf = Particionamento.particao(cpf, quantidadeDeParticoes);
+		if (particaoDoCpf != particao) {
+			throw new IllegalArgumentException("O CPF " + cpf + " pertence à partição " + particaoDoCpf
+					+ ", e não a esta partição (" + particao + ").");
+		}
+	}
+
+	private void habilitar(HttpExchange troca, String cpf) throws IOException {
+		Map<String, String> campos = corpo(troca);
+		Condutor condutor = servico.habilitar(cpf, Validacao.obrigatorio(campos.get("numeroDeRegistro"), "numeroDeRegistro"),
+				Validacao.categoria(Validacao.obrigatorio(campos.get("categoria"), "categoria")),
+				Validacao.data(Validacao.obrigatorio(campos.get("dataDeEmissao"), "dataDeEmissao")),
+				Validacao.tipoDeCarteira(Validacao.obrigatorio(campos.get("tipoDeCarteira"), "tipoDeCarteira")));
+		persistencia.sincronizar();
+		responder(troca, 200, json(condutor));
+	}
+
+	private void remover(HttpExchange troca, String cpf) throws IOException {
+		if (!servico.remover(cpf)) {
+			responder(troca, 404, erro("O CPF " + cpf + " não foi encontrado no registro."));
+			return;
+		}
+		persistencia.sincronizar();
+		troca.sendResponseHeaders(204, -1);
+	}
+
+	private static Map<String, String> corpo(HttpExchange troca) throws IOException {
+		try (InputStream entrada = troca.getRequestBody()) {
+			return LeitorDeJson.lerObjeto(new String(entrada.readAllBytes(), StandardCharsets.UTF_8));
+		}
+	}
+
+	static Map<String, String> parametros(HttpExchange troca) {
+		Map<String, String> parametros = new HashMap<>();
+		String consulta = troca.getRequestURI().getRawQuery();
+		if (consulta != null) {
+			for (String parametro : consulta.split("&")) {
+				int igual = parametro.indexOf('=');
+				if (igual > 0) {
+					parametros.put(URLDecoder.decode(parametro.substring(0, igual), StandardCharsets.UTF_8),
+							URLDecoder.decode(parametro.substring(igual + 1), StandardCharsets.UTF_8));
+				}
+			}
+		}
+		return parametros;
+	}
+
+	private static String json(Pessoa pessoa) throws IOException {
+		StringBuilder json = new StringBuilder(256);
+		ExportacaoDeRegistros.escreverJson(json, pessoa);
+		return json.toString();
+	}
+
+	static void erroInterno(HttpExchange troca, RuntimeException e) throws IOException {
+		// Um erro inesperado: os detalhes ficam apenas no registro de erros do servidor, e o cliente recebe uma
+		// mensagem genérica.
+		System.err.println("Erro interno ao atender " + troca.getRequestMethod() + " " + troca.getRequestURI() + ":");
+		e.printStackTrace();
+		responder(troca, 500, erro("Erro interno."));
+	}
+
+	static String erro(String mensagem) throws IOException {
+		StringBuilder json = new StringBuilder("{\"erro\":");
+		ExportacaoDeRegistros.textoJson(json, mensagem);
+		return json.append('}').toString();
+	}
+
+	private void metricas(HttpExchange troca) throws IOException {
+		if (!troca.getRequestMethod().equals("GET")) {
+			responder(troca, 405, erro("Método não permitido."));
+			return;
+		}
+		byte[] corpo = servico.getMetricas().relatorio().getBytes(StandardCharsets.UTF_8);
+		troca.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+		troca.sendResponseHeaders(200, corpo.length);
+		try (OutputStream saida = troca.getResponseBody()) {
+			saida.write(corpo);
+		}
+	}
+
+	private void eventos(HttpExchange troca, FluxoDeEventos fluxo) throws IOException {
+		// Um lote de eventos, a partir da posição informada (por padrão, o evento mais antigo ainda disponível).
+		// O assinante guarda a posição "proxima" e a "epoca" da resposta e as envia na leitura seguinte; "perdidos"
+		// informa quantos eventos foram sobrescritos antes de serem lidos. Uma época diferente da atual significa
+		// que o servidor foi reiniciado e as posições recomeçaram do 0: a leitura é recusada com 409, e a resposta
+		// informa a época atual, para que o assinante recomece do início do novo fluxo.
+		try {
+			if (!troca.getRequestMethod().equals("GET")) {
+				responder(troca, 405, erro("Método não permitido."));
+				return;
+			}
+			Map<String, String> parametros = parametros(troca);
+			String epoca = parametros.get("epoca");
+			if (epoca != null && !epoca.equals(fluxo.getEpoca())) {
+				StringBuilder resposta = new StringBuilder("{\"erro\":");
+				ExportacaoDeRegistros.textoJson(resposta, "A época " + epoca + " não é a do fluxo de eventos atual "
+						+ "(o servidor foi reiniciado). A leitura deve recomeçar da posição 0 da época atual.");
+				resposta.append(",\"epoca\":");
+				ExportacaoDeRegistros.textoJson(resposta, fluxo.getEpoca());
+				responder(troca, 409, resposta.append('}').toString());
+				return;
+			}
+			long posicao = numero(parametros, "posicao", fluxo.getPosicaoInicial(), 0, Long.MAX_VALUE);
+			int quantidade = (int) numero(parametros, "quantidade", TAMANHO_PADRAO_DA_PAGINA, 1, TAMANHO_MAXIMO_DA_PAGINA);
+			long espera = numero(parametros, "espera", 0, 0, ESPERA_MAXIMA_POR_EVENTOS);
+			FluxoDeEventos.Assinatura assinatura = fluxo.assinar(posicao);
+			List<EventoDoCadastro> lote = assinatura.aguardarLote(quantidade, espera, TimeUnit.MILLISECONDS);
+			StringBuilder resposta = new StringBuilder("{\"eventos\":[");
+			for (int i = 0; i < lote.size(); i++) {
+				if (i > 0) {
+					resposta.append(',');
+				}
+				json(resposta, lote.get(i));
+			}
+			resposta.append("],\"epoca\":");
+			ExportacaoDeRegistros.textoJson(resposta, fluxo.getEpoca());
+			resposta.append(",\"proxima\":").append(assinatura.getPosicao()).append(",\"perdidos\":")
+					.append(assinatura.getPerdidos()).append('}');
+			responder(troca, 200, resposta.toString());
+		} catch (IllegalArgumentException e) {
+			responder(troca, 400, erro(e.getMessage()));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			responder(troca, 503, erro("O servidor está sendo encerrado."));
+		} finally {
+			troca.close();
+		}
+	}
+
+	private static void json(StringBuilder json, EventoDoCadastro evento) throws IOException {
+		// Os atributos alterados usam os mesmos nomes dos campos dos registros (por exemplo, "dataDeEmissao").
+		json.append("{\"posicao\":").append(evento.getPosicao()).append(",\"tipo\":\"").append(evento.getTipo())
+				.append("\",\"instante\":\"").append(evento.getInstante()).append("\",\"cpf\":");
+		ExportacaoDeRegistros.textoJson(json, evento.getCpf());
+		json.append(",\"alterados\":[");
+		boolean primeiro = true;
+		for (Atributo atributo : evento.getAtributosAlterados()) {
+			json.append(primeiro ? "\"" : ",\"").append(CAMPOS_DOS_ATRIBUTOS[atributo.ordinal()]).append('"');
+			primeiro = false;
+		}
+		json.append("],\"anterior\":");
+		if (evento.getAnterior() == null) {
+			json.append("null");
+		} else {
+			ExportacaoDeRegistros.escreverJson(json, evento.getAnterior());
+		}
+		json.append(",\"novo\":");
+		if (evento.getNovo() == null) {
+			json.append("null");
+		} else {
+			ExportacaoDeRegistros.escreverJson(json, evento.getNovo());
+		}
+		json.append('}');
+	}
+
+	private static long numero(Map<String, String> parametros, String nome, long padrao, long minimo, long maximo) {
+		if (!parametros.containsKey(nome)) {
+			return padrao;
+		}
+		try {
+			long valor = Long.parseLong(parametros.get(nome));
+			if (valor >= minimo && valor <= maximo) {
+				return valor;
+			}
+		} catch (NumberFormatException e) {
+			// O valor é recusado abaixo.
+		}
+		throw new IllegalArgumentException("O parâmetro " + nome + " deve estar entre " + minimo + " e " + maximo + ".");
+	}
+
+	private void contagem(HttpExchange troca) throws IOException {
+		try {
+			if (!troca.getRequestMethod().equals("GET")) {
+				responder(troca, 405, erro("Método não permitido."));
+				return;
+			}
+			// As duas contagens são feitas com o mesmo bloqueio de leitura, para que sejam consistentes entre si.
+			int[] contagem = servico.ler(cadastro -> new int[] { cadastro.quantidade(), cadastro.contar(Criterio.habilitado()) });
+			responder(troca, 200, "{\"registros\":" + contagem[0] + ",\"condutores\":" + contagem[1]
+					+ ",\"naoHabilitados\":" + (contagem[0] - contagem[1]) + "}");
+		} finally {
+			troca.close();
+		}
+	}
+
+	private void exportacao(HttpExchange troca) throws IOException {
+		// A exportação percorre um instantâneo do cadastro, e é enviada à medida que é escrita (sem o tamanho da
+		// resposta no cabeçalho), portanto nem a resposta inteira nem uma cópia dos registros ficam na memória.
+		try {
+			if (!troca.getRequestMethod().equals("GET")) {
+				responder(troca, 405, erro("Método não permitido."));
+				return;
+			}
+			String ordem = parametros(troca).getOrDefault("ordem", "cadastro");
+			if (!ordem.equals("cadastro") && !ordem.equals("alfabetica")) {
+				responder(troca, 400, erro("Ordem inválida: \"" + ordem + "\" (use cadastro ou alfabetica)."));
+				return;
+			}
+			try (Instantaneo instantaneo = servico.instantaneo()) {
+				troca.getResponseHeaders().set("Content-Type", "application/x-ndjson; charset=utf-8");
+				troca.sendResponseHeaders(200, 0);
+				try (Writer saida = new BufferedWriter(new OutputStreamWriter(troca.getResponseBody(), StandardCharsets.UTF_8),
+						1 << 16)) {
+					ExportacaoDeRegistros.exportar(ordem.equals("alfabetica") ? instantaneo.emOrdemAlfabetica() : instantaneo,
+							null, ExportacaoDeRegistros.Formato.JSON, saida);
+				}
+			}
+		} finally {
+			troca.close();
+		}
+	}
+
+	static void responder(HttpExchange troca, int status, String json) throws IOException {
+		byte[] corpo = json.getBytes(StandardCharsets.UTF_8);
+		troca.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+		troca.sendResponseHeaders(status, corpo.length);
+		try (OutputStream saida = troca.getResponseBody()) {
+			saida.write(corpo);
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		// O servidor usa o mesmo diretório de dados do programa (propriedade "cadastro.dados") e a porta
+		// informada como argumento (ou na propriedade "servidor.porta"), 8080 por padrão.
+		int porta = Integer.parseInt(args.length > 0 ? args[0] : System.getProperty("servidor.porta", "8080"));
+		// A propriedade "cadastro.colunar" escolhe o CadastroColunar, como no programa.
+		Cadastro cadastro = Boolean.getBoolean("cadastro.colunar") ? new CadastroColunar() : new Cadastro();
+		Persistencia persistencia = new Persistencia(Path.of(System.getProperty("cadastro.dados", "dados")));
+		persistencia.abrir(cadastro);
+		// O fluxo de eventos só recebe as modificações feitas depois da carga do cadastro. A quantidade de eventos
+		// guardados pode ser informada na propriedade "cadastro.eventos".
+		FluxoDeEventos eventos = new FluxoDeEventos(Integer.getInteger("cadastro.eventos",
+				CAPACIDADE_PADRAO_DO_FLUXO_DE_EVENTOS));
+		cadastro.adicionarObservador(eventos);
+		ServicoDeCadastro servico = new ServicoDeCadastro(cadastro);
+		servico.getMetricas().publicarNoJmx();
+		CompactadorDeRegistros compactador = new CompactadorDeRegistros(servico);
+		ServidorHttp servidor = new ServidorHttp(servico, persistencia, porta);
+		servidor.publicarEventos(eventos);
+		String particao = System.getProperty("cadastro.particao");
+		if (particao != null) {
+			String[] partes = particao.split("/");
+			servidor.atenderSomenteAParticao(Integer.parseInt(partes[0].trim()), Integer.parseInt(partes[1].trim()));
+		}
+		// Ao encerrar o servidor (Ctrl+C), um novo snapshot do cadastro é gravado, como no encerramento do menu,
+		// depois que as requisições em andamento terminaram.
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+			servidor.parar();
+			compactador.close();
+			try {
+				persistencia.close();
+			} catch (IOException e) {
+				System.err.println("Não foi possível gravar o cadastro em disco: " + e.getMessage());
+			}
+		}));
+		servidor.iniciar();
+		System.out.println("Servidor do cadastro do DETRAN em http://localhost:" + servidor.porta() + "/registros");
+	}
+}